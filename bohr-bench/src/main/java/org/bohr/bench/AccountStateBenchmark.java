@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bohr.core.Amount;
+import org.bohr.core.BlockchainImpl;
+import org.bohr.core.state.AccountState;
+import org.bohr.crypto.Key;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tracks the account state at increasing depths, as nested contract calls do,
+ * updates and reads accounts at the innermost level, and commits every level
+ * back into the outermost track, which is then rolled back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountStateBenchmark {
+
+    @Param({ "1", "8", "64" })
+    public int depth;
+
+    @Param({ "100" })
+    public int accounts;
+
+    private BlockchainImpl chain;
+    private final List<byte[]> addresses = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        chain = Fixtures.chain(Fixtures.config());
+
+        AccountState as = chain.getAccountState();
+        for (Key key : Fixtures.keys(accounts)) {
+            addresses.add(key.toAddress());
+            as.adjustAvailable(key.toAddress(), Fixtures.BALANCE);
+        }
+        as.commit();
+    }
+
+    @Benchmark
+    public Amount trackAndCommit() {
+        AccountState outer = chain.getAccountState().track();
+
+        List<AccountState> tracks = new ArrayList<>(depth);
+        AccountState as = outer;
+        for (int i = 0; i < depth; i++) {
+            as = as.track();
+            tracks.add(as);
+        }
+
+        Amount total = Amount.ZERO;
+        for (byte[] address : addresses) {
+            as.adjustAvailable(address, Amount.ONE.negate());
+            as.increaseNonce(address);
+            total = total.add(as.getAccount(address).getAvailable());
+        }
+
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            tracks.get(i).commit();
+        }
+        outer.rollback();
+
+        return total;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bohr.core.Block;
+import org.bohr.core.Transaction;
+import org.bohr.core.TransactionType;
+import org.bohr.util.MerkleUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decodes a block of transfers from its stored components, and computes its
+ * transactions root.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockBenchmark {
+
+    @Param({ "100", "1000" })
+    public int transactions;
+
+    private List<Transaction> txs;
+
+    private byte[] header;
+    private byte[] encodedTransactions;
+    private byte[] results;
+    private byte[] votes;
+
+    @Setup
+    public void setup() {
+        txs = Fixtures.transactions(Fixtures.config(), Fixtures.keys(transactions), TransactionType.TRANSFER,
+                Fixtures.bytes(20));
+        Block block = Fixtures.block(txs);
+
+        header = block.getEncodedHeader();
+        encodedTransactions = block.getEncodedTransactions();
+        results = block.getEncodedResults();
+        votes = block.getEncodedVotes();
+    }
+
+    @Benchmark
+    public Block fromComponents() {
+        return Block.fromComponents(header, encodedTransactions, results, votes);
+    }
+
+    @Benchmark
+    public byte[] computeTransactionsRoot() {
+        return MerkleUtil.computeTransactionsRoot(txs);
+    }
+}
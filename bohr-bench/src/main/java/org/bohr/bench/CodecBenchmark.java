@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bohr.core.Amount;
+import org.bohr.util.SimpleDecoder;
+import org.bohr.util.SimpleEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encodes and decodes a record shaped like a transaction with
+ * {@link SimpleEncoder} and {@link SimpleDecoder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    private byte[] address;
+    private byte[] data;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        address = Fixtures.bytes(20);
+        data = Fixtures.bytes(128);
+        encoded = encode();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeByte((byte) 1);
+        enc.writeBytes(address);
+        enc.writeAmount(Amount.of(123_456_789L));
+        enc.writeLong(42L);
+        enc.writeLong(1_500_000_000_000L);
+        enc.writeBytes(data);
+        return enc.toBytes();
+    }
+
+    @Benchmark
+    public void decode(Blackhole bh) {
+        SimpleDecoder dec = new SimpleDecoder(encoded);
+        bh.consume(dec.readByte());
+        bh.consume(dec.readBytes());
+        bh.consume(dec.readAmount());
+        bh.consume(dec.readLong());
+        bh.consume(dec.readLong());
+        bh.consume(dec.readBytes());
+    }
+}
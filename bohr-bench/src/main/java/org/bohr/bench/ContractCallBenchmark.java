@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bohr.config.Config;
+import org.bohr.core.BlockchainImpl;
+import org.bohr.core.Transaction;
+import org.bohr.core.TransactionExecutor;
+import org.bohr.core.TransactionResult;
+import org.bohr.core.TransactionType;
+import org.bohr.core.state.AccountState;
+import org.bohr.core.state.DelegateState;
+import org.bohr.crypto.Key;
+import org.bohr.vm.client.BohrBlock;
+import org.bohr.vm.client.BohrBlockStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Executes a block of calls to a contract, from distinct senders, on a chain at
+ * genesis. Every invocation starts from the same state, and its updates are
+ * discarded.
+ * <p>
+ * The number of calls is capped by the block gas limit, so that every call of
+ * the block succeeds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContractCallBenchmark {
+
+    @Param({ "COUNTER", "ARITHMETIC", "MEMORY", "STORAGE" })
+    public Fixtures.Contract contract;
+
+    /**
+     * The maximum number of calls in the block.
+     */
+    @Param({ "1000" })
+    public int transactions;
+
+    private BlockchainImpl chain;
+    private TransactionExecutor executor;
+    private List<Transaction> txs;
+    private BohrBlock block;
+
+    @Setup
+    public void setup() {
+        Config config = Fixtures.config();
+        chain = Fixtures.chain(config);
+
+        List<Key> keys = Fixtures.keys(transactions);
+        AccountState as = chain.getAccountState();
+        for (Key key : keys) {
+            as.adjustAvailable(key.toAddress(), Fixtures.BALANCE);
+        }
+        as.setCode(contract.getAddress(), contract.getCode());
+        as.commit();
+
+        executor = new TransactionExecutor(config, new BohrBlockStore(chain), true, true);
+        txs = Fixtures.transactions(config, keys, TransactionType.CALL, contract.getAddress());
+
+        // fit the calls in the block, by the gas of the first one, which writes to
+        // empty storage slots; the gas limit of the last one must fit as well
+        long gasLimit = config.spec().maxBlockGasLimit();
+        block = new BohrBlock(Fixtures.block(txs).getHeader(), gasLimit);
+        long gas = execute(txs.subList(0, 1)).get(0).getGasUsed();
+        txs = txs.subList(0, (int) Math.min(txs.size(), 1 + (gasLimit - txs.get(0).getGas()) / gas));
+        block = new BohrBlock(Fixtures.block(txs).getHeader(), gasLimit);
+
+        List<TransactionResult> results = execute(txs);
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).getCode() != TransactionResult.Code.SUCCESS) {
+                throw new IllegalStateException("Call #" + i + " of " + contract + " failed: "
+                        + results.get(i).getCode());
+            }
+        }
+    }
+
+    @Benchmark
+    public List<TransactionResult> execute() {
+        return execute(txs);
+    }
+
+    private List<TransactionResult> execute(List<Transaction> txs) {
+        AccountState as = chain.getAccountState().track();
+        DelegateState ds = chain.getDelegateState().track();
+        return executor.execute(txs, as, ds, block, 0);
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.bench;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.ethereum.vm.DataWord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the 256-bit arithmetic of {@link DataWord}. The {@code big*}
+ * benchmarks compute the same operations through {@link BigInteger}, as the
+ * arithmetic opcodes used to, for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataWordBenchmark {
+
+    /**
+     * The number of significant bytes of the operands.
+     */
+    @Param({ "8", "32" })
+    public int bytes;
+
+    private DataWord a;
+    private DataWord b;
+
+    @Setup
+    public void setup() {
+        byte[] data = new byte[DataWord.SIZE];
+        System.arraycopy(Fixtures.bytes(bytes), 0, data, DataWord.SIZE - bytes, bytes);
+        a = DataWord.of(data);
+
+        // a divisor of about half the size
+        Arrays.fill(data, 0, DataWord.SIZE - bytes / 2, (byte) 0);
+        b = DataWord.of(data);
+    }
+
+    @Benchmark
+    public DataWord add() {
+        return a.add(b);
+    }
+
+    @Benchmark
+    public DataWord sub() {
+        return a.sub(b);
+    }
+
+    @Benchmark
+    public DataWord mul() {
+        return a.mul(b);
+    }
+
+    @Benchmark
+    public DataWord div() {
+        return a.div(b);
+    }
+
+    @Benchmark
+    public DataWord mod() {
+        return a.mod(b);
+    }
+
+    @Benchmark
+    public DataWord exp() {
+        return a.exp(DataWord.of(255));
+    }
+
+    @Benchmark
+    public DataWord shiftLeft() {
+        return a.shiftLeft(DataWord.of(77));
+    }
+
+    @Benchmark
+    public DataWord bigMul() {
+        return DataWord.of(a.value().multiply(b.value()).and(DataWord.MAX_VALUE));
+    }
+
+    @Benchmark
+    public DataWord bigDiv() {
+        return DataWord.of(a.value().divide(b.value()));
+    }
+
+    @Benchmark
+    public DataWord bigExp() {
+        return DataWord.of(a.value().modPow(BigInteger.valueOf(255), DataWord.TWO_POW_256));
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.bohr.Network;
+import org.bohr.config.Config;
+import org.bohr.config.DevnetConfig;
+import org.bohr.core.Amount;
+import org.bohr.core.Block;
+import org.bohr.core.BlockHeader;
+import org.bohr.core.BlockchainImpl;
+import org.bohr.core.Transaction;
+import org.bohr.core.TransactionResult;
+import org.bohr.core.TransactionType;
+import org.bohr.crypto.Hex;
+import org.bohr.crypto.Key;
+import org.bohr.db.MemoryDatabase;
+import org.bohr.util.Bytes;
+import org.bohr.util.MerkleUtil;
+import org.bohr.util.TimeUtil;
+
+/**
+ * Builds the chains, transactions, blocks and contracts used by the
+ * benchmarks. Everything is kept in memory and derived from a fixed seed, so the
+ * results can be compared across commits.
+ */
+public class Fixtures {
+
+    public static final Network NETWORK = Network.DEVNET;
+
+    /**
+     * The balance given to every sender, in nano BOHR.
+     */
+    public static final Amount BALANCE = Amount.of(1_000_000_000_000_000L);
+
+    /**
+     * Runtime code of the benchmark contracts.
+     */
+    public enum Contract {
+        /**
+         * Increments storage slot 0.
+         *
+         * <pre>
+         * PUSH1 0 SLOAD PUSH1 1 ADD PUSH1 0 SSTORE STOP
+         * </pre>
+         */
+        COUNTER("60005460010160005500"),
+
+        /**
+         * Squares the counter of a 1000 iterations loop.
+         *
+         * <pre>
+         * PUSH2 1000 JUMPDEST DUP1 DUP1 MUL POP PUSH1 1 SWAP1 SUB DUP1 PUSH1 3 JUMPI STOP
+         * </pre>
+         */
+        ARITHMETIC("6103e85b80800250600190038060035700"),
+
+        /**
+         * Writes 1000 words to memory, and hashes them.
+         *
+         * <pre>
+         * PUSH2 1000 JUMPDEST DUP1 DUP1 PUSH1 32 MUL MSTORE PUSH1 1 SWAP1 SUB DUP1 PUSH1 3 JUMPI
+         * PUSH2 32032 PUSH1 0 SHA3 STOP
+         * </pre>
+         */
+        MEMORY("6103e85b8080602002526001900380600357617d2060002000"),
+
+        /**
+         * Writes 100 storage slots.
+         *
+         * <pre>
+         * PUSH2 100 JUMPDEST DUP1 DUP1 SSTORE PUSH1 1 SWAP1 SUB DUP1 PUSH1 3 JUMPI STOP
+         * </pre>
+         */
+        STORAGE("6100645b808055600190038060035700");
+
+        private final byte[] code;
+
+        Contract(String code) {
+            this.code = Hex.decode(code);
+        }
+
+        public byte[] getCode() {
+            return code;
+        }
+
+        /**
+         * Returns the address the contract is deployed at.
+         *
+         * @return
+         */
+        public byte[] getAddress() {
+            byte[] address = new byte[Key.ADDRESS_LEN];
+            address[0] = (byte) 0xbe;
+            address[address.length - 1] = (byte) ordinal();
+            return address;
+        }
+    }
+
+    private Fixtures() {
+    }
+
+    /**
+     * Creates a devnet config, with the data directory in the temp folder.
+     *
+     * @return
+     */
+    public static Config config() {
+        return new DevnetConfig(new File(System.getProperty("java.io.tmpdir"), "bohr-bench").getAbsolutePath());
+    }
+
+    /**
+     * Creates a chain at the devnet genesis, stored in memory.
+     *
+     * @param config
+     * @return
+     */
+    public static BlockchainImpl chain(Config config) {
+        return new BlockchainImpl(config, new MemoryDatabase.MemoryFactory());
+    }
+
+    /**
+     * Creates keys from a fixed seed.
+     *
+     * @param n
+     * @return
+     */
+    public static List<Key> keys(int n) {
+        Random random = new Random(n);
+        List<Key> keys = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            byte[] seed = new byte[32];
+            random.nextBytes(seed);
+            keys.add(Key.fromRawPrivateKey(seed));
+        }
+        return keys;
+    }
+
+    /**
+     * Creates random bytes from a fixed seed.
+     *
+     * @param n
+     * @return
+     */
+    public static byte[] bytes(int n) {
+        byte[] bytes = new byte[n];
+        new Random(n).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Creates a signed transaction of every key, with nonce 0.
+     *
+     * @param config
+     * @param keys
+     * @param type
+     *            TRANSFER, VOTE or CALL
+     * @param to
+     *            the recipient, delegate or contract
+     * @return
+     */
+    public static List<Transaction> transactions(Config config, List<Key> keys, TransactionType type, byte[] to) {
+        long timestamp = TimeUtil.currentTimeMillis();
+        List<Transaction> txs = new ArrayList<>(keys.size());
+        for (Key key : keys) {
+            Transaction tx;
+            switch (type) {
+            case CALL:
+                tx = new Transaction(NETWORK, type, to, Amount.ZERO, Amount.ZERO, 0, timestamp,
+                        Bytes.EMPTY_BYTES, 10_000_000L, Amount.ONE);
+                break;
+            default:
+                tx = new Transaction(NETWORK, type, to, Amount.of(1000), config.spec().minTransactionFee(), 0,
+                        timestamp, Bytes.EMPTY_BYTES);
+                break;
+            }
+            txs.add(tx.sign(key));
+        }
+        return txs;
+    }
+
+    /**
+     * Creates a block of the given transactions on top of genesis, with
+     * successful results and no vote.
+     *
+     * @param txs
+     * @return
+     */
+    public static Block block(List<Transaction> txs) {
+        List<TransactionResult> results = new ArrayList<>(txs.size());
+        for (int i = 0; i < txs.size(); i++) {
+            results.add(new TransactionResult());
+        }
+
+        BlockHeader header = new BlockHeader(1, new byte[Key.ADDRESS_LEN], Bytes.EMPTY_HASH,
+                TimeUtil.currentTimeMillis(), MerkleUtil.computeTransactionsRoot(txs),
+                MerkleUtil.computeResultsRoot(results), Bytes.EMPTY_HASH, Bytes.EMPTY_BYTES);
+        return new Block(header, txs, results, 0, Collections.emptyList());
+    }
+}
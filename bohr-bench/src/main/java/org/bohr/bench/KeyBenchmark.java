@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bohr.crypto.Key;
+import org.bohr.crypto.Key.Signature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Verifies Ed25519 signatures one by one, and in a batch of 64 as used for
+ * the votes of a block.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyBenchmark {
+
+    private static final int BATCH_SIZE = 64;
+
+    private final List<byte[]> messages = new ArrayList<>();
+    private final List<Signature> signatures = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        for (Key key : Fixtures.keys(BATCH_SIZE)) {
+            byte[] message = Fixtures.bytes(32 + messages.size());
+            messages.add(message);
+            signatures.add(key.sign(message));
+        }
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return Key.verify(messages.get(0), signatures.get(0));
+    }
+
+    @Benchmark
+    public boolean verifyBatch() {
+        return Key.verifyBatch(messages, signatures);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.program.Memory;
+import org.ethereum.vm.util.HashUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the EVM memory operations on a memory of the given size, in bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryBenchmark {
+
+    @Param({ "1024", "32768", "262144" })
+    public int size;
+
+    private Memory memory;
+    private DataWord word;
+    private int address;
+
+    @Setup
+    public void setup() {
+        memory = new Memory();
+        memory.write(0, Fixtures.bytes(size), size, false);
+        word = DataWord.of(Fixtures.bytes(DataWord.SIZE));
+        address = size - DataWord.SIZE;
+    }
+
+    /**
+     * MLOAD of the last word.
+     */
+    @Benchmark
+    public DataWord readWord() {
+        return memory.readWord(address);
+    }
+
+    /**
+     * MSTORE of the last word.
+     */
+    @Benchmark
+    public void writeWord() {
+        memory.writeWord(address, word);
+    }
+
+    /**
+     * Filling a memory of the given size, word by word.
+     */
+    @Benchmark
+    public Memory extend() {
+        Memory m = new Memory();
+        for (int i = 0; i < size; i += DataWord.SIZE) {
+            m.writeWord(i, word);
+        }
+        return m;
+    }
+
+    /**
+     * SHA3 over the whole memory.
+     */
+    @Benchmark
+    public byte[] sha3() {
+        return HashUtil.keccak256(memory.slice(0, size));
+    }
+
+    /**
+     * RETURN of the whole memory.
+     */
+    @Benchmark
+    public void read(Blackhole bh) {
+        bh.consume(memory.read(0, size));
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.program.Stack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs the stack operations of the ARITHMETIC contract loop, on the EVM stack
+ * and on the {@link java.util.Stack} it used to wrap. See {@link VMBenchmark}
+ * for the whole contract.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StackBenchmark {
+
+    private static final int ITERATIONS = 1000;
+
+    private static final DataWord WORD = DataWord.of(Fixtures.bytes(DataWord.SIZE));
+
+    @Benchmark
+    public Stack arrayStack() {
+        Stack stack = new Stack();
+        stack.push(WORD);
+        for (int i = 0; i < ITERATIONS; i++) {
+            stack.dup(1); // DUP1
+            stack.dup(1); // DUP1
+            DataWord a = stack.pop(); // MUL
+            stack.pop();
+            stack.push(a);
+            stack.pop(); // POP
+            stack.push(WORD); // PUSH1
+            stack.swap(1); // SWAP1
+            a = stack.pop(); // SUB
+            stack.pop();
+            stack.push(a);
+            stack.dup(1); // DUP1
+            stack.push(WORD); // PUSH1
+            stack.pop(2); // JUMPI
+        }
+        return stack;
+    }
+
+    @Benchmark
+    public java.util.Stack<DataWord> legacyStack() {
+        java.util.Stack<DataWord> stack = new java.util.Stack<>();
+        stack.push(WORD);
+        for (int i = 0; i < ITERATIONS; i++) {
+            stack.push(stack.get(stack.size() - 1));
+            stack.push(stack.get(stack.size() - 1));
+            DataWord a = pop(stack);
+            pop(stack);
+            stack.push(a);
+            pop(stack);
+            stack.push(WORD);
+            DataWord tmp = stack.get(stack.size() - 1);
+            stack.set(stack.size() - 1, stack.set(stack.size() - 2, tmp));
+            a = pop(stack);
+            pop(stack);
+            stack.push(a);
+            stack.push(stack.get(stack.size() - 1));
+            stack.push(WORD);
+            pop(stack);
+            pop(stack);
+        }
+        return stack;
+    }
+
+    // the legacy stack also synchronized its pop
+    private static DataWord pop(java.util.Stack<DataWord> stack) {
+        synchronized (stack) {
+            return stack.pop();
+        }
+    }
+}
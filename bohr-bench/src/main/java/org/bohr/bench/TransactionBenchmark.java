@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bohr.core.Transaction;
+import org.bohr.core.TransactionType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes and decodes a signed transfer, and validates a decoded one, which
+ * includes hashing and verifying the signature.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionBenchmark {
+
+    private Transaction tx;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        tx = Fixtures.transactions(Fixtures.config(), Fixtures.keys(1), TransactionType.TRANSFER,
+                Fixtures.bytes(20)).get(0);
+        bytes = tx.toBytes();
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return tx.toBytes();
+    }
+
+    @Benchmark
+    public Transaction fromBytes() {
+        return Transaction.fromBytes(bytes);
+    }
+
+    @Benchmark
+    public boolean fromBytesAndValidate() {
+        return Transaction.fromBytes(bytes).validate(Fixtures.NETWORK);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bohr.config.Config;
+import org.bohr.core.BlockchainImpl;
+import org.bohr.core.Transaction;
+import org.bohr.core.TransactionExecutor;
+import org.bohr.core.TransactionResult;
+import org.bohr.core.TransactionType;
+import org.bohr.core.state.AccountState;
+import org.bohr.core.state.DelegateState;
+import org.bohr.crypto.Key;
+import org.bohr.vm.client.BohrBlock;
+import org.bohr.vm.client.BohrBlockStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Executes a block of native transactions from distinct senders on a chain at
+ * genesis. Every invocation starts from the same state, and its updates are
+ * discarded. The contract calls are measured by {@link ContractCallBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionExecutorBenchmark {
+
+    @Param({ "TRANSFER", "VOTE" })
+    public TransactionType type;
+
+    @Param({ "1000" })
+    public int transactions;
+
+    private BlockchainImpl chain;
+    private TransactionExecutor executor;
+    private List<Transaction> txs;
+    private BohrBlock block;
+
+    @Setup
+    public void setup() {
+        Config config = Fixtures.config();
+        chain = Fixtures.chain(config);
+
+        List<Key> keys = Fixtures.keys(transactions);
+        AccountState as = chain.getAccountState();
+        for (Key key : keys) {
+            as.adjustAvailable(key.toAddress(), Fixtures.BALANCE);
+        }
+        as.commit();
+
+        byte[] to = (type == TransactionType.VOTE)
+                ? chain.getGenesis().getDelegates().values().iterator().next()
+                : Fixtures.bytes(20);
+
+        executor = new TransactionExecutor(config, new BohrBlockStore(chain), true, true);
+        txs = Fixtures.transactions(config, keys, type, to);
+        block = new BohrBlock(Fixtures.block(txs).getHeader(), config.spec().maxBlockGasLimit());
+    }
+
+    @Benchmark
+    public List<TransactionResult> execute() {
+        AccountState as = chain.getAccountState().track();
+        DelegateState ds = chain.getDelegateState().track();
+        return executor.execute(txs, as, ds, block, 0);
+    }
+}
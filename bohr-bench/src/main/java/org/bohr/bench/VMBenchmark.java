@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bohr.core.BlockchainImpl;
+import org.bohr.core.state.AccountState;
+import org.bohr.crypto.Key;
+import org.bohr.util.Bytes;
+import org.bohr.vm.client.BohrRepository;
+import org.bohr.vm.client.BohrSpec;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.VM;
+import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.client.Repository;
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.ProgramResult;
+import org.ethereum.vm.program.invoke.ProgramInvoke;
+import org.ethereum.vm.program.invoke.ProgramInvokeImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs the benchmark contracts with {@link VM#play(Program)}, on a repository
+ * tracked from the chain state, so the storage writes are discarded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VMBenchmark {
+
+    private static final long GAS = 10_000_000L;
+
+    @Param({ "COUNTER", "ARITHMETIC", "MEMORY", "STORAGE" })
+    public Fixtures.Contract contract;
+
+    /**
+     * Whether to use the pre-decoded interpreter.
+     */
+    @Param({ "false", "true" })
+    public boolean preDecode;
+
+    private BlockchainImpl chain;
+    private Spec spec;
+    private DataWord address;
+    private DataWord caller;
+
+    @Setup
+    public void setup() {
+        chain = Fixtures.chain(Fixtures.config());
+        spec = new BohrSpec(preDecode);
+        address = DataWord.of(contract.getAddress());
+        caller = DataWord.of(Fixtures.keys(1).get(0).toAddress());
+
+        AccountState as = chain.getAccountState();
+        as.setCode(contract.getAddress(), contract.getCode());
+        as.commit();
+    }
+
+    @Benchmark
+    public ProgramResult play() {
+        Repository repository = new BohrRepository(chain.getAccountState().track(),
+                chain.getDelegateState().track());
+        ProgramInvoke invoke = new ProgramInvokeImpl(address, caller, caller, GAS, DataWord.ONE, DataWord.ZERO,
+                Bytes.EMPTY_BYTES, DataWord.ZERO, DataWord.of(new byte[Key.ADDRESS_LEN]), DataWord.of(1L),
+                DataWord.of(1L), DataWord.ZERO, DataWord.of(GAS), repository, repository, n -> Bytes.EMPTY_HASH,
+                0, false);
+
+        Program program = new Program(contract.getCode(), invoke, spec);
+        new VM(spec).play(program);
+        return program.getResult();
+    }
+}
@@ -24,10 +24,8 @@ import org.bohr.consensus.BohrSync;
 import org.bohr.core.*;
 import org.bohr.crypto.Hex;
 import org.bohr.crypto.Key;
+import org.bohr.db.DatabaseBackend;
 import org.bohr.db.DatabaseFactory;
-import org.bohr.db.DatabaseName;
-import org.bohr.db.LeveldbDatabase;
-import org.bohr.db.LeveldbDatabase.LeveldbFactory;
 import org.bohr.event.KernelBootingEvent;
 import org.bohr.event.PubSub;
 import org.bohr.event.PubSubFactory;
@@ -36,6 +34,7 @@ import org.bohr.net.NodeManager;
 import org.bohr.net.PeerClient;
 import org.bohr.net.PeerServer;
 import org.bohr.util.Bytes;
+import org.bohr.util.SystemUtil;
 import org.bohr.util.TimeUtil;
 import org.bohr.vm.client.BohrBlock;
 import org.bitlet.weupnp.GatewayDevice;
@@ -136,7 +135,14 @@ public class Kernel {
         // ====================================
         // initialize blockchain database
         // ====================================
-        dbFactory = new LeveldbFactory(config.databaseDir());
+        DatabaseBackend backend = DatabaseBackend.detect(config.databaseDir());
+        if (backend != null && backend != config.databaseBackend()) {
+            logger.error("The database is stored in {}, but {} is configured, please migrate it with DatabaseMigrator",
+                    backend, config.databaseBackend());
+            SystemUtil.exitAsync(SystemUtil.Code.FAILED_TO_OPEN_DB);
+            return;
+        }
+        dbFactory = config.databaseBackend().createFactory(config.databaseDir());
         chain = new BlockchainImpl(config, genesis, dbFactory);
         long number = chain.getLatestBlockNumber();
         logger.info("Latest block number = {}", number);
@@ -294,13 +300,14 @@ public class Kernel {
         // close client
         client.close();
 
+        // stop the background tasks of the chain
+        chain.stop();
+
         // make sure no thread is reading/writing the state
         ReentrantReadWriteLock.WriteLock lock = chain.getStateLock().writeLock();
         lock.lock();
         try {
-            for (DatabaseName name : DatabaseName.values()) {
-                dbFactory.getDB(name).close();
-            }
+            dbFactory.close();
         } finally {
             lock.unlock();
         }
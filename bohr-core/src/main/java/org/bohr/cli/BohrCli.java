@@ -24,7 +24,6 @@ import org.bohr.crypto.Hex;
 import org.bohr.crypto.Key;
 import org.bohr.crypto.bip39.MnemonicGenerator;
 import org.bohr.db.DatabaseFactory;
-import org.bohr.db.LeveldbDatabase;
 import org.bohr.exception.LauncherException;
 import org.bohr.message.CliMessages;
 import org.bohr.net.filter.exception.IpFilterJsonParseException;
@@ -172,7 +171,7 @@ public class BohrCli extends Launcher {
 
     protected void reindex(String to) {
         Config config = getConfig();
-        DatabaseFactory dbFactory = new LeveldbDatabase.LeveldbFactory(config.databaseDir());
+        DatabaseFactory dbFactory = config.databaseBackend().createFactory(config.databaseDir());
         BlockchainImpl.upgrade(config, dbFactory, to == null ? Long.MAX_VALUE : Long.parseLong(to));
     }
 
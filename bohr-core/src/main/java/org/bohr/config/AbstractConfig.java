@@ -12,6 +12,7 @@ import org.bohr.core.Amount;
 import org.bohr.core.Fork;
 import org.bohr.core.TransactionType;
 import org.bohr.crypto.Hash;
+import org.bohr.db.DatabaseBackend;
 import org.bohr.net.Capability;
 import org.bohr.net.CapabilityTreeSet;
 import org.bohr.net.NodeManager.Node;
@@ -101,6 +102,8 @@ public abstract class AbstractConfig implements Config, ChainSpec {
     protected int syncMaxPendingBlocks = 512;
     protected boolean syncDisconnectOnInvalidBlock = false;
     protected boolean syncFastSync = false;
+    protected boolean syncSnapshot = false;
+    protected boolean syncSnapshotExport = false;
 
     // =========================
     // API
@@ -135,6 +138,22 @@ public abstract class AbstractConfig implements Config, ChainSpec {
     protected Amount poolMinGasPrice = Amount.of(1); // 1 NanoBohr = 100 Gwei
     protected long poolMaxTransactionTimeDrift = TimeUnit.HOURS.toMillis(2);
 
+    // =========================
+    // Database
+    // =========================
+    protected DatabaseBackend databaseBackend = DatabaseBackend.LEVELDB;
+
+    // =========================
+    // State
+    // =========================
+    protected int stateAccountCacheSize = 64 * 1024;
+    protected long stateCodeCacheSize = 32L * 1024 * 1024;
+
+    // =========================
+    // VM
+    // =========================
+    protected boolean vmPreDecode = false;
+
     // =========================
     // UI
     // =========================
@@ -148,6 +167,7 @@ public abstract class AbstractConfig implements Config, ChainSpec {
     protected boolean forkUniformDistributionEnabled = false;
     protected boolean forkVirtualMachineEnabled = false;
     protected boolean forkVotingPrecompiledUpgradeEnabled = false;
+    protected boolean forkStateRootEnabled = false;
 
     @Override
     public ChainSpec spec() {
@@ -299,7 +319,7 @@ public abstract class AbstractConfig implements Config, ChainSpec {
 
     @Override
     public Spec vmSpec() {
-        return new BohrSpec();
+        return new BohrSpec(vmPreDecode);
     }
 
     private static long[][][] periods = new long[3][64][];
@@ -309,15 +329,18 @@ public abstract class AbstractConfig implements Config, ChainSpec {
         periods[MAINNET.id()][UNIFORM_DISTRIBUTION.id()] = new long[] { 200_001L, 400_000L };
         periods[MAINNET.id()][VIRTUAL_MACHINE.id()] = new long[] { 1_500_001L, 1_700_000L };
         periods[MAINNET.id()][VOTING_PRECOMPILED_UPGRADE.id()] = new long[] { 1_600_001L, 1_800_000L };
+        periods[MAINNET.id()][STATE_ROOT.id()] = new long[] { 2_000_001L, 2_200_000L };
 
         periods[TESTNET.id()][UNIFORM_DISTRIBUTION.id()] = new long[] { 1L, 200_000L };
         periods[TESTNET.id()][VIRTUAL_MACHINE.id()] = new long[] { 1L, 200_000L };
         periods[TESTNET.id()][VOTING_PRECOMPILED_UPGRADE.id()] = new long[] { 150_001L, 350_000L };
+        periods[TESTNET.id()][STATE_ROOT.id()] = new long[] { 400_001L, 600_000L };
 
         // as soon as possible
         periods[DEVNET.id()][UNIFORM_DISTRIBUTION.id()] = new long[] { 1L, 200_000L };
         periods[DEVNET.id()][VIRTUAL_MACHINE.id()] = new long[] { 1L, 200_000L };
         periods[DEVNET.id()][VOTING_PRECOMPILED_UPGRADE.id()] = new long[] { 1, 200_000L };
+        periods[DEVNET.id()][STATE_ROOT.id()] = new long[] { 1, 200_000L };
     }
 
     @Override
@@ -345,6 +368,11 @@ public abstract class AbstractConfig implements Config, ChainSpec {
         return new File(dataDir, Constants.DATABASE_DIR + File.separator + network.name().toLowerCase(Locale.ROOT));
     }
 
+    @Override
+    public DatabaseBackend databaseBackend() {
+        return databaseBackend;
+    }
+
     @Override
     public File configDir() {
         return new File(dataDir, Constants.CONFIG_DIR);
@@ -372,7 +400,8 @@ public abstract class AbstractConfig implements Config, ChainSpec {
 
     @Override
     public CapabilityTreeSet getClientCapabilities() {
-        return CapabilityTreeSet.of(Capability.Bohr, Capability.FAST_SYNC);
+        return CapabilityTreeSet.of(Capability.Bohr, Capability.FAST_SYNC, Capability.BLOCK_RANGE,
+                Capability.SNAPSHOT);
     }
 
     @Override
@@ -505,6 +534,16 @@ public abstract class AbstractConfig implements Config, ChainSpec {
         return syncFastSync;
     }
 
+    @Override
+    public boolean syncSnapshot() {
+        return syncSnapshot;
+    }
+
+    @Override
+    public boolean syncSnapshotExport() {
+        return syncSnapshotExport;
+    }
+
     @Override
     public boolean apiEnabled() {
         return apiEnabled;
@@ -594,6 +633,21 @@ public abstract class AbstractConfig implements Config, ChainSpec {
         return poolMaxTransactionTimeDrift;
     }
 
+    @Override
+    public int stateAccountCacheSize() {
+        return stateAccountCacheSize;
+    }
+
+    @Override
+    public long stateCodeCacheSize() {
+        return stateCodeCacheSize;
+    }
+
+    @Override
+    public boolean vmPreDecode() {
+        return vmPreDecode;
+    }
+
     @Override
     public Locale uiLocale() {
         return uiLocale;
@@ -624,6 +678,11 @@ public abstract class AbstractConfig implements Config, ChainSpec {
         return forkVotingPrecompiledUpgradeEnabled;
     }
 
+    @Override
+    public boolean forkStateRootEnabled() {
+        return forkStateRootEnabled;
+    }
+
     protected void init() {
         File f = getFile();
         if (!f.exists()) {
@@ -706,6 +765,12 @@ public abstract class AbstractConfig implements Config, ChainSpec {
                     case "sync.fastSync":
                         syncFastSync = Boolean.parseBoolean(props.getProperty(name).trim());
                         break;
+                    case "sync.snapshot":
+                        syncSnapshot = Boolean.parseBoolean(props.getProperty(name).trim());
+                        break;
+                    case "sync.snapshotExport":
+                        syncSnapshotExport = Boolean.parseBoolean(props.getProperty(name).trim());
+                        break;
 
                     case "api.enabled":
                         apiEnabled = Boolean.parseBoolean(props.getProperty(name).trim());
@@ -760,6 +825,22 @@ public abstract class AbstractConfig implements Config, ChainSpec {
                         poolMaxTransactionTimeDrift = Integer.parseInt(props.getProperty(name).trim());
                         break;
                     }
+                    case "database.backend": {
+                        databaseBackend = DatabaseBackend.valueOf(props.getProperty(name).trim().toUpperCase(Locale.ROOT));
+                        break;
+                    }
+                    case "state.accountCacheSize": {
+                        stateAccountCacheSize = Integer.parseInt(props.getProperty(name).trim());
+                        break;
+                    }
+                    case "state.codeCacheSize": {
+                        stateCodeCacheSize = Long.parseLong(props.getProperty(name).trim());
+                        break;
+                    }
+                    case "vm.preDecode": {
+                        vmPreDecode = Boolean.parseBoolean(props.getProperty(name).trim());
+                        break;
+                    }
                     default:
                         logger.error("Unsupported option: {} = {}", name, props.getProperty(name));
                         break;
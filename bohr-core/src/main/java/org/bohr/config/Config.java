@@ -16,6 +16,7 @@ import java.util.Set;
 import org.bohr.Network;
 import org.bohr.core.Amount;
 import org.bohr.core.Fork;
+import org.bohr.db.DatabaseBackend;
 import org.bohr.net.CapabilityTreeSet;
 import org.bohr.net.NodeManager.Node;
 import org.bohr.net.msg.MessageCode;
@@ -62,6 +63,13 @@ public interface Config {
      */
     File databaseDir(Network network);
 
+    /**
+     * Returns the storage engine of the databases.
+     *
+     * @return
+     */
+    DatabaseBackend databaseBackend();
+
     /**
      * Returns the config directory.
      *
@@ -288,6 +296,22 @@ public interface Config {
      */
     boolean syncFastSync();
 
+    /**
+     * Returns whether a new node should start from the state snapshot of the
+     * latest checkpoint, instead of replaying all the blocks from genesis.
+     *
+     * @return
+     */
+    boolean syncSnapshot();
+
+    /**
+     * Returns whether to export and serve a state snapshot when a checkpoint
+     * block is imported.
+     *
+     * @return
+     */
+    boolean syncSnapshotExport();
+
     // =========================
     // API
     // =========================
@@ -421,6 +445,36 @@ public interface Config {
      */
     long poolMaxTransactionTimeDrift();
 
+    // =========================
+    // State
+    // =========================
+
+    /**
+     * Returns the maximum number of accounts cached by the account state.
+     *
+     * @return
+     */
+    int stateAccountCacheSize();
+
+    /**
+     * Returns the maximum size of contract code cached by the account state, in
+     * bytes.
+     *
+     * @return
+     */
+    long stateCodeCacheSize();
+
+    // =========================
+    // VM
+    // =========================
+
+    /**
+     * Returns whether to execute contracts with the pre-decoded interpreter.
+     *
+     * @return
+     */
+    boolean vmPreDecode();
+
     // =========================
     // UI
     // =========================
@@ -471,6 +525,13 @@ public interface Config {
      */
     boolean forkVotingPrecompiledUpgradeEnabled();
 
+    /**
+     * Returns whether STATE_ROOT fork is enabled.
+     *
+     * @return
+     */
+    boolean forkStateRootEnabled();
+
     // =========================
     // Checkpoints
     // =========================
@@ -22,6 +22,7 @@ public class DevnetConfig extends AbstractConfig {
         this.forkUniformDistributionEnabled = true;
         this.forkVirtualMachineEnabled = true;
         this.forkVotingPrecompiledUpgradeEnabled = true;
+        this.forkStateRootEnabled = true;
     }
 
     @Override
@@ -17,6 +17,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.stream.Collectors;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.ethereum.vm.client.BlockStore;
 import org.bohr.Kernel;
 import org.bohr.Network;
@@ -27,6 +28,8 @@ import org.bohr.core.BftManager;
 import org.bohr.core.Block;
 import org.bohr.core.BlockHeader;
 import org.bohr.core.Blockchain;
+import org.bohr.core.Fork;
+import org.bohr.core.ParallelTransactionExecutor;
 import org.bohr.core.PendingManager;
 import org.bohr.core.SyncManager;
 import org.bohr.core.Transaction;
@@ -117,6 +120,14 @@ public class BohrBft implements BftManager {
 
     protected Cache<ByteArray, Block> validBlocks = Caffeine.newBuilder().maximumSize(8).build();
 
+    /**
+     * The tracked states produced when validating the blocks in
+     * {@link #validBlocks}, which are committed at finalize time to avoid
+     * executing the block again.
+     */
+    protected Cache<ByteArray, Pair<AccountState, DelegateState>> validStates = Caffeine.newBuilder()
+            .maximumSize(8).build();
+
     protected List<String> validators;
     protected List<Channel> activeValidators;
     protected long lastUpdate;
@@ -421,9 +432,15 @@ public class BohrBft implements BftManager {
             block.setView(view);
             block.setVotes(votes);
 
-            // [2] add the block to chain
+            // [2] add the block to chain, reusing the states executed during validation if
+            // the parent block is still the latest one
             logger.info(block.toString());
-            chain.importBlock(block, false);
+            ByteArray key = ByteArray.of(blockHash.get());
+            Pair<AccountState, DelegateState> states = validStates.getIfPresent(key);
+            validStates.invalidate(key);
+            if (states == null || !chain.importBlock(block, states.getLeft(), states.getRight())) {
+                chain.importBlock(block, false);
+            }
         } else {
             sync(height + 1);
         }
@@ -775,10 +792,11 @@ public class BohrBft implements BftManager {
         for (PendingManager.PendingTransaction pendingTx : pendingTxs) {
             Transaction tx = pendingTx.transaction;
 
-            // check if the remaining gas covers the declared gas limit
+            // check if the remaining gas covers the declared gas limit; a cheaper
+            // transaction further down the list may still fit
             long gas = tx.isVMTransaction() ? tx.getGas() : config.spec().nonVMTransactionGasCost();
             if (gas > remainingBlockGas) {
-                break;
+                continue;
             }
 
             // re-evaluate the transaction
@@ -797,7 +815,7 @@ public class BohrBft implements BftManager {
         // compute roots
         byte[] transactionsRoot = MerkleUtil.computeTransactionsRoot(includedTxs);
         byte[] resultsRoot = MerkleUtil.computeResultsRoot(includedResults);
-        byte[] stateRoot = Bytes.EMPTY_HASH;
+        byte[] stateRoot = chain.isForkActivated(Fork.STATE_ROOT, number) ? chain.getStateRoot() : Bytes.EMPTY_HASH;
 
         BlockHeader header = new BlockHeader(number, coinbase.toAddress(), prevHash, timestamp, transactionsRoot,
                 resultsRoot, stateRoot, data);
@@ -840,6 +858,14 @@ public class BohrBft implements BftManager {
                 return false;
             }
 
+            // the state root is reserved (EMPTY_HASH) until STATE_ROOT is activated
+            byte[] stateRoot = chain.isForkActivated(Fork.STATE_ROOT, header.getNumber()) ? chain.getStateRoot()
+                    : Bytes.EMPTY_HASH;
+            if (!Arrays.equals(header.getStateRoot(), stateRoot)) {
+                logger.warn("Invalid state root");
+                return false;
+            }
+
             // [2] check transactions
             List<Transaction> unvalidatedTransactions = getUnvalidatedTransactions(transactions);
             if (!block.validateTransactions(header, unvalidatedTransactions, transactions, config.network())) {
@@ -852,7 +878,7 @@ public class BohrBft implements BftManager {
             }
 
             // [3] evaluate transactions
-            TransactionExecutor transactionExecutor = new TransactionExecutor(config, blockStore, chain.isVMEnabled(),
+            TransactionExecutor transactionExecutor = new ParallelTransactionExecutor(config, blockStore, chain.isVMEnabled(),
                     chain.isVotingPrecompiledUpgraded());
             List<TransactionResult> results = transactionExecutor.execute(transactions, asTrack, dsTrack,
                     new BohrBlock(header, config.spec().maxBlockGasLimit()), 0);
@@ -866,6 +892,7 @@ public class BohrBft implements BftManager {
             logger.debug("Block validation: # txs = {}, time = {} ms", transactions.size(), t2 - t1);
 
             validBlocks.put(ByteArray.of(block.getHash()), block);
+            validStates.put(ByteArray.of(block.getHash()), Pair.of(asTrack, dsTrack));
             return true;
         } catch (Exception e) {
             logger.error("Unexpected exception during block proposal validation", e);
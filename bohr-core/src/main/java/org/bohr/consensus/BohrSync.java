@@ -13,17 +13,20 @@ import java.net.InetSocketAddress;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -40,7 +43,9 @@ import org.bohr.config.Config;
 import org.bohr.core.Block;
 import org.bohr.core.BlockPart;
 import org.bohr.core.Blockchain;
+import org.bohr.core.Snapshot;
 import org.bohr.core.SyncManager;
+import org.bohr.core.exception.BlockchainException;
 import org.bohr.net.Capability;
 import org.bohr.net.Channel;
 import org.bohr.net.ChannelManager;
@@ -49,8 +54,10 @@ import org.bohr.net.msg.Message;
 import org.bohr.net.msg.ReasonCode;
 import org.bohr.net.msg.consensus.BlockMessage;
 import org.bohr.net.msg.consensus.BlockPartsMessage;
+import org.bohr.net.msg.consensus.BlockRangeMessage;
 import org.bohr.net.msg.consensus.GetBlockMessage;
 import org.bohr.net.msg.consensus.GetBlockPartsMessage;
+import org.bohr.net.msg.consensus.GetBlockRangeMessage;
 import org.bohr.util.TimeUtil;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -64,6 +71,11 @@ import org.slf4j.LoggerFactory;
  * synchronized and need to be executed by one single thread at anytime.
  * <p>
  * The download/unfinished/pending queues are protected by lock.
+ * <p>
+ * Received blocks go through a pipeline: the checks which don't depend on the
+ * chain state (signatures, transactions root and vote signatures) run on a
+ * worker pool as soon as a block arrives, and the import stage only executes
+ * and commits the blocks in order.
  */
 public class BohrSync implements SyncManager {
 
@@ -81,12 +93,24 @@ public class BohrSync implements SyncManager {
     private static final ScheduledExecutorService timer1 = Executors.newSingleThreadScheduledExecutor(factory);
     private static final ScheduledExecutorService timer2 = Executors.newSingleThreadScheduledExecutor(factory);
 
+    private static final ExecutorService preValidators = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                private AtomicInteger cnt = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, "sync-validator-" + cnt.getAndIncrement());
+                }
+            });
+
     private final long DOWNLOAD_TIMEOUT;
 
     private final int MAX_QUEUED_JOBS;
     private final int MAX_PENDING_JOBS;
     private final int MAX_PENDING_BLOCKS;
 
+    private static final int MAX_RANGE_SIZE = 32;
+
     private static final Random random = new Random();
 
     private Config config;
@@ -103,6 +127,12 @@ public class BohrSync implements SyncManager {
     // Blocks which were requested but haven't been received
     private Map<Long, Long> toReceive = new HashMap<>();
 
+    // Ranges which were requested, from start (inclusive) to end (exclusive)
+    private Map<Long, Long> toReceiveRanges = new HashMap<>();
+
+    // Blocks which were received and are being pre-validated
+    private AtomicInteger toPreValidate = new AtomicInteger();
+
     // Blocks which were received but haven't been validated
     private TreeSet<Pair<Block, Channel>> toValidate = new TreeSet<>(
             Comparator.comparingLong(o -> o.getKey().getNumber()));
@@ -121,7 +151,10 @@ public class BohrSync implements SyncManager {
     private final AtomicBoolean isRunning = new AtomicBoolean(false);
 
     // reset at the beginning of a sync task
-    private Set<String> badPeers = new HashSet<>();
+    private Set<String> badPeers = ConcurrentHashMap.newKeySet();
+
+    // the snapshot being downloaded, if any
+    private volatile SnapshotSync snapshotSync;
 
     public BohrSync(Kernel kernel) {
         this.config = kernel.getConfig();
@@ -144,10 +177,16 @@ public class BohrSync implements SyncManager {
 
             logger.info("Syncing started, best known block = {}", targetHeight - 1);
 
+            // [0] start a new node from the latest checkpoint
+            if (config.syncSnapshot() && chain.getLatestBlockNumber() == chain.getGenesis().getNumber()) {
+                syncSnapshot(targetHeight);
+            }
+
             // [1] set up queues
             synchronized (lock) {
                 toDownload.clear();
                 toReceive.clear();
+                toReceiveRanges.clear();
                 toValidate.clear();
                 toImport.clear();
 
@@ -185,8 +224,41 @@ public class BohrSync implements SyncManager {
         }
     }
 
+    /**
+     * Downloads and imports the snapshot of the latest checkpoint before the
+     * target height. Blocks are then synced from the checkpoint.
+     *
+     * @param targetHeight
+     */
+    protected void syncSnapshot(long targetHeight) {
+        Optional<Long> checkpoint = config.checkpoints().keySet().stream()
+                .filter(n -> n < targetHeight)
+                .max(Long::compare);
+        if (!checkpoint.isPresent()) {
+            logger.info("No checkpoint to start from, syncing from genesis");
+            return;
+        }
+
+        snapshotSync = new SnapshotSync(config, chain, channelMgr, checkpoint.get());
+        try {
+            Snapshot snapshot = snapshotSync.download();
+            if (snapshot != null) {
+                chain.importSnapshot(snapshot);
+            }
+        } catch (BlockchainException e) {
+            logger.error("Failed to import the snapshot", e);
+        } finally {
+            snapshotSync = null;
+        }
+    }
+
     @Override
     public void stop() {
+        SnapshotSync s = snapshotSync;
+        if (s != null) {
+            s.stop();
+        }
+
         if (isRunning.compareAndSet(true, false)) {
             synchronized (isRunning) {
                 isRunning.notifyAll();
@@ -205,7 +277,41 @@ public class BohrSync implements SyncManager {
                 growToDownloadQueue();
             }
             toReceive.remove(block.getNumber());
-            toValidate.add(Pair.of(block, channel));
+            toPreValidate.incrementAndGet();
+        }
+
+        preValidators.execute(() -> preValidateBlock(block, channel));
+    }
+
+    /**
+     * Pre-validates a received block and moves it to the validate queue.
+     *
+     * @param block
+     * @param channel
+     */
+    protected void preValidateBlock(Block block, Channel channel) {
+        try {
+            if (!isRunning() || block.getNumber() <= chain.getLatestBlockNumber()) {
+                return;
+            }
+
+            boolean valid;
+            try {
+                valid = block.preValidate(config.network());
+            } catch (Exception e) {
+                logger.debug("Failed to pre-validate block #{}", block.getNumber(), e);
+                valid = false;
+            }
+
+            if (valid) {
+                synchronized (lock) {
+                    toValidate.add(Pair.of(block, channel));
+                }
+            } else {
+                handleInvalidBlock(block, channel);
+            }
+        } finally {
+            toPreValidate.decrementAndGet();
         }
     }
 
@@ -225,37 +331,36 @@ public class BohrSync implements SyncManager {
         case BLOCK_PARTS: {
             // try re-construct a block
             BlockPartsMessage blockPartsMsg = (BlockPartsMessage) msg;
-            List<BlockPart> parts = BlockPart.decode(blockPartsMsg.getParts());
-            List<byte[]> data = blockPartsMsg.getData();
-
-            // sanity check
-            if (parts.size() != data.size()) {
-                logger.debug("Part set and data do not match");
-                break;
+            Block block = parseBlock(BlockPart.decode(blockPartsMsg.getParts()), blockPartsMsg.getData());
+            if (block != null) {
+                addBlock(block, channel);
             }
-
-            // parse the data
-            byte[] header = null, transactions = null, results = null, votes = null;
-            for (int i = 0; i < parts.size(); i++) {
-                if (parts.get(i) == BlockPart.HEADER) {
-                    header = data.get(i);
-                } else if (parts.get(i) == BlockPart.TRANSACTIONS) {
-                    transactions = data.get(i);
-                } else if (parts.get(i) == BlockPart.RESULTS) {
-                    results = data.get(i);
-                } else if (parts.get(i) == BlockPart.VOTES) {
-                    votes = data.get(i);
-                } else {
-                    // unknown
+            break;
+        }
+        case BLOCK_RANGE: {
+            BlockRangeMessage blockRangeMsg = (BlockRangeMessage) msg;
+            List<BlockPart> parts = BlockPart.decode(blockRangeMsg.getParts());
+
+            long number = blockRangeMsg.getFrom();
+            for (List<byte[]> data : blockRangeMsg.getBlocks()) {
+                Block block = parseBlock(parts, data);
+                if (block == null || block.getNumber() != number) {
+                    logger.debug("Unexpected block in range, expected #{}", number);
+                    break;
                 }
+                addBlock(block, channel);
+                number++;
             }
 
-            // import block
-            try {
-                Block block = Block.fromComponents(header, transactions, results, votes);
-                addBlock(block, channel);
-            } catch (Exception e) {
-                logger.debug("Failed to parse a block from components", e);
+            // re-queue the blocks which were not delivered
+            requeueRange(blockRangeMsg.getFrom(), number);
+            break;
+        }
+        case SNAPSHOT_MANIFEST:
+        case SNAPSHOT_CHUNK: {
+            SnapshotSync s = snapshotSync;
+            if (s != null) {
+                s.onMessage(channel, msg);
             }
             break;
         }
@@ -266,10 +371,76 @@ public class BohrSync implements SyncManager {
         }
     }
 
+    /**
+     * Re-constructs a block from its parts.
+     *
+     * @param parts
+     * @param data
+     * @return the block, or null if the data is invalid
+     */
+    private Block parseBlock(List<BlockPart> parts, List<byte[]> data) {
+        // sanity check
+        if (parts.size() != data.size()) {
+            logger.debug("Part set and data do not match");
+            return null;
+        }
+
+        // parse the data
+        byte[] header = null, transactions = null, results = null, votes = null;
+        for (int i = 0; i < parts.size(); i++) {
+            if (parts.get(i) == BlockPart.HEADER) {
+                header = data.get(i);
+            } else if (parts.get(i) == BlockPart.TRANSACTIONS) {
+                transactions = data.get(i);
+            } else if (parts.get(i) == BlockPart.RESULTS) {
+                results = data.get(i);
+            } else if (parts.get(i) == BlockPart.VOTES) {
+                votes = data.get(i);
+            } else {
+                // unknown
+            }
+        }
+
+        try {
+            return Block.fromComponents(header, transactions, results, votes);
+        } catch (Exception e) {
+            logger.debug("Failed to parse a block from components", e);
+            return null;
+        }
+    }
+
+    /**
+     * Moves the blocks of a range request which were not received back to the
+     * download queue.
+     *
+     * @param from
+     *            the start of the requested range
+     * @param received
+     *            the first block which was not received
+     */
+    private void requeueRange(long from, long received) {
+        synchronized (lock) {
+            Long end = toReceiveRanges.remove(from);
+            if (end == null) {
+                return;
+            }
+
+            for (long n = received; n < end; n++) {
+                if (toReceive.remove(n) != null) {
+                    toDownload.add(n);
+                }
+            }
+        }
+    }
+
     private boolean isFastSyncSupported(Peer peer) {
         return Stream.of(peer.getCapabilities()).anyMatch(c -> Capability.FAST_SYNC.name().equals(c));
     }
 
+    private boolean isBlockRangeSupported(Peer peer) {
+        return Stream.of(peer.getCapabilities()).anyMatch(c -> Capability.BLOCK_RANGE.name().equals(c));
+    }
+
     private boolean skipVotes(long blockNumber) {
         long interval = config.spec().getValidatorUpdateInterval();
 
@@ -294,6 +465,7 @@ public class BohrSync implements SyncManager {
                 if (entry.getValue() + DOWNLOAD_TIMEOUT < now) {
                     logger.debug("Failed to download block #{}, expired", entry.getKey());
                     toDownload.add(entry.getKey());
+                    toReceiveRanges.remove(entry.getKey());
                     itr.remove();
                 }
             }
@@ -311,8 +483,9 @@ public class BohrSync implements SyncManager {
             Long task = toDownload.first();
 
             // quit if too many pending blocks
-            int pendingBlocks = toValidate.size() + toImport.size();
-            if (pendingBlocks > MAX_PENDING_BLOCKS && task > toValidate.first().getKey().getNumber()) {
+            int pendingBlocks = toPreValidate.get() + toValidate.size() + toImport.size();
+            if (pendingBlocks > MAX_PENDING_BLOCKS
+                    && (toValidate.isEmpty() || task > toValidate.first().getKey().getNumber())) {
                 logger.trace("Max pending blocks reached");
                 return;
             }
@@ -336,33 +509,91 @@ public class BohrSync implements SyncManager {
                 return;
             }
 
-            // otherwise, pick a random channel
-            Channel c = channels.get(random.nextInt(channels.size()));
-
-            if (config.syncFastSync()) { // use FAST_SYNC protocol
-                if (skipVotes(task)) {
-                    logger.trace("Requesting block #{} from {}:{}, HEADER + TRANSACTIONS", task,
-                            c.getRemoteIp(),
-                            c.getRemotePort());
-                    c.getMessageQueue().sendMessage(new GetBlockPartsMessage(task,
-                            BlockPart.encode(BlockPart.HEADER, BlockPart.TRANSACTIONS)));
-                } else {
-                    logger.trace("Requesting block #{} from {}:{}, HEADER + TRANSACTIONS + VOTES", task,
-                            c.getRemoteIp(), c.getRemotePort());
-                    c.getMessageQueue().sendMessage(new GetBlockPartsMessage(task,
-                            BlockPart.encode(BlockPart.HEADER, BlockPart.TRANSACTIONS, BlockPart.VOTES)));
+            // otherwise, assign a task to each of them in random order
+            Collections.shuffle(channels, random);
+            for (Channel c : channels) {
+                if (toDownload.isEmpty() || toReceive.size() > MAX_PENDING_JOBS) {
+                    break;
                 }
-            } else { // use old protocol
-                logger.trace("Requesting block #{} from {}:{}, FULL BLOCK", task, c.getRemoteIp(),
-                        c.getRemotePort());
-                c.getMessageQueue().sendMessage(new GetBlockMessage(task));
+                requestBlocks(c);
             }
+        }
+    }
 
-            if (toDownload.remove(task)) {
-                growToDownloadQueue();
+    /**
+     * Requests the first blocks of the download queue from the given channel.
+     * Peers supporting BLOCK_RANGE are asked for a range of consecutive blocks
+     * which share the same block parts.
+     *
+     * @param c
+     */
+    private void requestBlocks(Channel c) {
+        long task = toDownload.first();
+        long peerLatest = c.getRemotePeer().getLatestBlockNumber();
+        if (peerLatest < task) {
+            return;
+        }
+
+        if (isBlockRangeSupported(c.getRemotePeer())) {
+            int parts = getRequestedParts(task);
+            long end = task + 1;
+            while (end - task < MAX_RANGE_SIZE && end <= peerLatest && toDownload.contains(end)
+                    && getRequestedParts(end) == parts) {
+                end++;
             }
-            toReceive.put(task, TimeUtil.currentTimeMillis());
+
+            logger.trace("Requesting blocks #{} ~ #{} from {}:{}, parts = {}", task, end - 1, c.getRemoteIp(),
+                    c.getRemotePort(), BlockPart.decode(parts));
+            c.getMessageQueue().sendMessage(new GetBlockRangeMessage(task, (int) (end - task), parts));
+
+            long now = TimeUtil.currentTimeMillis();
+            for (long n = task; n < end; n++) {
+                toDownload.remove(n);
+                toReceive.put(n, now);
+            }
+            toReceiveRanges.put(task, end);
+            growToDownloadQueue();
+            return;
         }
+
+        if (config.syncFastSync()) { // use FAST_SYNC protocol
+            if (skipVotes(task)) {
+                logger.trace("Requesting block #{} from {}:{}, HEADER + TRANSACTIONS", task,
+                        c.getRemoteIp(),
+                        c.getRemotePort());
+                c.getMessageQueue().sendMessage(new GetBlockPartsMessage(task,
+                        BlockPart.encode(BlockPart.HEADER, BlockPart.TRANSACTIONS)));
+            } else {
+                logger.trace("Requesting block #{} from {}:{}, HEADER + TRANSACTIONS + VOTES", task,
+                        c.getRemoteIp(), c.getRemotePort());
+                c.getMessageQueue().sendMessage(new GetBlockPartsMessage(task,
+                        BlockPart.encode(BlockPart.HEADER, BlockPart.TRANSACTIONS, BlockPart.VOTES)));
+            }
+        } else { // use old protocol
+            logger.trace("Requesting block #{} from {}:{}, FULL BLOCK", task, c.getRemoteIp(),
+                    c.getRemotePort());
+            c.getMessageQueue().sendMessage(new GetBlockMessage(task));
+        }
+
+        if (toDownload.remove(task)) {
+            growToDownloadQueue();
+        }
+        toReceive.put(task, TimeUtil.currentTimeMillis());
+    }
+
+    /**
+     * Returns the block parts to request for the given block.
+     *
+     * @param number
+     * @return
+     */
+    private int getRequestedParts(long number) {
+        if (!config.syncFastSync()) {
+            return BlockPart.encode(BlockPart.HEADER, BlockPart.TRANSACTIONS, BlockPart.RESULTS, BlockPart.VOTES);
+        }
+
+        return skipVotes(number) ? BlockPart.encode(BlockPart.HEADER, BlockPart.TRANSACTIONS)
+                : BlockPart.encode(BlockPart.HEADER, BlockPart.TRANSACTIONS, BlockPart.VOTES);
     }
 
     /**
@@ -0,0 +1,312 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.consensus;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.bohr.config.Config;
+import org.bohr.core.Blockchain;
+import org.bohr.core.Snapshot;
+import org.bohr.net.Capability;
+import org.bohr.net.Channel;
+import org.bohr.net.ChannelManager;
+import org.bohr.net.Peer;
+import org.bohr.net.msg.Message;
+import org.bohr.net.msg.consensus.GetSnapshotChunkMessage;
+import org.bohr.net.msg.consensus.GetSnapshotManifestMessage;
+import org.bohr.net.msg.consensus.SnapshotChunkMessage;
+import org.bohr.net.msg.consensus.SnapshotManifestMessage;
+import org.bohr.util.ByteArray;
+import org.bohr.util.Bytes;
+import org.bohr.util.TimeUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads the state snapshot of a checkpoint block.
+ * <p>
+ * The manifest is requested from all the peers supporting SNAPSHOT, and the one
+ * served by most peers for the trusted checkpoint hash is selected. A manifest
+ * carries the checkpoint header, whose state root the snapshot is checked
+ * against when imported; the download is given up if the checkpoint block has
+ * no state root. Its chunks
+ * are then downloaded in parallel from those peers, one chunk per peer at a
+ * time, and checked against the manifest. Chunks already on disk are kept, so an
+ * interrupted download resumes where it stopped.
+ */
+public class SnapshotSync {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotSync.class);
+
+    /**
+     * The time to wait for manifests before selecting one, in milliseconds.
+     */
+    private static final long MANIFEST_TIMEOUT = 10_000L;
+
+    private final Config config;
+    private final ChannelManager channelMgr;
+
+    private final long number;
+    private final byte[] hash;
+    private final File dir;
+
+    // the manifests received, by peer
+    private final Map<String, Snapshot> manifests = new HashMap<>();
+
+    // the peers which were asked for the manifest
+    private final Set<String> asked = new HashSet<>();
+
+    // the peers serving the selected manifest
+    private final Set<String> sources = new HashSet<>();
+
+    private final Set<String> badPeers = new HashSet<>();
+
+    // whether the checkpoint block was found to have no state root
+    private boolean unverifiable;
+
+    // chunks to download
+    private final TreeSet<Integer> toDownload = new TreeSet<>();
+
+    // chunks which were requested but haven't been received, with the peer and the
+    // request time
+    private final Map<Integer, Pair<String, Long>> toReceive = new HashMap<>();
+
+    private Snapshot snapshot;
+
+    private final Object lock = new Object();
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+
+    public SnapshotSync(Config config, Blockchain chain, ChannelManager channelMgr, long number) {
+        this.config = config;
+        this.channelMgr = channelMgr;
+        this.number = number;
+        this.hash = config.checkpoints().get(number);
+        this.dir = chain.getSnapshotDir(number);
+    }
+
+    /**
+     * Downloads the snapshot, blocking until all the chunks are received.
+     *
+     * @return the snapshot, or null if the download was stopped
+     */
+    public Snapshot download() {
+        if (!isRunning.compareAndSet(false, true)) {
+            return null;
+        }
+
+        logger.info("Downloading the state snapshot of block #{}", number);
+        long begin = TimeUtil.currentTimeMillis();
+
+        while (isRunning.get()) {
+            synchronized (lock) {
+                if (snapshot == null) {
+                    requestManifests();
+                    if (TimeUtil.currentTimeMillis() - begin > MANIFEST_TIMEOUT) {
+                        selectManifest();
+                        if (snapshot == null && unverifiable) {
+                            logger.info("The checkpoint block #{} has no state root, giving up", number);
+                            isRunning.set(false);
+                            return null;
+                        }
+                    }
+                } else if (toDownload.isEmpty() && toReceive.isEmpty()) {
+                    break;
+                } else {
+                    requestChunks();
+                }
+            }
+
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        if (!isRunning.getAndSet(false)) {
+            return null;
+        }
+
+        try {
+            snapshot.save();
+        } catch (IOException e) {
+            logger.warn("Failed to save the snapshot manifest", e);
+        }
+
+        logger.info("Downloaded {}, took {} ms", snapshot, TimeUtil.currentTimeMillis() - begin);
+        return snapshot;
+    }
+
+    /**
+     * Stops downloading.
+     */
+    public void stop() {
+        isRunning.set(false);
+    }
+
+    /**
+     * Callback when a snapshot message is received from network.
+     *
+     * @param channel
+     * @param msg
+     */
+    public void onMessage(Channel channel, Message msg) {
+        String peerId = channel.getRemotePeer().getPeerId();
+
+        switch (msg.getCode()) {
+        case SNAPSHOT_MANIFEST: {
+            SnapshotManifestMessage m = (SnapshotManifestMessage) msg;
+            if (m.getNumber() != number || m.isEmpty()) {
+                break;
+            }
+
+            Snapshot s;
+            try {
+                s = Snapshot.fromManifest(dir, m.getManifest());
+            } catch (Exception e) {
+                logger.debug("Failed to decode the snapshot manifest from {}", channel.getRemoteIp(), e);
+                synchronized (lock) {
+                    badPeers.add(peerId);
+                }
+                break;
+            }
+
+            synchronized (lock) {
+                if (s.getNumber() != number || !Arrays.equals(s.getBlockHash(), hash)) {
+                    logger.info("Snapshot manifest from {} doesn't match the checkpoint", channel.getRemoteIp());
+                    badPeers.add(peerId);
+                } else if (Arrays.equals(s.getHeader().getStateRoot(), Bytes.EMPTY_HASH)) {
+                    // the checkpoint block doesn't commit to any state
+                    unverifiable = true;
+                } else {
+                    manifests.put(peerId, s);
+                }
+            }
+            break;
+        }
+        case SNAPSHOT_CHUNK: {
+            SnapshotChunkMessage m = (SnapshotChunkMessage) msg;
+            synchronized (lock) {
+                if (snapshot == null || m.getNumber() != number || !toReceive.containsKey(m.getIndex())) {
+                    break;
+                }
+
+                toReceive.remove(m.getIndex());
+                if (snapshot.putChunk(m.getIndex(), m.getData())) {
+                    logger.debug("Received snapshot chunk #{}, {} remaining", m.getIndex(),
+                            toDownload.size() + toReceive.size());
+                } else {
+                    logger.info("Invalid snapshot chunk #{} from {}", m.getIndex(), channel.getRemoteIp());
+                    toDownload.add(m.getIndex());
+                    badPeers.add(peerId);
+                    sources.remove(peerId);
+                }
+            }
+            break;
+        }
+        default:
+            break;
+        }
+    }
+
+    private boolean isSnapshotSupported(Peer peer) {
+        return Stream.of(peer.getCapabilities()).anyMatch(c -> Capability.SNAPSHOT.name().equals(c));
+    }
+
+    private void requestManifests() {
+        for (Channel c : channelMgr.getIdleChannels()) {
+            Peer peer = c.getRemotePeer();
+            if (peer.getLatestBlockNumber() >= number && isSnapshotSupported(peer)
+                    && !badPeers.contains(peer.getPeerId()) && asked.add(peer.getPeerId())) {
+                c.getMessageQueue().sendMessage(new GetSnapshotManifestMessage(number));
+            }
+        }
+    }
+
+    /**
+     * Selects the manifest served by most peers, and queues the chunks which are
+     * not on disk yet.
+     */
+    private void selectManifest() {
+        Map<ByteArray, List<String>> peers = manifests.entrySet().stream()
+                .collect(Collectors.groupingBy(e -> ByteArray.of(e.getValue().getHash()),
+                        Collectors.mapping(Entry::getKey, Collectors.toList())));
+        if (peers.isEmpty()) {
+            return;
+        }
+
+        List<String> best = peers.values().stream().max((a, b) -> Integer.compare(a.size(), b.size())).get();
+        snapshot = manifests.get(best.get(0));
+        sources.addAll(best);
+        logger.info("Selected {}, served by {} of {} peers", snapshot, best.size(), manifests.size());
+
+        for (int i = 0; i < snapshot.getChunkCount(); i++) {
+            byte[] data = snapshot.getChunk(i);
+            if (data == null || !snapshot.verifyChunk(i, data)) {
+                toDownload.add(i);
+            }
+        }
+        if (toDownload.size() < snapshot.getChunkCount()) {
+            logger.info("Resuming the snapshot download, {} chunks already received",
+                    snapshot.getChunkCount() - toDownload.size());
+        }
+    }
+
+    private void requestChunks() {
+        // re-queue the expired requests
+        long now = TimeUtil.currentTimeMillis();
+        Iterator<Entry<Integer, Pair<String, Long>>> itr = toReceive.entrySet().iterator();
+        while (itr.hasNext()) {
+            Entry<Integer, Pair<String, Long>> e = itr.next();
+            if (e.getValue().getRight() + config.syncDownloadTimeout() < now) {
+                logger.debug("Failed to download snapshot chunk #{}, expired", e.getKey());
+                toDownload.add(e.getKey());
+                itr.remove();
+            }
+        }
+
+        Set<String> busy = toReceive.values().stream().map(Pair::getLeft).collect(Collectors.toSet());
+        for (Channel c : channelMgr.getIdleChannels()) {
+            String peerId = c.getRemotePeer().getPeerId();
+            if (toDownload.isEmpty()) {
+                break;
+            }
+            if (!sources.contains(peerId) || badPeers.contains(peerId) || busy.contains(peerId)) {
+                continue;
+            }
+
+            int index = toDownload.pollFirst();
+            c.getMessageQueue().sendMessage(new GetSnapshotChunkMessage(number, index));
+            toReceive.put(index, Pair.of(peerId, now));
+        }
+
+        if (sources.isEmpty()) {
+            // all the peers serving the manifest turned out bad, start over
+            logger.info("No peer is serving the selected snapshot, selecting again");
+            snapshot = null;
+            manifests.keySet().removeAll(badPeers);
+            asked.clear();
+            toDownload.clear();
+            toReceive.clear();
+        }
+    }
+}
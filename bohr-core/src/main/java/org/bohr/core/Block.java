@@ -11,12 +11,15 @@ import static org.bohr.core.Amount.ZERO;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import org.bohr.Network;
 import org.bohr.config.Config;
 import org.bohr.config.Constants;
+import org.bohr.consensus.Vote;
+import org.bohr.consensus.VoteType;
 import org.bohr.crypto.Hex;
 import org.bohr.crypto.Key;
 import org.bohr.crypto.Key.Signature;
@@ -59,6 +62,18 @@ public class Block {
     // Auxiliary data
     // =========================
 
+    /**
+     * Whether the transaction signatures and the transactions root have been
+     * validated by {@link #preValidate(Network)}.
+     */
+    private volatile boolean transactionsValidated;
+
+    /**
+     * Whether the vote signatures have been verified by
+     * {@link #preValidate(Network)}.
+     */
+    private volatile boolean votesVerified;
+
     /**
      * Create a new block.
      *
@@ -102,6 +117,47 @@ public class Block {
 
     public void setVotes(List<Signature> votes) {
         this.votes = votes;
+        this.votesVerified = false;
+    }
+
+    public boolean isTransactionsValidated() {
+        return transactionsValidated;
+    }
+
+    public boolean isVotesVerified() {
+        return votesVerified;
+    }
+
+    /**
+     * Validates the parts of this block which don't depend on the chain state:
+     * the transaction signatures, the transactions root and the vote
+     * signatures. Once passed, these checks are skipped when the block is
+     * imported.
+     * <p>
+     * Whether the voters are validators is left to the import.
+     *
+     * @param network
+     * @return
+     */
+    public boolean preValidate(Network network) {
+        if (!validateTransactions(header, transactions, network)) {
+            return false;
+        }
+        transactionsValidated = true;
+
+        if (!votes.isEmpty()) {
+            byte[] encoded = new Vote(VoteType.PRECOMMIT, Vote.VALUE_APPROVE, getNumber(), view, getHash())
+                    .getEncoded();
+            boolean valid = Key.isVerifyBatchSupported()
+                    ? Key.verifyBatch(Collections.nCopies(votes.size(), encoded), votes)
+                    : votes.stream().allMatch(sig -> Key.verify(encoded, sig));
+            if (!valid) {
+                return false;
+            }
+            votesVerified = true;
+        }
+
+        return true;
     }
 
     /**
@@ -13,7 +13,6 @@ import java.util.Arrays;
 import org.bohr.crypto.Hash;
 import org.bohr.crypto.Hex;
 import org.bohr.crypto.Key;
-import org.bohr.util.Bytes;
 import org.bohr.util.SimpleDecoder;
 import org.bohr.util.SimpleEncoder;
 
@@ -109,7 +108,7 @@ public class BlockHeader {
                 && timestamp >= 0
                 && transactionsRoot != null && transactionsRoot.length == HASH_LEN
                 && resultsRoot != null && resultsRoot.length == HASH_LEN
-                && stateRoot != null && Arrays.equals(Bytes.EMPTY_HASH, stateRoot) // RESERVED FOR VM
+                && stateRoot != null && stateRoot.length == HASH_LEN // EMPTY_HASH before STATE_ROOT, see block validation
                 && data != null && data.length <= BlockHeaderData.MAX_SIZE
                 && encoded != null
                 && Arrays.equals(Hash.h256(encoded), hash);
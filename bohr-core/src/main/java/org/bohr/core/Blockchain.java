@@ -11,6 +11,7 @@ import org.bohr.core.state.AccountState;
 import org.bohr.core.state.DelegateState;
 import org.bohr.vm.client.BohrInternalTransaction;
 
+import java.io.File;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -92,6 +93,18 @@ public interface Blockchain {
      */
     boolean hasBlock(long number);
 
+    /**
+     * Returns the stored encoding of the requested block parts, in the order of
+     * {@link BlockPart#decode(int)}, without decoding the block.
+     *
+     * @param number
+     *            the block number
+     * @param parts
+     *            the encoded block parts
+     * @return the serialized parts, or null if the block doesn't exist
+     */
+    List<byte[]> getBlockParts(long number, int parts);
+
     /**
      * Returns transaction by its hash.
      *
@@ -280,6 +293,23 @@ public interface Blockchain {
      */
     boolean importBlock(Block block, boolean validateVotes);
 
+    /**
+     * Imports a new block whose transactions have already been validated and
+     * executed against the given tracked states, e.g. during BFT proposal
+     * validation. The states are committed directly without re-executing the
+     * block.
+     *
+     * @param block
+     *            the block to import
+     * @param asTrack
+     *            the account state tracked from the current latest block
+     * @param dsTrack
+     *            the delegate state tracked from the current latest block
+     * @return true if the block is successfully imported; false if the parent of
+     *         the block is no longer the latest block
+     */
+    boolean importBlock(Block block, AccountState asTrack, DelegateState dsTrack);
+
     /**
      * Validate the block votes only.
      *
@@ -290,4 +320,46 @@ public interface Blockchain {
     boolean isVMEnabled();
 
     boolean isVotingPrecompiledUpgraded();
+
+    /**
+     * Returns the root of the account, delegate and vote state after the latest
+     * block.
+     *
+     * @return
+     */
+    byte[] getStateRoot();
+
+    /**
+     * Returns the snapshot exported at the given checkpoint.
+     *
+     * @param number
+     * @return the snapshot, or null if it's not available
+     */
+    Snapshot getSnapshot(long number);
+
+    /**
+     * Returns the directory of the snapshot at the given checkpoint.
+     *
+     * @param number
+     * @return
+     */
+    File getSnapshotDir(long number);
+
+    /**
+     * Stops the background snapshot export, waiting for it to finish. The
+     * databases can be closed afterwards.
+     */
+    void stop();
+
+    /**
+     * Replaces the state of a chain which only contains the genesis block with a
+     * snapshot, after checking it against the state root of the checkpoint block.
+     * The parent of the checkpoint block becomes the latest block, and the blocks
+     * before it are not available.
+     *
+     * @param snapshot
+     * @throws org.bohr.core.exception.BlockchainException
+     *             if the snapshot is invalid
+     */
+    void importSnapshot(Snapshot snapshot);
 }
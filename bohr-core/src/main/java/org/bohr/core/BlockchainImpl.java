@@ -8,6 +8,7 @@ package org.bohr.core;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.ethereum.vm.client.BlockStore;
+import org.ethereum.vm.program.CodeCache;
 import org.bohr.config.Config;
 import org.bohr.config.Constants;
 import org.bohr.consensus.Vote;
@@ -18,18 +19,25 @@ import org.bohr.core.exception.BlockchainException;
 import org.bohr.core.state.*;
 import org.bohr.crypto.Hex;
 import org.bohr.crypto.Key;
+import org.bohr.db.BufferedDatabase;
 import org.bohr.db.Database;
 import org.bohr.db.DatabaseFactory;
 import org.bohr.db.DatabaseName;
-import org.bohr.db.LeveldbDatabase;
+import org.bohr.db.UpdateBatch;
 import org.bohr.event.PubSubFactory;
 import org.bohr.util.*;
+import org.bohr.util.exception.UnreachableException;
 import org.bohr.vm.client.BohrBlock;
 import org.bohr.vm.client.BohrBlockStore;
 import org.bohr.vm.client.BohrInternalTransaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -40,6 +48,15 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
@@ -92,12 +109,49 @@ public class BlockchainImpl implements Blockchain {
     protected static final byte TYPE_INTERNAL_TRANSACTION_COUNT_BY_ADDRESS = 0x07;
     protected static final byte TYPE_INTERNAL_TRANSACTION_BY_ADDRESS_AND_INDEX = 0x08;
     protected static final byte TYPE_DATABASE_VERSION = (byte) 0xff;
+    protected static final byte TYPE_UPGRADE_FLUSHING = (byte) 0xfe;
+    protected static final byte TYPE_SNAPSHOT_IMPORT = (byte) 0xfd;
 
     protected static final byte TYPE_BLOCK_HEADER_BY_NUMBER = 0x00;
     protected static final byte TYPE_BLOCK_TRANSACTIONS_BY_NUMBER = 0x01;
     protected static final byte TYPE_BLOCK_RESULTS_BY_NUMBER = 0x02;
     protected static final byte TYPE_BLOCK_VOTES_BY_NUMBER = 0x03;
 
+    private static final int HEADER_CACHE_SIZE = 16 * 1024;
+    private static final long BLOCK_CACHE_WEIGHT = 64L * 1024 * 1024;
+    private static final int HASH_CACHE_SIZE = 16 * 1024;
+
+    /**
+     * The number of block headers included in a snapshot, enough to look up the
+     * fork signals of the following blocks.
+     */
+    private static final int SNAPSHOT_HEADERS = 2048;
+
+    /**
+     * The number of blocks imported between two flushes of an upgrade.
+     */
+    private static final int UPGRADE_FLUSH_INTERVAL = 5000;
+
+    /**
+     * The number of blocks each reader of an upgrade reads ahead.
+     */
+    private static final int UPGRADE_PREFETCH_PER_THREAD = 64;
+
+    private static final ThreadFactory upgradeThreadFactory = new ThreadFactory() {
+        private final AtomicInteger cnt = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "upgrade-" + cnt.getAndIncrement());
+        }
+    };
+
+    private static final ThreadFactory snapshotThreadFactory = r -> {
+        Thread t = new Thread(r, "snapshot-export");
+        t.setDaemon(true);
+        return t;
+    };
+
     private final BlockStore blockStore = new BohrBlockStore(this);
     private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
 
@@ -109,16 +163,55 @@ public class BlockchainImpl implements Blockchain {
     private final Config config;
     private final Genesis genesis;
 
+    private DatabaseFactory dbFactory;
     private Database indexDB;
     private Database blockDB;
 
     private AccountState accountState;
     private DelegateState delegateState;
+    private StateMerkleTree stateTree;
 
     private Block latestBlock;
 
     private ActivatedForks forks;
 
+    /**
+     * Cache of decoded block headers, by number.
+     */
+    private final Cache<Long, BlockHeader> headerCache = Caffeine.newBuilder()
+            .maximumSize(HEADER_CACHE_SIZE)
+            .recordStats()
+            .build();
+
+    /**
+     * Cache of recent decoded blocks, by number, bounded by the estimated size in
+     * bytes. NOTE: cached blocks are shared and should not be modified.
+     */
+    private final Cache<Long, Block> blockCache = Caffeine.newBuilder()
+            .maximumWeight(BLOCK_CACHE_WEIGHT)
+            .weigher((Long number, Block block) -> estimateSize(block))
+            .recordStats()
+            .build();
+
+    /**
+     * Cache of <code>block_hash -> block_number</code>.
+     */
+    private final Cache<ByteArray, Long> hashCache = Caffeine.newBuilder()
+            .maximumSize(HASH_CACHE_SIZE)
+            .recordStats()
+            .build();
+
+    /**
+     * The complete snapshots found on disk, by number.
+     */
+    private final Map<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * The background snapshot export, one at a time.
+     */
+    private final ExecutorService snapshotExporter = Executors.newSingleThreadExecutor(snapshotThreadFactory);
+    private volatile boolean isExportStopped = false;
+
     public BlockchainImpl(Config config, DatabaseFactory dbFactory) {
         this(config, Genesis.load(config.network()), dbFactory);
     }
@@ -133,16 +226,13 @@ public class BlockchainImpl implements Blockchain {
         // upgrade if possible
         upgradeDatabase(config, dbFactory);
 
+        this.dbFactory = dbFactory;
         this.indexDB = dbFactory.getDB(DatabaseName.INDEX);
         this.blockDB = dbFactory.getDB(DatabaseName.BLOCK);
 
-
-        this.indexDB = dbFactory.getDB(DatabaseName.INDEX);
-        this.blockDB = dbFactory.getDB(DatabaseName.BLOCK);
-
-        this.accountState = new AccountStateImpl(dbFactory.getDB(DatabaseName.ACCOUNT));
-        this.delegateState = new DelegateStateImpl(this, dbFactory.getDB(DatabaseName.DELEGATE),
-                dbFactory.getDB(DatabaseName.VOTE));
+        // the state tree observes all the writes to the state databases
+        this.stateTree = new StateMerkleTree(dbFactory.getDB(DatabaseName.STATE));
+        openState();
 
         // checks if the database needs to be initialized
         byte[] number = indexDB.get(Bytes.of(TYPE_LATEST_BLOCK_NUMBER));
@@ -157,9 +247,33 @@ public class BlockchainImpl implements Blockchain {
         } else {
             // load the latest block
             latestBlock = getBlock(Bytes.toLong(number));
+
+            byte[] importing = indexDB.get(Bytes.of(TYPE_SNAPSHOT_IMPORT));
+            if (importing != null) {
+                // a snapshot import was interrupted
+                resumeSnapshotImport(Bytes.toLong(importing));
+            } else if (stateTree.getHeight() != latestBlock.getNumber()) {
+                // the state tree is missing or was not committed with the latest block
+                stateTree.rebuild(dbFactory, latestBlock.getNumber());
+            }
         }
     }
 
+    /**
+     * Creates the root account and delegate states, with empty caches and a
+     * freshly loaded delegate index. It's called again when the state databases
+     * have been written without the root states, i.e. by a snapshot import; a
+     * database upgrade swaps the databases before the states are first opened.
+     */
+    private void openState() {
+        this.accountState = new AccountStateImpl(
+                stateTree.track(DatabaseName.ACCOUNT, dbFactory.getDB(DatabaseName.ACCOUNT)),
+                config.stateAccountCacheSize(), config.stateCodeCacheSize());
+        this.delegateState = new DelegateStateImpl(this,
+                stateTree.track(DatabaseName.DELEGATE, dbFactory.getDB(DatabaseName.DELEGATE)),
+                stateTree.track(DatabaseName.VOTE, dbFactory.getDB(DatabaseName.VOTE)));
+    }
+
     private void initializeDb() {
         // initialize database version
         indexDB.put(Bytes.of(TYPE_DATABASE_VERSION), Bytes.of(DATABASE_VERSION));
@@ -178,6 +292,7 @@ public class BlockchainImpl implements Blockchain {
 
         // add block
         addBlock(genesis);
+        stateTree.commit(genesis.getNumber());
     }
 
     @Override
@@ -207,13 +322,32 @@ public class BlockchainImpl implements Blockchain {
 
     @Override
     public long getBlockNumber(byte[] hash) {
+        ByteArray key = ByteArray.of(hash);
+        Long cached = hashCache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
         byte[] number = indexDB.get(Bytes.merge(TYPE_BLOCK_NUMBER_BY_HASH, hash));
-        return (number == null) ? -1 : Bytes.toLong(number);
+        if (number == null) {
+            return -1;
+        }
+
+        long n = Bytes.toLong(number);
+        hashCache.put(key, n);
+        return n;
     }
 
     @Override
     public Block getBlock(long number) {
-        return getBlock(blockDB, number, false);
+        Block block = blockCache.getIfPresent(number);
+        if (block == null) {
+            block = getBlock(blockDB, number, false);
+            if (block != null) {
+                cacheBlock(block);
+            }
+        }
+        return block;
     }
 
     @Override
@@ -224,8 +358,15 @@ public class BlockchainImpl implements Blockchain {
 
     @Override
     public BlockHeader getBlockHeader(long number) {
-        byte[] header = blockDB.get(Bytes.merge(TYPE_BLOCK_HEADER_BY_NUMBER, Bytes.of(number)));
-        return (header == null) ? null : BlockHeader.fromBytes(header);
+        BlockHeader header = headerCache.getIfPresent(number);
+        if (header == null) {
+            byte[] bytes = blockDB.get(Bytes.merge(TYPE_BLOCK_HEADER_BY_NUMBER, Bytes.of(number)));
+            if (bytes != null) {
+                header = BlockHeader.fromBytes(bytes);
+                headerCache.put(number, header);
+            }
+        }
+        return header;
     }
 
     @Override
@@ -236,9 +377,43 @@ public class BlockchainImpl implements Blockchain {
 
     @Override
     public boolean hasBlock(long number) {
+        if (headerCache.getIfPresent(number) != null) {
+            return true;
+        }
         return blockDB.get(Bytes.merge(TYPE_BLOCK_HEADER_BY_NUMBER, Bytes.of(number))) != null;
     }
 
+    @Override
+    public List<byte[]> getBlockParts(long number, int parts) {
+        List<BlockPart> list = BlockPart.decode(parts);
+        List<byte[]> result = new ArrayList<>(list.size());
+
+        for (BlockPart part : list) {
+            byte[] bytes = blockDB.get(Bytes.merge(getBlockPartType(part), Bytes.of(number)));
+            if (bytes == null) {
+                return null;
+            }
+            result.add(bytes);
+        }
+
+        return result;
+    }
+
+    private static byte getBlockPartType(BlockPart part) {
+        switch (part) {
+        case HEADER:
+            return TYPE_BLOCK_HEADER_BY_NUMBER;
+        case TRANSACTIONS:
+            return TYPE_BLOCK_TRANSACTIONS_BY_NUMBER;
+        case RESULTS:
+            return TYPE_BLOCK_RESULTS_BY_NUMBER;
+        case VOTES:
+            return TYPE_BLOCK_VOTES_BY_NUMBER;
+        default:
+            throw new UnreachableException();
+        }
+    }
+
     private static class TransactionIndex {
         long blockNumber;
         int transactionOffset;
@@ -370,13 +545,21 @@ public class BlockchainImpl implements Blockchain {
             throw new BlockchainException("Blocks can only be added sequentially");
         }
 
+        long t1 = System.nanoTime();
+
+        // all updates of this block are collected and written as one batch per
+        // database; the index batch carries the latest block number and is
+        // written last, so that a partially written block is never referenced.
+        UpdateBatch blockBatch = new UpdateBatch(blockDB);
+        UpdateBatch indexBatch = new UpdateBatch(indexDB);
+
         // [1] update block
-        blockDB.put(Bytes.merge(TYPE_BLOCK_HEADER_BY_NUMBER, Bytes.of(number)), block.getEncodedHeader());
-        blockDB.put(Bytes.merge(TYPE_BLOCK_TRANSACTIONS_BY_NUMBER, Bytes.of(number)), block.getEncodedTransactions());
-        blockDB.put(Bytes.merge(TYPE_BLOCK_RESULTS_BY_NUMBER, Bytes.of(number)), block.getEncodedResults());
-        blockDB.put(Bytes.merge(TYPE_BLOCK_VOTES_BY_NUMBER, Bytes.of(number)), block.getEncodedVotes());
+        blockBatch.put(Bytes.merge(TYPE_BLOCK_HEADER_BY_NUMBER, Bytes.of(number)), block.getEncodedHeader());
+        blockBatch.put(Bytes.merge(TYPE_BLOCK_TRANSACTIONS_BY_NUMBER, Bytes.of(number)), block.getEncodedTransactions());
+        blockBatch.put(Bytes.merge(TYPE_BLOCK_RESULTS_BY_NUMBER, Bytes.of(number)), block.getEncodedResults());
+        blockBatch.put(Bytes.merge(TYPE_BLOCK_VOTES_BY_NUMBER, Bytes.of(number)), block.getEncodedVotes());
 
-        indexDB.put(Bytes.merge(TYPE_BLOCK_NUMBER_BY_HASH, hash), Bytes.of(number));
+        indexBatch.put(Bytes.merge(TYPE_BLOCK_NUMBER_BY_HASH, hash), Bytes.of(number));
 
         // [2] update transaction indices
         List<Transaction> txs = block.getTransactions();
@@ -390,19 +573,19 @@ public class BlockchainImpl implements Blockchain {
 
             TransactionIndex index = new TransactionIndex(number, transactionIndices.getRight().get(i),
                     resultIndices.getRight().get(i));
-            indexDB.put(Bytes.merge(TYPE_TRANSACTION_INDEX_BY_HASH, tx.getHash()), index.toBytes());
+            indexBatch.put(Bytes.merge(TYPE_TRANSACTION_INDEX_BY_HASH, tx.getHash()), index.toBytes());
 
             // [3] update transaction_by_account index
-            addTransactionToAccount(tx, tx.getFrom());
+            addTransactionToAccount(indexBatch, tx, tx.getFrom());
             if (!Arrays.equals(tx.getFrom(), tx.getTo())) {
-                addTransactionToAccount(tx, tx.getTo());
+                addTransactionToAccount(indexBatch, tx, tx.getTo());
             }
 
             // index internal transactions
             for (BohrInternalTransaction internalTx : result.getInternalTransactions()) {
-                addInternalTransactionToAccount(tx, internalTx, internalTx.getFrom());
+                addInternalTransactionToAccount(indexBatch, tx, internalTx, internalTx.getFrom());
                 if (!Arrays.equals(internalTx.getFrom(), internalTx.getTo())) {
-                    addInternalTransactionToAccount(tx, internalTx, internalTx.getTo());
+                    addInternalTransactionToAccount(indexBatch, tx, internalTx, internalTx.getTo());
                 }
             }
         }
@@ -418,9 +601,9 @@ public class BlockchainImpl implements Blockchain {
                     block.getTimestamp(),
                     Bytes.EMPTY_BYTES);
             tx.sign(Constants.COINBASE_KEY);
-            indexDB.put(Bytes.merge(TYPE_TRANSACTION_INDEX_BY_HASH, tx.getHash()), tx.toBytes());
-            indexDB.put(Bytes.merge(TYPE_BLOCK_COINBASE_BY_NUMBER, Bytes.of(block.getNumber())), tx.getHash());
-            addTransactionToAccount(tx, block.getCoinbase());
+            indexBatch.put(Bytes.merge(TYPE_TRANSACTION_INDEX_BY_HASH, tx.getHash()), tx.toBytes());
+            indexBatch.put(Bytes.merge(TYPE_BLOCK_COINBASE_BY_NUMBER, Bytes.of(block.getNumber())), tx.getHash());
+            addTransactionToAccount(indexBatch, tx, block.getCoinbase());
 
             //[5] coinbase daily reward transaction , per 17000 generate
             Amount dailyReward = Block.getDailyReward(block, config);
@@ -435,9 +618,9 @@ public class BlockchainImpl implements Blockchain {
                         Bytes.EMPTY_BYTES);
 
                 dailyRewardTx.sign(Constants.COINBASE_KEY);
-                indexDB.put(Bytes.merge(TYPE_TRANSACTION_INDEX_BY_HASH, dailyRewardTx.getHash()), dailyRewardTx.toBytes());
-                indexDB.put(Bytes.merge(TYPE_BLOCK_COINBASE_REWARD_BY_NUMBER, Bytes.of(block.getNumber())), dailyRewardTx.getHash());
-                addTransactionToAccount(dailyRewardTx, Constants.BOHR_GAME_REWARD_GENERATE_ADDRESS);
+                indexBatch.put(Bytes.merge(TYPE_TRANSACTION_INDEX_BY_HASH, dailyRewardTx.getHash()), dailyRewardTx.toBytes());
+                indexBatch.put(Bytes.merge(TYPE_BLOCK_COINBASE_REWARD_BY_NUMBER, Bytes.of(block.getNumber())), dailyRewardTx.getHash());
+                addTransactionToAccount(indexBatch, dailyRewardTx, Constants.BOHR_GAME_REWARD_GENERATE_ADDRESS);
             }
 
             //[5]-2 fee burn
@@ -453,31 +636,51 @@ public class BlockchainImpl implements Blockchain {
                         Bytes.EMPTY_BYTES);
 
                 feeBurnTx.sign(Constants.COINBASE_KEY);
-                indexDB.put(Bytes.merge(TYPE_TRANSACTION_INDEX_BY_HASH, feeBurnTx.getHash()), feeBurnTx.toBytes());
-                indexDB.put(Bytes.merge(TYPE_BLOCK_COINBASE_BURN_BY_NUMBER, Bytes.of(block.getNumber())), feeBurnTx.getHash());
-                addTransactionToAccount(feeBurnTx, Constants.DELEGATE_BURN_ADDRESS);
+                indexBatch.put(Bytes.merge(TYPE_TRANSACTION_INDEX_BY_HASH, feeBurnTx.getHash()), feeBurnTx.toBytes());
+                indexBatch.put(Bytes.merge(TYPE_BLOCK_COINBASE_BURN_BY_NUMBER, Bytes.of(block.getNumber())), feeBurnTx.getHash());
+                addTransactionToAccount(indexBatch, feeBurnTx, Constants.DELEGATE_BURN_ADDRESS);
             }
 
             // [6] update validator statistics
             List<String> validators = getValidators();
             String primary = config.spec().getPrimaryValidator(validators, number, 0,
                     this.isForkActivated(UNIFORM_DISTRIBUTION));
-            adjustValidatorStats(block.getCoinbase(), StatsType.FORGED, 1);
+            adjustValidatorStats(indexBatch, block.getCoinbase(), StatsType.FORGED, 1);
             if (primary.equals(Hex.encode(block.getCoinbase()))) {
-                adjustValidatorStats(Hex.decode0x(primary), StatsType.HIT, 1);
+                adjustValidatorStats(indexBatch, Hex.decode0x(primary), StatsType.HIT, 1);
             } else {
-                adjustValidatorStats(Hex.decode0x(primary), StatsType.MISSED, 1);
+                adjustValidatorStats(indexBatch, Hex.decode0x(primary), StatsType.MISSED, 1);
             }
         }
 
         // [7] update validator set
         if (number % config.spec().getValidatorUpdateInterval() == 0) {
-            updateValidators(block.getNumber());
+            updateValidators(indexBatch, block.getNumber());
         }
 
         // [8] update latest_block
+        indexBatch.put(Bytes.of(TYPE_LATEST_BLOCK_NUMBER), Bytes.of(number));
+
+        int blockOps = blockBatch.size();
+        int indexOps = indexBatch.size();
+        blockBatch.commit();
+        indexBatch.commit();
         latestBlock = block;
-        indexDB.put(Bytes.of(TYPE_LATEST_BLOCK_NUMBER), Bytes.of(number));
+        cacheBlock(block);
+
+        long t2 = System.nanoTime();
+        logger.debug("Block #{} written: block batch = {}, index batch = {}, duration = {} μs", number, blockOps,
+                indexOps, (t2 - t1) / 1000L);
+        if (number % 1000 == 0) {
+            logger.debug("Block cache: header hit rate = {}, block hit rate = {}, hash hit rate = {}",
+                    headerCache.stats().hitRate(), blockCache.stats().hitRate(), hashCache.stats().hitRate());
+            if (accountState instanceof AccountStateImpl) {
+                AccountStateImpl as = (AccountStateImpl) accountState;
+                logger.debug("Account state cache: account hit rate = {}, code hit rate = {}",
+                        as.getAccountCacheStats().hitRate(), as.getCodeCacheStats().hitRate());
+            }
+            logger.debug("Code analysis cache: hit rate = {}", CodeCache.getInstance().hitRate());
+        }
 
         for (BlockchainListener listener : listeners) {
             listener.onBlockAdded(block);
@@ -486,6 +689,61 @@ public class BlockchainImpl implements Blockchain {
         activateForks();
     }
 
+    /**
+     * Adds a block to the header, block and hash caches.
+     *
+     * @param block
+     */
+    protected void cacheBlock(Block block) {
+        headerCache.put(block.getNumber(), block.getHeader());
+        blockCache.put(block.getNumber(), block);
+        hashCache.put(ByteArray.of(block.getHash()), block.getNumber());
+    }
+
+    /**
+     * Returns the statistics of the block header cache.
+     *
+     * @return
+     */
+    public CacheStats getHeaderCacheStats() {
+        return headerCache.stats();
+    }
+
+    /**
+     * Returns the statistics of the block cache.
+     *
+     * @return
+     */
+    public CacheStats getBlockCacheStats() {
+        return blockCache.stats();
+    }
+
+    /**
+     * Returns the statistics of the block hash cache.
+     *
+     * @return
+     */
+    public CacheStats getHashCacheStats() {
+        return hashCache.stats();
+    }
+
+    /**
+     * Estimates the in-memory size of a decoded block, in bytes.
+     *
+     * @param block
+     * @return
+     */
+    private static int estimateSize(Block block) {
+        int size = 512 + block.getVotes().size() * Key.Signature.LENGTH;
+        for (Transaction tx : block.getTransactions()) {
+            size += 256 + tx.getData().length;
+        }
+        for (TransactionResult result : block.getResults()) {
+            size += 128 + result.getReturnData().length;
+        }
+        return size;
+    }
+
     @Override
     public Genesis getGenesis() {
         return genesis;
@@ -546,12 +804,22 @@ public class BlockchainImpl implements Blockchain {
      * @param number
      */
     public void updateValidators(long number) {
+        UpdateBatch batch = new UpdateBatch(indexDB);
+        updateValidators(batch, number);
+        batch.commit();
+    }
+
+    /**
+     * Updates the validator set within the given index batch.
+     *
+     * @param batch
+     * @param number
+     */
+    protected void updateValidators(UpdateBatch batch, long number) {
         List<String> validators = new ArrayList<>();
 
-        List<Delegate> delegates = delegateState.getDelegates();
-        int max = Math.min(delegates.size(), config.spec().getNumberOfValidators(number));
-        for (int i = 0; i < max; i++) {
-            Delegate d = delegates.get(i);
+        List<Delegate> delegates = delegateState.getTopDelegates(config.spec().getNumberOfValidators(number));
+        for (Delegate d : delegates) {
             validators.add(Hex.encode(d.getAddress()));
         }
 
@@ -560,12 +828,14 @@ public class BlockchainImpl implements Blockchain {
         for (String v : validators) {
             enc.writeString(v);
         }
-        indexDB.put(Bytes.of(TYPE_VALIDATORS), enc.toBytes());
+        batch.put(Bytes.of(TYPE_VALIDATORS), enc.toBytes());
     }
 
     /**
      * Adjusts validator statistics.
      *
+     * @param batch
+     *            the index batch
      * @param address
      *            validator address
      * @param type
@@ -573,9 +843,9 @@ public class BlockchainImpl implements Blockchain {
      * @param delta
      *            difference
      */
-    protected void adjustValidatorStats(byte[] address, StatsType type, long delta) {
+    protected void adjustValidatorStats(UpdateBatch batch, byte[] address, StatsType type, long delta) {
         byte[] key = Bytes.merge(TYPE_VALIDATOR_STATS_BY_ADDRESS, address);
-        byte[] value = indexDB.get(key);
+        byte[] value = batch.get(key);
 
         ValidatorStats stats = (value == null) ? new ValidatorStats(0, 0, 0) : ValidatorStats.fromBytes(value);
 
@@ -593,29 +863,32 @@ public class BlockchainImpl implements Blockchain {
             break;
         }
 
-        indexDB.put(key, stats.toBytes());
+        batch.put(key, stats.toBytes());
     }
 
     /**
      * Sets the total number of transaction of an account.
      *
+     * @param batch
      * @param address
      * @param total
      */
-    protected void setTransactionCount(byte[] address, int total) {
-        indexDB.put(Bytes.merge(TYPE_TRANSACTION_COUNT_BY_ADDRESS, address), Bytes.of(total));
+    protected void setTransactionCount(UpdateBatch batch, byte[] address, int total) {
+        batch.put(Bytes.merge(TYPE_TRANSACTION_COUNT_BY_ADDRESS, address), Bytes.of(total));
     }
 
     /**
      * Adds a transaction to an account.
      *
+     * @param batch
      * @param tx
      * @param address
      */
-    protected void addTransactionToAccount(Transaction tx, byte[] address) {
-        int total = getTransactionCount(address);
-        indexDB.put(getNthTransactionIndexKey(address, total), tx.getHash());
-        setTransactionCount(address, total + 1);
+    protected void addTransactionToAccount(UpdateBatch batch, Transaction tx, byte[] address) {
+        byte[] cnt = batch.get(Bytes.merge(TYPE_TRANSACTION_COUNT_BY_ADDRESS, address));
+        int total = (cnt == null) ? 0 : Bytes.toInt(cnt);
+        batch.put(getNthTransactionIndexKey(address, total), tx.getHash());
+        setTransactionCount(batch, address, total + 1);
     }
 
     /**
@@ -651,23 +924,27 @@ public class BlockchainImpl implements Blockchain {
     /**
      * Sets the total number of internal transaction of an account.
      *
+     * @param batch
      * @param address
      * @param total
      */
-    protected void setInternalTransactionCount(byte[] address, int total) {
-        indexDB.put(Bytes.merge(TYPE_INTERNAL_TRANSACTION_COUNT_BY_ADDRESS, address), Bytes.of(total));
+    protected void setInternalTransactionCount(UpdateBatch batch, byte[] address, int total) {
+        batch.put(Bytes.merge(TYPE_INTERNAL_TRANSACTION_COUNT_BY_ADDRESS, address), Bytes.of(total));
     }
 
     /**
      * Adds an internal transaction to an account.
      *
+     * @param batch
      * @param tx
      * @param address
      */
-    protected void addInternalTransactionToAccount(Transaction root, BohrInternalTransaction tx, byte[] address) {
-        int total = getInternalTransactionCount(address);
-        indexDB.put(getNthInternalTransactionIndexKey(address, total), tx.toBytes());
-        setInternalTransactionCount(address, total + 1);
+    protected void addInternalTransactionToAccount(UpdateBatch batch, Transaction root, BohrInternalTransaction tx,
+            byte[] address) {
+        byte[] cnt = batch.get(Bytes.merge(TYPE_INTERNAL_TRANSACTION_COUNT_BY_ADDRESS, address));
+        int total = (cnt == null) ? 0 : Bytes.toInt(cnt);
+        batch.put(getNthInternalTransactionIndexKey(address, total), tx.toBytes());
+        setInternalTransactionCount(batch, address, total + 1);
     }
 
     /**
@@ -765,6 +1042,11 @@ public class BlockchainImpl implements Blockchain {
         return isForkActivated(VOTING_PRECOMPILED_UPGRADE);
     }
 
+    @Override
+    public byte[] getStateRoot() {
+        return stateTree.getRoot();
+    }
+
     @Override
     public byte[] constructBlockHeaderDataField() {
         Set<Fork> set = new HashSet<>();
@@ -781,6 +1063,10 @@ public class BlockchainImpl implements Blockchain {
             addFork(set, VOTING_PRECOMPILED_UPGRADE);
         }
 
+        if (config.forkStateRootEnabled()) {
+            addFork(set, STATE_ROOT);
+        }
+
         return set.isEmpty() ? new BlockHeaderData().toBytes() : new BlockHeaderData(ForkSignalSet.of(set)).toBytes();
     }
 
@@ -805,6 +1091,19 @@ public class BlockchainImpl implements Blockchain {
         return validateBlock(block, asTrack, dsTrack, validateVotes) && applyBlock(block, asTrack, dsTrack);
     }
 
+    @Override
+    public synchronized boolean importBlock(Block block, AccountState asTrack, DelegateState dsTrack) {
+        // the tracked states are only valid on top of the block they were forked from
+        if (block.getNumber() != getLatestBlockNumber() + 1
+                || !Arrays.equals(block.getParentHash(), getLatestBlockHash())) {
+            logger.debug("Discarding pre-executed state of block #{}, parent is no longer the latest block",
+                    block.getNumber());
+            return false;
+        }
+
+        return applyBlock(block, asTrack, dsTrack);
+    }
+
     /**
      * Validate the block. Votes are validated only if validateVotes is true.
      *
@@ -837,8 +1136,18 @@ public class BlockchainImpl implements Blockchain {
                 return false;
             }
 
+            // - state root, which commits to the state after the parent block, and is
+            // reserved (EMPTY_HASH) until STATE_ROOT is activated
+            byte[] stateRoot = isForkActivated(STATE_ROOT, header.getNumber()) ? getStateRoot() : Bytes.EMPTY_HASH;
+            if (!Arrays.equals(header.getStateRoot(), stateRoot)) {
+                logger.error("Invalid state root, expected {}, getting {}", Hex.encode0x(stateRoot),
+                        Hex.encode0x(header.getStateRoot()));
+                return false;
+            }
+
             // [2] check transactions
-            if (!block.validateTransactions(header, transactions, config.network())) {
+            if (!block.isTransactionsValidated()
+                    && !block.validateTransactions(header, transactions, config.network())) {
                 logger.error("Invalid transactions");
                 return false;
             }
@@ -848,7 +1157,7 @@ public class BlockchainImpl implements Blockchain {
             }
 
             // [3] evaluate transactions
-            TransactionExecutor transactionExecutor = new TransactionExecutor(config, blockStore,isVMEnabled(),isVotingPrecompiledUpgraded());
+            TransactionExecutor transactionExecutor = new ParallelTransactionExecutor(config, blockStore,isVMEnabled(),isVotingPrecompiledUpgraded());
             List<TransactionResult> results = transactionExecutor.execute(transactions, asTrack, dsTrack,
                     new BohrBlock(block.getHeader(), config.spec().maxBlockGasLimit()),0);
 
@@ -893,16 +1202,19 @@ public class BlockchainImpl implements Blockchain {
             return false;
         }
 
-        if (!Key.isVerifyBatchSupported()) {
-            if (!block.getVotes().stream()
-                    .allMatch(sig -> Key.verify(encoded, sig))) {
-                logger.warn("Block votes are invalid");
-                return false;
-            }
-        } else {
-            if (!Key.verifyBatch(Collections.nCopies(block.getVotes().size(), encoded), block.getVotes())) {
-                logger.warn("Block votes are invalid");
-                return false;
+        // skip the signatures verified by Block#preValidate
+        if (!block.isVotesVerified()) {
+            if (!Key.isVerifyBatchSupported()) {
+                if (!block.getVotes().stream()
+                        .allMatch(sig -> Key.verify(encoded, sig))) {
+                    logger.warn("Block votes are invalid");
+                    return false;
+                }
+            } else {
+                if (!Key.verifyBatch(Collections.nCopies(block.getVotes().size(), encoded), block.getVotes())) {
+                    logger.warn("Block votes are invalid");
+                    return false;
+                }
             }
         }
 
@@ -944,12 +1256,28 @@ public class BlockchainImpl implements Blockchain {
         ReentrantReadWriteLock.WriteLock writeLock = this.stateLock.writeLock();
         writeLock.lock();
         try {
-            // [8] flush state to disk
+            long t1 = System.nanoTime();
+
+            // [8] export a snapshot at checkpoints, of the state the block header
+            // commits to
+            if (config.syncSnapshotExport() && config.checkpoints().containsKey(block.getNumber())
+                    && isForkActivated(STATE_ROOT, block.getNumber())
+                    && block.getNumber() - 1 > genesis.getNumber()) {
+                exportSnapshot(block);
+            }
+
+            // [9] flush state to disk, one batch per database
             this.getAccountState().commit();
             this.getDelegateState().commit();
 
-            // [9] add block to chain
+            // [10] add block to chain
             this.addBlock(block);
+
+            // [11] update the state root
+            stateTree.commit(block.getNumber());
+
+            long t2 = System.nanoTime();
+            logger.debug("Block #{} committed: duration = {} μs", block.getNumber(), (t2 - t1) / 1000L);
         } finally {
             writeLock.unlock();
         }
@@ -957,6 +1285,424 @@ public class BlockchainImpl implements Blockchain {
         return true;
     }
 
+    @Override
+    public Snapshot getSnapshot(long number) {
+        Snapshot snapshot = snapshots.get(number);
+        if (snapshot == null) {
+            snapshot = Snapshot.load(getSnapshotDir(number));
+            if (snapshot == null || !snapshot.isComplete()) {
+                return null;
+            }
+            snapshots.put(number, snapshot);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public File getSnapshotDir(long number) {
+        return new File(config.dataDir(), Constants.SNAPSHOT_DIR + File.separator
+                + config.network().name().toLowerCase(Locale.ROOT) + File.separator + number);
+    }
+
+    /**
+     * Exports the state before the given checkpoint block, which the state root of
+     * the block commits to, with the parent block and the headers before it. The
+     * caller should hold the state write lock, and the state of the block should
+     * not be flushed yet.
+     * <p>
+     * The database iterators are opened here and consumed in the background.
+     * LevelDB and RocksDB iterators read a point-in-time view of the database, so
+     * the blocks imported meanwhile are not part of the snapshot; the iterators of
+     * the in-memory database are only weakly consistent.
+     *
+     * @param block
+     */
+    protected void exportSnapshot(Block block) {
+        List<ExportSource> sources = new ArrayList<>();
+        for (DatabaseName name : StateMerkleTree.STATE_DATABASES) {
+            sources.add(new ExportSource(name, null));
+        }
+        sources.add(new ExportSource(DatabaseName.INDEX, Bytes.of(TYPE_VALIDATORS)));
+        sources.add(new ExportSource(DatabaseName.INDEX, Bytes.of(TYPE_VALIDATOR_STATS_BY_ADDRESS)));
+        sources.add(new ExportSource(DatabaseName.INDEX, Bytes.of(TYPE_ACTIVATED_FORKS)));
+
+        try {
+            snapshotExporter.execute(() -> exportSnapshot(block.getHeader(), sources));
+        } catch (RejectedExecutionException e) {
+            sources.forEach(ExportSource::close);
+        }
+    }
+
+    private void exportSnapshot(BlockHeader checkpoint, List<ExportSource> sources) {
+        long number = checkpoint.getNumber();
+        long parent = number - 1;
+        long t1 = System.currentTimeMillis();
+
+        try {
+            Snapshot.Writer writer = new Snapshot.Writer(getSnapshotDir(number), checkpoint);
+
+            // [1] account, delegate and vote state, validators, validator statistics
+            // and forks
+            for (ExportSource source : sources) {
+                while (source.hasNext()) {
+                    if (isExportStopped) {
+                        logger.info("Snapshot export at block #{} stopped", number);
+                        return;
+                    }
+                    Entry<byte[], byte[]> e = source.next();
+                    writer.put(source.name, e.getKey(), e.getValue());
+                }
+                source.close();
+            }
+
+            // [2] the parent block and the headers before it, which don't change
+            for (BlockPart part : BlockPart.values()) {
+                byte[] key = Bytes.merge(getBlockPartType(part), Bytes.of(parent));
+                byte[] value = blockDB.get(key);
+                if (value != null) {
+                    writer.put(DatabaseName.BLOCK, key, value);
+                }
+            }
+            for (long n = Math.max(genesis.getNumber() + 1, parent - SNAPSHOT_HEADERS); n < parent; n++) {
+                BlockHeader header = getBlockHeader(n);
+                if (header == null) {
+                    continue; // this node was synced from an older snapshot
+                }
+                writer.put(DatabaseName.BLOCK, Bytes.merge(TYPE_BLOCK_HEADER_BY_NUMBER, Bytes.of(n)),
+                        header.toBytes());
+            }
+
+            Snapshot snapshot = writer.finish();
+            logger.info("Exported {}, took {} ms", snapshot, System.currentTimeMillis() - t1);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to export the snapshot at block #{}", number, e);
+        } finally {
+            sources.forEach(ExportSource::close);
+        }
+    }
+
+    /**
+     * An iterator over the entries of a database with the given prefix.
+     */
+    private class ExportSource {
+        private final DatabaseName name;
+        private final byte[] prefix;
+        private final ClosableIterator<Entry<byte[], byte[]>> itr;
+        private Entry<byte[], byte[]> next;
+        private boolean closed;
+
+        ExportSource(DatabaseName name, byte[] prefix) {
+            this.name = name;
+            this.prefix = prefix;
+            this.itr = dbFactory.getDB(name).iterator(prefix);
+        }
+
+        boolean hasNext() {
+            if (next == null && !closed && itr.hasNext()) {
+                Entry<byte[], byte[]> e = itr.next();
+                if (prefix == null || Arrays.equals(prefix, Arrays.copyOf(e.getKey(), prefix.length))) {
+                    next = e;
+                } else {
+                    close();
+                }
+            }
+            return next != null;
+        }
+
+        Entry<byte[], byte[]> next() {
+            Entry<byte[], byte[]> e = next;
+            next = null;
+            return e;
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                itr.close();
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        isExportStopped = true;
+        snapshotExporter.shutdown();
+        try {
+            if (!snapshotExporter.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn("The snapshot export didn't stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized void importSnapshot(Snapshot snapshot) {
+        BlockHeader checkpoint = snapshot.getHeader();
+        long number = checkpoint.getNumber();
+        long parent = number - 1;
+        if (getLatestBlockNumber() != genesis.getNumber()) {
+            throw new BlockchainException("Snapshots can only be imported into an empty chain");
+        }
+
+        // [1] the checkpoint block should commit to the state of the snapshot
+        if (!checkpoint.validate() || !Arrays.equals(checkpoint.getHash(), config.checkpoints().get(number))) {
+            throw new BlockchainException("The snapshot is not at a checkpoint");
+        }
+        if (Arrays.equals(checkpoint.getStateRoot(), Bytes.EMPTY_HASH)) {
+            throw new BlockchainException("The checkpoint block doesn't commit to a state root");
+        }
+        if (parent <= genesis.getNumber()) {
+            throw new BlockchainException("The snapshot doesn't start after the genesis block");
+        }
+
+        ReentrantReadWriteLock.WriteLock writeLock = this.stateLock.writeLock();
+        writeLock.lock();
+        try {
+            long t1 = System.currentTimeMillis();
+
+            // [2] check the entries, the headers and the state before touching the
+            // database
+            Map<Long, BlockHeader> headers = checkSnapshotEntries(snapshot, parent);
+            checkSnapshotBlocks(snapshot, checkpoint, headers);
+            checkSnapshotState(snapshot, checkpoint);
+
+            // [3] replace the genesis state; an interrupted import is resumed when the
+            // database is opened again
+            indexDB.put(Bytes.of(TYPE_SNAPSHOT_IMPORT), Bytes.of(number));
+            for (DatabaseName name : StateMerkleTree.STATE_DATABASES) {
+                clearDatabase(dbFactory.getDB(name));
+            }
+            writeSnapshot(snapshot, dbFactory, null);
+            List<Pair<byte[], byte[]>> hashes = new ArrayList<>();
+            for (BlockHeader header : headers.values()) {
+                hashes.add(Pair.of(Bytes.merge(TYPE_BLOCK_NUMBER_BY_HASH, header.getHash()),
+                        Bytes.of(header.getNumber())));
+            }
+            indexDB.updateBatch(hashes);
+            stateTree.rebuild(dbFactory, parent);
+
+            // [4] the latest block number goes last
+            indexDB.updateBatch(Arrays.asList(
+                    Pair.of(Bytes.of(TYPE_LATEST_BLOCK_NUMBER), Bytes.of(parent)),
+                    Pair.of(Bytes.of(TYPE_SNAPSHOT_IMPORT), null)));
+
+            // [5] reload the chain
+            headerCache.invalidateAll();
+            blockCache.invalidateAll();
+            hashCache.invalidateAll();
+            latestBlock = getBlock(parent);
+            forks = new ActivatedForks(this, config, getActivatedForks());
+            openState();
+
+            logger.info("Imported {}, took {} ms", snapshot, System.currentTimeMillis() - t1);
+        } catch (IOException e) {
+            throw new BlockchainException("Failed to read the snapshot", e);
+        } finally {
+            writeLock.unlock();
+        }
+
+        for (BlockchainListener listener : listeners) {
+            listener.onBlockAdded(latestBlock);
+        }
+    }
+
+    /**
+     * Resumes the import of a snapshot which was interrupted.
+     *
+     * @param number
+     *            the checkpoint block number
+     */
+    private void resumeSnapshotImport(long number) {
+        logger.info("Resuming the import of the snapshot at block #{}", number);
+
+        Snapshot snapshot = Snapshot.load(getSnapshotDir(number));
+        if (snapshot == null || !snapshot.isComplete()) {
+            logger.error("The snapshot at block #{} is missing, the database is incomplete", number);
+            SystemUtil.exit(SystemUtil.Code.FAILED_TO_OPEN_DB);
+            return;
+        }
+
+        try {
+            importSnapshot(snapshot);
+        } catch (BlockchainException e) {
+            logger.error("Failed to resume the import of the snapshot at block #{}", number, e);
+            SystemUtil.exit(SystemUtil.Code.FAILED_TO_OPEN_DB);
+        }
+    }
+
+    /**
+     * Checks that the snapshot only contains the entries a snapshot at the given
+     * parent block is made of, and returns the block headers.
+     */
+    private Map<Long, BlockHeader> checkSnapshotEntries(Snapshot snapshot, long parent) throws IOException {
+        Map<Long, BlockHeader> headers = new HashMap<>();
+        snapshot.forEach((name, key, value) -> {
+            if (!isSnapshotEntry(name, key, parent)) {
+                throw new BlockchainException("The snapshot contains an unexpected " + name + " entry: "
+                        + Hex.encode0x(key));
+            }
+
+            if (name == DatabaseName.BLOCK && key[0] == TYPE_BLOCK_HEADER_BY_NUMBER) {
+                BlockHeader header;
+                try {
+                    header = BlockHeader.fromBytes(value);
+                } catch (RuntimeException e) {
+                    throw new BlockchainException("The snapshot contains a malformed block header", e);
+                }
+                if (!header.validate() || header.getNumber() != Bytes.toLong(Arrays.copyOfRange(key, 1, key.length))) {
+                    throw new BlockchainException("The snapshot contains an invalid block header");
+                }
+                headers.put(header.getNumber(), header);
+            }
+        });
+        return headers;
+    }
+
+    /**
+     * Returns whether an entry can be part of the snapshot at the given parent
+     * block: the state, which is checked against the state root, the validators,
+     * the validator statistics and the forks, the headers and the parent block.
+     */
+    private static boolean isSnapshotEntry(DatabaseName name, byte[] key, long parent) {
+        switch (name) {
+        case ACCOUNT:
+        case DELEGATE:
+        case VOTE:
+            return true;
+        case INDEX:
+            return (key.length == 1 && (key[0] == TYPE_VALIDATORS || key[0] == TYPE_ACTIVATED_FORKS))
+                    || (key.length == 1 + Key.ADDRESS_LEN && key[0] == TYPE_VALIDATOR_STATS_BY_ADDRESS);
+        case BLOCK:
+            if (key.length != 1 + Long.BYTES) {
+                return false;
+            }
+            switch (key[0]) {
+            case TYPE_BLOCK_HEADER_BY_NUMBER:
+                return true;
+            case TYPE_BLOCK_TRANSACTIONS_BY_NUMBER:
+            case TYPE_BLOCK_RESULTS_BY_NUMBER:
+            case TYPE_BLOCK_VOTES_BY_NUMBER:
+                return Bytes.toLong(Arrays.copyOfRange(key, 1, key.length)) == parent;
+            default:
+                return false;
+            }
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Checks that the headers are the contiguous ancestors of the checkpoint
+     * block, and that the parent block matches its header.
+     */
+    private void checkSnapshotBlocks(Snapshot snapshot, BlockHeader checkpoint, Map<Long, BlockHeader> headers)
+            throws IOException {
+        long parent = checkpoint.getNumber() - 1;
+
+        if (!headers.containsKey(parent)) {
+            throw new BlockchainException("The snapshot doesn't contain the parent of the checkpoint block");
+        }
+        byte[] hash = checkpoint.getParentHash();
+        long n = parent;
+        for (; headers.containsKey(n); n--) {
+            BlockHeader header = headers.get(n);
+            if (!Arrays.equals(header.getHash(), hash)) {
+                throw new BlockchainException("The snapshot headers don't lead to the checkpoint block");
+            }
+            hash = header.getParentHash();
+        }
+        if (headers.size() != parent - n) {
+            throw new BlockchainException("The snapshot headers are not contiguous");
+        }
+
+        byte[][] parts = new byte[BlockPart.values().length][];
+        snapshot.forEach((name, key, value) -> {
+            if (name == DatabaseName.BLOCK && key[0] != TYPE_BLOCK_HEADER_BY_NUMBER) {
+                parts[key[0]] = value;
+            }
+        });
+        BlockHeader header = headers.get(parent);
+        Block block;
+        try {
+            block = Block.fromComponents(header.toBytes(), parts[TYPE_BLOCK_TRANSACTIONS_BY_NUMBER],
+                    parts[TYPE_BLOCK_RESULTS_BY_NUMBER], parts[TYPE_BLOCK_VOTES_BY_NUMBER]);
+        } catch (RuntimeException e) {
+            throw new BlockchainException("The snapshot contains a malformed parent block", e);
+        }
+        if (!Arrays.equals(MerkleUtil.computeTransactionsRoot(block.getTransactions()), header.getTransactionsRoot())
+                || !Arrays.equals(MerkleUtil.computeResultsRoot(block.getResults()), header.getResultsRoot())) {
+            throw new BlockchainException("The snapshot parent block doesn't match its header");
+        }
+    }
+
+    /**
+     * Checks the state of the snapshot against the state root of the checkpoint
+     * block, in a temporary database.
+     */
+    private void checkSnapshotState(Snapshot snapshot, BlockHeader checkpoint) throws IOException {
+        File dir = new File(getSnapshotDir(checkpoint.getNumber()), "verify");
+        if (dir.exists()) {
+            delete(dir.toPath());
+        }
+
+        DatabaseFactory tempDbFactory = config.databaseBackend().createFactory(dir);
+        try {
+            writeSnapshot(snapshot, tempDbFactory, StateMerkleTree.STATE_DATABASES);
+            StateMerkleTree tree = new StateMerkleTree(tempDbFactory.getDB(DatabaseName.STATE));
+            tree.rebuild(tempDbFactory, checkpoint.getNumber() - 1);
+            if (!Arrays.equals(tree.getRoot(), checkpoint.getStateRoot())) {
+                throw new BlockchainException("The snapshot state doesn't match the checkpoint state root, expected "
+                        + Hex.encode0x(checkpoint.getStateRoot()) + ", getting " + Hex.encode0x(tree.getRoot()));
+            }
+        } finally {
+            tempDbFactory.close();
+            delete(dir.toPath());
+        }
+    }
+
+    /**
+     * Writes the entries of the snapshot into the given databases, or all of them
+     * if null, in batches.
+     */
+    private static void writeSnapshot(Snapshot snapshot, DatabaseFactory factory, DatabaseName[] names)
+            throws IOException {
+        Set<DatabaseName> include = names == null ? EnumSet.allOf(DatabaseName.class)
+                : EnumSet.copyOf(Arrays.asList(names));
+        Map<DatabaseName, List<Pair<byte[], byte[]>>> batches = new EnumMap<>(DatabaseName.class);
+        snapshot.forEach((name, key, value) -> {
+            if (!include.contains(name)) {
+                return;
+            }
+            List<Pair<byte[], byte[]>> batch = batches.computeIfAbsent(name, k -> new ArrayList<>());
+            batch.add(Pair.of(key, value));
+            if (batch.size() >= 10_000) {
+                factory.getDB(name).updateBatch(batch);
+                batch.clear();
+            }
+        });
+        for (Entry<DatabaseName, List<Pair<byte[], byte[]>>> e : batches.entrySet()) {
+            factory.getDB(e.getKey()).updateBatch(e.getValue());
+        }
+    }
+
+    private static void clearDatabase(Database db) {
+        List<Pair<byte[], byte[]>> deletes = new ArrayList<>();
+        ClosableIterator<Entry<byte[], byte[]>> itr = db.iterator();
+        try {
+            while (itr.hasNext()) {
+                deletes.add(Pair.of(itr.next().getKey(), null));
+                if (deletes.size() >= 10_000) {
+                    db.updateBatch(deletes);
+                    deletes.clear();
+                }
+            }
+        } finally {
+            itr.close();
+        }
+        db.updateBatch(deletes);
+    }
+
     /**
      * Attempt to activate pending forks at current height.
      */
@@ -973,6 +1719,10 @@ public class BlockchainImpl implements Blockchain {
                 && forks.activateFork(VOTING_PRECOMPILED_UPGRADE)) {
             setActivatedForks(forks.getActivatedForks());
         }
+        if (config.forkStateRootEnabled()
+                && forks.activateFork(STATE_ROOT)) {
+            setActivatedForks(forks.getActivatedForks());
+        }
     }
 
     /**
@@ -1015,6 +1765,20 @@ public class BlockchainImpl implements Blockchain {
         }
     }
 
+    /**
+     * Re-imports all the blocks into a new database, and replaces the current one
+     * with it.
+     * <p>
+     * The blocks are read, decoded and pre-validated in parallel ahead of the
+     * import. The writes of the new database are buffered and flushed every
+     * {@link #UPGRADE_FLUSH_INTERVAL} blocks, so an interrupted upgrade resumes
+     * from the last flush.
+     *
+     * @param config
+     * @param dbFactory
+     * @param to
+     *            the last block to import
+     */
     public static void upgrade(Config config, DatabaseFactory dbFactory,long to) {
         try {
             logger.info("Upgrading the database... DO NOT CLOSE THE WALLET!");
@@ -1023,33 +1787,88 @@ public class BlockchainImpl implements Blockchain {
             Path dataDir = dbFactory.getDataDir();
             String dataDirName = dataDir.getFileName().toString();
 
-            // setup temp chain
-            Path tempPath = dataDir.resolveSibling(dataDirName + "-temp");
-            delete(tempPath);
-            LeveldbDatabase.LeveldbFactory tempDbFactory = new LeveldbDatabase.LeveldbFactory(tempPath.toFile());
-            BlockchainImpl tempChain = new BlockchainImpl(config, tempDbFactory);
-
-            // import all blocks
-            long imported = 0;
             Database indexDB = dbFactory.getDB(DatabaseName.INDEX);
             Database blockDB = dbFactory.getDB(DatabaseName.BLOCK);
             byte[] bytes = getLatestBlockNumber(indexDB);
             long latestBlockNumber = (bytes == null) ? 0 : Bytes.toLong(bytes);
             long target = Math.min(latestBlockNumber, to);
-            for (long i = 1; i <= target; i++) {
-                boolean result = tempChain.importBlock(getBlock(blockDB, i, true), false);
-                if (!result) {
-                    break;
-                }
 
-                if (i % 1000 == 0) {
-                    PubSubFactory.getDefault().publish(new BlockchainDatabaseUpgradingEvent(i, latestBlockNumber));
-                    logger.info("Loaded {} / {} blocks", i, target);
+            // setup temp chain, resuming the previous upgrade if possible
+            Path tempPath = dataDir.resolveSibling(dataDirName + "-temp");
+            UpgradeDatabaseFactory tempDbFactory = openUpgradeDatabase(config, tempPath, blockDB);
+            BlockchainImpl tempChain = new BlockchainImpl(config, tempDbFactory);
+            long resumed = tempChain.getLatestBlockNumber();
+            if (resumed > 0) {
+                logger.info("Resuming the database upgrade from block #{}", resumed);
+            }
+
+            // import all blocks
+            long imported = 0;
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            ExecutorService readers = Executors.newFixedThreadPool(threads, upgradeThreadFactory);
+            Deque<Future<Block>> prefetched = new ArrayDeque<>();
+            long next = resumed + 1;
+            long lastReport = System.nanoTime();
+            try {
+                for (long i = resumed + 1; i <= target; i++) {
+                    // keep the readers ahead of the import
+                    while (next <= target && prefetched.size() < threads * UPGRADE_PREFETCH_PER_THREAD) {
+                        long number = next++;
+                        prefetched.add(readers.submit(() -> {
+                            Block block = getBlock(blockDB, number, true);
+                            if (block != null && !block.preValidate(config.network())) {
+                                logger.error("Invalid signatures in block #{}", number);
+                                return null;
+                            }
+                            return block;
+                        }));
+                    }
+
+                    Block block = prefetched.poll().get();
+                    if (block == null || !tempChain.importBlock(block, false)) {
+                        logger.error("Failed to import block #{}", i);
+                        break;
+                    }
+                    imported++;
+
+                    if (i % UPGRADE_FLUSH_INTERVAL == 0) {
+                        tempDbFactory.flush();
+                    }
+
+                    if (i % 1000 == 0) {
+                        long now = System.nanoTime();
+                        double rate = 1000 * 1_000_000_000.0 / Math.max(1, now - lastReport);
+                        lastReport = now;
+                        PubSubFactory.getDefault()
+                                .publish(new BlockchainDatabaseUpgradingEvent(i, latestBlockNumber, rate));
+                        logger.info("Loaded {} / {} blocks, {} blocks/s", i, target, String.format("%.1f", rate));
+                    }
                 }
-                imported++;
+            } catch (ExecutionException e) {
+                logger.error("Failed to read a block", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                tempChain.stop();
+                tempDbFactory.flush();
+                tempDbFactory.close();
+                logger.info("Database upgrade interrupted, it will resume on the next start");
+                return;
+            } finally {
+                readers.shutdownNow();
+            }
+            tempDbFactory.flush();
+
+            // never replace the database with an incomplete one
+            if (resumed + imported != target) {
+                tempChain.stop();
+                tempDbFactory.close();
+                logger.error("Database upgrade stopped at block #{} of {}, the current database is kept",
+                        resumed + imported, target);
+                return;
             }
 
             // close both database factory
+            tempChain.stop();
             dbFactory.close();
             tempDbFactory.close();
 
@@ -1060,13 +1879,91 @@ public class BlockchainImpl implements Blockchain {
             delete(backupPath); // delete old database to save space.
 
             Instant end = Instant.now();
-            logger.info("Database upgraded: found blocks = {}, imported = {}, took = {}", latestBlockNumber, imported,
-                    TimeUtil.formatDuration(Duration.between(begin, end)));
+            logger.info("Database upgraded: found blocks = {}, imported = {}, took = {}", latestBlockNumber,
+                    resumed + imported, TimeUtil.formatDuration(Duration.between(begin, end)));
         } catch (IOException e) {
             logger.error("Failed to upgrade database", e);
         }
     }
 
+    /**
+     * Opens the database of an upgrade. The database of a previous upgrade is
+     * kept if its last flush completed and its blocks match the current ones.
+     *
+     * @param config
+     * @param tempPath
+     * @param blockDB
+     *            the block database being upgraded
+     * @return
+     * @throws IOException
+     */
+    private static UpgradeDatabaseFactory openUpgradeDatabase(Config config, Path tempPath, Database blockDB)
+            throws IOException {
+        if (tempPath.toFile().exists()) {
+            DatabaseFactory factory = config.databaseBackend().createFactory(tempPath.toFile());
+            byte[] number = getLatestBlockNumber(factory.getDB(DatabaseName.INDEX));
+            boolean resumable = factory.getDB(DatabaseName.INDEX).get(Bytes.of(TYPE_UPGRADE_FLUSHING)) == null
+                    && number != null
+                    && Arrays.equals(
+                            factory.getDB(DatabaseName.BLOCK).get(Bytes.merge(TYPE_BLOCK_HEADER_BY_NUMBER, number)),
+                            blockDB.get(Bytes.merge(TYPE_BLOCK_HEADER_BY_NUMBER, number)));
+            if (resumable) {
+                return new UpgradeDatabaseFactory(factory);
+            }
+
+            logger.info("The previous database upgrade can't be resumed, starting over");
+            factory.close();
+            delete(tempPath);
+        }
+
+        return new UpgradeDatabaseFactory(config.databaseBackend().createFactory(tempPath.toFile()));
+    }
+
+    /**
+     * The database factory of an upgrade, which buffers the writes of all the
+     * databases until they are flushed together.
+     */
+    private static class UpgradeDatabaseFactory implements DatabaseFactory {
+
+        private final DatabaseFactory factory;
+
+        private final EnumMap<DatabaseName, BufferedDatabase> databases = new EnumMap<>(DatabaseName.class);
+
+        UpgradeDatabaseFactory(DatabaseFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public synchronized Database getDB(DatabaseName name) {
+            return databases.computeIfAbsent(name, k -> new BufferedDatabase(factory.getDB(k)));
+        }
+
+        /**
+         * Writes the buffered updates of all the databases. A marker is kept in the
+         * index database during the flush, so a partially flushed database is not
+         * resumed.
+         */
+        public synchronized void flush() {
+            Database indexDB = factory.getDB(DatabaseName.INDEX);
+            indexDB.put(Bytes.of(TYPE_UPGRADE_FLUSHING), Bytes.of((byte) 1));
+            for (BufferedDatabase db : databases.values()) {
+                db.flush();
+            }
+            indexDB.delete(Bytes.of(TYPE_UPGRADE_FLUSHING));
+        }
+
+        @Override
+        public synchronized void close() {
+            factory.close();
+            databases.clear();
+        }
+
+        @Override
+        public Path getDataDir() {
+            return factory.getDataDir();
+        }
+    }
+
     // THE FOLLOWING TYPE ID SHOULD NEVER CHANGE
 
     private static Block getBlock(Database blockDB, long number, boolean skipResults) {
@@ -1075,7 +1972,9 @@ public class BlockchainImpl implements Blockchain {
         byte[] results = skipResults ? null : blockDB.get(Bytes.merge(TYPE_BLOCK_RESULTS_BY_NUMBER, Bytes.of(number)));
         byte[] votes = blockDB.get(Bytes.merge(TYPE_BLOCK_VOTES_BY_NUMBER, Bytes.of(number)));
 
-        return (header == null) ? null : Block.fromComponents(header, transactions, results, votes);
+        // blocks before an imported snapshot only have their header
+        return (header == null || transactions == null) ? null
+                : Block.fromComponents(header, transactions, results, votes);
     }
 
     private static byte[] getLatestBlockNumber(Database indexDB) {
@@ -0,0 +1,340 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.core;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bohr.config.Config;
+import org.bohr.core.exception.BlockchainException;
+import org.bohr.core.state.AccountState;
+import org.bohr.core.state.AccountStateImpl;
+import org.bohr.core.state.Delegate;
+import org.bohr.core.state.DelegateState;
+import org.bohr.core.state.DelegateStateImpl;
+import org.bohr.util.ByteArray;
+import org.bohr.vm.client.BohrBlock;
+import org.ethereum.vm.client.BlockStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A transaction executor which executes the transactions of a block
+ * optimistically in parallel, with the same results as
+ * {@link TransactionExecutor}.
+ * <p>
+ * The non-VM transactions are first executed speculatively on a worker pool,
+ * each one on its own overlay of the state at the start of the list, which
+ * records the keys it reads. The transactions are then committed in block
+ * order: a speculative execution is kept if none of the keys it read has been
+ * written by a previous transaction of the list, as it then read the same
+ * state as the serial execution; otherwise the transaction is executed again
+ * on the current state. The VM transactions are always executed on the
+ * committing thread, in order.
+ * <p>
+ * While the workers run, the committing thread waits for them and nothing
+ * writes to the shared states, so the workers only read concurrently:
+ * <ul>
+ * <li>the updates of the block track, and of its nested states, are read from
+ * a {@link java.util.concurrent.ConcurrentHashMap} or through the
+ * synchronized methods of {@link org.bohr.core.state.JournaledMap};</li>
+ * <li>the account and code caches of the root state are Caffeine caches,
+ * which may be loaded concurrently;</li>
+ * <li>the delegate index is backed by concurrent collections, and only
+ * updated when the root delegate state commits;</li>
+ * <li>the database reads are thread-safe for all the backends.</li>
+ * </ul>
+ * The writes of a transaction go to its own overlay, and are applied to the
+ * block track by the committing thread after {@link Future#get()}, which also
+ * publishes them to the workers of the next list.
+ */
+public class ParallelTransactionExecutor extends TransactionExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelTransactionExecutor.class);
+
+    /**
+     * The minimum number of transactions to execute in parallel.
+     */
+    private static final int MIN_PARALLEL_SIZE = 16;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService workers = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        private AtomicInteger cnt = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "tx-executor-" + cnt.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final long nonVMTransactionGasCost;
+
+    /**
+     * Creates a new parallel transaction executor.
+     *
+     * @param config
+     */
+    public ParallelTransactionExecutor(Config config, BlockStore blockStore, boolean isVMEnabled,
+            boolean isVotingPrecompiledUpgraded) {
+        super(config, blockStore, isVMEnabled, isVotingPrecompiledUpgraded);
+        this.nonVMTransactionGasCost = config.spec().nonVMTransactionGasCost();
+    }
+
+    @Override
+    public List<TransactionResult> execute(List<Transaction> txs, AccountState as, DelegateState ds,
+            BohrBlock block, long gasUsedInBlock) {
+        if (txs.size() < MIN_PARALLEL_SIZE || isTracing()
+                || !(as instanceof AccountStateImpl) || !(ds instanceof DelegateStateImpl)) {
+            return super.execute(txs, as, ds, block, gasUsedInBlock);
+        }
+        AccountStateImpl asImpl = (AccountStateImpl) as;
+        DelegateStateImpl dsImpl = (DelegateStateImpl) ds;
+
+        long t1 = System.nanoTime();
+        Speculation[] speculations = speculate(txs, asImpl, dsImpl, block);
+
+        // the keys written by the transactions committed so far
+        Set<ByteArray> accountWrites = new HashSet<>();
+        Set<ByteArray> delegateWrites = new HashSet<>();
+        Set<ByteArray> voteWrites = new HashSet<>();
+
+        List<TransactionResult> results = new ArrayList<>();
+        int reexecuted = 0;
+        for (int i = 0; i < txs.size(); i++) {
+            Speculation s = speculations[i];
+
+            if (s != null && s.isValid(gasUsedInBlock, block.getGasLimit(), accountWrites, delegateWrites,
+                    voteWrites)) {
+                s.as.collectWrites(accountWrites);
+                s.ds.collectWrites(delegateWrites, voteWrites);
+                s.as.commit();
+                s.ds.commit();
+
+                results.add(s.result);
+                gasUsedInBlock += s.gasUsed;
+            } else {
+                RecordingAccountState txAs = new RecordingAccountState(asImpl);
+                RecordingDelegateState txDs = new RecordingDelegateState(dsImpl);
+                TransactionResult result = new TransactionResult();
+                gasUsedInBlock = execute(txs.get(i), txAs, txDs, block, gasUsedInBlock, result);
+
+                txAs.collectWrites(accountWrites);
+                txDs.collectWrites(delegateWrites, voteWrites);
+                txAs.commit();
+                txDs.commit();
+
+                results.add(result);
+                if (s != null) {
+                    reexecuted++;
+                }
+            }
+        }
+
+        long t2 = System.nanoTime();
+        logger.debug("Parallel execution: # txs = {}, re-executed = {}, time = {} μs", txs.size(), reexecuted,
+                (t2 - t1) / 1000L);
+
+        return results;
+    }
+
+    /**
+     * Executes the non-VM transactions speculatively, in parallel.
+     *
+     * @return the speculative executions, null for the VM transactions
+     */
+    private Speculation[] speculate(List<Transaction> txs, AccountStateImpl as, DelegateStateImpl ds,
+            BohrBlock block) {
+        Speculation[] speculations = new Speculation[txs.size()];
+
+        int chunk = (txs.size() + THREADS - 1) / THREADS;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int start = 0; start < txs.size(); start += chunk) {
+            int from = start;
+            int to = Math.min(start + chunk, txs.size());
+            futures.add(workers.submit((Callable<Void>) () -> {
+                for (int i = from; i < to; i++) {
+                    Transaction tx = txs.get(i);
+                    if (!tx.isVMTransaction()) {
+                        speculations[i] = speculate(tx, as, ds, block);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BlockchainException(e);
+        } catch (ExecutionException e) {
+            throw new BlockchainException(e.getCause());
+        }
+
+        return speculations;
+    }
+
+    private Speculation speculate(Transaction tx, AccountStateImpl as, DelegateStateImpl ds, BohrBlock block) {
+        Speculation s = new Speculation(new RecordingAccountState(as), new RecordingDelegateState(ds));
+        try {
+            // as if it was the first transaction of the block; see Speculation#isValid
+            s.gasUsed = execute(tx, s.as, s.ds, block, 0, s.result);
+        } catch (RuntimeException e) {
+            // left to the serial execution, which will fail the same way
+            s.failed = true;
+        }
+        return s;
+    }
+
+    /**
+     * The speculative execution of a transaction.
+     */
+    private class Speculation {
+        final RecordingAccountState as;
+        final RecordingDelegateState ds;
+        final TransactionResult result = new TransactionResult();
+        long gasUsed;
+        boolean failed;
+
+        Speculation(RecordingAccountState as, RecordingDelegateState ds) {
+            this.as = as;
+            this.ds = ds;
+        }
+
+        /**
+         * Returns whether the serial execution of the transaction, after the
+         * transactions committed so far, would have the same results.
+         */
+        boolean isValid(long gasUsedInBlock, long gasLimit, Set<ByteArray> accountWrites,
+                Set<ByteArray> delegateWrites, Set<ByteArray> voteWrites) {
+            if (failed) {
+                return false;
+            }
+
+            // the remaining gas check of a non-VM transaction must give the same answer
+            if ((nonVMTransactionGasCost + gasUsedInBlock > gasLimit) != (nonVMTransactionGasCost > gasLimit)) {
+                return false;
+            }
+
+            return !as.hasRead(accountWrites) && !ds.hasRead(delegateWrites, voteWrites);
+        }
+    }
+
+    /**
+     * An account state overlay which records the keys it reads from the state
+     * below. The transactions executed again are executed on the same overlay,
+     * to collect their writes.
+     */
+    private static class RecordingAccountState extends AccountStateImpl {
+        private final Set<ByteArray> reads = new HashSet<>();
+
+        RecordingAccountState(AccountStateImpl prev) {
+            super(prev);
+        }
+
+        @Override
+        protected boolean hasUpdate(ByteArray k) {
+            reads.add(k);
+            return super.hasUpdate(k);
+        }
+
+        boolean hasRead(Set<ByteArray> writes) {
+            return intersects(reads, writes);
+        }
+
+        void collectWrites(Set<ByteArray> writes) {
+            for (Map.Entry<ByteArray, byte[]> e : updates.entrySet()) {
+                writes.add(e.getKey());
+            }
+        }
+    }
+
+    /**
+     * A delegate state overlay which records the keys it reads from the state
+     * below.
+     */
+    private static class RecordingDelegateState extends DelegateStateImpl {
+        private final Set<ByteArray> delegateReads = new HashSet<>();
+        private final Set<ByteArray> voteReads = new HashSet<>();
+        private boolean readAll;
+
+        RecordingDelegateState(DelegateStateImpl prev) {
+            super(prev);
+        }
+
+        @Override
+        protected boolean hasDelegateUpdate(ByteArray k) {
+            delegateReads.add(k);
+            return super.hasDelegateUpdate(k);
+        }
+
+        @Override
+        protected boolean hasVoteUpdate(ByteArray key) {
+            voteReads.add(key);
+            return super.hasVoteUpdate(key);
+        }
+
+        @Override
+        public Delegate getDelegateByName(byte[] name) {
+            // the state below resolves the address of the name by itself
+            Delegate d = super.getDelegateByName(name);
+            if (d != null) {
+                delegateReads.add(ByteArray.of(d.getAddress()));
+            }
+            return d;
+        }
+
+        @Override
+        public List<Delegate> getTopDelegates(int n) {
+            readAll = true;
+            return super.getTopDelegates(n);
+        }
+
+        boolean hasRead(Set<ByteArray> delegateWrites, Set<ByteArray> voteWrites) {
+            if (readAll && !delegateWrites.isEmpty()) {
+                return true;
+            }
+            return intersects(delegateReads, delegateWrites) || intersects(voteReads, voteWrites);
+        }
+
+        void collectWrites(Set<ByteArray> delegateWrites, Set<ByteArray> voteWrites) {
+            for (Map.Entry<ByteArray, byte[]> e : delegateUpdates.entrySet()) {
+                delegateWrites.add(e.getKey());
+            }
+            for (Map.Entry<ByteArray, byte[]> e : voteUpdates.entrySet()) {
+                voteWrites.add(e.getKey());
+            }
+        }
+    }
+
+    private static boolean intersects(Set<ByteArray> reads, Set<ByteArray> writes) {
+        if (writes.isEmpty()) {
+            return false;
+        }
+        for (ByteArray k : reads) {
+            if (writes.contains(k)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
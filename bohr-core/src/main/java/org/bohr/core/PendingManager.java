@@ -7,14 +7,21 @@
 package org.bohr.core;
 
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import org.bohr.Kernel;
+import org.bohr.Network;
 import org.bohr.core.state.AccountState;
 import org.bohr.core.state.DelegateState;
 import org.bohr.crypto.Key;
@@ -37,12 +44,19 @@ import com.github.benmanes.caffeine.cache.Caffeine;
  * Pending manager maintains all unconfirmed transactions, either from kernel or
  * network. All transactions are evaluated and propagated to peers if success.
  *
+ * Incoming transactions go through two stages: the stateless checks (format,
+ * hash and signature) are performed in batches by a pool of verifier threads;
+ * the verified transactions are then executed against the pending state, many
+ * per event loop, grouped by sender in nonce order.
+ *
+ * Executable transactions are kept in a {@link PendingTransactionPool}, which
+ * orders them by gas price while keeping each sender's nonce sequence
+ * contiguous, and evicts the cheapest ones when full.
+ *
  * Note that: the transaction results in pending manager are not reliable for VM
  * transactions because these are evaluated against a dummy block. Nevertheless,
  * transactions included by the pending manager are eligible for inclusion in
  * block proposing phase.
- *
- * TODO: sort transaction queue by fee, and other metrics
  */
 public class PendingManager implements Runnable, BlockchainListener {
 
@@ -58,6 +72,16 @@ public class PendingManager implements Runnable, BlockchainListener {
         }
     };
 
+    private static final ThreadFactory verifierFactory = new ThreadFactory() {
+
+        private final AtomicInteger cnt = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "pending-verifier-" + cnt.getAndIncrement());
+        }
+    };
+
     public static final long ALLOWED_TIME_DRIFT = TimeUnit.HOURS.toMillis(2);
 
     private static final int QUEUE_SIZE_LIMIT = 128 * 1024;
@@ -65,29 +89,55 @@ public class PendingManager implements Runnable, BlockchainListener {
     private static final int LARGE_NONCE_TXS_LIMIT = 32 * 1024;
     private static final int PROCESSED_TXS_LIMIT = 128 * 1024;
 
+    private static final int VERIFIER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int VERIFY_BATCH_SIZE = 64;
+    private static final int PROCESS_BATCH_SIZE = 256;
+    private static final long STATS_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
     private final Kernel kernel;
     private final BlockStore blockStore;
     private AccountState pendingAS;
     private DelegateState pendingDS;
     private BohrBlock dummyBlock;
 
-    // Transactions that haven't been processed
+    // Transactions that haven't been verified
+    private final BlockingQueue<Transaction> incoming = new LinkedBlockingQueue<>(QUEUE_SIZE_LIMIT);
+
+    // Transactions that have been verified, but haven't been processed
     private final LinkedHashMap<ByteArray, Transaction> queue = new LinkedHashMap<>();
 
     // Transactions that have been processed and are valid for block production
-    private final ArrayList<PendingTransaction> validTxs = new ArrayList<>();
+    private final PendingTransactionPool validTxs;
 
     // Transactions whose nonce is too large, compared to the sender's nonce
     private final Cache<ByteArray, Transaction> largeNonceTxs = Caffeine.newBuilder().maximumSize(LARGE_NONCE_TXS_LIMIT)
             .build();
 
+    // Senders whose last pending transaction has been evicted, until the next block
+    private final Set<ByteArray> evictedSenders = new HashSet<>();
+
+    // Transactions of the evicted senders, to be processed on the next block
+    private final Cache<ByteArray, Transaction> deferredTxs = Caffeine.newBuilder().maximumSize(LARGE_NONCE_TXS_LIMIT)
+            .build();
+
     // Transactions that have been processed, including both valid and invalid ones
     private final Cache<ByteArray, Long> processedTxs = Caffeine.newBuilder().maximumSize(PROCESSED_TXS_LIMIT).build();
 
     private final ScheduledExecutorService exec;
 
+    private final ExecutorService verifiers;
+
     private ScheduledFuture<?> validateFuture;
 
+    private final List<Future<?>> verifyFutures = new ArrayList<>();
+
+    // Admission statistics
+    private final AtomicLong verifiedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private long admittedCount;
+    private long lastStatsTime = TimeUtil.currentTimeMillis();
+    private long lastStatsAdmitted;
+
     private volatile boolean isRunning;
 
     /**
@@ -100,8 +150,11 @@ public class PendingManager implements Runnable, BlockchainListener {
         this.pendingAS = kernel.getBlockchain().getAccountState().track();
         this.pendingDS = kernel.getBlockchain().getDelegateState().track();
         this.dummyBlock = kernel.createEmptyBlock();
+        this.validTxs = new PendingTransactionPool(VALID_TXS_LIMIT,
+                kernel.getConfig().spec().nonVMTransactionGasCost());
 
         this.exec = Executors.newSingleThreadScheduledExecutor(factory);
+        this.verifiers = Executors.newFixedThreadPool(VERIFIER_THREADS, verifierFactory);
     }
 
     /**
@@ -115,6 +168,9 @@ public class PendingManager implements Runnable, BlockchainListener {
              * the network load is heavy.
              */
             this.validateFuture = exec.scheduleAtFixedRate(this, 2, 2, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < VERIFIER_THREADS; i++) {
+                verifyFutures.add(verifiers.submit(this::verifyLoop));
+            }
 
             kernel.getBlockchain().addListener(this);
 
@@ -124,11 +180,17 @@ public class PendingManager implements Runnable, BlockchainListener {
     }
 
     /**
-     * Shuts down this pending manager.
+     * Shuts down this pending manager. The verifier threads are terminated, so it
+     * can't be started again.
      */
     public synchronized void stop() {
         if (isRunning) {
             validateFuture.cancel(true);
+            for (Future<?> f : verifyFutures) {
+                f.cancel(true);
+            }
+            verifyFutures.clear();
+            verifiers.shutdownNow();
 
             logger.debug("Pending manager stopped");
             isRunning = false;
@@ -153,20 +215,43 @@ public class PendingManager implements Runnable, BlockchainListener {
         return new ArrayList<>(queue.values());
     }
 
+    /**
+     * Returns the number of transactions waiting for verification.
+     *
+     * @return
+     */
+    public int getIncomingSize() {
+        return incoming.size();
+    }
+
+    /**
+     * Returns the number of verified transactions waiting for execution.
+     *
+     * @return
+     */
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the total number of transactions admitted into the pool by the
+     * background worker.
+     *
+     * @return
+     */
+    public synchronized long getAdmittedCount() {
+        return admittedCount;
+    }
+
     /**
      * Adds a transaction to the queue, which will be validated later by the
-     * background worker. Transaction may get rejected if the queue is full.
+     * background workers. Transaction may get rejected if the queue is full.
      *
      * @param tx
      */
-    public synchronized void addTransaction(Transaction tx) {
-        ByteArray hash = ByteArray.of(tx.getHash());
-
-        if (queue.size() < QUEUE_SIZE_LIMIT
-                && processedTxs.getIfPresent(hash) == null
-                && tx.validate(kernel.getConfig().network())) {
-            // NOTE: re-insertion doesn't affect item order
-            queue.put(ByteArray.of(tx.getHash()), tx);
+    public void addTransaction(Transaction tx) {
+        if (processedTxs.getIfPresent(ByteArray.of(tx.getHash())) == null && !incoming.offer(tx)) {
+            rejectedCount.incrementAndGet();
         }
     }
 
@@ -202,27 +287,13 @@ public class PendingManager implements Runnable, BlockchainListener {
     }
 
     /**
-     * Returns pending transactions, limited by the given total size in bytes.
-     *
+     * Returns the most valuable pending transactions, limited by the given total
+     * gas. Transactions of the same sender are returned in nonce order.
      *
      * @return
      */
     public synchronized List<PendingTransaction> getPendingTransactions(long blockGasLimit) {
-        List<PendingTransaction> txs = new ArrayList<>();
-        Iterator<PendingTransaction> it = validTxs.iterator();
-
-        while (it.hasNext() && blockGasLimit > 0) {
-            PendingTransaction tx = it.next();
-
-            long gasUsage = tx.transaction.isVMTransaction() ? tx.result.getGasUsed()
-                    : kernel.getConfig().spec().nonVMTransactionGasCost();
-            if (blockGasLimit > gasUsage) {
-                txs.add(tx);
-                blockGasLimit -= gasUsage;
-            }
-        }
-
-        return txs;
+        return validTxs.select(blockGasLimit);
     }
 
     /**
@@ -245,9 +316,10 @@ public class PendingManager implements Runnable, BlockchainListener {
         pendingDS = kernel.getBlockchain().getDelegateState().track();
         dummyBlock = kernel.createEmptyBlock();
 
-        // clear transaction pool
-        List<PendingTransaction> txs = new ArrayList<>(validTxs);
+        // clear transaction pool, which is replayed in admission order
+        List<PendingTransaction> txs = validTxs.getAll();
         validTxs.clear();
+        evictedSenders.clear();
 
         return txs;
     }
@@ -266,6 +338,14 @@ public class PendingManager implements Runnable, BlockchainListener {
                 accepted += processTransaction(tx.transaction, true, false).accepted;
             }
 
+            // process the transactions deferred by evictions
+            List<Transaction> deferred = new ArrayList<>(deferredTxs.asMap().values());
+            deferredTxs.invalidateAll();
+            deferred.sort(Comparator.comparingLong(Transaction::getNonce));
+            for (Transaction tx : deferred) {
+                admittedCount += processTransaction(tx, false, false).accepted;
+            }
+
             long t2 = TimeUtil.currentTimeMillis();
             logger.debug("Execute pending transactions: # txs = {} / {},  time = {} ms", accepted, txs.size(), t2 - t1);
         }
@@ -275,8 +355,10 @@ public class PendingManager implements Runnable, BlockchainListener {
     public synchronized void run() {
         Iterator<Map.Entry<ByteArray, Transaction>> iterator = queue.entrySet().iterator();
 
-        while (validTxs.size() < VALID_TXS_LIMIT && iterator.hasNext()) {
-            // the eldest entry
+        // take a batch of the eldest entries, grouped by sender in nonce order
+        Map<ByteArray, List<Transaction>> senders = new LinkedHashMap<>();
+        int n = 0;
+        while (n < PROCESS_BATCH_SIZE && iterator.hasNext()) {
             Map.Entry<ByteArray, Transaction> entry = iterator.next();
             iterator.remove();
 
@@ -285,17 +367,100 @@ public class PendingManager implements Runnable, BlockchainListener {
                 continue;
             }
 
-            // process the transaction
-            int accepted = processTransaction(entry.getValue(), false, false).accepted;
-            processedTxs.put(entry.getKey(), TimeUtil.currentTimeMillis());
+            Transaction tx = entry.getValue();
+            senders.computeIfAbsent(ByteArray.of(tx.getFrom()), k -> new ArrayList<>()).add(tx);
+            n++;
+        }
+
+        for (List<Transaction> txs : senders.values()) {
+            txs.sort(Comparator.comparingLong(Transaction::getNonce));
+            for (Transaction tx : txs) {
+                // process the transaction
+                admittedCount += processTransaction(tx, false, false).accepted;
+                processedTxs.put(ByteArray.of(tx.getHash()), TimeUtil.currentTimeMillis());
+            }
+        }
+
+        logStatistics();
+    }
 
-            // include one tx per call
-            if (accepted > 0) {
-                break;
+    /**
+     * The loop of a verifier thread, which performs the stateless checks of the
+     * incoming transactions in batches.
+     */
+    protected void verifyLoop() {
+        List<Transaction> batch = new ArrayList<>(VERIFY_BATCH_SIZE);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(incoming.take());
+                incoming.drainTo(batch, VERIFY_BATCH_SIZE - 1);
+
+                List<Transaction> verified = verifyTransactions(batch);
+                verifiedCount.addAndGet(verified.size());
+                rejectedCount.addAndGet(batch.size() - verified.size());
+
+                synchronized (this) {
+                    for (Transaction tx : verified) {
+                        if (queue.size() < QUEUE_SIZE_LIMIT) {
+                            // NOTE: re-insertion doesn't affect item order
+                            queue.put(ByteArray.of(tx.getHash()), tx);
+                        } else {
+                            rejectedCount.incrementAndGet();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Unexpected exception in transaction verifier", e);
+            } finally {
+                batch.clear();
             }
         }
     }
 
+    /**
+     * Performs the stateless checks of a batch of transactions, verifying the
+     * signatures in batch if supported.
+     *
+     * @param txs
+     * @return the valid transactions
+     */
+    protected List<Transaction> verifyTransactions(List<Transaction> txs) {
+        Network network = kernel.getConfig().network();
+        List<Transaction> candidates = txs.stream()
+                .filter(tx -> processedTxs.getIfPresent(ByteArray.of(tx.getHash())) == null)
+                .filter(tx -> tx.validate(network, false))
+                .collect(Collectors.toList());
+
+        if (candidates.size() > 1 && Key.isVerifyBatchSupported()
+                && Key.verifyBatch(
+                        candidates.stream().map(Transaction::getHash).collect(Collectors.toList()),
+                        candidates.stream().map(Transaction::getSignature).collect(Collectors.toList()))) {
+            return candidates;
+        }
+
+        // verify one by one to single out the invalid signatures
+        return candidates.stream()
+                .filter(tx -> Key.verify(tx.getHash(), tx.getSignature()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Periodically logs the admission throughput and queue depths.
+     */
+    private void logStatistics() {
+        long now = TimeUtil.currentTimeMillis();
+        if (now - lastStatsTime >= STATS_INTERVAL) {
+            logger.debug("Pending pool: incoming = {}, queue = {}, valid = {}, verified = {}, rejected = {}, "
+                    + "admitted = {} tx/s", incoming.size(), queue.size(), validTxs.size(), verifiedCount.get(),
+                    rejectedCount.get(), (admittedCount - lastStatsAdmitted) * 1000L / (now - lastStatsTime));
+
+            lastStatsTime = now;
+            lastStatsAdmitted = admittedCount;
+        }
+    }
+
     /**
      * Validates the given transaction and add to pool if success.
      *
@@ -334,6 +499,13 @@ public class PendingManager implements Runnable, BlockchainListener {
             return new ProcessingResult(0, TransactionResult.Code.INVALID_TIMESTAMP);
         }
 
+        // The state updates of an evicted transaction stay in the pending state until
+        // the next block, so the nonce and balance of its sender are stale until then.
+        if (evictedSenders.contains(ByteArray.of(tx.getFrom()))) {
+            deferredTxs.put(ByteArray.of(tx.getHash()), tx);
+            return new ProcessingResult(0);
+        }
+
         // report INVALID_NONCE error to prevent the transaction from being
         // silently ignored due to a low nonce
         if (tx.getNonce() < getNonce(tx.getFrom())) {
@@ -345,12 +517,32 @@ public class PendingManager implements Runnable, BlockchainListener {
         // delayed for the next event loop of PendingManager.
         while (tx != null && tx.getNonce() == getNonce(tx.getFrom())) {
 
+            // Make room in the pool by evicting the cheapest transaction of another
+            // sender. The pending state is only rebuilt on the next block, which is
+            // harmless as the proposer executes the selected transactions again.
+            if (validTxs.isFull()) {
+                PendingTransaction evicted = validTxs.evict(tx);
+                if (evicted == null) {
+                    return new ProcessingResult(cnt, TransactionResult.Code.INVALID_FEE);
+                }
+                processedTxs.invalidate(ByteArray.of(evicted.transaction.getHash()));
+                evictedSenders.add(ByteArray.of(evicted.transaction.getFrom()));
+            }
+
             // execute transactions
             AccountState as = pendingAS.track();
             DelegateState ds = pendingDS.track();
-            TransactionResult result = new TransactionExecutor(kernel.getConfig(), blockStore,
-                    kernel.getBlockchain().isVMEnabled(), kernel.getBlockchain().isVotingPrecompiledUpgraded())
-                    .execute(tx, as, ds, dummyBlock, 0);
+            TransactionResult result;
+            try {
+                result = new TransactionExecutor(kernel.getConfig(), blockStore,
+                        kernel.getBlockchain().isVMEnabled(), kernel.getBlockchain().isVotingPrecompiledUpgraded())
+                        .execute(tx, as, ds, dummyBlock, 0);
+            } catch (RuntimeException e) {
+                // the nested states must not be dropped with their updates
+                as.rollback();
+                ds.rollback();
+                throw e;
+            }
 
             if (result.getCode().isAcceptable()) {
                 // commit state updates
@@ -369,6 +561,10 @@ public class PendingManager implements Runnable, BlockchainListener {
                     broadcastTransaction(tx, isFromThisNode);
                 }
             } else {
+                // discard the state updates, which are shared with the pending state
+                as.rollback();
+                ds.rollback();
+
                 // exit immediately if invalid
                 return new ProcessingResult(cnt, result.getCode());
             }
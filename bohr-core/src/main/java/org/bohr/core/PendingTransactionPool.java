@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.bohr.core.PendingManager.PendingTransaction;
+import org.bohr.util.ByteArray;
+
+/**
+ * The pool of executable pending transactions, ordered by gas price while
+ * keeping the nonce sequence of each sender contiguous.
+ * <p>
+ * The effective gas price of a VM transaction is its gas price; for the other
+ * transactions, it's the fee divided by the flat non-VM gas cost.
+ * <p>
+ * The admission order is kept as well: replaying the pool in that order, on a
+ * new pending state, accepts the transactions the same way they were accepted
+ * before, which the gas price order doesn't guarantee.
+ * <p>
+ * NOTE: this class is not thread-safe; it's guarded by {@link PendingManager}.
+ */
+public class PendingTransactionPool {
+
+    private final int capacity;
+    private final long nonVMTransactionGasCost;
+
+    /**
+     * Pending transactions of each sender, by nonce.
+     */
+    private final Map<ByteArray, TreeMap<Long, PendingTransaction>> chains = new HashMap<>();
+
+    /**
+     * The last transaction of each sender, cheapest first; candidates for
+     * eviction.
+     */
+    private final TreeSet<PendingTransaction> tails;
+
+    private final Comparator<PendingTransaction> cheapestFirst;
+
+    /**
+     * All pending transactions, by hash, in admission order.
+     */
+    private final LinkedHashMap<ByteArray, PendingTransaction> admitted = new LinkedHashMap<>();
+
+    /**
+     * Creates a transaction pool.
+     *
+     * @param capacity
+     *            the maximum number of transactions
+     * @param nonVMTransactionGasCost
+     *            the gas cost of a non-VM transaction
+     */
+    public PendingTransactionPool(int capacity, long nonVMTransactionGasCost) {
+        this.capacity = capacity;
+        this.nonVMTransactionGasCost = nonVMTransactionGasCost;
+
+        this.cheapestFirst = Comparator.<PendingTransaction> comparingDouble(ptx -> getPrice(ptx.transaction))
+                .thenComparing(ptx -> ByteArray.of(ptx.transaction.getHash()));
+        this.tails = new TreeSet<>(cheapestFirst);
+    }
+
+    /**
+     * Returns the effective gas price of a transaction, in nano per gas.
+     *
+     * @param tx
+     * @return
+     */
+    public double getPrice(Transaction tx) {
+        return tx.isVMTransaction() ? tx.getGasPrice().toLong()
+                : (double) tx.getFee().toLong() / nonVMTransactionGasCost;
+    }
+
+    /**
+     * Returns the gas a pending transaction consumes in a block.
+     *
+     * @param ptx
+     * @return
+     */
+    public long getGas(PendingTransaction ptx) {
+        return ptx.transaction.isVMTransaction() ? ptx.result.getGasUsed() : nonVMTransactionGasCost;
+    }
+
+    /**
+     * Returns the number of transactions in this pool.
+     *
+     * @return
+     */
+    public int size() {
+        return admitted.size();
+    }
+
+    /**
+     * Returns whether this pool has reached its capacity.
+     *
+     * @return
+     */
+    public boolean isFull() {
+        return admitted.size() >= capacity;
+    }
+
+    /**
+     * Evicts the cheapest transaction of another sender, to make room for the
+     * given transaction. Only the last transaction of a sender can be evicted so
+     * that the nonce sequences stay contiguous.
+     *
+     * @param tx
+     * @return the evicted transaction, or null if no transaction is cheaper than
+     *         the given one
+     */
+    public PendingTransaction evict(Transaction tx) {
+        double price = getPrice(tx);
+        ByteArray sender = ByteArray.of(tx.getFrom());
+        for (PendingTransaction tail : tails) {
+            if (getPrice(tail.transaction) >= price) {
+                return null;
+            }
+            if (!ByteArray.of(tail.transaction.getFrom()).equals(sender)) {
+                removeTail(tail);
+                return tail;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds a pending transaction, which must follow the last transaction of the
+     * sender in nonce order.
+     *
+     * @param ptx
+     */
+    public void add(PendingTransaction ptx) {
+        ByteArray sender = ByteArray.of(ptx.transaction.getFrom());
+        TreeMap<Long, PendingTransaction> chain = chains.computeIfAbsent(sender, k -> new TreeMap<>());
+
+        if (!chain.isEmpty()) {
+            tails.remove(chain.lastEntry().getValue());
+        }
+        chain.put(ptx.transaction.getNonce(), ptx);
+        tails.add(chain.lastEntry().getValue());
+        admitted.put(ByteArray.of(ptx.transaction.getHash()), ptx);
+    }
+
+    /**
+     * Returns the most valuable transactions which fit in the given gas limit,
+     * with the transactions of each sender in nonce order.
+     *
+     * @param blockGasLimit
+     * @return
+     */
+    public List<PendingTransaction> select(long blockGasLimit) {
+        List<PendingTransaction> list = new ArrayList<>();
+
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(Math.max(1, chains.size()),
+                (c1, c2) -> cheapestFirst.compare(c2.head, c1.head));
+        for (TreeMap<Long, PendingTransaction> chain : chains.values()) {
+            Cursor c = new Cursor(chain.values().iterator());
+            if (c.advance()) {
+                heads.add(c);
+            }
+        }
+
+        while (!heads.isEmpty() && blockGasLimit > 0) {
+            Cursor c = heads.poll();
+            long gas = getGas(c.head);
+            if (blockGasLimit > gas) {
+                list.add(c.head);
+                blockGasLimit -= gas;
+
+                if (c.advance()) {
+                    heads.add(c);
+                }
+            }
+            // otherwise, skip the rest of this sender's transactions
+        }
+
+        return list;
+    }
+
+    /**
+     * Returns all transactions, in admission order.
+     *
+     * @return
+     */
+    public List<PendingTransaction> getAll() {
+        return new ArrayList<>(admitted.values());
+    }
+
+    /**
+     * Removes all transactions.
+     */
+    public void clear() {
+        chains.clear();
+        tails.clear();
+        admitted.clear();
+    }
+
+    private void removeTail(PendingTransaction tail) {
+        ByteArray sender = ByteArray.of(tail.transaction.getFrom());
+        TreeMap<Long, PendingTransaction> chain = chains.get(sender);
+
+        tails.remove(tail);
+        chain.remove(tail.transaction.getNonce());
+        admitted.remove(ByteArray.of(tail.transaction.getHash()));
+
+        if (chain.isEmpty()) {
+            chains.remove(sender);
+        } else {
+            tails.add(chain.lastEntry().getValue());
+        }
+    }
+
+    private static class Cursor {
+        final Iterator<PendingTransaction> itr;
+        PendingTransaction head;
+
+        Cursor(Iterator<PendingTransaction> itr) {
+            this.itr = itr;
+        }
+
+        boolean advance() {
+            head = itr.hasNext() ? itr.next() : null;
+            return head != null;
+        }
+    }
+}
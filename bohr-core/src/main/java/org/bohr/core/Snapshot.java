@@ -0,0 +1,360 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.bohr.crypto.Hash;
+import org.bohr.crypto.Hex;
+import org.bohr.db.DatabaseName;
+import org.bohr.util.SimpleDecoder;
+import org.bohr.util.SimpleEncoder;
+import org.bohr.util.exception.SimpleCodecException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A state snapshot at a checkpoint block, stored as a manifest and a list of
+ * chunks in one directory.
+ *
+ * <pre>
+ * manifest: [checkpoint_header, chunk_hash...]
+ * chunk: [database, key, value]...
+ * </pre>
+ *
+ * The snapshot holds the state before the checkpoint block, which the state
+ * root of the checkpoint header commits to, with the parent block and the
+ * headers before it. Every chunk is checked against its hash in the manifest,
+ * so chunks can be downloaded from any peer agreeing on the manifest.
+ */
+public class Snapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(Snapshot.class);
+
+    /**
+     * The maximum size of a chunk, in bytes.
+     */
+    public static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final String MANIFEST_FILE = "manifest";
+
+    private static final DatabaseName[] DATABASES = DatabaseName.values();
+
+    private final File dir;
+    private final BlockHeader header;
+    private final List<byte[]> chunkHashes;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param dir
+     *            the directory of the chunks
+     * @param header
+     *            the checkpoint block header
+     * @param chunkHashes
+     *            the hash of every chunk
+     */
+    public Snapshot(File dir, BlockHeader header, List<byte[]> chunkHashes) {
+        this.dir = dir;
+        this.header = header;
+        this.chunkHashes = Collections.unmodifiableList(chunkHashes);
+    }
+
+    /**
+     * Loads the snapshot in the given directory.
+     *
+     * @param dir
+     * @return the snapshot, or null if there is no manifest
+     */
+    public static Snapshot load(File dir) {
+        File file = new File(dir, MANIFEST_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            return fromManifest(dir, Files.readAllBytes(file.toPath()));
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to read snapshot manifest {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a manifest.
+     *
+     * @param dir
+     * @param manifest
+     * @return
+     * @throws IllegalArgumentException
+     *             if the checkpoint header is invalid
+     */
+    public static Snapshot fromManifest(File dir, byte[] manifest) {
+        SimpleDecoder dec = new SimpleDecoder(manifest);
+        BlockHeader header = BlockHeader.fromBytes(dec.readBytes());
+        if (!header.validate()) {
+            throw new IllegalArgumentException("Invalid checkpoint header");
+        }
+        int n = dec.readInt();
+        List<byte[]> chunkHashes = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            chunkHashes.add(dec.readBytes());
+        }
+
+        return new Snapshot(dir, header, chunkHashes);
+    }
+
+    /**
+     * Encodes the manifest of this snapshot.
+     *
+     * @return
+     */
+    public byte[] toManifest() {
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeBytes(header.toBytes());
+        enc.writeInt(chunkHashes.size());
+        for (byte[] h : chunkHashes) {
+            enc.writeBytes(h);
+        }
+        return enc.toBytes();
+    }
+
+    /**
+     * Writes the manifest to disk, which marks the snapshot as available.
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        Files.createDirectories(dir.toPath());
+
+        File tmp = new File(dir, MANIFEST_FILE + ".tmp");
+        Files.write(tmp.toPath(), toManifest());
+        Files.move(tmp.toPath(), new File(dir, MANIFEST_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long getNumber() {
+        return header.getNumber();
+    }
+
+    public byte[] getBlockHash() {
+        return header.getHash();
+    }
+
+    /**
+     * Returns the header of the checkpoint block, whose state root commits to
+     * the state of this snapshot.
+     *
+     * @return
+     */
+    public BlockHeader getHeader() {
+        return header;
+    }
+
+    public int getChunkCount() {
+        return chunkHashes.size();
+    }
+
+    /**
+     * Returns the hash of the manifest, which identifies the snapshot content.
+     *
+     * @return
+     */
+    public byte[] getHash() {
+        return Hash.h256(toManifest());
+    }
+
+    /**
+     * Returns whether the given chunk is stored locally.
+     *
+     * @param index
+     * @return
+     */
+    public boolean hasChunk(int index) {
+        return getChunkFile(index).exists();
+    }
+
+    /**
+     * Returns whether all the chunks are stored locally.
+     *
+     * @return
+     */
+    public boolean isComplete() {
+        for (int i = 0; i < chunkHashes.size(); i++) {
+            if (!hasChunk(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a chunk.
+     *
+     * @param index
+     * @return the chunk, or null if it's not available
+     */
+    public byte[] getChunk(int index) {
+        if (index < 0 || index >= chunkHashes.size() || !hasChunk(index)) {
+            return null;
+        }
+
+        try {
+            return Files.readAllBytes(getChunkFile(index).toPath());
+        } catch (IOException e) {
+            logger.error("Failed to read snapshot chunk #{}", index, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether the given data matches the hash of a chunk.
+     *
+     * @param index
+     * @param data
+     * @return
+     */
+    public boolean verifyChunk(int index, byte[] data) {
+        return index >= 0 && index < chunkHashes.size() && Arrays.equals(Hash.h256(data), chunkHashes.get(index));
+    }
+
+    /**
+     * Verifies and stores a chunk.
+     *
+     * @param index
+     * @param data
+     * @return true if the chunk matches the manifest and was stored, otherwise
+     *         false
+     */
+    public boolean putChunk(int index, byte[] data) {
+        if (!verifyChunk(index, data)) {
+            return false;
+        }
+
+        try {
+            Files.createDirectories(dir.toPath());
+            File tmp = new File(dir, "chunk-" + index + ".tmp");
+            Files.write(tmp.toPath(), data);
+            Files.move(tmp.toPath(), getChunkFile(index).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            logger.error("Failed to write snapshot chunk #{}", index, e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads all the entries of this snapshot, chunk by chunk.
+     *
+     * @param consumer
+     * @throws IOException
+     */
+    public void forEach(EntryConsumer consumer) throws IOException {
+        for (int i = 0; i < chunkHashes.size(); i++) {
+            byte[] data = Files.readAllBytes(getChunkFile(i).toPath());
+            if (!verifyChunk(i, data)) {
+                throw new IOException("Snapshot chunk #" + i + " is corrupted");
+            }
+
+            SimpleDecoder dec = new SimpleDecoder(data);
+            while (dec.getReadIndex() < data.length) {
+                DatabaseName name;
+                byte[] key;
+                byte[] value;
+                try {
+                    int db = dec.readByte() & 0xff;
+                    if (db >= DATABASES.length) {
+                        throw new IOException("Snapshot chunk #" + i + " refers to an unknown database");
+                    }
+                    name = DATABASES[db];
+                    key = dec.readBytes();
+                    value = dec.readBytes();
+                } catch (IndexOutOfBoundsException | SimpleCodecException e) {
+                    throw new IOException("Snapshot chunk #" + i + " is malformed", e);
+                }
+                consumer.accept(name, key, value);
+            }
+        }
+    }
+
+    private File getChunkFile(int index) {
+        return new File(dir, "chunk-" + index);
+    }
+
+    public interface EntryConsumer {
+        void accept(DatabaseName name, byte[] key, byte[] value);
+    }
+
+    /**
+     * Writes the entries of a snapshot into chunks of at most
+     * {@link #CHUNK_SIZE} bytes.
+     */
+    public static class Writer {
+        private final File dir;
+        private final BlockHeader header;
+        private final List<byte[]> chunkHashes = new ArrayList<>();
+
+        private SimpleEncoder chunk = new SimpleEncoder();
+
+        public Writer(File dir, BlockHeader header) throws IOException {
+            this.dir = dir;
+            this.header = header;
+
+            Files.createDirectories(dir.toPath());
+            // a previous snapshot in the directory is no longer valid
+            Files.deleteIfExists(new File(dir, MANIFEST_FILE).toPath());
+        }
+
+        public void put(DatabaseName name, byte[] key, byte[] value) throws IOException {
+            int size = 1 + 4 + key.length + 4 + value.length;
+            if (chunk.getWriteIndex() > 0 && chunk.getWriteIndex() + size > CHUNK_SIZE) {
+                flush();
+            }
+
+            chunk.writeByte((byte) name.ordinal());
+            chunk.writeBytes(key);
+            chunk.writeBytes(value);
+        }
+
+        /**
+         * Writes the last chunk and the manifest.
+         *
+         * @return the snapshot
+         * @throws IOException
+         */
+        public Snapshot finish() throws IOException {
+            if (chunk.getWriteIndex() > 0) {
+                flush();
+            }
+
+            Snapshot snapshot = new Snapshot(dir, header, chunkHashes);
+            snapshot.save();
+            return snapshot;
+        }
+
+        private void flush() throws IOException {
+            byte[] data = chunk.toBytes();
+            Files.write(new File(dir, "chunk-" + chunkHashes.size()).toPath(), data);
+            chunkHashes.add(Hash.h256(data));
+            chunk = new SimpleEncoder();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshot [number=" + getNumber() + ", blockHash=" + Hex.encode0x(getBlockHash()) + ", chunks="
+                + chunkHashes.size() + "]";
+    }
+}
@@ -81,6 +81,15 @@ public class TransactionExecutor {
         return true;
     }
 
+    /**
+     * Returns whether the results are traced to the VM tracer.
+     *
+     * @return
+     */
+    protected static boolean isTracing() {
+        return tracer != null;
+    }
+
     private ChainSpec spec;
     private BlockStore blockStore;
     private boolean isVMEnabled;
@@ -126,197 +135,218 @@ public class TransactionExecutor {
             TransactionResult result = new TransactionResult();
             results.add(result);
 
-            TransactionType type = tx.getType();
-            byte[] from = tx.getFrom();
-            byte[] to = tx.getTo();
-            Amount value = tx.getValue();
-            long nonce = tx.getNonce();
-            Amount fee = tx.getFee();
-            byte[] data = tx.getData();
+            gasUsedInBlock = execute(tx, as, ds, block, gasUsedInBlock, result);
+        }
 
-            Account acc = as.getAccount(from);
-            Amount available = acc.getAvailable();
-            Amount locked = acc.getLocked();
+        return results;
+    }
 
-            try {
-                // check nonce
-                if (nonce != acc.getNonce()) {
-                    logger.debug("nonce not equals. tx nonce: {}, account nonce: {}", nonce, acc.getNonce());
-                    result.setCode(Code.INVALID_NONCE);
-                    continue;
-                }
+    /**
+     * Executes one transaction of a list.
+     *
+     * @param tx
+     * @param as
+     * @param ds
+     * @param block
+     * @param gasUsedInBlock
+     *            the amount of gas that has been consumed by previous transaction
+     *            in the block
+     * @param result
+     *            the result to fill
+     * @return the amount of gas consumed in the block, including this transaction
+     */
+    protected long execute(Transaction tx, AccountState as, DelegateState ds, BohrBlock block,
+            long gasUsedInBlock, TransactionResult result) {
+        TransactionType type = tx.getType();
+        byte[] from = tx.getFrom();
+        byte[] to = tx.getTo();
+        Amount value = tx.getValue();
+        long nonce = tx.getNonce();
+        Amount fee = tx.getFee();
+        byte[] data = tx.getData();
+
+        Account acc = as.getAccount(from);
+        Amount available = acc.getAvailable();
+        Amount locked = acc.getLocked();
+
+        try {
+            // check nonce
+            if (nonce != acc.getNonce()) {
+                logger.debug("nonce not equals. tx nonce: {}, account nonce: {}", nonce, acc.getNonce());
+                result.setCode(Code.INVALID_NONCE);
+                return gasUsedInBlock;
+            }
 
-                // check fee (CREATE and CALL use gas instead)
-                if (tx.isVMTransaction()) {
-                    // applying a very strict check to avoid mistakes
-                    boolean valid = fee.equals(Amount.ZERO)
-                            && tx.getGas() >= 21_000 && tx.getGas() <= spec.maxBlockGasLimit()
-                            && tx.getGasPrice().greaterThanOrEqual(Amount.ONE)
-                            && tx.getGasPrice().lessThanOrEqual(Amount.of(Integer.MAX_VALUE));
-                    if (!valid) {
-                        logger.debug("vm transaction fee check. fee: {} ,gas: {}, gas price: {}, block maxBlockGasLimit: {}",
-                                fee, tx.getGas(), tx.getGasPrice(), spec.maxBlockGasLimit());
-                        result.setCode(Code.INVALID_FEE);
-                        continue;
-                    }
-                } else {
-                    if (fee.lessThan(spec.minTransactionFee())) {
-                        logger.debug("not vm transaction fee check. fee: {}, block minTransactionFee: {}", fee, spec.minTransactionFee());
-                        result.setCode(Code.INVALID_FEE);
-                        continue;
-                    }
+            // check fee (CREATE and CALL use gas instead)
+            if (tx.isVMTransaction()) {
+                // applying a very strict check to avoid mistakes
+                boolean valid = fee.equals(Amount.ZERO)
+                        && tx.getGas() >= 21_000 && tx.getGas() <= spec.maxBlockGasLimit()
+                        && tx.getGasPrice().greaterThanOrEqual(Amount.ONE)
+                        && tx.getGasPrice().lessThanOrEqual(Amount.of(Integer.MAX_VALUE));
+                if (!valid) {
+                    logger.debug("vm transaction fee check. fee: {} ,gas: {}, gas price: {}, block maxBlockGasLimit: {}",
+                            fee, tx.getGas(), tx.getGasPrice(), spec.maxBlockGasLimit());
+                    result.setCode(Code.INVALID_FEE);
+                    return gasUsedInBlock;
                 }
-
-                // check data length
-                if (data.length > spec.maxTransactionDataSize(type)) {
-                    logger.debug("data length check. data size: {}, block maxTransactionDataSize: {}", data.length, spec.maxTransactionDataSize(type));
-                    result.setCode(Code.INVALID_DATA);
-                    continue;
+            } else {
+                if (fee.lessThan(spec.minTransactionFee())) {
+                    logger.debug("not vm transaction fee check. fee: {}, block minTransactionFee: {}", fee, spec.minTransactionFee());
+                    result.setCode(Code.INVALID_FEE);
+                    return gasUsedInBlock;
                 }
+            }
 
-                // check remaining gas
-                if (!tx.isVMTransaction()) {
-                    if (spec.nonVMTransactionGasCost() + gasUsedInBlock > block.getGasLimit()) {
-                        logger.debug("not vm transaction remaining gas check. block nonVMTransactionGasCost: {}, gasUsedInBlock: {}, block Gas Limit: {}",
-                                spec.nonVMTransactionGasCost(), gasUsedInBlock, block.getGasLimit());
-                        result.setCode(Code.INVALID);
-                        continue;
-                    }
+            // check data length
+            if (data.length > spec.maxTransactionDataSize(type)) {
+                logger.debug("data length check. data size: {}, block maxTransactionDataSize: {}", data.length, spec.maxTransactionDataSize(type));
+                result.setCode(Code.INVALID_DATA);
+                return gasUsedInBlock;
+            }
 
-                    // Note: although we count gas usage for non-vm-transactions, the gas usage
-                    // is not recorded in the TransactionResult.
+            // check remaining gas
+            if (!tx.isVMTransaction()) {
+                if (spec.nonVMTransactionGasCost() + gasUsedInBlock > block.getGasLimit()) {
+                    logger.debug("not vm transaction remaining gas check. block nonVMTransactionGasCost: {}, gasUsedInBlock: {}, block Gas Limit: {}",
+                            spec.nonVMTransactionGasCost(), gasUsedInBlock, block.getGasLimit());
+                    result.setCode(Code.INVALID);
+                    return gasUsedInBlock;
                 }
 
-                switch (type) {
-                case TRANSFER: {
-                    if (fee.lessThanOrEqual(available) && value.lessThanOrEqual(available)
-                            && value.add(fee).lessThanOrEqual(available)) {
-                        as.adjustAvailable(from, value.add(fee).negate());
-                        as.adjustAvailable(to, value);
-                    } else {
-                        logger.debug("type TRANSFER: Insufficient available balance. fee: {}, available: {}, value: {}",
-                                fee, available, value);
-                        result.setCode(Code.INSUFFICIENT_AVAILABLE);
-                    }
+                // Note: although we count gas usage for non-vm-transactions, the gas usage
+                // is not recorded in the TransactionResult.
+            }
+
+            switch (type) {
+            case TRANSFER: {
+                if (fee.lessThanOrEqual(available) && value.lessThanOrEqual(available)
+                        && value.add(fee).lessThanOrEqual(available)) {
+                    as.adjustAvailable(from, value.add(fee).negate());
+                    as.adjustAvailable(to, value);
+                } else {
+                    logger.debug("type TRANSFER: Insufficient available balance. fee: {}, available: {}, value: {}",
+                            fee, available, value);
+                    result.setCode(Code.INSUFFICIENT_AVAILABLE);
+                }
+                break;
+            }
+            case DELEGATE: {
+                if (!validateDelegateName(data)) {
+                    logger.debug("type DELEGATE: invalid delegate name. data: {}", data);
+                    result.setCode(Code.INVALID_DELEGATE_NAME);
                     break;
                 }
-                case DELEGATE: {
-                    if (!validateDelegateName(data)) {
-                        logger.debug("type DELEGATE: invalid delegate name. data: {}", data);
-                        result.setCode(Code.INVALID_DELEGATE_NAME);
-                        break;
-                    }
-                    if (value.lessThan(spec.minDelegateBurnAmount())) {
-                        logger.debug("type DELEGATE: value lessThan minDelegateBurnAmount. value: {}, block minDelegateBurnAmount: {} ",
-                                value, spec.minDelegateBurnAmount());
-                        result.setCode(Code.INVALID_DELEGATE_BURN_AMOUNT);
-                        break;
-                    }
-                    if (!Arrays.equals(Constants.DELEGATE_BURN_ADDRESS, to)) {
-                        logger.debug("type DELEGATE: invalid burn delegate address: {}, ", Hex.encode0x(to));
-                        result.setCode(Code.INVALID_DELEGATE_BURN_ADDRESS);
-                        break;
-                    }
-                    if (fee.lessThanOrEqual(available) && value.lessThanOrEqual(available)
-                            && value.add(fee).lessThanOrEqual(available)) {
-                        if (ds.register(from, data)) {
-                            as.adjustAvailable(from, value.add(fee).negate());
-                            as.adjustAvailable(to, value);
-                        } else {
-                            logger.debug("type DELEGATE: The DELEGATE operation is invalid. operation: {}", "Registers a delegate");
-                            result.setCode(Code.INVALID_DELEGATING);
-                        }
-                    } else {
-                        logger.debug("type DELEGATE: Insufficient available balance. fee: {}, available: {}, value: {}",
-                                fee, available, value);
-                        result.setCode(Code.INSUFFICIENT_AVAILABLE);
-                    }
+                if (value.lessThan(spec.minDelegateBurnAmount())) {
+                    logger.debug("type DELEGATE: value lessThan minDelegateBurnAmount. value: {}, block minDelegateBurnAmount: {} ",
+                            value, spec.minDelegateBurnAmount());
+                    result.setCode(Code.INVALID_DELEGATE_BURN_AMOUNT);
                     break;
                 }
-                case VOTE: {
-                    if (fee.lessThanOrEqual(available) && value.lessThanOrEqual(available)
-                            && value.add(fee).lessThanOrEqual(available)) {
-                        if (ds.vote(from, to, value)) {
-                            as.adjustAvailable(from, value.add(fee).negate());
-                            as.adjustLocked(from, value);
-                        } else {
-                            logger.debug("type VOTE: The VOTE operation is invalid. operation: {}", "Adds vote to a delegate.");
-                            result.setCode(Code.INVALID_VOTING);
-                        }
-                    } else {
-                        logger.debug("type VOTE: Insufficient available balance. fee: {}, available: {}, value: {}",
-                                fee, available, value);
-                        result.setCode(Code.INSUFFICIENT_AVAILABLE);
-                    }
+                if (!Arrays.equals(Constants.DELEGATE_BURN_ADDRESS, to)) {
+                    logger.debug("type DELEGATE: invalid burn delegate address: {}, ", Hex.encode0x(to));
+                    result.setCode(Code.INVALID_DELEGATE_BURN_ADDRESS);
                     break;
                 }
-                case UNVOTE: {
-                    if (available.lessThan(fee)) {
-                        logger.debug("type UNVOTE: available lessThan fee. available: {}, fee: {}", available, fee);
-                        result.setCode(Code.INSUFFICIENT_AVAILABLE);
-                        break;
-                    }
-                    if (locked.lessThan(value)) {
-                        logger.debug("type UNVOTE: locked lessThan value. locked: {}, value: {}", locked, value);
-                        result.setCode(Code.INSUFFICIENT_LOCKED);
-                        break;
+                if (fee.lessThanOrEqual(available) && value.lessThanOrEqual(available)
+                        && value.add(fee).lessThanOrEqual(available)) {
+                    if (ds.register(from, data)) {
+                        as.adjustAvailable(from, value.add(fee).negate());
+                        as.adjustAvailable(to, value);
+                    } else {
+                        logger.debug("type DELEGATE: The DELEGATE operation is invalid. operation: {}", "Registers a delegate");
+                        result.setCode(Code.INVALID_DELEGATING);
                     }
-
-                    if (ds.unvote(from, to, value)) {
-                        as.adjustAvailable(from, value.subtract(fee));
-                        as.adjustLocked(from, value.negate());
+                } else {
+                    logger.debug("type DELEGATE: Insufficient available balance. fee: {}, available: {}, value: {}",
+                            fee, available, value);
+                    result.setCode(Code.INSUFFICIENT_AVAILABLE);
+                }
+                break;
+            }
+            case VOTE: {
+                if (fee.lessThanOrEqual(available) && value.lessThanOrEqual(available)
+                        && value.add(fee).lessThanOrEqual(available)) {
+                    if (ds.vote(from, to, value)) {
+                        as.adjustAvailable(from, value.add(fee).negate());
+                        as.adjustLocked(from, value);
                     } else {
-                        logger.debug("type UNVOTE: The UNVOTE operation is invalid. operation: {}", "Removes vote of a delegate.");
-                        result.setCode(Code.INVALID_UNVOTING);
+                        logger.debug("type VOTE: The VOTE operation is invalid. operation: {}", "Adds vote to a delegate.");
+                        result.setCode(Code.INVALID_VOTING);
                     }
-                    break;
+                } else {
+                    logger.debug("type VOTE: Insufficient available balance. fee: {}, available: {}, value: {}",
+                            fee, available, value);
+                    result.setCode(Code.INSUFFICIENT_AVAILABLE);
                 }
-                case CALL:
-                case CREATE:
-                    //if (!isVMEnabled) {
-                    //    logger.debug("type CREATE or CALL: check a fork has been activated. result: {}", "The transaction type is invalid.");
-                    //    result.setCode(Code.INVALID_TYPE);
-                    //    break;
-                    //}
-
-                    // the VM transaction executor will check balance and gas cost.
-                    // do proper refunds afterwards.
-                    executeVmTransaction(tx, as, ds, block, gasUsedInBlock, result);
-
-                    // Note: we're assuming the VM will not make changes to the account
-                    // and delegate state if the transaction is INVALID; the storage changes
-                    // will be discarded if is FAILURE.
-                    //
-                    // TODO: add unit test for this
-                    break;
-                default:
-                    logger.debug("unsupported transaction type. type: {}", type);
-                    // unsupported transaction type
-                    result.setCode(Code.INVALID_TYPE);
+                break;
+            }
+            case UNVOTE: {
+                if (available.lessThan(fee)) {
+                    logger.debug("type UNVOTE: available lessThan fee. available: {}, fee: {}", available, fee);
+                    result.setCode(Code.INSUFFICIENT_AVAILABLE);
                     break;
                 }
-            } catch (ArithmeticException ae) {
-                logger.warn("An arithmetic exception occurred during transaction execution: {}", tx);
-                result.setCode(Code.INVALID);
-            }
-
-            if (result.getCode().isAcceptable()) {
-                if (!tx.isVMTransaction()) {
-                    // CREATEs and CALLs manages the nonce inside the VM
-                    as.increaseNonce(from);
+                if (locked.lessThan(value)) {
+                    logger.debug("type UNVOTE: locked lessThan value. locked: {}, value: {}", locked, value);
+                    result.setCode(Code.INSUFFICIENT_LOCKED);
+                    break;
                 }
 
-                if (tx.isVMTransaction()) {
-                    gasUsedInBlock += result.getGasUsed();
+                if (ds.unvote(from, to, value)) {
+                    as.adjustAvailable(from, value.subtract(fee));
+                    as.adjustLocked(from, value.negate());
                 } else {
-                    gasUsedInBlock += spec.nonVMTransactionGasCost();
+                    logger.debug("type UNVOTE: The UNVOTE operation is invalid. operation: {}", "Removes vote of a delegate.");
+                    result.setCode(Code.INVALID_UNVOTING);
                 }
+                break;
+            }
+            case CALL:
+            case CREATE:
+                //if (!isVMEnabled) {
+                //    logger.debug("type CREATE or CALL: check a fork has been activated. result: {}", "The transaction type is invalid.");
+                //    result.setCode(Code.INVALID_TYPE);
+                //    break;
+                //}
+
+                // the VM transaction executor will check balance and gas cost.
+                // do proper refunds afterwards.
+                executeVmTransaction(tx, as, ds, block, gasUsedInBlock, result);
+
+                // Note: we're assuming the VM will not make changes to the account
+                // and delegate state if the transaction is INVALID; the storage changes
+                // will be discarded if is FAILURE.
+                //
+                // TODO: add unit test for this
+                break;
+            default:
+                logger.debug("unsupported transaction type. type: {}", type);
+                // unsupported transaction type
+                result.setCode(Code.INVALID_TYPE);
+                break;
             }
+        } catch (ArithmeticException ae) {
+            logger.warn("An arithmetic exception occurred during transaction execution: {}", tx);
+            result.setCode(Code.INVALID);
+        }
 
-            result.setBlockNumber(block.getNumber());
+        if (result.getCode().isAcceptable()) {
+            if (!tx.isVMTransaction()) {
+                // CREATEs and CALLs manages the nonce inside the VM
+                as.increaseNonce(from);
+            }
+
+            if (tx.isVMTransaction()) {
+                gasUsedInBlock += result.getGasUsed();
+            } else {
+                gasUsedInBlock += spec.nonVMTransactionGasCost();
+            }
         }
 
-        return results;
+        result.setBlockNumber(block.getNumber());
+
+        return gasUsedInBlock;
     }
 
     private void executeVmTransaction(Transaction tx, AccountState as, DelegateState ds,
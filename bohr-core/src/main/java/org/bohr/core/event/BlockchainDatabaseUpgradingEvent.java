@@ -14,8 +14,18 @@ public class BlockchainDatabaseUpgradingEvent implements PubSubEvent {
 
     public final Long total;
 
+    /**
+     * The import speed, in blocks per second.
+     */
+    public final Double rate;
+
     public BlockchainDatabaseUpgradingEvent(Long loaded, Long total) {
+        this(loaded, total, 0.0);
+    }
+
+    public BlockchainDatabaseUpgradingEvent(Long loaded, Long total, Double rate) {
         this.loaded = loaded;
         this.total = total;
+        this.rate = rate;
     }
 }
@@ -84,6 +84,10 @@ public interface AccountState {
 
     /**
      * Makes a snapshot and starts tracking further updates.
+     * <p>
+     * A state tracked from a tracked state must be committed or rolled back
+     * before its parent is: it shares the updates of its parent, so when it's
+     * dropped without being rolled back, its updates are kept by the parent.
      */
     AccountState track();
 
@@ -6,15 +6,20 @@
  */
 package org.bohr.core.state;
 
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
 
 import org.bohr.core.Amount;
 import org.bohr.db.Database;
+import org.bohr.db.UpdateBatch;
 import org.bohr.util.ByteArray;
 import org.bohr.util.Bytes;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
 /**
  * Account state implementation.
  * 
@@ -25,6 +30,14 @@ import org.bohr.util.Bytes;
  * [1, address] => [code]
  * [2, address, storage_key] = [storage_value]
  * </pre>
+ * 
+ * The root state caches the decoded accounts and the code read from the
+ * database, including the absent ones. The caches are updated when the root
+ * state commits, and are shared with its clones.
+ * 
+ * A state tracked from the root owns its updates. The states nested in it share
+ * the same {@link JournaledMap} and keep a checkpoint instead, so lookups don't
+ * depend on the nesting depth and a rollback only undoes its own updates.
  */
 public class AccountStateImpl implements Cloneable, AccountState {
 
@@ -35,18 +48,59 @@ public class AccountStateImpl implements Cloneable, AccountState {
     protected Database accountDB;
     protected AccountStateImpl prev;
 
+    /**
+     * Cache of committed accounts, or empty if the account doesn't exist. The
+     * cached accounts are copied before being returned. Only used by the root.
+     */
+    protected Cache<ByteArray, Optional<Account>> accountCache;
+
+    /**
+     * Cache of committed code, or empty if there is no code. Only used by the
+     * root.
+     */
+    protected Cache<ByteArray, Optional<byte[]>> codeCache;
+
     /**
      * All updates, or deletes if the value is null.
      */
-    protected final Map<ByteArray, byte[]> updates = new ConcurrentHashMap<>();
+    protected final JournaledMap updates;
 
     /**
-     * Create an {@link AccountState} that work directly on a database.
+     * The checkpoint of a nested state in the shared updates, or -1 if this state
+     * owns the updates.
+     */
+    protected int checkpoint = -1;
+
+    /**
+     * The checkpoint at which a snapshot reads the shared updates, or -1 to read
+     * the latest updates.
+     */
+    protected int snapshot = -1;
+
+    /**
+     * Create an {@link AccountState} that work directly on a database, with the
+     * given cache capacity.
      * 
      * @param accountDB
+     * @param accountCacheSize
+     *            the maximum number of cached accounts
+     * @param codeCacheSize
+     *            the maximum size of cached code, in bytes
      */
-    public AccountStateImpl(Database accountDB) {
+    public AccountStateImpl(Database accountDB, int accountCacheSize, long codeCacheSize) {
+        this(accountDB,
+                Caffeine.newBuilder().maximumSize(accountCacheSize).recordStats().build(),
+                Caffeine.newBuilder().maximumWeight(codeCacheSize)
+                        .weigher((ByteArray k, Optional<byte[]> v) -> k.length() + v.map(c -> c.length).orElse(0))
+                        .recordStats().build());
+    }
+
+    protected AccountStateImpl(Database accountDB, Cache<ByteArray, Optional<Account>> accountCache,
+            Cache<ByteArray, Optional<byte[]>> codeCache) {
         this.accountDB = accountDB;
+        this.accountCache = accountCache;
+        this.codeCache = codeCache;
+        this.updates = new JournaledMap();
     }
 
     /**
@@ -56,6 +110,24 @@ public class AccountStateImpl implements Cloneable, AccountState {
      */
     public AccountStateImpl(AccountStateImpl prev) {
         this.prev = prev;
+        this.updates = new JournaledMap();
+    }
+
+    /**
+     * Create an {@link AccountState} sharing the updates of a tracked state.
+     * 
+     * @param parent
+     *            the tracked state
+     * @param checkpoint
+     *            the checkpoint to roll back to
+     * @param snapshot
+     *            the checkpoint to read the updates at, or -1 for the latest
+     */
+    protected AccountStateImpl(AccountStateImpl parent, int checkpoint, int snapshot) {
+        this.prev = parent.prev;
+        this.updates = parent.updates;
+        this.checkpoint = checkpoint;
+        this.snapshot = snapshot;
     }
 
     @Override
@@ -63,14 +135,15 @@ public class AccountStateImpl implements Cloneable, AccountState {
         ByteArray k = getKey(TYPE_ACCOUNT, address);
         Amount noAmount = Amount.ZERO;
 
-        if (updates.containsKey(k)) {
-            byte[] v = updates.get(k);
+        if (hasUpdate(k)) {
+            byte[] v = getUpdate(k);
             return v == null ? new Account(address, noAmount, noAmount, 0) : Account.fromBytes(address, v);
         } else if (prev != null) {
             return prev.getAccount(address);
         } else {
-            byte[] v = accountDB.get(k.getData());
-            return v == null ? new Account(address, noAmount, noAmount, 0) : Account.fromBytes(address, v);
+            return getCachedAccount(k)
+                    .map(acc -> new Account(address, acc.getAvailable(), acc.getLocked(), acc.getNonce()))
+                    .orElseGet(() -> new Account(address, noAmount, noAmount, 0));
         }
     }
 
@@ -107,12 +180,12 @@ public class AccountStateImpl implements Cloneable, AccountState {
     public byte[] getCode(byte[] address) {
         ByteArray k = getKey(TYPE_CODE, address);
 
-        if (updates.containsKey(k)) {
-            return updates.get(k);
+        if (hasUpdate(k)) {
+            return getUpdate(k);
         } else if (prev != null) {
             return prev.getCode(address);
         } else {
-            return accountDB.get(k.getData());
+            return codeCache.get(k, key -> Optional.ofNullable(accountDB.get(key.getData()))).orElse(null);
         }
     }
 
@@ -126,8 +199,8 @@ public class AccountStateImpl implements Cloneable, AccountState {
     public byte[] getStorage(byte[] address, byte[] key) {
         ByteArray k = getStorageKey(address, key);
 
-        if (updates.containsKey(k)) {
-            return updates.get(k);
+        if (hasUpdate(k)) {
+            return getUpdate(k);
         } else if (prev != null) {
             return prev.getStorage(address, key);
         } else {
@@ -149,19 +222,28 @@ public class AccountStateImpl implements Cloneable, AccountState {
 
     @Override
     public AccountState track() {
-        return new AccountStateImpl(this);
+        return (prev == null) ? new AccountStateImpl(this) : new AccountStateImpl(this, updates.checkpoint(), -1);
     }
 
     @Override
     public void commit() {
+        if (checkpoint >= 0) {
+            // the updates are already in the shared map, and are kept there
+            checkpoint = updates.commit(checkpoint);
+            return;
+        }
+
         synchronized (updates) {
             if (prev == null) {
+                UpdateBatch batch = new UpdateBatch(accountDB);
+                for (Entry<ByteArray, byte[]> entry : updates.entrySet()) {
+                    batch.put(entry.getKey().getData(), entry.getValue());
+                }
+                batch.commit();
+
+                // keep the caches coherent with the database
                 for (Entry<ByteArray, byte[]> entry : updates.entrySet()) {
-                    if (entry.getValue() == null) {
-                        accountDB.delete(entry.getKey().getData());
-                    } else {
-                        accountDB.put(entry.getKey().getData(), entry.getValue());
-                    }
+                    updateCache(entry.getKey(), entry.getValue());
                 }
             } else {
                 for (Entry<ByteArray, byte[]> e : updates.entrySet()) {
@@ -175,20 +257,23 @@ public class AccountStateImpl implements Cloneable, AccountState {
 
     @Override
     public void rollback() {
-        updates.clear();
+        if (checkpoint >= 0) {
+            updates.revert(checkpoint);
+        } else {
+            updates.clear();
+        }
     }
 
     @Override
     public boolean exists(byte[] address) {
         ByteArray k = getKey(TYPE_ACCOUNT, address);
 
-        if (updates.containsKey(k)) {
+        if (hasUpdate(k)) {
             return true;
         } else if (prev != null) {
             return prev.exists(address);
         } else {
-            byte[] v = accountDB.get(k.getData());
-            return v != null;
+            return getCachedAccount(k).isPresent();
         }
     }
 
@@ -204,13 +289,72 @@ public class AccountStateImpl implements Cloneable, AccountState {
 
     @Override
     public AccountState clone() {
-        AccountStateImpl clone = new AccountStateImpl(accountDB);
+        if (prev != null) {
+            // read the updates as they are now, without copying them; the snapshot
+            // is valid until this state is committed or rolled back past it
+            int now = updates.checkpoint();
+            return new AccountStateImpl(new AccountStateImpl(this, now, now));
+        }
+
+        AccountStateImpl clone = new AccountStateImpl(accountDB, accountCache, codeCache);
         clone.prev = prev;
-        clone.updates.putAll(updates);
+        for (Entry<ByteArray, byte[]> e : updates.entrySet()) {
+            clone.updates.put(e.getKey(), e.getValue());
+        }
 
         return clone;
     }
 
+    /**
+     * Returns the statistics of the account cache.
+     *
+     * @return
+     */
+    public CacheStats getAccountCacheStats() {
+        return accountCache.stats();
+    }
+
+    /**
+     * Returns the statistics of the code cache.
+     *
+     * @return
+     */
+    public CacheStats getCodeCacheStats() {
+        return codeCache.stats();
+    }
+
+    protected boolean hasUpdate(ByteArray k) {
+        return (snapshot < 0) ? updates.containsKey(k) : updates.containsKey(k, snapshot);
+    }
+
+    protected byte[] getUpdate(ByteArray k) {
+        return (snapshot < 0) ? updates.get(k) : updates.get(k, snapshot);
+    }
+
+    protected Optional<Account> getCachedAccount(ByteArray k) {
+        return accountCache.get(k, key -> {
+            byte[] v = accountDB.get(key.getData());
+            return v == null ? Optional.empty() : Optional.of(Account.fromBytes(getAddress(key), v));
+        });
+    }
+
+    protected void updateCache(ByteArray k, byte[] v) {
+        switch (k.getData()[0]) {
+        case TYPE_ACCOUNT:
+            accountCache.put(k, v == null ? Optional.empty() : Optional.of(Account.fromBytes(getAddress(k), v)));
+            break;
+        case TYPE_CODE:
+            codeCache.put(k, Optional.ofNullable(v));
+            break;
+        default:
+            break;
+        }
+    }
+
+    protected static byte[] getAddress(ByteArray k) {
+        return Arrays.copyOfRange(k.getData(), 1, k.length());
+    }
+
     protected ByteArray getKey(byte type, byte[] address) {
         return ByteArray.of(Bytes.merge(type, address));
     }
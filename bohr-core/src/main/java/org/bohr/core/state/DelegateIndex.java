@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.core.state;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+
+import org.bohr.util.ByteArray;
+
+/**
+ * An in-memory index of the committed delegates, ordered by votes (descending)
+ * and then by name. It's loaded once from the delegate DB and updated
+ * incrementally when the root {@link DelegateStateImpl} commits.
+ */
+public class DelegateIndex {
+
+    /**
+     * The delegate ranking: votes descending, then name ascending.
+     */
+    public static final Comparator<Delegate> ORDER = (d1, d2) -> {
+        int cmp = d2.getVotes().compareTo(d1.getVotes());
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = d1.getNameString().compareTo(d2.getNameString());
+        return (cmp != 0) ? cmp : ByteArray.of(d1.getAddress()).compareTo(ByteArray.of(d2.getAddress()));
+    };
+
+    private final ConcurrentSkipListSet<Delegate> sorted = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<ByteArray, Delegate> byAddress = new ConcurrentHashMap<>();
+
+    /**
+     * Adds or replaces a delegate.
+     *
+     * @param d
+     */
+    public synchronized void put(Delegate d) {
+        Delegate old = byAddress.put(ByteArray.of(d.getAddress()), d);
+        if (old != null) {
+            sorted.remove(old);
+        }
+        sorted.add(d);
+    }
+
+    /**
+     * Removes a delegate by address.
+     *
+     * @param address
+     */
+    public synchronized void remove(ByteArray address) {
+        Delegate old = byAddress.remove(address);
+        if (old != null) {
+            sorted.remove(old);
+        }
+    }
+
+    /**
+     * Returns the number of indexed delegates.
+     *
+     * @return
+     */
+    public int size() {
+        return byAddress.size();
+    }
+
+    /**
+     * Returns the top delegates, with the given uncommitted updates applied.
+     *
+     * @param overrides
+     *            uncommitted delegates by address, or null values for deleted
+     *            ones
+     * @param limit
+     *            the maximum number of delegates to return
+     * @return
+     */
+    public List<Delegate> getDelegates(Map<ByteArray, Delegate> overrides, int limit) {
+        List<Delegate> list = new ArrayList<>(Math.min(limit, size() + overrides.size()));
+
+        List<Delegate> updated = overrides.values().stream()
+                .filter(Objects::nonNull)
+                .sorted(ORDER)
+                .collect(Collectors.toList());
+
+        // merge the committed delegates with the updated ones
+        Iterator<Delegate> itr = sorted.iterator();
+        Delegate next = nextCommitted(itr, overrides);
+        int i = 0;
+        while (list.size() < limit && (next != null || i < updated.size())) {
+            if (next == null || (i < updated.size() && ORDER.compare(updated.get(i), next) < 0)) {
+                list.add(updated.get(i++));
+            } else {
+                list.add(next);
+                next = nextCommitted(itr, overrides);
+            }
+        }
+
+        return list;
+    }
+
+    private Delegate nextCommitted(Iterator<Delegate> itr, Map<ByteArray, Delegate> overrides) {
+        while (itr.hasNext()) {
+            Delegate d = itr.next();
+            if (!overrides.containsKey(ByteArray.of(d.getAddress()))) {
+                return d;
+            }
+        }
+        return null;
+    }
+}
@@ -94,8 +94,21 @@ public interface DelegateState {
      */
     List<Delegate> getDelegates();
 
+    /**
+     * Returns the top N delegates, sorted by votes.
+     *
+     * @param n
+     *            the maximum number of delegates
+     * @return
+     */
+    List<Delegate> getTopDelegates(int n);
+
     /**
      * Returns a snapshot and starts tracking updates.
+     * <p>
+     * A state tracked from a tracked state must be committed or rolled back
+     * before its parent is: it shares the updates of its parent, so when it's
+     * dropped without being rolled back, its updates are kept by the parent.
      */
     DelegateState track();
 
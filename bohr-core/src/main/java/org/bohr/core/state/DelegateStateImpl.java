@@ -9,6 +9,7 @@ package org.bohr.core.state;
 import org.bohr.core.Amount;
 import org.bohr.core.Blockchain;
 import org.bohr.db.Database;
+import org.bohr.db.UpdateBatch;
 import org.bohr.util.ByteArray;
 import org.bohr.util.Bytes;
 import org.bohr.util.ClosableIterator;
@@ -17,7 +18,6 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
 
 import static org.bohr.core.Amount.ZERO;
 
@@ -37,6 +37,8 @@ import static org.bohr.core.Amount.ZERO;
  * [delegate, voter] => vote
  * </pre>
  *
+ * Like {@link AccountStateImpl}, the states nested in a tracked state share its
+ * updates and keep checkpoints to roll back to.
  */
 public class DelegateStateImpl implements Cloneable, DelegateState {
 
@@ -50,15 +52,28 @@ public class DelegateStateImpl implements Cloneable, DelegateState {
     protected Database voteDB;
     protected DelegateStateImpl prev;
 
+    /**
+     * Vote-ordered index of the committed delegates, shared by all the tracked
+     * states.
+     */
+    protected final DelegateIndex index;
+
     /**
      * Delegate updates
      */
-    protected final Map<ByteArray, byte[]> delegateUpdates = new ConcurrentHashMap<>();
+    protected final JournaledMap delegateUpdates;
 
     /**
      * Vote updates
      */
-    protected final Map<ByteArray, byte[]> voteUpdates = new ConcurrentHashMap<>();
+    protected final JournaledMap voteUpdates;
+
+    /**
+     * The checkpoints of a nested state in the shared updates, or -1 if this
+     * state owns the updates.
+     */
+    protected int delegateCheckpoint = -1;
+    protected int voteCheckpoint = -1;
 
     /**
      * Create a DelegateState that work directly on a database.
@@ -67,9 +82,16 @@ public class DelegateStateImpl implements Cloneable, DelegateState {
      * @param voteDB
      */
     public DelegateStateImpl(Blockchain chain, Database delegateDB, Database voteDB) {
+        this(chain, delegateDB, voteDB, loadIndex(delegateDB));
+    }
+
+    protected DelegateStateImpl(Blockchain chain, Database delegateDB, Database voteDB, DelegateIndex index) {
         this.chain = chain;
         this.delegateDB = delegateDB;
         this.voteDB = voteDB;
+        this.index = index;
+        this.delegateUpdates = new JournaledMap();
+        this.voteUpdates = new JournaledMap();
     }
 
     /**
@@ -80,6 +102,29 @@ public class DelegateStateImpl implements Cloneable, DelegateState {
     public DelegateStateImpl(DelegateStateImpl prev) {
         this.chain = prev.chain;
         this.prev = prev;
+        this.index = prev.index;
+        this.delegateUpdates = new JournaledMap();
+        this.voteUpdates = new JournaledMap();
+    }
+
+    /**
+     * Create a DelegateState nested in a tracked state, sharing its updates.
+     *
+     * @param parent
+     *            the tracked state
+     * @param delegateCheckpoint
+     *            the checkpoint of the delegate updates to roll back to
+     * @param voteCheckpoint
+     *            the checkpoint of the vote updates to roll back to
+     */
+    protected DelegateStateImpl(DelegateStateImpl parent, int delegateCheckpoint, int voteCheckpoint) {
+        this.chain = parent.chain;
+        this.prev = parent.prev;
+        this.index = parent.index;
+        this.delegateUpdates = parent.delegateUpdates;
+        this.voteUpdates = parent.voteUpdates;
+        this.delegateCheckpoint = delegateCheckpoint;
+        this.voteCheckpoint = voteCheckpoint;
     }
 
     @Override
@@ -144,7 +189,7 @@ public class DelegateStateImpl implements Cloneable, DelegateState {
     public Delegate getDelegateByName(byte[] name) {
         ByteArray k = ByteArray.of(name);
 
-        if (delegateUpdates.containsKey(k)) {
+        if (hasDelegateUpdate(k)) {
             byte[] v = delegateUpdates.get(k);
             return v == null ? null : getDelegateByAddress(v);
         } else if (prev != null) {
@@ -159,7 +204,7 @@ public class DelegateStateImpl implements Cloneable, DelegateState {
     public Delegate getDelegateByAddress(byte[] address) {
         ByteArray k = ByteArray.of(address);
 
-        if (delegateUpdates.containsKey(k)) {
+        if (hasDelegateUpdate(k)) {
             byte[] v = delegateUpdates.get(k);
             return v == null ? null : Delegate.fromBytes(k.getData(), v);
         } else if (prev != null) {
@@ -172,18 +217,19 @@ public class DelegateStateImpl implements Cloneable, DelegateState {
 
     @Override
     public List<Delegate> getDelegates() {
+        return getTopDelegates(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Delegate> getTopDelegates(int n) {
         long t1 = System.nanoTime();
 
-        // traverse all cached update, all the way to database.
+        // collect the uncommitted updates, all the way to the root state
         Map<ByteArray, Delegate> map = new HashMap<>();
-        getDelegates(map);
+        getUpdatedDelegates(map);
 
-        // sort the results
-        List<Delegate> list = new ArrayList<>(map.values());
-        list.sort((d1, d2) -> {
-            int cmp = d2.getVotes().compareTo(d1.getVotes());
-            return (cmp != 0) ? cmp : d1.getNameString().compareTo(d2.getNameString());
-        });
+        // merge them into the sorted index
+        List<Delegate> list = index.getDelegates(map, n);
 
         long t2 = System.nanoTime();
         logger.trace("Get delegates duration: {} μs", (t2 - t1) / 1000L);
@@ -192,18 +238,35 @@ public class DelegateStateImpl implements Cloneable, DelegateState {
 
     @Override
     public DelegateState track() {
-        return new DelegateStateImpl(this);
+        return (prev == null) ? new DelegateStateImpl(this)
+                : new DelegateStateImpl(this, delegateUpdates.checkpoint(), voteUpdates.checkpoint());
     }
 
     @Override
     public void commit() {
+        if (delegateCheckpoint >= 0) {
+            // the updates are already in the shared maps, and are kept there
+            delegateCheckpoint = delegateUpdates.commit(delegateCheckpoint);
+            voteCheckpoint = voteUpdates.commit(voteCheckpoint);
+            return;
+        }
+
         synchronized (delegateUpdates) {
             if (prev == null) {
+                UpdateBatch batch = new UpdateBatch(delegateDB);
+                for (Entry<ByteArray, byte[]> entry : delegateUpdates.entrySet()) {
+                    batch.put(entry.getKey().getData(), entry.getValue());
+                }
+                batch.commit();
+
+                // keep the delegate index in sync with the database
                 for (Entry<ByteArray, byte[]> entry : delegateUpdates.entrySet()) {
-                    if (entry.getValue() == null) {
-                        delegateDB.delete(entry.getKey().getData());
-                    } else {
-                        delegateDB.put(entry.getKey().getData(), entry.getValue());
+                    if (isDelegateEntry(entry.getKey().getData(), entry.getValue())) {
+                        if (entry.getValue() == null) {
+                            index.remove(entry.getKey());
+                        } else {
+                            index.put(Delegate.fromBytes(entry.getKey().getData(), entry.getValue()));
+                        }
                     }
                 }
             } else {
@@ -217,13 +280,11 @@ public class DelegateStateImpl implements Cloneable, DelegateState {
 
         synchronized (voteUpdates) {
             if (prev == null) {
+                UpdateBatch batch = new UpdateBatch(voteDB);
                 for (Entry<ByteArray, byte[]> entry : voteUpdates.entrySet()) {
-                    if (entry.getValue() == null) {
-                        voteDB.delete(entry.getKey().getData());
-                    } else {
-                        voteDB.put(entry.getKey().getData(), entry.getValue());
-                    }
+                    batch.put(entry.getKey().getData(), entry.getValue());
                 }
+                batch.commit();
             } else {
                 for (Entry<ByteArray, byte[]> e : voteUpdates.entrySet()) {
                     prev.voteUpdates.put(e.getKey(), e.getValue());
@@ -236,28 +297,38 @@ public class DelegateStateImpl implements Cloneable, DelegateState {
 
     @Override
     public DelegateState clone() {
-        DelegateStateImpl clone = new DelegateStateImpl(this.chain, this.delegateDB, this.voteDB);
+        DelegateStateImpl clone = new DelegateStateImpl(this.chain, this.delegateDB, this.voteDB, this.index);
         clone.prev = this.prev;
-        clone.voteUpdates.putAll(this.voteUpdates);
-        clone.delegateUpdates.putAll(this.delegateUpdates);
+        for (Entry<ByteArray, byte[]> e : this.voteUpdates.entrySet()) {
+            clone.voteUpdates.put(e.getKey(), e.getValue());
+        }
+        for (Entry<ByteArray, byte[]> e : this.delegateUpdates.entrySet()) {
+            clone.delegateUpdates.put(e.getKey(), e.getValue());
+        }
         return clone;
     }
 
     @Override
     public void rollback() {
-        delegateUpdates.clear();
-        voteUpdates.clear();
+        if (delegateCheckpoint >= 0) {
+            delegateUpdates.revert(delegateCheckpoint);
+            voteUpdates.revert(voteCheckpoint);
+        } else {
+            delegateUpdates.clear();
+            voteUpdates.clear();
+        }
     }
 
     /**
-     * Recursively compute the delegates.
+     * Recursively collects the uncommitted delegates, the most recent update
+     * first.
      *
      * @param map
      */
-    protected void getDelegates(Map<ByteArray, Delegate> map) {
+    protected void getUpdatedDelegates(Map<ByteArray, Delegate> map) {
         for (Entry<ByteArray, byte[]> entry : delegateUpdates.entrySet()) {
             /* filter address */
-            if (entry.getKey().length() == ADDRESS_LEN && !map.containsKey(entry.getKey())) {
+            if (isDelegateEntry(entry.getKey().getData(), entry.getValue()) && !map.containsKey(entry.getKey())) {
                 if (entry.getValue() == null) {
                     map.put(entry.getKey(), null);
                 } else {
@@ -267,21 +338,71 @@ public class DelegateStateImpl implements Cloneable, DelegateState {
         }
 
         if (prev != null) {
-            prev.getDelegates(map);
-        } else {
-            ClosableIterator<Entry<byte[], byte[]>> itr = delegateDB.iterator();
-            while (itr.hasNext()) {
-                Entry<byte[], byte[]> entry = itr.next();
-                ByteArray k = ByteArray.of(entry.getKey()); //name or address
-                byte[] v = entry.getValue();                //address or delegate
-
-                //key is address: length = 20 && value length != 20
-                if (k.length() == ADDRESS_LEN && !map.containsKey(k) && v.length != ADDRESS_LEN) {
-                    map.put(k, Delegate.fromBytes(k.getData(), v));
-                }
+            prev.getUpdatedDelegates(map);
+        }
+    }
+
+    /**
+     * Returns whether this state has updated a delegate, or a name.
+     *
+     * @param k
+     *            a delegate address or name
+     * @return
+     */
+    protected boolean hasDelegateUpdate(ByteArray k) {
+        return delegateUpdates.containsKey(k);
+    }
+
+    /**
+     * Returns whether this state has updated a vote.
+     *
+     * @param key
+     *            the byte array representation of [delegate, voter].
+     * @return
+     */
+    protected boolean hasVoteUpdate(ByteArray key) {
+        return voteUpdates.containsKey(key);
+    }
+
+    /**
+     * Returns whether an entry of the delegate DB maps an address to a
+     * delegate, rather than a name to an address.
+     *
+     * @param key
+     *            a name or an address
+     * @param value
+     *            an address or a delegate, or null if deleted
+     * @return
+     */
+    protected static boolean isDelegateEntry(byte[] key, byte[] value) {
+        return key.length == ADDRESS_LEN && (value == null || value.length != ADDRESS_LEN);
+    }
+
+    /**
+     * Loads the delegate index from database.
+     *
+     * @param delegateDB
+     * @return
+     */
+    protected static DelegateIndex loadIndex(Database delegateDB) {
+        long t1 = System.nanoTime();
+
+        DelegateIndex index = new DelegateIndex();
+        ClosableIterator<Entry<byte[], byte[]>> itr = delegateDB.iterator();
+        while (itr.hasNext()) {
+            Entry<byte[], byte[]> entry = itr.next();
+            byte[] k = entry.getKey();   //name or address
+            byte[] v = entry.getValue(); //address or delegate
+
+            if (isDelegateEntry(k, v)) {
+                index.put(Delegate.fromBytes(k, v));
             }
-            itr.close();
         }
+        itr.close();
+
+        long t2 = System.nanoTime();
+        logger.debug("Loaded {} delegates into the index, duration = {} μs", index.size(), (t2 - t1) / 1000L);
+        return index;
     }
 
     /**
@@ -292,7 +413,7 @@ public class DelegateStateImpl implements Cloneable, DelegateState {
      * @return
      */
     protected Amount getVote(ByteArray key) {
-        if (voteUpdates.containsKey(key)) {
+        if (hasVoteUpdate(key)) {
             byte[] bytes = voteUpdates.get(key);
             return decodeAmount(bytes);
         }
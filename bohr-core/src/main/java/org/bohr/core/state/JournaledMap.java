@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.core.state;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bohr.util.ByteArray;
+
+/**
+ * The uncommitted updates of a tracked state, shared by all the states nested
+ * in it. Every update records the previous value in a journal, so a nested
+ * state is committed by keeping its updates and rolled back by undoing the
+ * journal down to its checkpoint.
+ * <p>
+ * The journal also allows reading the map as it was at a checkpoint, as long as
+ * the journal has not been reverted past that checkpoint.
+ * <p>
+ * The nested states must be committed or rolled back in LIFO order: a nested
+ * state which is neither committed nor rolled back leaves its updates to its
+ * parent.
+ * <p>
+ * A null value stands for a delete.
+ */
+public class JournaledMap {
+
+    /**
+     * The stored value of a delete, as the concurrent map doesn't allow nulls.
+     */
+    private static final byte[] DELETED = new byte[0];
+
+    private static class Change {
+        final ByteArray key;
+        final byte[] previous; // the stored value, null if the key was absent
+        final int previousChange; // the previous change of the same key, or -1
+
+        Change(ByteArray key, byte[] previous, int previousChange) {
+            this.key = key;
+            this.previous = previous;
+            this.previousChange = previousChange;
+        }
+    }
+
+    private final Map<ByteArray, byte[]> map = new ConcurrentHashMap<>();
+
+    private final List<Change> journal = new ArrayList<>();
+
+    /**
+     * The index of the latest change of each key in the journal.
+     */
+    private final Map<ByteArray, Integer> latestChanges = new HashMap<>();
+
+    public boolean containsKey(ByteArray key) {
+        return map.containsKey(key);
+    }
+
+    public byte[] get(ByteArray key) {
+        return decode(map.get(key));
+    }
+
+    public synchronized void put(ByteArray key, byte[] value) {
+        byte[] previous = map.put(key, value == null ? DELETED : value);
+
+        Integer latest = latestChanges.put(key, journal.size());
+        journal.add(new Change(key, previous, latest == null ? -1 : latest));
+    }
+
+    /**
+     * Returns the current position of the journal.
+     *
+     * @return
+     */
+    public synchronized int checkpoint() {
+        return journal.size();
+    }
+
+    /**
+     * Keeps the updates made after the given checkpoint, when a nested state
+     * commits.
+     *
+     * @param checkpoint
+     *            the checkpoint of the nested state
+     * @return the new checkpoint of the nested state
+     */
+    public synchronized int commit(int checkpoint) {
+        checkOrder(checkpoint);
+        return journal.size();
+    }
+
+    /**
+     * Undoes all the updates made after the given checkpoint.
+     *
+     * @param checkpoint
+     */
+    public synchronized void revert(int checkpoint) {
+        checkOrder(checkpoint);
+        for (int i = journal.size() - 1; i >= checkpoint; i--) {
+            Change c = journal.remove(i);
+            if (c.previous == null) {
+                map.remove(c.key);
+            } else {
+                map.put(c.key, c.previous);
+            }
+
+            if (c.previousChange < 0) {
+                latestChanges.remove(c.key);
+            } else {
+                latestChanges.put(c.key, c.previousChange);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the key was present at the given checkpoint.
+     *
+     * @param key
+     * @param checkpoint
+     * @return
+     */
+    public synchronized boolean containsKey(ByteArray key, int checkpoint) {
+        Change c = getFirstChangeSince(key, checkpoint);
+        return c == null ? map.containsKey(key) : c.previous != null;
+    }
+
+    /**
+     * Returns the value of the key at the given checkpoint.
+     *
+     * @param key
+     * @param checkpoint
+     * @return
+     */
+    public synchronized byte[] get(ByteArray key, int checkpoint) {
+        Change c = getFirstChangeSince(key, checkpoint);
+        return decode(c == null ? map.get(key) : c.previous);
+    }
+
+    /**
+     * Returns a read-only view of the updates, with null values for the
+     * deletes.
+     *
+     * @return
+     */
+    public Set<Entry<ByteArray, byte[]>> entrySet() {
+        return new AbstractSet<Entry<ByteArray, byte[]>>() {
+            @Override
+            public Iterator<Entry<ByteArray, byte[]>> iterator() {
+                Iterator<Entry<ByteArray, byte[]>> itr = map.entrySet().iterator();
+                return new Iterator<Entry<ByteArray, byte[]>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return itr.hasNext();
+                    }
+
+                    @Override
+                    public Entry<ByteArray, byte[]> next() {
+                        Entry<ByteArray, byte[]> e = itr.next();
+                        return new SimpleImmutableEntry<>(e.getKey(), decode(e.getValue()));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return map.size();
+            }
+        };
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        journal.clear();
+        latestChanges.clear();
+    }
+
+    /**
+     * Checks that the journal has not been reverted past the checkpoint of a
+     * nested state, which would mean that its parent has been rolled back
+     * before it.
+     */
+    private void checkOrder(int checkpoint) {
+        if (checkpoint > journal.size()) {
+            throw new IllegalStateException("Nested state committed or rolled back after its parent: checkpoint = "
+                    + checkpoint + ", journal size = " + journal.size());
+        }
+    }
+
+    private static byte[] decode(byte[] value) {
+        return value == DELETED ? null : value;
+    }
+
+    private Change getFirstChangeSince(ByteArray key, int checkpoint) {
+        Integer i = latestChanges.get(key);
+        if (i == null || i < checkpoint) {
+            return null;
+        }
+
+        Change c = journal.get(i);
+        while (c.previousChange >= checkpoint) {
+            c = journal.get(c.previousChange);
+        }
+        return c;
+    }
+}
@@ -0,0 +1,486 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.core.state;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.bohr.crypto.Hash;
+import org.bohr.db.Database;
+import org.bohr.db.DatabaseFactory;
+import org.bohr.db.DatabaseName;
+import org.bohr.db.UpdateBatch;
+import org.bohr.util.ByteArray;
+import org.bohr.util.Bytes;
+import org.bohr.util.ClosableIterator;
+import org.bohr.util.exception.UnreachableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An authenticated commitment to the account, delegate and vote databases.
+ *
+ * <pre>
+ * leaf_id     = H(tag || key)
+ * leaf_hash   = H(leaf_id || H(value))
+ * bucket      = the first two bytes of leaf_id
+ * bucket_hash = H(leaf_id || leaf_hash || ...), sorted by leaf_id, or EMPTY_HASH
+ * root        = binary Merkle tree over the 65536 bucket hashes
+ * </pre>
+ *
+ * The leaves and bucket hashes are persisted in the state database, and the
+ * inner nodes are kept in memory. On commit, only the buckets touched since the
+ * previous commit are rehashed, in parallel, and only their paths to the root
+ * are updated, so the cost of a block depends on the number of keys it writes
+ * rather than the size of the state.
+ *
+ * <pre>
+ * state DB structure:
+ *
+ * [0, leaf_id] => [leaf_hash]
+ * [1, bucket] => [bucket_hash]
+ * [2] => [block number]
+ * </pre>
+ */
+public class StateMerkleTree {
+
+    private static final Logger logger = LoggerFactory.getLogger(StateMerkleTree.class);
+
+    protected static final byte TYPE_LEAF = 0;
+    protected static final byte TYPE_BUCKET = 1;
+    protected static final byte TYPE_HEIGHT = 2;
+
+    /**
+     * The databases covered by the state root.
+     */
+    public static final DatabaseName[] STATE_DATABASES = { DatabaseName.ACCOUNT, DatabaseName.DELEGATE,
+            DatabaseName.VOTE };
+
+    public static final int BUCKET_BITS = 16;
+    public static final int NUM_BUCKETS = 1 << BUCKET_BITS;
+
+    /**
+     * The expected time to commit a block, in milliseconds.
+     */
+    public static final long TIME_BUDGET = 100;
+
+    private static final int REBUILD_BATCH_SIZE = 100_000;
+
+    private final Database stateDB;
+
+    /**
+     * The tree nodes, level by level; levels[0] are the bucket hashes and
+     * levels[BUCKET_BITS][0] is the root.
+     */
+    private final byte[][][] levels = new byte[BUCKET_BITS + 1][][];
+
+    /**
+     * The leaf updates since the last commit, or deletes if the value is null.
+     */
+    private final Map<ByteArray, byte[]> pending = new HashMap<>();
+
+    private long height;
+
+    /**
+     * Loads the tree from the state database.
+     *
+     * @param stateDB
+     */
+    public StateMerkleTree(Database stateDB) {
+        this.stateDB = stateDB;
+
+        levels[0] = new byte[NUM_BUCKETS][];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            levels[0][i] = Bytes.EMPTY_HASH;
+        }
+        try (Iteration itr = new Iteration(stateDB, new byte[] { TYPE_BUCKET })) {
+            while (itr.hasNext()) {
+                Entry<byte[], byte[]> e = itr.next();
+                levels[0][toBucket(e.getKey(), 1)] = e.getValue();
+            }
+        }
+        buildLevels();
+
+        byte[] number = stateDB.get(Bytes.of(TYPE_HEIGHT));
+        this.height = (number == null) ? -1 : Bytes.toLong(number);
+    }
+
+    /**
+     * Returns a view of the given database which reports all the writes to this
+     * tree.
+     *
+     * @param name
+     * @param db
+     * @return
+     */
+    public Database track(DatabaseName name, Database db) {
+        return new TrackedDatabase(name, db);
+    }
+
+    /**
+     * Records an update of the state.
+     *
+     * @param name
+     * @param key
+     * @param value
+     *            the new value, or null if the key was deleted
+     */
+    public synchronized void update(DatabaseName name, byte[] key, byte[] value) {
+        byte[] leafId = getLeafId(name, key);
+        pending.put(ByteArray.of(leafId), value == null ? null : getLeafHash(leafId, value));
+    }
+
+    /**
+     * Rehashes the buckets updated since the last commit and records the block
+     * number the tree is in sync with.
+     *
+     * @param number
+     */
+    public synchronized void commit(long number) {
+        long t1 = System.nanoTime();
+
+        Map<Integer, List<Entry<ByteArray, byte[]>>> dirty = pending.entrySet().stream()
+                .collect(Collectors.groupingBy(e -> toBucket(e.getKey().getData(), 0)));
+
+        // the buckets are independent, hash them in parallel
+        Map<Integer, byte[]> hashes = dirty.entrySet().parallelStream()
+                .collect(Collectors.toMap(Entry::getKey, e -> hashBucket(e.getKey(), e.getValue())));
+
+        UpdateBatch batch = new UpdateBatch(stateDB);
+        for (Entry<ByteArray, byte[]> e : pending.entrySet()) {
+            batch.put(Bytes.merge(TYPE_LEAF, e.getKey().getData()), e.getValue());
+        }
+        for (Entry<Integer, byte[]> e : hashes.entrySet()) {
+            batch.put(getBucketKey(e.getKey()), e.getValue());
+        }
+        batch.put(Bytes.of(TYPE_HEIGHT), Bytes.of(number));
+        batch.commit();
+
+        for (Entry<Integer, byte[]> e : hashes.entrySet()) {
+            levels[0][e.getKey()] = e.getValue();
+        }
+        updateLevels(hashes.keySet());
+
+        this.height = number;
+        pending.clear();
+
+        long t2 = System.nanoTime();
+        if ((t2 - t1) / 1_000_000L > TIME_BUDGET) {
+            logger.warn("State root of block #{} took {} ms to compute, {} buckets updated", number,
+                    (t2 - t1) / 1_000_000L, hashes.size());
+        }
+    }
+
+    /**
+     * Rebuilds the tree from the state databases, which should be at the given
+     * block number.
+     *
+     * @param dbFactory
+     * @param number
+     */
+    public synchronized void rebuild(DatabaseFactory dbFactory, long number) {
+        logger.info("Rebuilding the state tree at block #{}, this may take a while", number);
+        long t1 = System.currentTimeMillis();
+
+        pending.clear();
+
+        // [1] remove the existing tree
+        List<Pair<byte[], byte[]>> batch = new ArrayList<>();
+        try (Iteration itr = new Iteration(stateDB, null)) {
+            while (itr.hasNext()) {
+                batch.add(Pair.of(itr.next().getKey(), null));
+                if (batch.size() >= REBUILD_BATCH_SIZE) {
+                    stateDB.updateBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
+        stateDB.updateBatch(batch);
+        batch.clear();
+
+        // [2] write all the leaves
+        for (DatabaseName name : STATE_DATABASES) {
+            try (Iteration itr = new Iteration(dbFactory.getDB(name), null)) {
+                while (itr.hasNext()) {
+                    Entry<byte[], byte[]> e = itr.next();
+                    byte[] leafId = getLeafId(name, e.getKey());
+                    batch.add(Pair.of(Bytes.merge(TYPE_LEAF, leafId), getLeafHash(leafId, e.getValue())));
+                    if (batch.size() >= REBUILD_BATCH_SIZE) {
+                        stateDB.updateBatch(batch);
+                        batch.clear();
+                    }
+                }
+            }
+        }
+        stateDB.updateBatch(batch);
+        batch.clear();
+
+        // [3] hash the buckets, the leaves are sorted by bucket
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            levels[0][i] = Bytes.EMPTY_HASH;
+        }
+        try (Iteration itr = new Iteration(stateDB, new byte[] { TYPE_LEAF })) {
+            int bucket = -1;
+            List<byte[]> leaves = new ArrayList<>();
+            while (itr.hasNext()) {
+                Entry<byte[], byte[]> e = itr.next();
+                int b = toBucket(e.getKey(), 1);
+                if (b != bucket && !leaves.isEmpty()) {
+                    levels[0][bucket] = Hash.h256(Bytes.merge(leaves));
+                    leaves.clear();
+                }
+                bucket = b;
+                leaves.add(Bytes.merge(leafIdOf(e.getKey()), e.getValue()));
+            }
+            if (!leaves.isEmpty()) {
+                levels[0][bucket] = Hash.h256(Bytes.merge(leaves));
+            }
+        }
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if (levels[0][i] != Bytes.EMPTY_HASH) {
+                batch.add(Pair.of(getBucketKey(i), levels[0][i]));
+            }
+        }
+        batch.add(Pair.of(Bytes.of(TYPE_HEIGHT), Bytes.of(number)));
+        stateDB.updateBatch(batch);
+
+        buildLevels();
+        this.height = number;
+
+        long t2 = System.currentTimeMillis();
+        logger.info("State tree rebuilt in {} ms, root = {}", t2 - t1, ByteArray.toHexString(getRoot()));
+    }
+
+    /**
+     * Returns the root of the tree.
+     *
+     * @return
+     */
+    public synchronized byte[] getRoot() {
+        return levels[BUCKET_BITS][0];
+    }
+
+    /**
+     * Returns the block number of the last commit, or -1 if the tree has never
+     * been committed.
+     *
+     * @return
+     */
+    public synchronized long getHeight() {
+        return height;
+    }
+
+    protected byte[] hashBucket(int bucket, List<Entry<ByteArray, byte[]>> changes) {
+        TreeMap<ByteArray, byte[]> leaves = new TreeMap<>();
+
+        byte[] prefix = getLeafPrefix(bucket);
+        try (Iteration itr = new Iteration(stateDB, prefix)) {
+            while (itr.hasNext()) {
+                Entry<byte[], byte[]> e = itr.next();
+                leaves.put(ByteArray.of(leafIdOf(e.getKey())), e.getValue());
+            }
+        }
+        for (Entry<ByteArray, byte[]> e : changes) {
+            if (e.getValue() == null) {
+                leaves.remove(e.getKey());
+            } else {
+                leaves.put(e.getKey(), e.getValue());
+            }
+        }
+
+        if (leaves.isEmpty()) {
+            return Bytes.EMPTY_HASH;
+        }
+
+        List<byte[]> list = new ArrayList<>(leaves.size());
+        for (Entry<ByteArray, byte[]> e : leaves.entrySet()) {
+            list.add(Bytes.merge(e.getKey().getData(), e.getValue()));
+        }
+        return Hash.h256(Bytes.merge(list));
+    }
+
+    protected void buildLevels() {
+        for (int l = 1; l <= BUCKET_BITS; l++) {
+            levels[l] = new byte[NUM_BUCKETS >> l][];
+            for (int i = 0; i < levels[l].length; i++) {
+                levels[l][i] = Hash.h256(levels[l - 1][2 * i], levels[l - 1][2 * i + 1]);
+            }
+        }
+    }
+
+    protected void updateLevels(Set<Integer> buckets) {
+        Set<Integer> dirty = buckets;
+        for (int l = 1; l <= BUCKET_BITS; l++) {
+            Set<Integer> parents = new HashSet<>();
+            for (int i : dirty) {
+                parents.add(i >> 1);
+            }
+            for (int i : parents) {
+                levels[l][i] = Hash.h256(levels[l - 1][2 * i], levels[l - 1][2 * i + 1]);
+            }
+            dirty = parents;
+        }
+    }
+
+    protected static byte[] getLeafId(DatabaseName name, byte[] key) {
+        return Hash.h256(Bytes.merge(getTag(name), key));
+    }
+
+    protected static byte[] getLeafHash(byte[] leafId, byte[] value) {
+        return Hash.h256(leafId, Hash.h256(value));
+    }
+
+    protected static byte getTag(DatabaseName name) {
+        switch (name) {
+        case ACCOUNT:
+            return 0;
+        case DELEGATE:
+            return 1;
+        case VOTE:
+            return 2;
+        default:
+            throw new UnreachableException();
+        }
+    }
+
+    protected static int toBucket(byte[] b, int offset) {
+        return ((b[offset] & 0xff) << 8) | (b[offset + 1] & 0xff);
+    }
+
+    protected static byte[] getBucketKey(int bucket) {
+        return new byte[] { TYPE_BUCKET, (byte) (bucket >> 8), (byte) bucket };
+    }
+
+    protected static byte[] getLeafPrefix(int bucket) {
+        return new byte[] { TYPE_LEAF, (byte) (bucket >> 8), (byte) bucket };
+    }
+
+    protected static byte[] leafIdOf(byte[] leafKey) {
+        byte[] leafId = new byte[leafKey.length - 1];
+        System.arraycopy(leafKey, 1, leafId, 0, leafId.length);
+        return leafId;
+    }
+
+    /**
+     * Iterates the entries of a database with the given prefix.
+     */
+    private static class Iteration implements AutoCloseable {
+        private final ClosableIterator<Entry<byte[], byte[]>> itr;
+        private final byte[] prefix;
+        private Entry<byte[], byte[]> next;
+
+        Iteration(Database db, byte[] prefix) {
+            this.itr = db.iterator(prefix);
+            this.prefix = prefix;
+        }
+
+        boolean hasNext() {
+            if (next == null && itr.hasNext()) {
+                Entry<byte[], byte[]> e = itr.next();
+                if (prefix == null || startsWith(e.getKey(), prefix)) {
+                    next = e;
+                }
+            }
+            return next != null;
+        }
+
+        Entry<byte[], byte[]> next() {
+            Entry<byte[], byte[]> e = next;
+            next = null;
+            return e;
+        }
+
+        @Override
+        public void close() {
+            itr.close();
+        }
+
+        private static boolean startsWith(byte[] key, byte[] prefix) {
+            if (key.length < prefix.length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (key[i] != prefix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A database which reports all the writes to the tree.
+     */
+    private class TrackedDatabase implements Database {
+        private final DatabaseName name;
+        private final Database db;
+
+        TrackedDatabase(DatabaseName name, Database db) {
+            this.name = name;
+            this.db = db;
+        }
+
+        @Override
+        public byte[] get(byte[] key) {
+            return db.get(key);
+        }
+
+        @Override
+        public void put(byte[] key, byte[] value) {
+            db.put(key, value);
+            update(name, key, value);
+        }
+
+        @Override
+        public void delete(byte[] key) {
+            db.delete(key);
+            update(name, key, null);
+        }
+
+        @Override
+        public void updateBatch(List<Pair<byte[], byte[]>> pairs) {
+            db.updateBatch(pairs);
+            for (Pair<byte[], byte[]> p : pairs) {
+                update(name, p.getLeft(), p.getRight());
+            }
+        }
+
+        @Override
+        public ClosableIterator<Entry<byte[], byte[]>> iterator() {
+            return db.iterator();
+        }
+
+        @Override
+        public ClosableIterator<Entry<byte[], byte[]>> iterator(byte[] prefix) {
+            return db.iterator(prefix);
+        }
+
+        @Override
+        public void close() {
+            db.close();
+        }
+
+        @Override
+        public void destroy() {
+            db.destroy();
+        }
+
+        @Override
+        public Path getDataDir() {
+            return db.getDataDir();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.db;
+
+import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.bohr.util.ByteArray;
+import org.bohr.util.ClosableIterator;
+
+/**
+ * A database which keeps the writes in memory until {@link #flush()} is called,
+ * and then writes them in one batch.
+ * <p>
+ * Reads and iterations see the pending writes. The writes are kept in key
+ * order, so the iterators are merged with the ones of the underlying database
+ * without sorting.
+ */
+public class BufferedDatabase implements Database {
+
+    private final Database db;
+
+    /**
+     * The pending writes, or deletes if the value is null.
+     */
+    private final NavigableMap<ByteArray, byte[]> buffer = new TreeMap<>();
+
+    public BufferedDatabase(Database db) {
+        this.db = db;
+    }
+
+    @Override
+    public synchronized byte[] get(byte[] key) {
+        ByteArray k = ByteArray.of(key);
+        return buffer.containsKey(k) ? buffer.get(k) : db.get(key);
+    }
+
+    @Override
+    public synchronized void put(byte[] key, byte[] value) {
+        buffer.put(ByteArray.of(key), value);
+    }
+
+    @Override
+    public synchronized void delete(byte[] key) {
+        buffer.put(ByteArray.of(key), null);
+    }
+
+    @Override
+    public synchronized void updateBatch(List<Pair<byte[], byte[]>> pairs) {
+        for (Pair<byte[], byte[]> p : pairs) {
+            buffer.put(ByteArray.of(p.getLeft()), p.getRight());
+        }
+    }
+
+    /**
+     * Returns the number of pending writes.
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return buffer.size();
+    }
+
+    /**
+     * Writes the pending writes to the underlying database, in one batch.
+     */
+    public synchronized void flush() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+
+        List<Pair<byte[], byte[]>> pairs = new ArrayList<>(buffer.size());
+        for (Entry<ByteArray, byte[]> e : buffer.entrySet()) {
+            pairs.add(Pair.of(e.getKey().getData(), e.getValue()));
+        }
+        db.updateBatch(pairs);
+        buffer.clear();
+    }
+
+    @Override
+    public ClosableIterator<Entry<byte[], byte[]>> iterator() {
+        return iterator(null);
+    }
+
+    /**
+     * Returns the entries from the given key, with the pending writes applied.
+     * The pending writes are copied, so the iterator is not affected by later
+     * writes.
+     */
+    @Override
+    public synchronized ClosableIterator<Entry<byte[], byte[]>> iterator(byte[] prefix) {
+        NavigableMap<ByteArray, byte[]> pending = new TreeMap<>(
+                prefix == null ? buffer : buffer.tailMap(ByteArray.of(prefix), true));
+        return new MergedIterator(db.iterator(prefix), pending.entrySet().iterator());
+    }
+
+    @Override
+    public void close() {
+        db.close();
+    }
+
+    @Override
+    public void destroy() {
+        synchronized (this) {
+            buffer.clear();
+        }
+        db.destroy();
+    }
+
+    @Override
+    public Path getDataDir() {
+        return db.getDataDir();
+    }
+
+    /**
+     * Merges two iterators sorted by key, the pending writes taking precedence.
+     */
+    private static class MergedIterator implements ClosableIterator<Entry<byte[], byte[]>> {
+        private final ClosableIterator<Entry<byte[], byte[]>> stored;
+        private final Iterator<Entry<ByteArray, byte[]>> pending;
+
+        private Entry<byte[], byte[]> nextStored;
+        private Entry<ByteArray, byte[]> nextPending;
+        private Entry<byte[], byte[]> next;
+
+        MergedIterator(ClosableIterator<Entry<byte[], byte[]>> stored, Iterator<Entry<ByteArray, byte[]>> pending) {
+            this.stored = stored;
+            this.pending = pending;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (nextStored == null && stored.hasNext()) {
+                    nextStored = stored.next();
+                }
+                if (nextPending == null && pending.hasNext()) {
+                    nextPending = pending.next();
+                }
+                if (nextStored == null && nextPending == null) {
+                    return false;
+                }
+
+                int cmp = nextStored == null ? 1
+                        : nextPending == null ? -1
+                                : ByteArray.of(nextStored.getKey()).compareTo(nextPending.getKey());
+                if (cmp < 0) {
+                    next = nextStored;
+                    nextStored = null;
+                } else {
+                    if (cmp == 0) {
+                        // overwritten or deleted
+                        nextStored = null;
+                    }
+                    if (nextPending.getValue() != null) {
+                        next = new SimpleImmutableEntry<>(nextPending.getKey().getData(), nextPending.getValue());
+                    }
+                    nextPending = null;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Entry<byte[], byte[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<byte[], byte[]> e = next;
+            next = null;
+            return e;
+        }
+
+        @Override
+        public void close() {
+            stored.close();
+        }
+    }
+}
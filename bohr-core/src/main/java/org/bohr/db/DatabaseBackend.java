@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.db;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * The storage engines of the databases.
+ */
+public enum DatabaseBackend {
+
+    /**
+     * One LevelDB instance per database.
+     */
+    LEVELDB {
+        @Override
+        public DatabaseFactory createFactory(File dataDir) {
+            return new LeveldbDatabase.LeveldbFactory(dataDir);
+        }
+
+        @Override
+        public DatabaseFactory createReadOnlyFactory(File dataDir) {
+            return new LeveldbDatabase.CopyingFactory(dataDir);
+        }
+    },
+
+    /**
+     * One RocksDB instance, with a column family per database.
+     */
+    ROCKSDB {
+        @Override
+        public DatabaseFactory createFactory(File dataDir) {
+            return new RocksdbDatabase.RocksdbFactory(dataDir);
+        }
+
+        @Override
+        public DatabaseFactory createReadOnlyFactory(File dataDir) {
+            return new RocksdbDatabase.RocksdbFactory(dataDir, true);
+        }
+    };
+
+    /**
+     * Creates a database factory in the given directory.
+     *
+     * @param dataDir
+     * @return
+     */
+    public abstract DatabaseFactory createFactory(File dataDir);
+
+    /**
+     * Creates a database factory which reads the databases in the given
+     * directory without modifying them.
+     *
+     * @param dataDir
+     * @return
+     */
+    public abstract DatabaseFactory createReadOnlyFactory(File dataDir);
+
+    /**
+     * Detects the backend of the databases in the given directory.
+     *
+     * @param dataDir
+     * @return the backend, or null if the directory contains no database
+     */
+    public static DatabaseBackend detect(File dataDir) {
+        if (new File(dataDir, "CURRENT").exists()) {
+            return ROCKSDB;
+        } else if (new File(dataDir, DatabaseName.INDEX.name().toLowerCase(Locale.ROOT)).exists()) {
+            return LEVELDB;
+        } else {
+            return null;
+        }
+    }
+}
@@ -31,5 +31,10 @@ public enum DatabaseName {
     /**
      * Delegate vote data.
      */
-    VOTE
+    VOTE,
+
+    /**
+     * Authenticated state tree.
+     */
+    STATE
 }
\ No newline at end of file
@@ -18,11 +18,13 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map.Entry;
+import java.util.stream.Stream;
 
 import static org.fusesource.leveldbjni.JniDBFactory.factory;
 
@@ -241,4 +243,71 @@ public class LeveldbDatabase implements Database {
             return dataDir.toPath();
         }
     }
+
+    /**
+     * A factory reading the databases of a directory without modifying them.
+     * LevelDB can't open a database read-only, so every database is copied when
+     * first requested, and the copies are deleted on close.
+     */
+    public static class CopyingFactory implements DatabaseFactory {
+
+        private final File dataDir;
+
+        private final File copyDir;
+
+        private final LeveldbFactory copies;
+
+        public CopyingFactory(File dataDir) {
+            this.dataDir = dataDir;
+            this.copyDir = new File(dataDir.getAbsolutePath() + "-copy");
+            FileUtil.recursiveDelete(copyDir);
+            this.copies = new LeveldbFactory(copyDir);
+        }
+
+        @Override
+        public synchronized Database getDB(DatabaseName name) {
+            String dir = name.toString().toLowerCase(Locale.ROOT);
+            File copy = new File(copyDir, dir);
+            if (!copy.exists()) {
+                copy(new File(dataDir, dir).toPath(), copy.toPath());
+            }
+            return copies.getDB(name);
+        }
+
+        @Override
+        public synchronized void close() {
+            copies.close();
+            FileUtil.recursiveDelete(copyDir);
+        }
+
+        @Override
+        public Path getDataDir() {
+            return dataDir.toPath();
+        }
+
+        private static void copy(Path from, Path to) {
+            // a missing database is created empty, as it would be in the data directory
+            if (!Files.isDirectory(from)) {
+                logger.info("Database {} not found, creating an empty one", from);
+                return;
+            }
+
+            logger.info("Copying database {} to {}", from, to);
+            try {
+                Files.createDirectories(to.getParent());
+            } catch (IOException e) {
+                throw new DatabaseException(e);
+            }
+            try (Stream<Path> files = Files.walk(from)) {
+                for (Path f : (Iterable<Path>) files::iterator) {
+                    // the lock is held by the node using the database, if any
+                    if (!f.getFileName().toString().equals("LOCK")) {
+                        Files.copy(f, to.resolve(from.relativize(f)));
+                    }
+                }
+            } catch (IOException e) {
+                throw new DatabaseException(e);
+            }
+        }
+    }
 }
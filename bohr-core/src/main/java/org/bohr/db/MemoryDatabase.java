@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.db;
+
+import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.bohr.util.ByteArray;
+import org.bohr.util.ClosableIterator;
+
+/**
+ * A database kept in memory, sorted by key like the on-disk databases. Used to
+ * run the node without disk, e.g. in benchmarks.
+ */
+public class MemoryDatabase implements Database {
+
+    private final NavigableMap<ByteArray, byte[]> map = new ConcurrentSkipListMap<>();
+
+    @Override
+    public byte[] get(byte[] key) {
+        return map.get(ByteArray.of(key));
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        map.put(ByteArray.of(key), value);
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        map.remove(ByteArray.of(key));
+    }
+
+    @Override
+    public void updateBatch(List<Pair<byte[], byte[]>> pairs) {
+        for (Pair<byte[], byte[]> p : pairs) {
+            if (p.getValue() == null) {
+                map.remove(ByteArray.of(p.getLeft()));
+            } else {
+                map.put(ByteArray.of(p.getLeft()), p.getRight());
+            }
+        }
+    }
+
+    @Override
+    public ClosableIterator<Entry<byte[], byte[]>> iterator() {
+        return iterator(null);
+    }
+
+    @Override
+    public ClosableIterator<Entry<byte[], byte[]>> iterator(byte[] prefix) {
+        Iterator<Entry<ByteArray, byte[]>> itr = (prefix == null ? map : map.tailMap(ByteArray.of(prefix), true))
+                .entrySet().iterator();
+
+        return new ClosableIterator<Entry<byte[], byte[]>>() {
+            @Override
+            public boolean hasNext() {
+                return itr.hasNext();
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() {
+                Entry<ByteArray, byte[]> e = itr.next();
+                return new SimpleImmutableEntry<>(e.getKey().getData(), e.getValue());
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        // the data is kept until the database is destroyed
+    }
+
+    @Override
+    public void destroy() {
+        map.clear();
+    }
+
+    /**
+     * Returns null, as the database is not stored on disk.
+     */
+    @Override
+    public Path getDataDir() {
+        return null;
+    }
+
+    public static class MemoryFactory implements DatabaseFactory {
+
+        private final EnumMap<DatabaseName, Database> databases = new EnumMap<>(DatabaseName.class);
+
+        @Override
+        public synchronized Database getDB(DatabaseName name) {
+            return databases.computeIfAbsent(name, k -> new MemoryDatabase());
+        }
+
+        @Override
+        public synchronized void close() {
+            databases.clear();
+        }
+
+        /**
+         * Returns null, as the databases are not stored on disk.
+         */
+        @Override
+        public Path getDataDir() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ * <p>
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.db;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.bohr.db.exception.DatabaseException;
+import org.bohr.util.ClosableIterator;
+import org.bohr.util.SystemUtil;
+import org.rocksdb.AbstractNativeReference;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.CompressionType;
+import org.rocksdb.DBOptions;
+import org.rocksdb.LRUCache;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+/**
+ * A database stored in a column family of a RocksDB instance.
+ * <p>
+ * All the databases created by a {@link RocksdbFactory} share one RocksDB
+ * instance, one block cache and one write-ahead log, and each of them is tuned
+ * for its access pattern.
+ */
+public class RocksdbDatabase implements Database {
+
+    private static final Logger logger = LoggerFactory.getLogger(RocksdbDatabase.class);
+
+    /**
+     * The length of the vote key prefix, the delegate address.
+     */
+    private static final int VOTE_PREFIX_LENGTH = 20;
+
+    private final RocksdbFactory factory;
+    private final DatabaseName name;
+    private ColumnFamilyHandle handle;
+
+    private RocksdbDatabase(RocksdbFactory factory, DatabaseName name, ColumnFamilyHandle handle) {
+        this.factory = factory;
+        this.name = name;
+        this.handle = handle;
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        try {
+            return factory.db.get(handle, key);
+        } catch (RocksDBException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        try {
+            factory.db.put(handle, factory.writeOptions, key, value);
+        } catch (RocksDBException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        try {
+            factory.db.delete(handle, factory.writeOptions, key);
+        } catch (RocksDBException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    @Override
+    public void updateBatch(List<Pair<byte[], byte[]>> pairs) {
+        try (WriteBatch batch = new WriteBatch()) {
+            for (Pair<byte[], byte[]> p : pairs) {
+                if (p.getValue() == null) {
+                    batch.delete(handle, p.getLeft());
+                } else {
+                    batch.put(handle, p.getLeft(), p.getRight());
+                }
+            }
+            factory.db.write(factory.writeOptions, batch);
+        } catch (RocksDBException e) {
+            logger.error("Failed to update batch", e);
+            SystemUtil.exitAsync(SystemUtil.Code.FAILED_TO_WRITE_BATCH_TO_DB);
+        }
+    }
+
+    @Override
+    public void close() {
+        // the column family is closed with the factory
+    }
+
+    /**
+     * Drops the column family and creates an empty one.
+     */
+    @Override
+    public void destroy() {
+        try {
+            factory.db.dropColumnFamily(handle);
+            handle.close();
+            handle = factory.db.createColumnFamily(factory.getDescriptor(name));
+        } catch (RocksDBException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    @Override
+    public Path getDataDir() {
+        return factory.getDataDir();
+    }
+
+    @Override
+    public ClosableIterator<Entry<byte[], byte[]>> iterator() {
+        return iterator(null);
+    }
+
+    @Override
+    public ClosableIterator<Entry<byte[], byte[]>> iterator(byte[] prefix) {
+        ReadOptions readOptions = new ReadOptions();
+        if (prefix != null && name == DatabaseName.VOTE && prefix.length >= VOTE_PREFIX_LENGTH) {
+            // the prefix bloom filters only apply within one prefix
+            readOptions.setPrefixSameAsStart(true);
+        } else {
+            readOptions.setTotalOrderSeek(true);
+        }
+
+        RocksIterator itr = factory.db.newIterator(handle, readOptions);
+        if (prefix != null) {
+            itr.seek(prefix);
+        } else {
+            itr.seekToFirst();
+        }
+
+        return new ClosableIterator<Entry<byte[], byte[]>>() {
+            @Override
+            public boolean hasNext() {
+                return itr.isValid();
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() {
+                if (!itr.isValid()) {
+                    throw new NoSuchElementException();
+                }
+                Entry<byte[], byte[]> e = new SimpleImmutableEntry<>(itr.key(), itr.value());
+                itr.next();
+                return e;
+            }
+
+            @Override
+            public void close() {
+                itr.close();
+                readOptions.close();
+            }
+        };
+    }
+
+    public static class RocksdbFactory implements DatabaseFactory {
+
+        private static final long BLOCK_CACHE_SIZE = 256L * 1024 * 1024;
+
+        private final EnumMap<DatabaseName, Database> databases = new EnumMap<>(DatabaseName.class);
+
+        private final File dataDir;
+
+        private final boolean readOnly;
+
+        private final List<AbstractNativeReference> resources = new ArrayList<>();
+
+        private RocksDB db;
+        private WriteOptions writeOptions;
+        private LRUCache blockCache;
+
+        public RocksdbFactory(File dataDir) {
+            this(dataDir, false);
+        }
+
+        /**
+         * Creates a factory of the databases in the given directory.
+         *
+         * @param dataDir
+         * @param readOnly
+         *            whether to open the existing databases read-only
+         */
+        public RocksdbFactory(File dataDir, boolean readOnly) {
+            this.dataDir = dataDir;
+            this.readOnly = readOnly;
+        }
+
+        @Override
+        public synchronized Database getDB(DatabaseName name) {
+            if (db == null) {
+                open();
+            }
+            return databases.get(name);
+        }
+
+        /**
+         * Opens the RocksDB instance, with a column family for every database.
+         */
+        protected void open() {
+            RocksDB.loadLibrary();
+
+            if (!readOnly && !dataDir.exists() && !dataDir.mkdirs()) {
+                logger.error("Failed to create directory: {}", dataDir);
+            }
+
+            blockCache = track(new LRUCache(BLOCK_CACHE_SIZE));
+            writeOptions = track(new WriteOptions());
+
+            DBOptions options = track(new DBOptions());
+            options.setCreateIfMissing(true);
+            options.setCreateMissingColumnFamilies(true);
+            options.setMaxOpenFiles(512);
+            options.setIncreaseParallelism(Math.max(2, Runtime.getRuntime().availableProcessors()));
+            options.setParanoidChecks(true);
+
+            List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+            descriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY,
+                    track(new ColumnFamilyOptions())));
+            for (DatabaseName name : DatabaseName.values()) {
+                descriptors.add(getDescriptor(name));
+            }
+
+            List<ColumnFamilyHandle> handles = new ArrayList<>();
+            try {
+                db = readOnly ? RocksDB.openReadOnly(options, dataDir.getAbsolutePath(), descriptors, handles)
+                        : RocksDB.open(options, dataDir.getAbsolutePath(), descriptors, handles);
+            } catch (RocksDBException e) {
+                logger.error("Failed to open database: {}", dataDir, e);
+                SystemUtil.exitAsync(SystemUtil.Code.FAILED_TO_OPEN_DB);
+                throw new DatabaseException(e);
+            }
+
+            resources.add(handles.get(0));
+            for (DatabaseName name : DatabaseName.values()) {
+                databases.put(name, new RocksdbDatabase(this, name, handles.get(name.ordinal() + 1)));
+            }
+        }
+
+        /**
+         * Creates the column family descriptor of a database.
+         *
+         * <ul>
+         * <li>ACCOUNT, DELEGATE, INDEX and STATE are read by key, with small blocks and
+         * bloom filters</li>
+         * <li>BLOCK is mostly written, and read in large values, with large compressed
+         * blocks</li>
+         * <li>VOTE is iterated by delegate, with bloom filters on the delegate
+         * prefix</li>
+         * </ul>
+         *
+         * @param name
+         * @return
+         */
+        protected ColumnFamilyDescriptor getDescriptor(DatabaseName name) {
+            BlockBasedTableConfig table = new BlockBasedTableConfig();
+            table.setBlockCache(blockCache);
+            table.setCacheIndexAndFilterBlocks(true);
+            table.setPinL0FilterAndIndexBlocksInCache(true);
+
+            ColumnFamilyOptions options = track(new ColumnFamilyOptions());
+            options.setLevelCompactionDynamicLevelBytes(true);
+
+            switch (name) {
+            case BLOCK:
+                table.setBlockSize(64 * 1024);
+                options.setCompressionType(CompressionType.LZ4_COMPRESSION);
+                options.setBottommostCompressionType(CompressionType.ZSTD_COMPRESSION);
+                options.setWriteBufferSize(64L * 1024 * 1024);
+                break;
+            case VOTE:
+                table.setBlockSize(4 * 1024);
+                table.setFilterPolicy(track(new BloomFilter(10, false)));
+                options.useFixedLengthPrefixExtractor(VOTE_PREFIX_LENGTH);
+                options.setCompressionType(CompressionType.LZ4_COMPRESSION);
+                break;
+            default:
+                table.setBlockSize(4 * 1024);
+                table.setFilterPolicy(track(new BloomFilter(10, false)));
+                options.setCompressionType(CompressionType.LZ4_COMPRESSION);
+                options.setWriteBufferSize(32L * 1024 * 1024);
+                break;
+            }
+            options.setTableFormatConfig(table);
+
+            return new ColumnFamilyDescriptor(name.toString().toLowerCase(Locale.ROOT)
+                    .getBytes(StandardCharsets.UTF_8), options);
+        }
+
+        private <T extends AbstractNativeReference> T track(T resource) {
+            resources.add(resource);
+            return resource;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (db == null) {
+                return;
+            }
+
+            for (Database d : databases.values()) {
+                ((RocksdbDatabase) d).handle.close();
+            }
+            databases.clear();
+
+            db.close();
+            db = null;
+
+            for (int i = resources.size() - 1; i >= 0; i--) {
+                resources.get(i).close();
+            }
+            resources.clear();
+        }
+
+        @Override
+        public Path getDataDir() {
+            return dataDir.toPath();
+        }
+    }
+}
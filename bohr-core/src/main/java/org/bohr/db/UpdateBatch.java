@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.bohr.util.ByteArray;
+
+/**
+ * A set of pending updates against one {@link Database}, which are written
+ * atomically through {@link Database#updateBatch(List)}.
+ * <p>
+ * Reads through {@link #get(byte[])} observe the pending updates first, so that
+ * read-modify-write sequences (e.g. counters) can be accumulated in one batch.
+ */
+public class UpdateBatch {
+
+    private final Database db;
+
+    /**
+     * All updates, or deletes if the value is null.
+     */
+    private final Map<ByteArray, byte[]> updates = new LinkedHashMap<>();
+
+    public UpdateBatch(Database db) {
+        this.db = db;
+    }
+
+    /**
+     * Returns the value mapped to the specified key, taking the pending updates
+     * into account.
+     *
+     * @param key
+     * @return
+     */
+    public byte[] get(byte[] key) {
+        ByteArray k = ByteArray.of(key);
+        return updates.containsKey(k) ? updates.get(k) : db.get(key);
+    }
+
+    /**
+     * Associates a value to the specified key.
+     *
+     * @param key
+     * @param value
+     *            the value, or null to delete the key
+     */
+    public void put(byte[] key, byte[] value) {
+        updates.put(ByteArray.of(key), value);
+    }
+
+    /**
+     * Deletes the specified key.
+     *
+     * @param key
+     */
+    public void delete(byte[] key) {
+        updates.put(ByteArray.of(key), null);
+    }
+
+    /**
+     * Returns the number of pending updates.
+     *
+     * @return
+     */
+    public int size() {
+        return updates.size();
+    }
+
+    /**
+     * Writes all pending updates to the database and clears this batch.
+     */
+    public void commit() {
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        List<Pair<byte[], byte[]>> pairs = new ArrayList<>(updates.size());
+        for (Entry<ByteArray, byte[]> e : updates.entrySet()) {
+            pairs.add(Pair.of(e.getKey().getData(), e.getValue()));
+        }
+        db.updateBatch(pairs);
+        updates.clear();
+    }
+
+    /**
+     * Discards all pending updates.
+     */
+    public void clear() {
+        updates.clear();
+    }
+}
@@ -28,9 +28,9 @@ import org.bohr.config.Config;
 import org.bohr.core.BftManager;
 import org.bohr.core.Block;
 import org.bohr.core.BlockHeader;
-import org.bohr.core.BlockPart;
 import org.bohr.core.Blockchain;
 import org.bohr.core.PendingManager;
+import org.bohr.core.Snapshot;
 import org.bohr.core.SyncManager;
 import org.bohr.net.NodeManager.Node;
 import org.bohr.net.msg.Message;
@@ -39,10 +39,16 @@ import org.bohr.net.msg.ReasonCode;
 import org.bohr.net.msg.consensus.BlockHeaderMessage;
 import org.bohr.net.msg.consensus.BlockMessage;
 import org.bohr.net.msg.consensus.BlockPartsMessage;
+import org.bohr.net.msg.consensus.BlockRangeMessage;
 import org.bohr.net.msg.consensus.GetBlockHeaderMessage;
 import org.bohr.net.msg.consensus.GetBlockMessage;
 import org.bohr.net.msg.consensus.GetBlockPartsMessage;
+import org.bohr.net.msg.consensus.GetBlockRangeMessage;
+import org.bohr.net.msg.consensus.GetSnapshotChunkMessage;
+import org.bohr.net.msg.consensus.GetSnapshotManifestMessage;
 import org.bohr.net.msg.consensus.NewHeightMessage;
+import org.bohr.net.msg.consensus.SnapshotChunkMessage;
+import org.bohr.net.msg.consensus.SnapshotManifestMessage;
 import org.bohr.net.msg.p2p.DisconnectMessage;
 import org.bohr.net.msg.p2p.GetNodesMessage;
 import org.bohr.net.msg.p2p.NodesMessage;
@@ -261,6 +267,12 @@ public class BohrP2pHandler extends SimpleChannelInboundHandler<Message> {
         case BLOCK_HEADER:
         case GET_BLOCK_PARTS:
         case BLOCK_PARTS:
+        case GET_BLOCK_RANGE:
+        case BLOCK_RANGE:
+        case GET_SNAPSHOT_MANIFEST:
+        case SNAPSHOT_MANIFEST:
+        case GET_SNAPSHOT_CHUNK:
+        case SNAPSHOT_CHUNK:
             onSync(msg);
             break;
 
@@ -469,33 +481,67 @@ public class BohrP2pHandler extends SimpleChannelInboundHandler<Message> {
             long number = m.getNumber();
             int parts = m.getParts();
 
-            List<byte[]> partsSerialized = new ArrayList<>();
-            Block block = chain.getBlock(number);
-            for (BlockPart part : BlockPart.decode(parts)) {
-                switch (part) {
-                case HEADER:
-                    partsSerialized.add(block.getEncodedHeader());
-                    break;
-                case TRANSACTIONS:
-                    partsSerialized.add(block.getEncodedTransactions());
-                    break;
-                case RESULTS:
-                    partsSerialized.add(block.getEncodedResults());
+            List<byte[]> partsSerialized = chain.getBlockParts(number, parts);
+            if (partsSerialized == null) {
+                logger.debug("Block parts of #{} requested by {} not found", number, channel.getRemoteIp());
+                break;
+            }
+
+            channel.getMessageQueue().sendMessage(new BlockPartsMessage(number, parts, partsSerialized));
+            break;
+        }
+        case GET_BLOCK_RANGE: {
+            GetBlockRangeMessage m = (GetBlockRangeMessage) msg;
+            long from = m.getFrom();
+            int count = Math.min(m.getCount(), GetBlockRangeMessage.MAX_BLOCKS);
+            int parts = m.getParts();
+
+            // stop at the first missing block or when the packet gets too large
+            List<List<byte[]>> blocks = new ArrayList<>();
+            long size = 0;
+            for (long n = from; n < from + count; n++) {
+                List<byte[]> data = chain.getBlockParts(n, parts);
+                if (data == null) {
                     break;
-                case VOTES:
-                    partsSerialized.add(block.getEncodedVotes());
+                }
+
+                long blockSize = data.stream().mapToLong(b -> b.length).sum();
+                if (!blocks.isEmpty() && size + blockSize > config.netMaxPacketSize() / 2) {
                     break;
-                default:
-                    throw new UnreachableException();
                 }
+                blocks.add(data);
+                size += blockSize;
             }
 
-            channel.getMessageQueue().sendMessage(new BlockPartsMessage(number, parts, partsSerialized));
+            channel.getMessageQueue().sendMessage(new BlockRangeMessage(from, parts, blocks));
+            break;
+        }
+        case GET_SNAPSHOT_MANIFEST: {
+            GetSnapshotManifestMessage m = (GetSnapshotManifestMessage) msg;
+            Snapshot snapshot = chain.getSnapshot(m.getNumber());
+            channel.getMessageQueue().sendMessage(new SnapshotManifestMessage(m.getNumber(),
+                    snapshot == null ? Bytes.EMPTY_BYTES : snapshot.toManifest()));
+            break;
+        }
+        case GET_SNAPSHOT_CHUNK: {
+            GetSnapshotChunkMessage m = (GetSnapshotChunkMessage) msg;
+            Snapshot snapshot = chain.getSnapshot(m.getNumber());
+            byte[] data = (snapshot == null) ? null : snapshot.getChunk(m.getIndex());
+            if (data == null) {
+                logger.debug("Snapshot chunk #{} of #{} requested by {} not found", m.getIndex(), m.getNumber(),
+                        channel.getRemoteIp());
+                break;
+            }
+
+            channel.getMessageQueue().sendMessage(new SnapshotChunkMessage(m.getNumber(), m.getIndex(), data));
             break;
         }
         case BLOCK:
         case BLOCK_HEADER:
-        case BLOCK_PARTS: {
+        case BLOCK_PARTS:
+        case BLOCK_RANGE:
+        case SNAPSHOT_MANIFEST:
+        case SNAPSHOT_CHUNK: {
             sync.onMessage(channel, msg);
             break;
         }
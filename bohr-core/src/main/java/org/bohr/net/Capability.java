@@ -36,7 +36,17 @@ public enum Capability {
     /**
      * This client supports the LIGHT protocol.
      */
-    LIGHT;
+    LIGHT,
+
+    /**
+     * This client supports the GET_BLOCK_RANGE/BLOCK_RANGE messages.
+     */
+    BLOCK_RANGE,
+
+    /**
+     * This client supports the snapshot messages.
+     */
+    SNAPSHOT;
 
     public static Capability of(String name) {
         try {
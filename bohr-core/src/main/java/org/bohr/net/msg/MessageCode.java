@@ -101,6 +101,36 @@ public enum MessageCode {
      */
     BLOCK_PARTS(0x35),
 
+    /**
+     * [0x36] Request parts of a range of blocks from the peer.
+     */
+    GET_BLOCK_RANGE(0x36),
+
+    /**
+     * [0x37] Response containing the block parts of a range of blocks.
+     */
+    BLOCK_RANGE(0x37),
+
+    /**
+     * [0x38] Request the manifest of a state snapshot from the peer.
+     */
+    GET_SNAPSHOT_MANIFEST(0x38),
+
+    /**
+     * [0x39] Response containing the manifest of a state snapshot.
+     */
+    SNAPSHOT_MANIFEST(0x39),
+
+    /**
+     * [0x3a] Request a chunk of a state snapshot from the peer.
+     */
+    GET_SNAPSHOT_CHUNK(0x3a),
+
+    /**
+     * [0x3b] Response containing a chunk of a state snapshot.
+     */
+    SNAPSHOT_CHUNK(0x3b),
+
     // =======================================
     // [0x40, 0x4f] Reserved for BFT
     // =======================================
@@ -10,12 +10,18 @@ import org.bohr.crypto.Hex;
 import org.bohr.net.msg.consensus.BlockHeaderMessage;
 import org.bohr.net.msg.consensus.BlockMessage;
 import org.bohr.net.msg.consensus.BlockPartsMessage;
+import org.bohr.net.msg.consensus.BlockRangeMessage;
 import org.bohr.net.msg.consensus.GetBlockHeaderMessage;
 import org.bohr.net.msg.consensus.GetBlockMessage;
 import org.bohr.net.msg.consensus.GetBlockPartsMessage;
+import org.bohr.net.msg.consensus.GetBlockRangeMessage;
+import org.bohr.net.msg.consensus.GetSnapshotChunkMessage;
+import org.bohr.net.msg.consensus.GetSnapshotManifestMessage;
 import org.bohr.net.msg.consensus.NewHeightMessage;
 import org.bohr.net.msg.consensus.NewViewMessage;
 import org.bohr.net.msg.consensus.ProposalMessage;
+import org.bohr.net.msg.consensus.SnapshotChunkMessage;
+import org.bohr.net.msg.consensus.SnapshotManifestMessage;
 import org.bohr.net.msg.consensus.VoteMessage;
 import org.bohr.net.msg.p2p.DisconnectMessage;
 import org.bohr.net.msg.p2p.GetNodesMessage;
@@ -91,6 +97,18 @@ public class MessageFactory {
                 return new GetBlockPartsMessage(body);
             case BLOCK_PARTS:
                 return new BlockPartsMessage(body);
+            case GET_BLOCK_RANGE:
+                return new GetBlockRangeMessage(body);
+            case BLOCK_RANGE:
+                return new BlockRangeMessage(body);
+            case GET_SNAPSHOT_MANIFEST:
+                return new GetSnapshotManifestMessage(body);
+            case SNAPSHOT_MANIFEST:
+                return new SnapshotManifestMessage(body);
+            case GET_SNAPSHOT_CHUNK:
+                return new GetSnapshotChunkMessage(body);
+            case SNAPSHOT_CHUNK:
+                return new SnapshotChunkMessage(body);
 
             case BFT_NEW_HEIGHT:
                 return new NewHeightMessage(body);
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.net.msg.consensus;
+
+import org.bohr.net.msg.Message;
+import org.bohr.net.msg.MessageCode;
+import org.bohr.util.SimpleDecoder;
+import org.bohr.util.SimpleEncoder;
+
+public class GetSnapshotChunkMessage extends Message {
+
+    private final long number;
+    private final int index;
+
+    public GetSnapshotChunkMessage(long number, int index) {
+        super(MessageCode.GET_SNAPSHOT_CHUNK, SnapshotChunkMessage.class);
+
+        this.number = number;
+        this.index = index;
+
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeLong(number);
+        enc.writeInt(index);
+        this.body = enc.toBytes();
+    }
+
+    public GetSnapshotChunkMessage(byte[] body) {
+        super(MessageCode.GET_SNAPSHOT_CHUNK, SnapshotChunkMessage.class);
+
+        SimpleDecoder dec = new SimpleDecoder(body);
+        this.number = dec.readLong();
+        this.index = dec.readInt();
+
+        this.body = body;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "GetSnapshotChunkMessage [number=" + number + ", index=" + index + "]";
+    }
+}
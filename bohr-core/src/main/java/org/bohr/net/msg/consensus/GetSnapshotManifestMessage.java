@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.net.msg.consensus;
+
+import org.bohr.net.msg.Message;
+import org.bohr.net.msg.MessageCode;
+import org.bohr.util.SimpleDecoder;
+import org.bohr.util.SimpleEncoder;
+
+public class GetSnapshotManifestMessage extends Message {
+
+    private final long number;
+
+    public GetSnapshotManifestMessage(long number) {
+        super(MessageCode.GET_SNAPSHOT_MANIFEST, SnapshotManifestMessage.class);
+
+        this.number = number;
+
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeLong(number);
+        this.body = enc.toBytes();
+    }
+
+    public GetSnapshotManifestMessage(byte[] body) {
+        super(MessageCode.GET_SNAPSHOT_MANIFEST, SnapshotManifestMessage.class);
+
+        SimpleDecoder dec = new SimpleDecoder(body);
+        this.number = dec.readLong();
+
+        this.body = body;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    @Override
+    public String toString() {
+        return "GetSnapshotManifestMessage [number=" + number + "]";
+    }
+}
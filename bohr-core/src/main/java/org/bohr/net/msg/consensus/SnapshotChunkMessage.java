@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.net.msg.consensus;
+
+import org.bohr.net.msg.Message;
+import org.bohr.net.msg.MessageCode;
+import org.bohr.util.SimpleDecoder;
+import org.bohr.util.SimpleEncoder;
+
+public class SnapshotChunkMessage extends Message {
+
+    private final long number;
+    private final int index;
+    private final byte[] data;
+
+    public SnapshotChunkMessage(long number, int index, byte[] data) {
+        super(MessageCode.SNAPSHOT_CHUNK, null);
+
+        this.number = number;
+        this.index = index;
+        this.data = data;
+
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeLong(number);
+        enc.writeInt(index);
+        enc.writeBytes(data);
+        this.body = enc.toBytes();
+    }
+
+    public SnapshotChunkMessage(byte[] body) {
+        super(MessageCode.SNAPSHOT_CHUNK, null);
+
+        SimpleDecoder dec = new SimpleDecoder(body);
+        this.number = dec.readLong();
+        this.index = dec.readInt();
+        this.data = dec.readBytes();
+
+        this.body = body;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return "SnapshotChunkMessage [number=" + number + ", index=" + index + ", size=" + data.length + "]";
+    }
+}
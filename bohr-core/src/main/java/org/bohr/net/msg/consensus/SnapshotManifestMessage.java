@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.net.msg.consensus;
+
+import org.bohr.net.msg.Message;
+import org.bohr.net.msg.MessageCode;
+import org.bohr.util.SimpleDecoder;
+import org.bohr.util.SimpleEncoder;
+
+/**
+ * The manifest of a state snapshot, or an empty manifest if the peer doesn't
+ * have the requested snapshot.
+ */
+public class SnapshotManifestMessage extends Message {
+
+    private final long number;
+    private final byte[] manifest;
+
+    public SnapshotManifestMessage(long number, byte[] manifest) {
+        super(MessageCode.SNAPSHOT_MANIFEST, null);
+
+        this.number = number;
+        this.manifest = manifest;
+
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeLong(number);
+        enc.writeBytes(manifest);
+        this.body = enc.toBytes();
+    }
+
+    public SnapshotManifestMessage(byte[] body) {
+        super(MessageCode.SNAPSHOT_MANIFEST, null);
+
+        SimpleDecoder dec = new SimpleDecoder(body);
+        this.number = dec.readLong();
+        this.manifest = dec.readBytes();
+
+        this.body = body;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    public byte[] getManifest() {
+        return manifest;
+    }
+
+    public boolean isEmpty() {
+        return manifest.length == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SnapshotManifestMessage [number=" + number + ", size=" + manifest.length + "]";
+    }
+}
@@ -0,0 +1,352 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.tools;
+
+import org.bohr.Network;
+import org.bohr.config.Config;
+import org.bohr.config.DevnetConfig;
+import org.bohr.config.MainnetConfig;
+import org.bohr.config.TestnetConfig;
+import org.bohr.core.Block;
+import org.bohr.core.BlockchainImpl;
+import org.bohr.core.Transaction;
+import org.bohr.core.TransactionExecutor;
+import org.bohr.core.TransactionResult;
+import org.bohr.core.TransactionType;
+import org.bohr.core.state.AccountState;
+import org.bohr.core.state.DelegateState;
+import org.bohr.crypto.Hex;
+import org.bohr.db.Database;
+import org.bohr.db.DatabaseBackend;
+import org.bohr.db.DatabaseFactory;
+import org.bohr.db.DatabaseName;
+import org.bohr.db.MemoryDatabase;
+import org.bohr.util.ByteArray;
+import org.bohr.util.Bytes;
+import org.bohr.util.FileUtil;
+import org.bohr.vm.client.BohrBlock;
+import org.bohr.vm.client.BohrBlockStore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Re-executes the blocks of an existing database into a scratch state, and
+ * reports the throughput and where the time goes.
+ * <p>
+ * The source database is only read: it's opened read-only, or copied if the
+ * backend can't do so, and the node using it must be stopped. The blocks
+ * before the range are replayed first, without being measured, to rebuild the
+ * state the range starts from.
+ */
+public class BlockReplayer {
+
+    private static final int PROGRESS_INTERVAL = 10_000;
+
+    private static final int TOP_CONTRACTS = 20;
+
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.out.println("Usage: java BlockReplayer.java [DATA_DIR] [mainnet|testnet|devnet] [FROM] [TO]"
+                    + " [--types] [--contracts] [--memory]");
+            return;
+        }
+
+        Config config = getConfig(args[0], Network.of(args[1]));
+        long from = Long.parseLong(args[2]);
+        long to = Long.parseLong(args[3]);
+        List<String> options = Arrays.asList(args).subList(4, args.length);
+
+        File sourceDir = config.databaseDir();
+        DatabaseBackend backend = DatabaseBackend.detect(sourceDir);
+        if (backend == null) {
+            System.out.println("No database found in " + sourceDir);
+            return;
+        }
+        DatabaseFactory source = backend.createReadOnlyFactory(sourceDir);
+
+        // the scratch state, in memory or next to the source
+        File scratchDir = new File(sourceDir.getAbsolutePath() + "-replay");
+        FileUtil.recursiveDelete(scratchDir);
+        DatabaseFactory scratch = options.contains("--memory") ? new MemoryDatabase.MemoryFactory()
+                : backend.createFactory(scratchDir);
+
+        BlockReplayer replayer = new BlockReplayer(config, source.getDB(DatabaseName.BLOCK),
+                new ReplayChain(config, scratch));
+        try {
+            replayer.replay(from, to, options.contains("--types"), options.contains("--contracts"));
+        } finally {
+            source.close();
+            scratch.close();
+            FileUtil.recursiveDelete(scratchDir);
+        }
+    }
+
+    /**
+     * Returns the config of the given network, with the snapshot export
+     * disabled so that nothing is written into the source data directory.
+     */
+    private static Config getConfig(String dataDir, Network network) {
+        switch (network) {
+        case MAINNET:
+            return new MainnetConfig(dataDir) {
+                @Override
+                public boolean syncSnapshotExport() {
+                    return false;
+                }
+            };
+        case TESTNET:
+            return new TestnetConfig(dataDir) {
+                @Override
+                public boolean syncSnapshotExport() {
+                    return false;
+                }
+            };
+        default:
+            return new DevnetConfig(dataDir) {
+                @Override
+                public boolean syncSnapshotExport() {
+                    return false;
+                }
+            };
+        }
+    }
+
+    /**
+     * Time and volume of a group of transactions.
+     */
+    private static class Stats {
+        long count;
+        long gas;
+        long nanos;
+
+        void add(long gas, long nanos) {
+            this.count++;
+            this.gas += gas;
+            this.nanos += nanos;
+        }
+    }
+
+    private final Config config;
+    private final Database blockDB;
+    private final ReplayChain chain;
+
+    // the time spent in every step, in nanoseconds
+    private long decodeNanos;
+    private long signatureNanos;
+    private long executionNanos;
+    private long commitNanos;
+
+    private long blocks;
+    private long transactions;
+    private long gas;
+
+    private final Map<TransactionType, Stats> types = new EnumMap<>(TransactionType.class);
+    private final Map<ByteArray, Stats> contracts = new HashMap<>();
+
+    public BlockReplayer(Config config, Database blockDB, ReplayChain chain) {
+        this.config = config;
+        this.blockDB = blockDB;
+        this.chain = chain;
+    }
+
+    /**
+     * Replays the given range of blocks.
+     *
+     * @param from
+     * @param to
+     * @param byType
+     *            whether to report every transaction type
+     * @param byContract
+     *            whether to report the contracts which took the most time
+     */
+    public void replay(long from, long to, boolean byType, boolean byContract) {
+        // rebuild the state before the range
+        long n = chain.getLatestBlockNumber() + 1;
+        if (n < from) {
+            System.out.println("Replaying blocks #" + n + " to #" + (from - 1) + " to reach the start state");
+            for (; n < from; n++) {
+                if (!replay(n, false)) {
+                    return;
+                }
+                if (n % PROGRESS_INTERVAL == 0) {
+                    System.out.println("Reached block #" + n);
+                }
+            }
+        }
+
+        long begin = System.nanoTime();
+        for (; n <= to; n++) {
+            if (!replay(n, true)) {
+                break;
+            }
+            if (n % PROGRESS_INTERVAL == 0) {
+                System.out.println("Replayed block #" + n + ", " + format(blocks * 1e9 / (System.nanoTime() - begin))
+                        + " blocks/s");
+            }
+        }
+        long total = System.nanoTime() - begin;
+
+        report(total, byType, byContract);
+    }
+
+    /**
+     * Replays one block.
+     *
+     * @param number
+     * @param measure
+     *            whether to add the block to the statistics
+     * @return whether the block was replayed
+     */
+    protected boolean replay(long number, boolean measure) {
+        long t1 = System.nanoTime();
+        Block block = ReplayChain.readBlock(blockDB, number);
+        if (block == null) {
+            System.out.println("Block #" + number + " is not in the database");
+            return false;
+        }
+
+        long t2 = System.nanoTime();
+        if (!block.preValidate(config.network())) {
+            System.out.println("Block #" + number + " has invalid signatures");
+            return false;
+        }
+
+        // execute the transactions one by one, as TransactionExecutor#execute does
+        long t3 = System.nanoTime();
+        AccountState as = chain.getAccountState().track();
+        DelegateState ds = chain.getDelegateState().track();
+        TransactionExecutor executor = new TransactionExecutor(config, new BohrBlockStore(chain),
+                chain.isVMEnabled(), chain.isVotingPrecompiledUpgraded());
+        BohrBlock bohrBlock = new BohrBlock(block.getHeader(), config.spec().maxBlockGasLimit());
+
+        long gasUsed = 0;
+        List<TransactionResult> results = new ArrayList<>();
+        for (Transaction tx : block.getTransactions()) {
+            long begin = System.nanoTime();
+            TransactionResult result = executor.execute(tx, as, ds, bohrBlock, gasUsed);
+            long nanos = System.nanoTime() - begin;
+            results.add(result);
+
+            long gas = 0;
+            if (result.getCode().isAcceptable()) {
+                gas = tx.isVMTransaction() ? result.getGasUsed() : config.spec().nonVMTransactionGasCost();
+                gasUsed += gas;
+            }
+            if (measure) {
+                types.computeIfAbsent(tx.getType(), k -> new Stats()).add(gas, nanos);
+                if (tx.isVMTransaction()) {
+                    contracts.computeIfAbsent(ByteArray.of(tx.getTo()), k -> new Stats()).add(gas, nanos);
+                }
+            }
+        }
+        if (!block.validateResults(block.getHeader(), results)) {
+            System.out.println("Block #" + number + " has different results when replayed");
+            return false;
+        }
+        block.setResults(results);
+
+        long t4 = System.nanoTime();
+        chain.applyBlock(block, as, ds);
+
+        long t5 = System.nanoTime();
+        if (measure) {
+            decodeNanos += t2 - t1;
+            signatureNanos += t3 - t2;
+            executionNanos += t4 - t3;
+            commitNanos += t5 - t4;
+
+            blocks++;
+            transactions += block.getTransactions().size();
+            gas += gasUsed;
+        }
+        return true;
+    }
+
+    protected void report(long total, boolean byType, boolean byContract) {
+        double seconds = total / 1e9;
+
+        System.out.println();
+        System.out.println("Blocks       : " + blocks + ", " + format(blocks / seconds) + " blocks/s");
+        System.out.println("Transactions : " + transactions + ", " + format(transactions / seconds) + " tx/s");
+        System.out.println("Gas          : " + gas + ", " + format(gas / seconds) + " gas/s");
+        System.out.println("Time         : " + format(seconds) + " s");
+        System.out.println("  decode     : " + percent(decodeNanos, total));
+        System.out.println("  signatures : " + percent(signatureNanos, total));
+        System.out.println("  execution  : " + percent(executionNanos, total));
+        System.out.println("  commit     : " + percent(commitNanos, total));
+
+        if (byType) {
+            System.out.println();
+            System.out.println("By transaction type:");
+            for (Map.Entry<TransactionType, Stats> e : types.entrySet()) {
+                print(e.getKey().toString(), e.getValue(), total);
+            }
+        }
+
+        if (byContract) {
+            System.out.println();
+            System.out.println("Top contracts by execution time:");
+            contracts.entrySet().stream()
+                    .sorted(Comparator.comparingLong((Map.Entry<ByteArray, Stats> e) -> e.getValue().nanos).reversed())
+                    .limit(TOP_CONTRACTS)
+                    .forEach(e -> print(Hex.encode0x(e.getKey().getData()), e.getValue(), total));
+        }
+    }
+
+    private static void print(String name, Stats s, long total) {
+        System.out.println(String.format(Locale.ROOT, "  %-44s %10d tx %16d gas %10.1f us/tx %s", name, s.count,
+                s.gas, s.nanos / 1e3 / s.count, percent(s.nanos, total)));
+    }
+
+    private static String format(double d) {
+        return String.format(Locale.ROOT, "%.1f", d);
+    }
+
+    private static String percent(long nanos, long total) {
+        return String.format(Locale.ROOT, "%.1f %%", total == 0 ? 0 : nanos * 100.0 / total);
+    }
+
+    /**
+     * A chain exposing the block application steps to the replayer.
+     */
+    public static class ReplayChain extends BlockchainImpl {
+
+        public ReplayChain(Config config, DatabaseFactory dbFactory) {
+            super(config, dbFactory);
+        }
+
+        @Override
+        public boolean applyBlock(Block block, AccountState asTrack, DelegateState dsTrack) {
+            return super.applyBlock(block, asTrack, dsTrack);
+        }
+
+        /**
+         * Reads a block from the block database of another chain, without the
+         * results.
+         *
+         * @param blockDB
+         * @param number
+         * @return the block, or null if it's missing
+         */
+        public static Block readBlock(Database blockDB, long number) {
+            byte[] header = blockDB.get(Bytes.merge(TYPE_BLOCK_HEADER_BY_NUMBER, Bytes.of(number)));
+            byte[] transactions = blockDB.get(Bytes.merge(TYPE_BLOCK_TRANSACTIONS_BY_NUMBER, Bytes.of(number)));
+            byte[] votes = blockDB.get(Bytes.merge(TYPE_BLOCK_VOTES_BY_NUMBER, Bytes.of(number)));
+
+            return (header == null || transactions == null) ? null
+                    : Block.fromComponents(header, transactions, null, votes);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.tools;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.bohr.db.Database;
+import org.bohr.db.DatabaseBackend;
+import org.bohr.db.DatabaseFactory;
+import org.bohr.db.DatabaseName;
+import org.bohr.util.ClosableIterator;
+import org.bohr.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Copies all the databases of a directory into another storage engine, and
+ * replaces them. The original databases are kept in a backup directory.
+ */
+public class DatabaseMigrator {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java DatabaseMigrator.java [DATABASE_DIR] [leveldb|rocksdb]");
+            return;
+        }
+
+        File dir = new File(args[0]);
+        DatabaseBackend to = DatabaseBackend.valueOf(args[1].toUpperCase(Locale.ROOT));
+        DatabaseBackend from = DatabaseBackend.detect(dir);
+        if (from == null) {
+            System.out.println("No database found in " + dir);
+            return;
+        } else if (from == to) {
+            System.out.println("The database is already stored in " + to);
+            return;
+        }
+
+        Path dataDir = dir.toPath();
+        String dataDirName = dataDir.getFileName().toString();
+        Path tempPath = dataDir.resolveSibling(dataDirName + "-migrate");
+        FileUtil.recursiveDelete(tempPath.toFile());
+
+        DatabaseFactory source = from.createFactory(dir);
+        DatabaseFactory target = to.createFactory(tempPath.toFile());
+        for (DatabaseName name : DatabaseName.values()) {
+            long n = copy(source.getDB(name), target.getDB(name));
+            System.out.println("Migrated " + name + ": " + n + " entries");
+        }
+        source.close();
+        target.close();
+
+        // swap the database folders
+        Path backupPath = dataDir.resolveSibling(dataDirName + "-backup");
+        source.moveTo(backupPath);
+        target.moveTo(dataDir);
+        System.out.println("Database migrated from " + from + " to " + to + ", the original is kept in " + backupPath);
+    }
+
+    private static long copy(Database from, Database to) {
+        long n = 0;
+        List<Pair<byte[], byte[]>> batch = new ArrayList<>(BATCH_SIZE);
+
+        ClosableIterator<Map.Entry<byte[], byte[]>> iterator = from.iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<byte[], byte[]> entry = iterator.next();
+            batch.add(Pair.of(entry.getKey(), entry.getValue()));
+            if (batch.size() == BATCH_SIZE) {
+                to.updateBatch(batch);
+                batch.clear();
+            }
+            n++;
+        }
+        iterator.close();
+
+        if (!batch.isEmpty()) {
+            to.updateBatch(batch);
+        }
+        return n;
+    }
+}
@@ -18,14 +18,40 @@ import org.bohr.core.state.DelegateState;
  *
  * We will probably want to make AccountState just implement repository but for
  * ease of initial integration, use a facade to limit scope
+ *
+ * The storage slots are cached for the duration of a transaction, see
+ * {@link StorageCache}. The repositories tracked from this one share the cache,
+ * and so does the clone taken as the original repository, which reads the
+ * values before the transaction.
  */
 public class BohrRepository implements Cloneable, Repository {
     private final AccountState accountState;
     private final DelegateState delegateState;
 
+    private StorageCache storage;
+
+    /**
+     * The checkpoint of a tracked repository in the shared storage cache, or -1
+     * if this repository owns the cache.
+     */
+    private int checkpoint;
+
+    /**
+     * Whether this repository reads the original values of the storage cache.
+     */
+    private boolean original;
+
     public BohrRepository(AccountState accountState, DelegateState delegateState) {
+        this(accountState, delegateState, new StorageCache(), -1, false);
+    }
+
+    private BohrRepository(AccountState accountState, DelegateState delegateState, StorageCache storage,
+            int checkpoint, boolean original) {
         this.accountState = accountState;
         this.delegateState = delegateState;
+        this.storage = storage;
+        this.checkpoint = checkpoint;
+        this.original = original;
     }
 
     public AccountState getAccountState() {
@@ -82,16 +108,19 @@ public class BohrRepository implements Cloneable, Repository {
 
     @Override
     public void putStorageRow(byte[] address, DataWord key, DataWord value) {
+        if (original) {
+            detach();
+        }
+
+        StorageCache.Slot slot = getSlot(address, key);
         accountState.putStorage(address, key.getData(), value.getData());
+        storage.set(slot, value);
     }
 
     @Override
     public DataWord getStorageRow(byte[] address, DataWord key) {
-        byte[] data = accountState.getStorage(address, key.getData());
-        if (data != null) {
-            return DataWord.of(data);
-        }
-        return null;
+        StorageCache.Slot slot = getSlot(address, key);
+        return original ? slot.original : slot.current;
     }
 
     @Override
@@ -107,11 +136,19 @@ public class BohrRepository implements Cloneable, Repository {
 
     @Override
     public Repository startTracking() {
-        return new BohrRepository(accountState.track(), delegateState.track());
+        if (original) {
+            return new BohrRepository(accountState.track(), delegateState.track());
+        }
+        return new BohrRepository(accountState.track(), delegateState.track(), storage, storage.checkpoint(),
+                false);
     }
 
     @Override
     public Repository clone() {
+        // until a slot is written, the snapshot of the state has the original values
+        if (original || !storage.isModified()) {
+            return new BohrRepository(accountState.clone(), delegateState.clone(), storage, -1, true);
+        }
         return new BohrRepository(accountState.clone(), delegateState.clone());
     }
 
@@ -119,11 +156,42 @@ public class BohrRepository implements Cloneable, Repository {
     public void commit() {
         accountState.commit();
         delegateState.commit();
+
+        if (checkpoint >= 0) {
+            checkpoint = storage.checkpoint();
+        } else {
+            detach();
+        }
     }
 
     @Override
     public void rollback() {
         accountState.rollback();
         delegateState.commit();
+
+        if (checkpoint >= 0) {
+            storage.revert(checkpoint);
+        } else {
+            detach();
+        }
+    }
+
+    private StorageCache.Slot getSlot(byte[] address, DataWord key) {
+        StorageCache.Slot slot = storage.get(address, key);
+        if (slot == null) {
+            byte[] data = accountState.getStorage(address, key.getData());
+            slot = storage.add(address, key, data == null ? null : DataWord.of(data));
+        }
+        return slot;
+    }
+
+    /**
+     * Stops sharing the storage cache, once it no longer matches the state of
+     * this repository.
+     */
+    private void detach() {
+        storage = new StorageCache();
+        checkpoint = -1;
+        original = false;
     }
 }
@@ -13,8 +13,29 @@ public class BohrSpec extends ConstantinopleSpec {
 
     private static final PrecompiledContracts precompiledContracts = new BohrPrecompiledContracts();
 
+    private final boolean preDecode;
+
+    public BohrSpec() {
+        this(false);
+    }
+
+    /**
+     * Creates a spec.
+     *
+     * @param preDecode
+     *            whether to use the pre-decoded interpreter
+     */
+    public BohrSpec(boolean preDecode) {
+        this.preDecode = preDecode;
+    }
+
     @Override
     public PrecompiledContracts getPrecompiledContracts() {
         return precompiledContracts;
     }
+
+    @Override
+    public boolean preDecode() {
+        return preDecode;
+    }
 }
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.vm.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bohr.util.ByteArray;
+import org.ethereum.vm.DataWord;
+
+/**
+ * The storage slots accessed by a transaction, with their value before the
+ * transaction and their current value. The cache is shared by the repositories
+ * of all the call frames, and records every write in a journal, so that a
+ * frame is rolled back by undoing the journal down to its checkpoint.
+ * <p>
+ * A slot is loaded from the state on first access. As every write goes through
+ * the cache, a slot which is not cached yet has not been written by the
+ * transaction, so its current value is also its original value.
+ */
+class StorageCache {
+
+    static class Slot {
+        final DataWord original; // null if the slot is empty
+        DataWord current;
+
+        Slot(DataWord value) {
+            this.original = value;
+            this.current = value;
+        }
+    }
+
+    private static class Change {
+        final Slot slot;
+        final DataWord previous;
+
+        Change(Slot slot, DataWord previous) {
+            this.slot = slot;
+            this.previous = previous;
+        }
+    }
+
+    private final Map<ByteArray, Map<DataWord, Slot>> slots = new HashMap<>();
+
+    private final List<Change> journal = new ArrayList<>();
+
+    /**
+     * Returns a cached slot.
+     *
+     * @param address
+     * @param key
+     * @return the slot, or null if it's not loaded
+     */
+    Slot get(byte[] address, DataWord key) {
+        Map<DataWord, Slot> account = slots.get(ByteArray.of(address));
+        return account == null ? null : account.get(key);
+    }
+
+    /**
+     * Adds a slot loaded from the state.
+     *
+     * @param address
+     * @param key
+     * @param value
+     *            the value in the state, or null if the slot is empty
+     * @return
+     */
+    Slot add(byte[] address, DataWord key, DataWord value) {
+        Slot slot = new Slot(value);
+        slots.computeIfAbsent(ByteArray.of(address), k -> new HashMap<>()).put(key, slot);
+        return slot;
+    }
+
+    /**
+     * Updates the current value of a slot.
+     *
+     * @param slot
+     * @param value
+     */
+    void set(Slot slot, DataWord value) {
+        journal.add(new Change(slot, slot.current));
+        slot.current = value;
+    }
+
+    /**
+     * Returns whether any slot has been written.
+     *
+     * @return
+     */
+    boolean isModified() {
+        return !journal.isEmpty();
+    }
+
+    /**
+     * Returns the current position of the journal.
+     *
+     * @return
+     */
+    int checkpoint() {
+        return journal.size();
+    }
+
+    /**
+     * Undoes all the writes made after the given checkpoint.
+     *
+     * @param checkpoint
+     */
+    void revert(int checkpoint) {
+        for (int i = journal.size() - 1; i >= checkpoint; i--) {
+            Change change = journal.remove(i);
+            change.slot.current = change.previous;
+        }
+    }
+}
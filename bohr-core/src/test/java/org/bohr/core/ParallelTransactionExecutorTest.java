@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.core;
+
+import static org.bohr.core.Unit.BOHR;
+import static org.bohr.core.Unit.MILLI_BOHR;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.bohr.config.Config;
+import org.bohr.config.Constants;
+import org.bohr.config.DevnetConfig;
+import org.bohr.core.state.AccountState;
+import org.bohr.core.state.AccountStateImpl;
+import org.bohr.core.state.Delegate;
+import org.bohr.core.state.DelegateState;
+import org.bohr.core.state.DelegateStateImpl;
+import org.bohr.crypto.Hex;
+import org.bohr.crypto.Key;
+import org.bohr.db.Database;
+import org.bohr.db.MemoryDatabase;
+import org.bohr.util.Bytes;
+import org.bohr.util.ClosableIterator;
+import org.bohr.vm.client.BohrBlock;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Executes the same transactions with {@link TransactionExecutor} and
+ * {@link ParallelTransactionExecutor}, on two copies of the same state, and
+ * checks that the results and the post-states are identical.
+ */
+public class ParallelTransactionExecutorTest {
+
+    private static final int ACCOUNTS = 24;
+    private static final int DELEGATES = 3;
+    private static final long GAS_LIMIT = 10_000_000L;
+
+    private Config config;
+    private Amount fee;
+
+    private Key[] accounts;
+    private Key[] delegates;
+
+    private State serial;
+    private State parallel;
+
+    @Before
+    public void setUp() {
+        config = new DevnetConfig(Constants.DEFAULT_DATA_DIR);
+        fee = config.spec().minTransactionFee();
+
+        accounts = new Key[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = new Key();
+        }
+        delegates = new Key[DELEGATES];
+        for (int i = 0; i < DELEGATES; i++) {
+            delegates[i] = new Key();
+        }
+
+        serial = new State();
+        parallel = new State();
+    }
+
+    @Test
+    public void testNonConflicting() {
+        List<Transaction> txs = new ArrayList<>();
+        for (Key key : accounts) {
+            txs.add(transfer(key, 0, new Key().toAddress(), Amount.of(1, BOHR)));
+        }
+
+        check(txs, GAS_LIMIT);
+    }
+
+    @Test
+    public void testConflicting() {
+        List<Transaction> txs = new ArrayList<>();
+
+        // a chain of transfers, each one spending what the previous one received
+        txs.add(transfer(accounts[0], 0, accounts[1].toAddress(), Amount.of(800, BOHR)));
+        for (int i = 1; i < 8; i++) {
+            txs.add(transfer(accounts[i], 0, accounts[i + 1].toAddress(), Amount.of(1500, BOHR)));
+        }
+
+        // several transactions from the same sender, and a replayed nonce
+        txs.add(transfer(accounts[8], 0, accounts[9].toAddress(), Amount.of(1, BOHR)));
+        txs.add(transfer(accounts[8], 1, accounts[9].toAddress(), Amount.of(1, BOHR)));
+        txs.add(transfer(accounts[8], 1, accounts[10].toAddress(), Amount.of(1, BOHR)));
+
+        // votes and unvotes of the same delegate
+        byte[] delegate = delegates[0].toAddress();
+        for (int i = 10; i < 16; i++) {
+            txs.add(vote(accounts[i], 0, delegate, Amount.of(100, BOHR)));
+        }
+        txs.add(unvote(accounts[10], 1, delegate, Amount.of(50, BOHR)));
+        txs.add(unvote(accounts[11], 1, delegate, Amount.of(150, BOHR)));
+        txs.add(vote(accounts[16], 0, delegates[1].toAddress(), Amount.of(2000, BOHR)));
+        txs.add(transfer(accounts[17], 0, accounts[16].toAddress(), Amount.of(999, BOHR)));
+        txs.add(vote(accounts[16], 0, delegates[1].toAddress(), Amount.of(1500, BOHR)));
+
+        check(txs, GAS_LIMIT);
+    }
+
+    @Test
+    public void testGasLimit() {
+        List<Transaction> txs = new ArrayList<>();
+        for (Key key : accounts) {
+            txs.add(transfer(key, 0, new Key().toAddress(), Amount.of(1, BOHR)));
+        }
+
+        // only the first half of the transactions fit in the block
+        long gasLimit = config.spec().nonVMTransactionGasCost() * ACCOUNTS / 2;
+        check(txs, gasLimit);
+    }
+
+    @Test
+    public void testRandom() {
+        for (long seed = 0; seed < 8; seed++) {
+            setUp();
+            check(randomTransactions(new Random(seed), 200), GAS_LIMIT);
+        }
+    }
+
+    private void check(List<Transaction> txs, long gasLimit) {
+        BohrBlock block = new BohrBlock(new BlockHeader(1, Bytes.EMPTY_ADDRESS, Bytes.EMPTY_HASH,
+                System.currentTimeMillis(), Bytes.EMPTY_HASH, Bytes.EMPTY_HASH, Bytes.EMPTY_HASH,
+                Bytes.EMPTY_BYTES), gasLimit);
+
+        List<TransactionResult> expected = serial.execute(new TransactionExecutor(config, null, true, true),
+                txs, block);
+        List<TransactionResult> actual = parallel.execute(new ParallelTransactionExecutor(config, null, true, true),
+                txs, block);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            TransactionResult e = expected.get(i);
+            TransactionResult a = actual.get(i);
+            assertEquals("transaction #" + i, e.getCode(), a.getCode());
+            assertEquals("transaction #" + i, e.getGasUsed(), a.getGasUsed());
+            assertEquals("transaction #" + i, e.getBlockNumber(), a.getBlockNumber());
+            assertArrayEquals("transaction #" + i, e.toBytes(), a.toBytes());
+        }
+
+        assertEquals(dump(serial.accountDB), dump(parallel.accountDB));
+        assertEquals(dump(serial.delegateDB), dump(parallel.delegateDB));
+        assertEquals(dump(serial.voteDB), dump(parallel.voteDB));
+        assertEquals(ranking(serial.ds), ranking(parallel.ds));
+    }
+
+    private List<Transaction> randomTransactions(Random random, int n) {
+        long[] nonces = new long[ACCOUNTS];
+
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int from = random.nextInt(ACCOUNTS);
+            // mostly the expected nonces, some of them replayed or skipped
+            long nonce = nonces[from] + (random.nextInt(10) == 0 ? random.nextInt(3) - 1 : 0);
+            nonces[from]++;
+
+            Amount value = Amount.of(random.nextInt(600), BOHR);
+            byte[] delegate = delegates[random.nextInt(DELEGATES)].toAddress();
+            switch (random.nextInt(4)) {
+            case 0:
+                txs.add(vote(accounts[from], nonce, delegate, value));
+                break;
+            case 1:
+                txs.add(unvote(accounts[from], nonce, delegate, value));
+                break;
+            default:
+                txs.add(transfer(accounts[from], nonce, accounts[random.nextInt(ACCOUNTS)].toAddress(), value));
+                break;
+            }
+        }
+        return txs;
+    }
+
+    private Transaction transfer(Key from, long nonce, byte[] to, Amount value) {
+        return transaction(from, TransactionType.TRANSFER, nonce, to, value);
+    }
+
+    private Transaction vote(Key from, long nonce, byte[] delegate, Amount value) {
+        return transaction(from, TransactionType.VOTE, nonce, delegate, value);
+    }
+
+    private Transaction unvote(Key from, long nonce, byte[] delegate, Amount value) {
+        return transaction(from, TransactionType.UNVOTE, nonce, delegate, value);
+    }
+
+    private Transaction transaction(Key from, TransactionType type, long nonce, byte[] to, Amount value) {
+        return new Transaction(config.network(), type, to, value, fee, nonce, System.currentTimeMillis(),
+                Bytes.EMPTY_BYTES).sign(from);
+    }
+
+    private static List<String> dump(Database db) {
+        List<String> list = new ArrayList<>();
+        ClosableIterator<Entry<byte[], byte[]>> itr = db.iterator();
+        while (itr.hasNext()) {
+            Entry<byte[], byte[]> e = itr.next();
+            list.add(Hex.encode(e.getKey()) + "=" + Hex.encode(e.getValue()));
+        }
+        itr.close();
+        return list;
+    }
+
+    private static List<String> ranking(DelegateState ds) {
+        List<String> list = new ArrayList<>();
+        for (Delegate d : ds.getDelegates()) {
+            list.add(d.getNameString() + "=" + d.getVotes());
+        }
+        return list;
+    }
+
+    /**
+     * A state on memory databases, with the same accounts and delegates as the
+     * other ones.
+     */
+    private class State {
+        final Database accountDB = new MemoryDatabase();
+        final Database delegateDB = new MemoryDatabase();
+        final Database voteDB = new MemoryDatabase();
+        final AccountStateImpl as = new AccountStateImpl(accountDB, 1024, 1024 * 1024);
+        final DelegateStateImpl ds = new DelegateStateImpl(null, delegateDB, voteDB);
+
+        State() {
+            for (Key key : accounts) {
+                as.adjustAvailable(key.toAddress(), Amount.of(1000, BOHR));
+            }
+            for (int i = 0; i < DELEGATES; i++) {
+                byte[] name = ("delegate" + i).getBytes(StandardCharsets.UTF_8);
+                ds.register(delegates[i].toAddress(), name, 0);
+                as.adjustAvailable(delegates[i].toAddress(), Amount.of(1, MILLI_BOHR));
+            }
+            as.commit();
+            ds.commit();
+        }
+
+        /**
+         * Executes the transactions in a block track, and commits it to the
+         * databases.
+         */
+        List<TransactionResult> execute(TransactionExecutor exec, List<Transaction> txs, BohrBlock block) {
+            AccountState track = as.track();
+            DelegateState dsTrack = ds.track();
+
+            List<TransactionResult> results = exec.execute(txs, track, dsTrack, block, 0);
+
+            track.commit();
+            dsTrack.commit();
+            as.commit();
+            ds.commit();
+            return results;
+        }
+    }
+}
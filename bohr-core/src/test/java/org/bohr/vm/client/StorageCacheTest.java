@@ -0,0 +1,326 @@
+/**
+ * Copyright (c) 2019 The Bohr Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.bohr.vm.client;
+
+import static org.bohr.core.Unit.BOHR;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.bohr.core.Amount;
+import org.bohr.core.state.AccountState;
+import org.bohr.core.state.AccountStateImpl;
+import org.bohr.core.state.DelegateState;
+import org.bohr.core.state.DelegateStateImpl;
+import org.bohr.crypto.Hex;
+import org.bohr.db.Database;
+import org.bohr.db.MemoryDatabase;
+import org.bohr.util.Bytes;
+import org.bohr.util.ClosableIterator;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.client.Block;
+import org.ethereum.vm.client.Repository;
+import org.ethereum.vm.client.Transaction;
+import org.ethereum.vm.client.TransactionExecutor;
+import org.ethereum.vm.client.TransactionReceipt;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactoryImpl;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Executes the same transactions with {@link BohrRepository}, which caches the
+ * storage slots, and with a repository reading them from the state, and checks
+ * that the gas used, including the SSTORE refunds, and the post-states are
+ * identical.
+ */
+public class StorageCacheTest {
+
+    private static final byte[] SENDER = address(1);
+
+    /**
+     * Stores the (key, value) words of the call data, in order.
+     *
+     * <pre>
+     * PUSH1 0 JUMPDEST DUP1 CALLDATASIZE GT ISZERO PUSH1 24 JUMPI
+     * DUP1 PUSH1 32 ADD CALLDATALOAD DUP2 CALLDATALOAD SSTORE PUSH1 64 ADD PUSH1 2 JUMP
+     * JUMPDEST STOP
+     * </pre>
+     */
+    private static final byte[] STORE = address(2);
+    private static final String STORE_CODE = "60005b8036111560185780602001358135556040016002565b00";
+
+    /**
+     * Calls {@link #STORE} with its call data, then reverts.
+     */
+    private static final byte[] REVERTER = address(3);
+
+    /**
+     * Calls {@link #REVERTER}, then {@link #STORE}, with its call data.
+     */
+    private static final byte[] CALLER = address(4);
+
+    private static final long GAS = 1_000_000L;
+    private static final BigInteger GAS_PRICE = BigInteger.valueOf(1_000_000_000L);
+
+    private State cached;
+    private State uncached;
+
+    @Before
+    public void setUp() {
+        cached = new State();
+        uncached = new State();
+    }
+
+    @Test
+    public void testSetResetClear() {
+        // slot 9 holds 7 before the transaction
+        check(call(STORE, 0, 1, 0, 2, 0, 0, 1, 5, 1, 6, 9, 8, 9, 0, 9, 7, 9, 0));
+    }
+
+    @Test
+    public void testNestedCallReverted() {
+        check(call(CALLER, 0, 1, 0, 2, 9, 0, 9, 3));
+    }
+
+    @Test
+    public void testNestedCallRevertedAfterWrite() {
+        check(call(STORE, 0, 1, 9, 0), call(CALLER, 0, 0, 0, 4, 9, 7, 9, 5));
+    }
+
+    @Test
+    public void testSlotReusedAcrossTransactions() {
+        check(call(STORE, 0, 1),
+                call(STORE, 0, 2, 0, 0),
+                call(STORE, 0, 0, 0, 3),
+                call(STORE, 9, 0),
+                call(CALLER, 9, 7, 0, 0),
+                call(STORE, 9, 7, 0, 3, 0, 0));
+    }
+
+    private void check(Call... calls) {
+        List<TransactionReceipt> expected = uncached.execute(calls, true);
+        List<TransactionReceipt> actual = cached.execute(calls, false);
+
+        for (int i = 0; i < calls.length; i++) {
+            TransactionReceipt e = expected.get(i);
+            TransactionReceipt a = actual.get(i);
+            assertTrue("transaction #" + i, e.isSuccess());
+            assertEquals("transaction #" + i, e.isSuccess(), a.isSuccess());
+            assertEquals("transaction #" + i, e.getGasUsed(), a.getGasUsed());
+            assertArrayEquals("transaction #" + i, e.getReturnData(), a.getReturnData());
+        }
+
+        assertEquals(dump(uncached.accountDB), dump(cached.accountDB));
+    }
+
+    /**
+     * Creates a call, with the given (key, value) pairs as call data.
+     */
+    private static Call call(byte[] to, int... slots) {
+        byte[] data = new byte[0];
+        for (int slot : slots) {
+            data = Bytes.merge(data, DataWord.of(slot).getData());
+        }
+        return new Call(to, data);
+    }
+
+    /**
+     * Returns the code forwarding the call data to the given contract.
+     */
+    private static String forward(byte[] to) {
+        return "36600060003760006000366000600073" + Hex.encode(to) + "5af150";
+    }
+
+    private static byte[] address(int n) {
+        byte[] address = new byte[20];
+        address[0] = (byte) 0xbe;
+        address[address.length - 1] = (byte) n;
+        return address;
+    }
+
+    private static List<String> dump(Database db) {
+        List<String> list = new ArrayList<>();
+        ClosableIterator<Entry<byte[], byte[]>> itr = db.iterator();
+        while (itr.hasNext()) {
+            Entry<byte[], byte[]> e = itr.next();
+            list.add(Hex.encode(e.getKey()) + "=" + Hex.encode(e.getValue()));
+        }
+        itr.close();
+        return list;
+    }
+
+    private static class Call {
+        final byte[] to;
+        final byte[] data;
+
+        Call(byte[] to, byte[] data) {
+            this.to = to;
+            this.data = data;
+        }
+    }
+
+    /**
+     * A state on a memory database, with the contracts deployed.
+     */
+    private static class State {
+        final Database accountDB = new MemoryDatabase();
+        final AccountStateImpl as = new AccountStateImpl(accountDB, 1024, 1024 * 1024);
+        final DelegateStateImpl ds = new DelegateStateImpl(null, new MemoryDatabase(), new MemoryDatabase());
+
+        State() {
+            as.adjustAvailable(SENDER, Amount.of(1, BOHR));
+            as.setCode(STORE, Hex.decode(STORE_CODE));
+            as.setCode(REVERTER, Hex.decode(forward(STORE) + "60006000fd"));
+            as.setCode(CALLER, Hex.decode(forward(REVERTER) + forward(STORE) + "00"));
+            as.putStorage(STORE, DataWord.of(9).getData(), DataWord.of(7).getData());
+            as.commit();
+        }
+
+        /**
+         * Executes the calls in a block track, with a repository per
+         * transaction, and commits it to the database.
+         */
+        List<TransactionReceipt> execute(Call[] calls, boolean isUncached) {
+            AccountState track = as.track();
+            DelegateState dsTrack = ds.track();
+
+            List<TransactionReceipt> receipts = new ArrayList<>();
+            for (int i = 0; i < calls.length; i++) {
+                Repository repo = isUncached ? new UncachedRepository(track, dsTrack)
+                        : new BohrRepository(track, dsTrack);
+                TransactionExecutor executor = new TransactionExecutor(new CallTransaction(calls[i], i),
+                        new TestBlock(), repo, n -> Bytes.EMPTY_HASH, new BohrSpec(), new ProgramInvokeFactoryImpl(),
+                        0);
+                receipts.add(executor.run());
+            }
+
+            track.commit();
+            dsTrack.commit();
+            as.commit();
+            ds.commit();
+            return receipts;
+        }
+    }
+
+    /**
+     * A repository reading and writing the storage slots from the state.
+     */
+    private static class UncachedRepository extends BohrRepository {
+
+        UncachedRepository(AccountState accountState, DelegateState delegateState) {
+            super(accountState, delegateState);
+        }
+
+        @Override
+        public void putStorageRow(byte[] address, DataWord key, DataWord value) {
+            getAccountState().putStorage(address, key.getData(), value.getData());
+        }
+
+        @Override
+        public DataWord getStorageRow(byte[] address, DataWord key) {
+            byte[] data = getAccountState().getStorage(address, key.getData());
+            return data == null ? null : DataWord.of(data);
+        }
+
+        @Override
+        public Repository startTracking() {
+            return new UncachedRepository(getAccountState().track(), getDelegateState().track());
+        }
+
+        @Override
+        public Repository clone() {
+            return new UncachedRepository(getAccountState().clone(), getDelegateState().clone());
+        }
+    }
+
+    private static class CallTransaction implements Transaction {
+        private final Call call;
+        private final long nonce;
+
+        CallTransaction(Call call, long nonce) {
+            this.call = call;
+            this.nonce = nonce;
+        }
+
+        @Override
+        public boolean isCreate() {
+            return false;
+        }
+
+        @Override
+        public byte[] getFrom() {
+            return SENDER;
+        }
+
+        @Override
+        public byte[] getTo() {
+            return call.to;
+        }
+
+        @Override
+        public long getNonce() {
+            return nonce;
+        }
+
+        @Override
+        public BigInteger getValue() {
+            return BigInteger.ZERO;
+        }
+
+        @Override
+        public byte[] getData() {
+            return call.data;
+        }
+
+        @Override
+        public long getGas() {
+            return GAS;
+        }
+
+        @Override
+        public BigInteger getGasPrice() {
+            return GAS_PRICE;
+        }
+    }
+
+    private static class TestBlock implements Block {
+        @Override
+        public long getGasLimit() {
+            return 10 * GAS;
+        }
+
+        @Override
+        public byte[] getParentHash() {
+            return Bytes.EMPTY_HASH;
+        }
+
+        @Override
+        public byte[] getCoinbase() {
+            return Bytes.EMPTY_ADDRESS;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return 0;
+        }
+
+        @Override
+        public long getNumber() {
+            return 1;
+        }
+
+        @Override
+        public BigInteger getDifficulty() {
+            return BigInteger.ONE;
+        }
+    }
+}
@@ -18,13 +18,14 @@
 package org.ethereum.vm;
 
 import java.math.BigInteger;
-import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 import org.ethereum.vm.util.HexUtil;
 
 /**
- * DataWord is the 32-byte array representation of a 256-bit number.
+ * DataWord is a 256-bit number, stored in four 64-bit limbs.
+ * <p>
+ * The arithmetic works on the limbs directly, and only allocates the resulting
+ * word. The general case of division, ADDMOD and MULMOD are the exceptions.
  *
  * @ImplNote DataWord objects are immutable.
  */
@@ -38,20 +39,24 @@ public class DataWord implements Comparable<DataWord> {
 
     public static final int SIZE = 32;
 
-    private final byte[] data;
+    private static final long MASK_32 = 0xffffffffL;
+
+    // the limbs, from the most significant to the least significant
+    private final long l0;
+    private final long l1;
+    private final long l2;
+    private final long l3;
 
     public static DataWord of(byte num) {
-        byte[] bb = new byte[32];
-        bb[31] = num;
-        return new DataWord(bb, false);
+        return new DataWord(0, 0, 0, num & 0xffL);
     }
 
     public static DataWord of(int num) {
-        return new DataWord(ByteBuffer.allocate(Integer.BYTES).putInt(num).array(), false);
+        return new DataWord(0, 0, 0, num & MASK_32);
     }
 
     public static DataWord of(long num) {
-        return new DataWord(ByteBuffer.allocate(Long.BYTES).putLong(num).array(), false);
+        return new DataWord(0, 0, 0, num);
     }
 
     public static DataWord of(BigInteger num) {
@@ -62,50 +67,83 @@ public class DataWord implements Comparable<DataWord> {
         // NOTE: a 33 bytes array may be produced
         byte[] bytes = num.toByteArray();
         int copyOffset = Math.max(bytes.length - SIZE, 0);
-        int copyLength = bytes.length - copyOffset;
-
-        byte[] data = new byte[SIZE];
-        System.arraycopy(bytes, copyOffset, data, SIZE - copyLength, copyLength);
 
-        return new DataWord(data, false);
+        return of(bytes, copyOffset, bytes.length - copyOffset);
     }
 
     public static DataWord of(String hex) {
-        return new DataWord(HexUtil.fromHexString(hex), false);
+        return of(HexUtil.fromHexString(hex));
     }
 
     public static DataWord of(byte[] data) {
-        return new DataWord(data, true);
+        if (data == null || data.length > SIZE) {
+            throw new IllegalArgumentException("Input data can't be NULL or exceed " + SIZE + " bytes");
+        }
+
+        return of(data, 0, data.length);
     }
 
     /**
-     * Creates a DataWord instance from byte array.
+     * Creates a DataWord from the 32 bytes at the given offset of an array.
      *
      * @param data
-     *            an byte array
-     * @param unsafe
-     *            whether the data is safe to refer
+     *            the source array
+     * @param offset
+     *            the offset of the first byte
+     * @return
      */
-    protected DataWord(byte[] data, boolean unsafe) {
-        if (data == null || data.length > SIZE) {
-            throw new IllegalArgumentException("Input data can't be NULL or exceed " + SIZE + " bytes");
+    public static DataWord of(byte[] data, int offset) {
+        if (offset < 0 || offset + SIZE > data.length) {
+            throw new IndexOutOfBoundsException();
         }
 
-        if (data.length == SIZE) {
-            this.data = unsafe ? data.clone() : data;
-        } else {
-            this.data = new byte[SIZE];
-            System.arraycopy(data, 0, this.data, SIZE - data.length, data.length);
-        }
+        return of(data, offset, SIZE);
+    }
+
+    /**
+     * Creates a DataWord from big-endian bytes, padded with zeros on the left.
+     */
+    private static DataWord of(byte[] data, int offset, int length) {
+        int start = offset - (SIZE - length); // the virtual offset of the padded word
+        return new DataWord(getLong(data, start, offset), getLong(data, start + 8, offset),
+                getLong(data, start + 16, offset), getLong(data, start + 24, offset));
+    }
+
+    private DataWord(long l0, long l1, long l2, long l3) {
+        this.l0 = l0;
+        this.l1 = l1;
+        this.l2 = l2;
+        this.l3 = l3;
     }
 
     /**
-     * Returns a clone of the underlying byte array.
+     * Returns the 32 bytes of this word in a new array.
      *
      * @return a byte array
      */
     public byte[] getData() {
-        return data.clone();
+        byte[] data = new byte[SIZE];
+        copyTo(data, 0);
+        return data;
+    }
+
+    /**
+     * Copies the 32 bytes of this word into an array.
+     *
+     * @param dest
+     *            the destination array
+     * @param offset
+     *            the offset of the first byte
+     */
+    public void copyTo(byte[] dest, int offset) {
+        if (offset < 0 || offset + SIZE > dest.length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        putLong(dest, offset, l0);
+        putLong(dest, offset + 8, l1);
+        putLong(dest, offset + 16, l2);
+        putLong(dest, offset + 24, l3);
     }
 
     /**
@@ -114,7 +152,13 @@ public class DataWord implements Comparable<DataWord> {
      * @return
      */
     public byte[] getLast20Bytes() {
-        return Arrays.copyOfRange(data, SIZE - 20, SIZE);
+        byte[] data = new byte[20];
+        for (int i = 0; i < 4; i++) {
+            data[i] = (byte) (l1 >>> (8 * (3 - i)));
+        }
+        putLong(data, 4, l2);
+        putLong(data, 12, l3);
+        return data;
     }
 
     /**
@@ -124,15 +168,19 @@ public class DataWord implements Comparable<DataWord> {
      * @return
      */
     public byte getByte(int index) {
-        return data[index];
+        if (index < 0 || index >= SIZE) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+
+        return (byte) (limb(index >>> 3) >>> (8 * (7 - (index & 7))));
     }
 
     public BigInteger value() {
-        return new BigInteger(1, data);
+        return new BigInteger(1, getData());
     }
 
     public BigInteger sValue() {
-        return new BigInteger(data);
+        return new BigInteger(getData());
     }
 
     /**
@@ -175,78 +223,95 @@ public class DataWord implements Comparable<DataWord> {
     }
 
     public boolean isZero() {
-        for (byte b : data) {
-            if (b != 0) {
-                return false;
-            }
-        }
-        return true;
+        return (l0 | l1 | l2 | l3) == 0;
     }
 
     public boolean isNegative() {
-        return (data[0] & 0x80) != 0;
+        return l0 < 0;
     }
 
     public DataWord and(DataWord w2) {
-        byte[] buffer = new byte[SIZE];
-        for (int i = 0; i < this.data.length; ++i) {
-            buffer[i] = (byte) (this.data[i] & w2.data[i]);
-        }
-        return new DataWord(buffer, false);
+        return new DataWord(l0 & w2.l0, l1 & w2.l1, l2 & w2.l2, l3 & w2.l3);
     }
 
     public DataWord or(DataWord w2) {
-        byte[] buffer = new byte[SIZE];
-        for (int i = 0; i < this.data.length; ++i) {
-            buffer[i] = (byte) (this.data[i] | w2.data[i]);
-        }
-        return new DataWord(buffer, false);
+        return new DataWord(l0 | w2.l0, l1 | w2.l1, l2 | w2.l2, l3 | w2.l3);
     }
 
     public DataWord xor(DataWord w2) {
-        byte[] buffer = new byte[SIZE];
-        for (int i = 0; i < this.data.length; ++i) {
-            buffer[i] = (byte) (this.data[i] ^ w2.data[i]);
-        }
-        return new DataWord(buffer, false);
+        return new DataWord(l0 ^ w2.l0, l1 ^ w2.l1, l2 ^ w2.l2, l3 ^ w2.l3);
     }
 
     public DataWord negate() {
-        return isZero() ? ZERO : bnot().add(DataWord.ONE);
+        return isZero() ? ZERO : ZERO.sub(this);
     }
 
     // bitwise not
     public DataWord bnot() {
-        byte[] buffer = new byte[SIZE];
-        for (int i = 0; i < this.data.length; ++i) {
-            buffer[i] = (byte) (~this.data[i]);
-        }
-        return new DataWord(buffer, false);
+        return new DataWord(~l0, ~l1, ~l2, ~l3);
     }
 
-    // Credit -> http://stackoverflow.com/a/24023466/459349
     public DataWord add(DataWord word) {
-        byte[] buffer = new byte[SIZE];
-        for (int i = 31, overflow = 0; i >= 0; i--) {
-            int v = (this.data[i] & 0xff) + (word.data[i] & 0xff) + overflow;
-            buffer[i] = (byte) v;
-            overflow = v >>> 8;
-        }
-        return new DataWord(buffer, false);
+        long r3 = l3 + word.l3;
+        long c = carry(r3, l3);
+        long r2 = l2 + word.l2 + c;
+        c = carry(r2, l2, c);
+        long r1 = l1 + word.l1 + c;
+        c = carry(r1, l1, c);
+        long r0 = l0 + word.l0 + c;
+        return new DataWord(r0, r1, r2, r3);
     }
 
     public DataWord mul(DataWord word) {
-        BigInteger result = value().multiply(word.value());
-
-        return of(result.and(MAX_VALUE));
+        long a0 = l3, a1 = l2, a2 = l1, a3 = l0;
+        long b0 = word.l3, b1 = word.l2, b2 = word.l1, b3 = word.l0;
+
+        // a * b0
+        long r0 = a0 * b0;
+        long c = multiplyHigh(a0, b0);
+        long lo = a1 * b0;
+        long r1 = lo + c;
+        c = multiplyHigh(a1, b0) + carry(r1, lo);
+        lo = a2 * b0;
+        long r2 = lo + c;
+        c = multiplyHigh(a2, b0) + carry(r2, lo);
+        long r3 = a3 * b0 + c;
+
+        // a * b1, shifted by one limb
+        lo = a0 * b1;
+        long t = r1 + lo;
+        c = multiplyHigh(a0, b1) + carry(t, lo);
+        r1 = t;
+        lo = a1 * b1;
+        t = r2 + lo;
+        long c1 = carry(t, lo);
+        long t2 = t + c;
+        c = multiplyHigh(a1, b1) + c1 + carry(t2, t);
+        r2 = t2;
+        r3 += a2 * b1 + c;
+
+        // a * b2, shifted by two limbs
+        lo = a0 * b2;
+        t = r2 + lo;
+        c = multiplyHigh(a0, b2) + carry(t, lo);
+        r2 = t;
+        r3 += a1 * b2 + c;
+
+        // a * b3, shifted by three limbs
+        r3 += a0 * b3;
+
+        return new DataWord(r3, r2, r1, r0);
     }
 
     public DataWord div(DataWord word) {
         if (word.isZero()) {
             return ZERO;
+        } else if (fitsInLong() && word.fitsInLong()) {
+            return of(Long.divideUnsigned(l3, word.l3));
+        } else if (compareTo(word) < 0) {
+            return ZERO;
         } else {
-            BigInteger result = value().divide(word.value());
-            return of(result.and(MAX_VALUE));
+            return divide(this, word, true);
         }
     }
 
@@ -254,27 +319,44 @@ public class DataWord implements Comparable<DataWord> {
         if (word.isZero()) {
             return ZERO;
         } else {
-            BigInteger result = sValue().divide(word.sValue());
-            return of(result.and(MAX_VALUE));
+            DataWord result = abs().div(word.abs());
+            return (isNegative() != word.isNegative()) ? result.negate() : result;
         }
     }
 
     public DataWord sub(DataWord word) {
-        BigInteger result = value().subtract(word.value());
-        return of(result.and(MAX_VALUE));
+        long r3 = l3 - word.l3;
+        long b = borrow(l3, word.l3);
+        long r2 = l2 - word.l2 - b;
+        b = borrow(l2, word.l2, b);
+        long r1 = l1 - word.l1 - b;
+        b = borrow(l1, word.l1, b);
+        long r0 = l0 - word.l0 - b;
+        return new DataWord(r0, r1, r2, r3);
     }
 
     public DataWord exp(DataWord word) {
-        BigInteger result = value().modPow(word.value(), TWO_POW_256);
-        return of(result);
+        // square-and-multiply, modulo 2^256
+        DataWord result = ONE;
+        DataWord base = this;
+        for (int i = word.bitLength() - 1; i >= 0; i--) {
+            result = result.mul(result);
+            if (word.testBit(i)) {
+                result = result.mul(base);
+            }
+        }
+        return result;
     }
 
     public DataWord mod(DataWord word) {
         if (word.isZero()) {
             return ZERO;
+        } else if (fitsInLong() && word.fitsInLong()) {
+            return of(Long.remainderUnsigned(l3, word.l3));
+        } else if (compareTo(word) < 0) {
+            return this;
         } else {
-            BigInteger result = value().mod(word.value());
-            return of(result.and(MAX_VALUE));
+            return divide(this, word, false);
         }
     }
 
@@ -282,10 +364,8 @@ public class DataWord implements Comparable<DataWord> {
         if (word.isZero()) {
             return ZERO;
         } else {
-            BigInteger result = sValue().abs().mod(word.sValue().abs());
-            result = (sValue().signum() == -1) ? result.negate() : result;
-
-            return of(result.and(MAX_VALUE));
+            DataWord result = abs().mod(word.abs());
+            return isNegative() ? result.negate() : result;
         }
     }
 
@@ -312,23 +392,14 @@ public class DataWord implements Comparable<DataWord> {
             throw new IndexOutOfBoundsException();
         }
 
-        byte[] buffer = data.clone();
-        byte mask = this.sValue().testBit((k * 8) + 7) ? (byte) 0xff : 0;
-        for (int i = 31; i > k; i--) {
-            buffer[31 - i] = mask;
-        }
-
-        return new DataWord(buffer, false);
+        int bit = k * 8 + 7;
+        boolean negative = testBit(bit);
+        return new DataWord(signExtend(0, bit, negative), signExtend(1, bit, negative),
+                signExtend(2, bit, negative), signExtend(3, bit, negative));
     }
 
     public int bytesOccupied() {
-        for (int i = 0; i < SIZE; i++) {
-            if (data[i] != 0) {
-                return SIZE - i;
-            }
-        }
-
-        return 0;
+        return (bitLength() + 7) / 8;
     }
 
     /**
@@ -338,11 +409,12 @@ public class DataWord implements Comparable<DataWord> {
      * @return this << arg
      */
     public DataWord shiftLeft(DataWord arg) {
-        if (arg.value().compareTo(BigInteger.valueOf(SIZE * 8)) > 0) {
+        if (!arg.fitsInLong() || Long.compareUnsigned(arg.l3, 256) >= 0) {
             return ZERO;
-        } else {
-            return DataWord.of(value().shiftLeft(arg.intValue()).and(MAX_VALUE));
         }
+
+        int n = (int) arg.l3;
+        return new DataWord(shiftLeft(0, n), shiftLeft(1, n), shiftLeft(2, n), shiftLeft(3, n));
     }
 
     /**
@@ -352,11 +424,11 @@ public class DataWord implements Comparable<DataWord> {
      * @return this >>> arg
      */
     public DataWord shiftRight(DataWord arg) {
-        if (arg.value().compareTo(BigInteger.valueOf(SIZE * 8)) > 0) {
+        if (!arg.fitsInLong() || Long.compareUnsigned(arg.l3, 256) >= 0) {
             return ZERO;
-        } else {
-            return DataWord.of(value().shiftRight(arg.intValue()).and(MAX_VALUE));
         }
+
+        return shiftRight((int) arg.l3, 0);
     }
 
     /**
@@ -366,15 +438,12 @@ public class DataWord implements Comparable<DataWord> {
      * @return this >> arg
      */
     public DataWord shiftRightSigned(DataWord arg) {
-        if (arg.value().compareTo(BigInteger.valueOf(SIZE * 8)) > 0) {
-            if (this.isNegative()) {
-                return DataWord.ONE.negate();
-            } else {
-                return DataWord.ZERO;
-            }
-        } else {
-            return DataWord.of(sValue().shiftRight(arg.intValue()).and(MAX_VALUE));
+        long fill = isNegative() ? -1L : 0;
+        if (!arg.fitsInLong() || Long.compareUnsigned(arg.l3, 256) >= 0) {
+            return new DataWord(fill, fill, fill, fill);
         }
+
+        return shiftRight((int) arg.l3, fill);
     }
 
     @Override
@@ -387,26 +456,39 @@ public class DataWord implements Comparable<DataWord> {
             return false;
         }
 
-        return Arrays.equals(data, ((DataWord) o).data);
+        DataWord w = (DataWord) o;
+        return l0 == w.l0 && l1 == w.l1 && l2 == w.l2 && l3 == w.l3;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(data);
+        long h = l0;
+        h = 31 * h + l1;
+        h = 31 * h + l2;
+        h = 31 * h + l3;
+        return (int) (h ^ (h >>> 32));
     }
 
     @Override
     public int compareTo(DataWord o) {
-        return org.bouncycastle.util.Arrays.compareUnsigned(this.data, o.data);
+        if (l0 != o.l0) {
+            return Long.compareUnsigned(l0, o.l0);
+        } else if (l1 != o.l1) {
+            return Long.compareUnsigned(l1, o.l1);
+        } else if (l2 != o.l2) {
+            return Long.compareUnsigned(l2, o.l2);
+        } else {
+            return Long.compareUnsigned(l3, o.l3);
+        }
     }
 
     @Override
     public String toString() {
-        return HexUtil.toHexString(data);
+        return HexUtil.toHexString(getData());
     }
 
     private int intValue(boolean safe) {
-        if (bytesOccupied() > 4 || (data[SIZE - 4] & 0x80) != 0) {
+        if ((l0 | l1 | l2) != 0 || (l3 & ~0x7fffffffL) != 0) {
             if (safe) {
                 return Integer.MAX_VALUE;
             } else {
@@ -414,16 +496,11 @@ public class DataWord implements Comparable<DataWord> {
             }
         }
 
-        int value = 0;
-        for (int i = 0; i < 4; i++) {
-            value = (value << 8) + (0xff & data[SIZE - 4 + i]);
-        }
-
-        return value;
+        return (int) l3;
     }
 
     private long longValue(boolean safe) {
-        if (bytesOccupied() > 8 || (data[SIZE - 8] & 0x80) != 0) {
+        if ((l0 | l1 | l2) != 0 || l3 < 0) {
             if (safe) {
                 return Long.MAX_VALUE;
             } else {
@@ -431,11 +508,276 @@ public class DataWord implements Comparable<DataWord> {
             }
         }
 
-        long value = 0;
+        return l3;
+    }
+
+    /**
+     * Returns the i-th limb, from the most significant one.
+     */
+    private long limb(int i) {
+        switch (i) {
+        case 0:
+            return l0;
+        case 1:
+            return l1;
+        case 2:
+            return l2;
+        default:
+            return l3;
+        }
+    }
+
+    private boolean fitsInLong() {
+        return (l0 | l1 | l2) == 0;
+    }
+
+    private int bitLength() {
+        for (int i = 0; i < 4; i++) {
+            long v = limb(i);
+            if (v != 0) {
+                return (4 - i) * 64 - Long.numberOfLeadingZeros(v);
+            }
+        }
+        return 0;
+    }
+
+    private boolean testBit(int n) {
+        return ((limb(3 - (n >>> 6)) >>> (n & 63)) & 1) != 0;
+    }
+
+    private DataWord abs() {
+        return isNegative() ? negate() : this;
+    }
+
+    private DataWord shiftRight(int n, long fill) {
+        return new DataWord(shiftRight(0, n, fill), shiftRight(1, n, fill), shiftRight(2, n, fill),
+                shiftRight(3, n, fill));
+    }
+
+    /**
+     * Returns the i-th limb of this word shifted left by n bits, n < 256.
+     */
+    private long shiftLeft(int i, int n) {
+        int src = i + (n >>> 6);
+        int bits = n & 63;
+        long v = (src < 4) ? limb(src) << bits : 0;
+        if (bits != 0 && src + 1 < 4) {
+            v |= limb(src + 1) >>> (64 - bits);
+        }
+        return v;
+    }
+
+    /**
+     * Returns the i-th limb of this word shifted right by n bits, n < 256, filling
+     * the upper limbs with the given value.
+     */
+    private long shiftRight(int i, int n, long fill) {
+        int src = i - (n >>> 6);
+        int bits = n & 63;
+        long v = (src >= 0) ? limb(src) : fill;
+        if (bits == 0) {
+            return v;
+        }
+        long prev = (src - 1 >= 0) ? limb(src - 1) : fill;
+        return (v >>> bits) | (prev << (64 - bits));
+    }
+
+    /**
+     * Returns the i-th limb of this word, with the bits above the given sign bit
+     * set to the sign.
+     */
+    private long signExtend(int i, int bit, boolean negative) {
+        int index = 3 - (bit >>> 6);
+        if (i > index) {
+            return limb(i);
+        } else if (i < index) {
+            return negative ? -1L : 0;
+        } else if ((bit & 63) == 63) {
+            return limb(i);
+        } else {
+            long low = (2L << (bit & 63)) - 1; // the bits up to the sign bit
+            return negative ? (limb(i) | ~low) : (limb(i) & low);
+        }
+    }
+
+    /**
+     * Reads a big-endian long, taking the bytes before the given start as zeros.
+     */
+    private static long getLong(byte[] src, int offset, int start) {
+        long v = 0;
         for (int i = 0; i < 8; i++) {
-            value = (value << 8) + (0xff & data[SIZE - 8 + i]);
+            int pos = offset + i;
+            v = (v << 8) | (pos >= start ? src[pos] & 0xffL : 0);
+        }
+        return v;
+    }
+
+    private static void putLong(byte[] dest, int offset, long v) {
+        for (int i = 7; i >= 0; i--) {
+            dest[offset + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    /**
+     * Returns the carry of {@code sum = a + b}.
+     */
+    private static long carry(long sum, long a) {
+        return Long.compareUnsigned(sum, a) < 0 ? 1 : 0;
+    }
+
+    /**
+     * Returns the carry of {@code sum = a + b + c}, where c is 0 or 1.
+     */
+    private static long carry(long sum, long a, long c) {
+        return (Long.compareUnsigned(sum, a) < 0 || (c != 0 && sum == a)) ? 1 : 0;
+    }
+
+    /**
+     * Returns the borrow of {@code a - b - c}, where c is 0 or 1.
+     */
+    private static long borrow(long a, long b, long c) {
+        return (Long.compareUnsigned(a, b) < 0 || (c != 0 && a == b)) ? 1 : 0;
+    }
+
+    private static long borrow(long a, long b) {
+        return Long.compareUnsigned(a, b) < 0 ? 1 : 0;
+    }
+
+    /**
+     * Returns the upper 64 bits of the unsigned 128-bit product of two longs.
+     */
+    private static long multiplyHigh(long a, long b) {
+        long a0 = a & MASK_32, a1 = a >>> 32;
+        long b0 = b & MASK_32, b1 = b >>> 32;
+
+        long lo = a0 * b0;
+        long t = a1 * b0 + (lo >>> 32);
+        long w1 = (t & MASK_32) + a0 * b1;
+        return a1 * b1 + (t >>> 32) + (w1 >>> 32);
+    }
+
+    /**
+     * Divides two words with the Knuth's algorithm D, on 32-bit digits.
+     *
+     * @param dividend
+     * @param divisor
+     *            a word not larger than the dividend
+     * @param quotient
+     *            whether to return the quotient or the remainder
+     * @return
+     */
+    private static DataWord divide(DataWord dividend, DataWord divisor, boolean quotient) {
+        int[] u = dividend.toDigits();
+        int[] v = divisor.toDigits();
+        int m = digits(u);
+        int n = digits(v);
+        int[] q = new int[8];
+
+        if (n == 1) {
+            long d = v[0] & MASK_32;
+            long k = 0;
+            for (int j = m - 1; j >= 0; j--) {
+                long num = (k << 32) | (u[j] & MASK_32);
+                q[j] = (int) Long.divideUnsigned(num, d);
+                k = Long.remainderUnsigned(num, d);
+            }
+            return quotient ? fromDigits(q) : of(k);
+        }
+
+        // normalize, so that the top digit of the divisor has its highest bit set
+        int s = Integer.numberOfLeadingZeros(v[n - 1]);
+        int[] vn = new int[n];
+        for (int i = n - 1; i > 0; i--) {
+            vn[i] = (v[i] << s) | (s == 0 ? 0 : v[i - 1] >>> (32 - s));
+        }
+        vn[0] = v[0] << s;
+
+        int[] un = new int[m + 1];
+        un[m] = (s == 0) ? 0 : u[m - 1] >>> (32 - s);
+        for (int i = m - 1; i > 0; i--) {
+            un[i] = (u[i] << s) | (s == 0 ? 0 : u[i - 1] >>> (32 - s));
+        }
+        un[0] = u[0] << s;
+
+        long vTop = vn[n - 1] & MASK_32;
+        long vNext = vn[n - 2] & MASK_32;
+        for (int j = m - n; j >= 0; j--) {
+            // estimate the quotient digit
+            long num = ((un[j + n] & MASK_32) << 32) | (un[j + n - 1] & MASK_32);
+            long qhat = Long.divideUnsigned(num, vTop);
+            long rhat = Long.remainderUnsigned(num, vTop);
+            while (qhat > MASK_32
+                    || Long.compareUnsigned(qhat * vNext, (rhat << 32) | (un[j + n - 2] & MASK_32)) > 0) {
+                qhat--;
+                rhat += vTop;
+                if (rhat > MASK_32) {
+                    break;
+                }
+            }
+
+            // multiply and subtract
+            long k = 0;
+            long t;
+            for (int i = 0; i < n; i++) {
+                long p = qhat * (vn[i] & MASK_32);
+                t = (un[i + j] & MASK_32) - k - (p & MASK_32);
+                un[i + j] = (int) t;
+                k = (p >>> 32) - (t >> 32);
+            }
+            t = (un[j + n] & MASK_32) - k;
+            un[j + n] = (int) t;
+
+            q[j] = (int) qhat;
+            if (t < 0) {
+                // subtracted too much, add back
+                q[j]--;
+                k = 0;
+                for (int i = 0; i < n; i++) {
+                    t = (un[i + j] & MASK_32) + (vn[i] & MASK_32) + k;
+                    un[i + j] = (int) t;
+                    k = t >>> 32;
+                }
+                un[j + n] += (int) k;
+            }
+        }
+
+        if (quotient) {
+            return fromDigits(q);
+        }
+
+        // denormalize the remainder
+        int[] r = new int[8];
+        for (int i = 0; i < n; i++) {
+            r[i] = (un[i] >>> s) | (s == 0 ? 0 : un[i + 1] << (32 - s));
         }
+        return fromDigits(r);
+    }
+
+    /**
+     * Returns the 32-bit digits of this word, from the least significant one.
+     */
+    private int[] toDigits() {
+        return new int[] { (int) l3, (int) (l3 >>> 32), (int) l2, (int) (l2 >>> 32), (int) l1, (int) (l1 >>> 32),
+                (int) l0, (int) (l0 >>> 32) };
+    }
+
+    private static DataWord fromDigits(int[] d) {
+        return new DataWord(join(d[7], d[6]), join(d[5], d[4]), join(d[3], d[2]), join(d[1], d[0]));
+    }
 
-        return value;
+    private static long join(int high, int low) {
+        return ((long) high << 32) | (low & MASK_32);
+    }
+
+    /**
+     * Returns the number of significant digits.
+     */
+    private static int digits(int[] d) {
+        int n = d.length;
+        while (n > 0 && d[n - 1] == 0) {
+            n--;
+        }
+        return n;
     }
 }
@@ -0,0 +1,369 @@
+/**
+ * Copyright (c) [2019] [ The Bohr Developers ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import static org.ethereum.vm.OpCode.DUP1;
+import static org.ethereum.vm.OpCode.SWAP1;
+import static org.ethereum.vm.util.ByteArrayUtil.EMPTY_BYTE_ARRAY;
+
+import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.program.InstructionStream;
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.Stack;
+import org.ethereum.vm.program.exception.ExceptionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes a program from its {@link InstructionStream}, with the same results
+ * and gas as {@link VM#step}.
+ * <p>
+ * The static gas of a run of instructions is spent at once when the run is
+ * entered. As every exception consumes all the gas, and the instructions which
+ * observe the gas left are delegated to {@link VM#step} at the end of their
+ * run, the difference is not observable. When the gas left doesn't cover a
+ * whole run, the run is executed by {@link VM#step}, so that the program runs
+ * out of gas at the same instruction.
+ */
+class PreDecodedInterpreter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PreDecodedInterpreter.class);
+
+    private static final DataWord THIRTY_TWO = DataWord.of(32);
+
+    private final VM vm;
+    private final Spec spec;
+
+    PreDecodedInterpreter(VM vm, Spec spec) {
+        this.vm = vm;
+        this.spec = spec;
+    }
+
+    public void play(Program program) {
+        try {
+            InstructionStream code = program.getProgramPreprocess().getInstructionStream(program.getCode(), spec);
+            Stack stack = program.getStack();
+
+            int i = code.indexOf(program.getPC());
+            run: while (!program.isStopped()) {
+                long gas = code.getRunGas(i);
+                if (program.getGasLeft() < gas) {
+                    i = stepRun(program, code, i);
+                    continue;
+                }
+                if (gas > 0) {
+                    program.spendGas(gas, "run");
+                }
+
+                for (int end = code.getRunEnd(i); i <= end; i++) {
+                    OpCode op = code.getOp(i);
+                    if (op == null) {
+                        program.setPC(code.getPC(i));
+                        vm.step(program);
+                        if (!program.isStopped()) {
+                            i = code.indexOf(program.getPC());
+                        }
+                        continue run;
+                    }
+
+                    program.verifyStackUnderflow(op.require());
+                    program.verifyStackOverflow(op.require(), op.ret());
+
+                    switch (op) {
+                    case STOP:
+                        program.setHReturn(EMPTY_BYTE_ARRAY);
+                        program.stop();
+                        continue run;
+                    case ADD:
+                        stack.push(stack.pop().add(stack.pop()));
+                        break;
+                    case MUL:
+                        stack.push(stack.pop().mul(stack.pop()));
+                        break;
+                    case SUB:
+                        stack.push(stack.pop().sub(stack.pop()));
+                        break;
+                    case DIV:
+                        stack.push(stack.pop().div(stack.pop()));
+                        break;
+                    case SDIV:
+                        stack.push(stack.pop().sDiv(stack.pop()));
+                        break;
+                    case MOD:
+                        stack.push(stack.pop().mod(stack.pop()));
+                        break;
+                    case SMOD:
+                        stack.push(stack.pop().sMod(stack.pop()));
+                        break;
+                    case ADDMOD:
+                        stack.push(stack.pop().addmod(stack.pop(), stack.pop()));
+                        break;
+                    case MULMOD:
+                        stack.push(stack.pop().mulmod(stack.pop(), stack.pop()));
+                        break;
+                    case SIGNEXTEND: {
+                        DataWord k = stack.pop();
+                        if (k.compareTo(THIRTY_TWO) < 0) {
+                            stack.push(stack.pop().signExtend((byte) k.intValue()));
+                        }
+                        break;
+                    }
+                    case LT:
+                        stack.push(bool(stack.pop().compareTo(stack.pop()) < 0));
+                        break;
+                    case GT:
+                        stack.push(bool(stack.pop().compareTo(stack.pop()) > 0));
+                        break;
+                    case SLT:
+                        stack.push(bool(signedCompare(stack.pop(), stack.pop()) < 0));
+                        break;
+                    case SGT:
+                        stack.push(bool(signedCompare(stack.pop(), stack.pop()) > 0));
+                        break;
+                    case EQ:
+                        stack.push(bool(stack.pop().equals(stack.pop())));
+                        break;
+                    case ISZERO:
+                        stack.push(bool(stack.pop().isZero()));
+                        break;
+                    case AND:
+                        stack.push(stack.pop().and(stack.pop()));
+                        break;
+                    case OR:
+                        stack.push(stack.pop().or(stack.pop()));
+                        break;
+                    case XOR:
+                        stack.push(stack.pop().xor(stack.pop()));
+                        break;
+                    case NOT:
+                        stack.push(stack.pop().bnot());
+                        break;
+                    case BYTE: {
+                        DataWord index = stack.pop();
+                        DataWord word = stack.pop();
+                        stack.push(index.compareTo(THIRTY_TWO) < 0 ? DataWord.of(word.getByte(index.intValue()))
+                                : DataWord.ZERO);
+                        break;
+                    }
+                    case SHL: {
+                        DataWord shift = stack.pop();
+                        stack.push(stack.pop().shiftLeft(shift));
+                        break;
+                    }
+                    case SHR: {
+                        DataWord shift = stack.pop();
+                        stack.push(stack.pop().shiftRight(shift));
+                        break;
+                    }
+                    case SAR: {
+                        DataWord shift = stack.pop();
+                        stack.push(stack.pop().shiftRightSigned(shift));
+                        break;
+                    }
+                    case ADDRESS:
+                        stack.push(program.getOwnerAddress());
+                        break;
+                    case CALLER:
+                        stack.push(program.getCallerAddress());
+                        break;
+                    case CALLVALUE:
+                        stack.push(program.getCallValue());
+                        break;
+                    case CALLDATALOAD:
+                        stack.push(program.getDataValue(stack.pop()));
+                        break;
+                    case CALLDATASIZE:
+                        stack.push(program.getDataSize());
+                        break;
+                    case POP:
+                        stack.pop();
+                        break;
+                    case JUMP:
+                        i = jump(program, code, stack.pop());
+                        continue run;
+                    case JUMPI: {
+                        DataWord pos = stack.pop();
+                        DataWord cond = stack.pop();
+                        i = cond.isZero() ? i + 1 : jump(program, code, pos);
+                        continue run;
+                    }
+                    case PC:
+                        stack.push(code.getOperand(i));
+                        break;
+                    case MSIZE:
+                        stack.push(DataWord.of(program.getMemSize()));
+                        break;
+                    case JUMPDEST:
+                        break;
+                    case PUSH1:
+                    case PUSH2:
+                    case PUSH3:
+                    case PUSH4:
+                    case PUSH5:
+                    case PUSH6:
+                    case PUSH7:
+                    case PUSH8:
+                    case PUSH9:
+                    case PUSH10:
+                    case PUSH11:
+                    case PUSH12:
+                    case PUSH13:
+                    case PUSH14:
+                    case PUSH15:
+                    case PUSH16:
+                    case PUSH17:
+                    case PUSH18:
+                    case PUSH19:
+                    case PUSH20:
+                    case PUSH21:
+                    case PUSH22:
+                    case PUSH23:
+                    case PUSH24:
+                    case PUSH25:
+                    case PUSH26:
+                    case PUSH27:
+                    case PUSH28:
+                    case PUSH29:
+                    case PUSH30:
+                    case PUSH31:
+                    case PUSH32:
+                        if (code.isFused(i)) {
+                            i = pushAndJump(program, code, i);
+                            continue run;
+                        }
+                        stack.push(code.getOperand(i));
+                        break;
+                    case DUP1:
+                    case DUP2:
+                    case DUP3:
+                    case DUP4:
+                    case DUP5:
+                    case DUP6:
+                    case DUP7:
+                    case DUP8:
+                    case DUP9:
+                    case DUP10:
+                    case DUP11:
+                    case DUP12:
+                    case DUP13:
+                    case DUP14:
+                    case DUP15:
+                    case DUP16:
+                        stack.dup(op.val() - DUP1.val() + 1);
+                        if (code.isFused(i)) {
+                            OpCode swap = code.getOp(++i);
+                            program.verifyStackUnderflow(swap.require());
+                            stack.swap(swap.val() - SWAP1.val() + 1);
+                        }
+                        break;
+                    case SWAP1:
+                    case SWAP2:
+                    case SWAP3:
+                    case SWAP4:
+                    case SWAP5:
+                    case SWAP6:
+                    case SWAP7:
+                    case SWAP8:
+                    case SWAP9:
+                    case SWAP10:
+                    case SWAP11:
+                    case SWAP12:
+                    case SWAP13:
+                    case SWAP14:
+                    case SWAP15:
+                    case SWAP16:
+                        stack.swap(op.val() - SWAP1.val() + 1);
+                        break;
+                    default:
+                        throw new IllegalStateException("Not a decoded instruction: " + op);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // as VM#step does, for the instructions executed here
+            program.spendAllGas();
+            program.resetFutureRefund();
+            program.stop();
+            program.setException(e);
+        } catch (StackOverflowError soe) {
+            logger.error("\n !!! StackOverflowError: update your java run command with -Xss2M !!!\n", soe);
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Executes a run with {@link VM#step}.
+     *
+     * @return the index of the next instruction
+     */
+    private int stepRun(Program program, InstructionStream code, int start) {
+        int end = code.getRunEnd(start);
+        int i = start;
+
+        program.setPC(code.getPC(start));
+        while (!program.isStopped()) {
+            vm.step(program);
+            if (program.isStopped()) {
+                break;
+            }
+
+            i = code.indexOf(program.getPC());
+            if (i <= start || i > end) {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Executes a PUSH followed by a JUMP or JUMPI, without pushing the
+     * destination.
+     *
+     * @return the index of the next instruction
+     */
+    private int pushAndJump(Program program, InstructionStream code, int i) {
+        Stack stack = program.getStack();
+        OpCode jump = code.getOp(i + 1);
+
+        // the stack is left as the PUSH would leave it
+        if (stack.size() + 1 < jump.require()) {
+            stack.push(code.getOperand(i));
+            throw ExceptionFactory.tooSmallStack(jump.require(), stack.size());
+        }
+        if (jump == OpCode.JUMPI && stack.pop().isZero()) {
+            return i + 2;
+        }
+
+        int target = code.getTarget(i);
+        return target >= 0 ? target : jump(program, code, code.getOperand(i));
+    }
+
+    private static int jump(Program program, InstructionStream code, DataWord pos) {
+        return code.indexOf(program.verifyJumpDest(pos));
+    }
+
+    private static DataWord bool(boolean b) {
+        return b ? DataWord.ONE : DataWord.ZERO;
+    }
+
+    private static int signedCompare(DataWord a, DataWord b) {
+        if (a.isNegative() != b.isNegative()) {
+            return a.isNegative() ? -1 : 1;
+        }
+        return a.compareTo(b);
+    }
+}
@@ -24,10 +24,12 @@ import static org.ethereum.vm.util.ByteArrayUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.vm.util.VMUtil.getSizeInWords;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.program.CodeCache;
 import org.ethereum.vm.program.Program;
 import org.ethereum.vm.program.Stack;
 import org.ethereum.vm.program.exception.ExceptionFactory;
@@ -592,7 +594,7 @@ public class VM {
             case SHA3: {
                 DataWord memOffsetData = program.stackPop();
                 DataWord lengthData = program.stackPop();
-                byte[] buffer = program.memoryChunk(memOffsetData.intValueSafe(), lengthData.intValueSafe());
+                ByteBuffer buffer = program.memorySlice(memOffsetData.intValueSafe(), lengthData.intValueSafe());
 
                 byte[] encoded = HashUtil.keccak256(buffer);
                 DataWord word = DataWord.of(encoded);
@@ -739,7 +741,7 @@ public class VM {
                 byte[] code = program.getCodeAt(address);
                 code = (code == null) ? EMPTY_BYTE_ARRAY : code;
 
-                byte[] codeHash = HashUtil.keccak256(code);
+                byte[] codeHash = CodeCache.getInstance().get(code).getCodeHash();
                 program.stackPush(codeHash);
                 program.step();
             }
@@ -819,7 +821,7 @@ public class VM {
             case DUP15:
             case DUP16: {
                 int n = op.val() - OpCode.DUP1.val() + 1;
-                program.stackPush(stack.get(stack.size() - n)); // same object ref
+                stack.dup(n); // same object ref
                 program.step();
 
             }
@@ -841,8 +843,8 @@ public class VM {
             case SWAP15:
             case SWAP16: {
 
-                int n = op.val() - OpCode.SWAP1.val() + 2;
-                stack.swap(stack.size() - 1, stack.size() - n);
+                int n = op.val() - OpCode.SWAP1.val() + 1;
+                stack.swap(n);
                 program.step();
             }
                 break;
@@ -1108,6 +1110,11 @@ public class VM {
     }
 
     public void play(Program program) {
+        if (spec.preDecode()) {
+            new PreDecodedInterpreter(this, spec).play(program);
+            return;
+        }
+
         try {
             while (!program.isStopped()) {
                 this.step(program);
@@ -107,4 +107,9 @@ public class BaseSpec implements Spec {
     public boolean eip1014() {
         return false;
     }
+
+    @Override
+    public boolean preDecode() {
+        return false;
+    }
 }
@@ -114,4 +114,11 @@ public interface Spec {
      * CREATE but with deterministic address
      */
     boolean eip1014();
+
+    /**
+     * Whether to execute programs from their pre-decoded instructions, see
+     * {@link org.ethereum.vm.program.InstructionStream}, rather than decoding
+     * every instruction. Both interpreters produce the same results and gas.
+     */
+    boolean preDecode();
 }
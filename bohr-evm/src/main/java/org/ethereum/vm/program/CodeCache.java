@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) [2019] [ The Bohr Developers ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.ethereum.vm.util.ByteArrayWrapper;
+import org.ethereum.vm.util.HashUtil;
+
+/**
+ * Process-wide cache of the analysed code, keyed by code hash.
+ * <p>
+ * As the key is derived from the content, an entry never becomes stale: when
+ * the code of an account is replaced, the new code simply has another hash. The
+ * least recently used entries are evicted once the total size of the analysed
+ * code, including the instruction streams decoded for the pre-decoded
+ * interpreter, exceeds the capacity.
+ * <p>
+ * The code arrays which have been looked up are also remembered by identity,
+ * with weak references, so that the code returned by the account state cache
+ * is not hashed again on every call.
+ */
+public class CodeCache {
+
+    public static final long DEFAULT_CAPACITY = 32L * 1024 * 1024;
+
+    private static final CodeCache INSTANCE = new CodeCache(DEFAULT_CAPACITY);
+
+    private final long capacity;
+    private long size;
+
+    private final LinkedHashMap<ByteArrayWrapper, ProgramPreprocess> byHash = new LinkedHashMap<>(256, 0.75f,
+            true);
+
+    // byte arrays have identity equality, and are only weakly referenced
+    private final Map<byte[], ProgramPreprocess> byCode = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a code cache.
+     *
+     * @param capacity
+     *            the maximum size of the cached code and instruction streams, in
+     *            bytes
+     */
+    public CodeCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the process-wide code cache.
+     *
+     * @return
+     */
+    public static CodeCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the analysis of the given code, from the cache if possible.
+     *
+     * @param code
+     *            the code, which must not be modified afterwards
+     * @return
+     */
+    public ProgramPreprocess get(byte[] code) {
+        ProgramPreprocess analysed = byCode.get(code);
+        if (analysed != null) {
+            count(true);
+            return analysed;
+        }
+
+        ByteArrayWrapper hash = new ByteArrayWrapper(HashUtil.keccak256(code));
+        synchronized (this) {
+            analysed = byHash.get(hash);
+        }
+        count(analysed != null);
+
+        if (analysed == null) {
+            analysed = ProgramPreprocess.compile(code, hash.getData());
+            analysed.setCache(this);
+            put(hash, analysed);
+        }
+        byCode.put(code, analysed);
+
+        return analysed;
+    }
+
+    /**
+     * Returns the ratio of lookups which didn't analyse the code.
+     *
+     * @return
+     */
+    public synchronized double hitRate() {
+        return (hits + misses) == 0 ? 1.0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public synchronized void clear() {
+        byHash.clear();
+        byCode.clear();
+        size = 0;
+    }
+
+    private synchronized void count(boolean hit) {
+        if (hit) {
+            hits++;
+        } else {
+            misses++;
+        }
+    }
+
+    /**
+     * Accounts for a change of the weight of a cached entry, when its instruction
+     * stream is decoded.
+     *
+     * @param analysed
+     * @param delta
+     *            the change of weight, in bytes
+     */
+    synchronized void resize(ProgramPreprocess analysed, long delta) {
+        if (byHash.get(new ByteArrayWrapper(analysed.getCodeHash())) == analysed) {
+            size += delta;
+            evict();
+        }
+    }
+
+    private synchronized void put(ByteArrayWrapper hash, ProgramPreprocess analysed) {
+        ProgramPreprocess old = byHash.put(hash, analysed);
+        if (old != null) {
+            size -= old.getWeight();
+        }
+        size += analysed.getWeight();
+        evict();
+    }
+
+    private void evict() {
+        Iterator<ProgramPreprocess> it = byHash.values().iterator();
+        while (size > capacity && it.hasNext()) {
+            size -= it.next().getWeight();
+            it.remove();
+        }
+    }
+}
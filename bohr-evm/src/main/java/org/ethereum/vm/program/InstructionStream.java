@@ -0,0 +1,354 @@
+/**
+ * Copyright (c) [2019] [ The Bohr Developers ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import java.util.Arrays;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.FeeSchedule;
+import org.ethereum.vm.OpCode;
+import org.ethereum.vm.chainspec.Spec;
+
+/**
+ * The code of a program decoded into an array of instructions, for the
+ * pre-decoded interpreter.
+ * <p>
+ * Every instruction of the code has an entry, indexed in code order, followed
+ * by a STOP which stands for the end of the code. An entry holds:
+ * <ul>
+ * <li>the opcode, or null if the instruction is left to {@link
+ * org.ethereum.vm.VM#step}: the ones with a dynamic cost, the ones which
+ * observe the gas left, and the invalid ones</li>
+ * <li>the operand: the value of a PUSH, or the offset of a PC</li>
+ * <li>for a PUSH fused with the JUMP or JUMPI which follows it, the index of
+ * the destination, or -1 if the destination is not a JUMPDEST</li>
+ * </ul>
+ * The instructions are grouped in runs, which start at the first instruction,
+ * at every JUMPDEST and after every JUMP, JUMPI, STOP and delegated
+ * instruction. Jumps can only land at the start of a run, and a delegated
+ * instruction is always the last one of its run, so the static gas of a run can
+ * be spent when it's entered.
+ * <p>
+ * The static gas depends on the fee schedule, and the validity of the shift
+ * instructions on the spec, so a stream is only used with the specs it
+ * {@link #isCompatible(Spec) is compatible} with.
+ */
+public class InstructionStream {
+
+    private final FeeSchedule feeSchedule;
+    private final boolean eip145;
+
+    private final int size;
+    private final OpCode[] op;
+    private final int[] pc;
+    private final DataWord[] operand;
+    private final boolean[] fused;
+    private final int[] target;
+    private final long[] runGas;
+    private final int[] runEnd;
+    private final int[] index;
+
+    private long estimatedSize;
+
+    private InstructionStream(Spec spec, int size, int codeSize) {
+        this.feeSchedule = spec.getFeeSchedule();
+        this.eip145 = spec.eip145();
+
+        this.size = size;
+        this.op = new OpCode[size + 1];
+        this.pc = new int[size + 1];
+        this.operand = new DataWord[size + 1];
+        this.fused = new boolean[size + 1];
+        this.target = new int[size + 1];
+        this.runGas = new long[size + 1];
+        this.runEnd = new int[size + 1];
+        this.index = new int[codeSize + 1];
+    }
+
+    /**
+     * Returns whether this stream can execute programs of the given spec.
+     *
+     * @param spec
+     * @return
+     */
+    public boolean isCompatible(Spec spec) {
+        return feeSchedule == spec.getFeeSchedule() && eip145 == spec.eip145();
+    }
+
+    /**
+     * Returns the number of instructions, excluding the final STOP.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the opcode of an instruction.
+     *
+     * @param i
+     *            the index of the instruction
+     * @return the opcode, or null if the instruction is delegated to the
+     *         interpreter
+     */
+    public OpCode getOp(int i) {
+        return op[i];
+    }
+
+    /**
+     * Returns the offset of an instruction in the code.
+     *
+     * @param i
+     * @return
+     */
+    public int getPC(int i) {
+        return pc[i];
+    }
+
+    public DataWord getOperand(int i) {
+        return operand[i];
+    }
+
+    /**
+     * Returns whether an instruction is executed together with the next one.
+     *
+     * @param i
+     * @return
+     */
+    public boolean isFused(int i) {
+        return fused[i];
+    }
+
+    /**
+     * Returns the destination of a PUSH fused with a jump.
+     *
+     * @param i
+     * @return the index of the destination, or -1 if it's invalid
+     */
+    public int getTarget(int i) {
+        return target[i];
+    }
+
+    /**
+     * Returns the static gas of the run starting at the given instruction,
+     * excluding the delegated instruction which may end it.
+     *
+     * @param i
+     * @return
+     */
+    public long getRunGas(int i) {
+        return runGas[i];
+    }
+
+    /**
+     * Returns the index of the last instruction of the run starting at the
+     * given instruction.
+     *
+     * @param i
+     * @return
+     */
+    public int getRunEnd(int i) {
+        return runEnd[i];
+    }
+
+    /**
+     * Returns the estimated memory used by this stream.
+     *
+     * @return the size in bytes
+     */
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    /**
+     * Returns the index of the instruction at the given offset.
+     *
+     * @param pc
+     *            an offset where an instruction starts, or the code size
+     * @return
+     */
+    public int indexOf(int pc) {
+        return index[pc];
+    }
+
+    /**
+     * Decodes the given code.
+     *
+     * @param ops
+     *            the code
+     * @param preprocess
+     *            the analysis of the code
+     * @param spec
+     * @return
+     */
+    public static InstructionStream decode(byte[] ops, ProgramPreprocess preprocess, Spec spec) {
+        int size = 0;
+        for (int i = 0; i < ops.length; i++) {
+            if (preprocess.isInstruction(i)) {
+                size++;
+            }
+        }
+
+        InstructionStream s = new InstructionStream(spec, size, ops.length);
+        Arrays.fill(s.index, -1);
+        Arrays.fill(s.target, -1);
+
+        // resolve the instructions
+        int i = 0;
+        for (int p = 0; p < ops.length; p++) {
+            if (!preprocess.isInstruction(p)) {
+                continue;
+            }
+            s.index[p] = i;
+            s.pc[i] = p;
+
+            OpCode op = OpCode.code(ops[p]);
+            if (op != null && isPush(op)) {
+                int n = op.val() - OpCode.PUSH1.val() + 1;
+                // a PUSH truncated by the end of the code stops the program
+                if (p + n < ops.length) {
+                    s.op[i] = op;
+                    s.operand[i] = DataWord.of(Arrays.copyOfRange(ops, p + 1, p + 1 + n));
+                }
+            } else if (op == OpCode.PC) {
+                s.op[i] = op;
+                s.operand[i] = DataWord.of(p);
+            } else if (op != null && isDecoded(op, spec)) {
+                s.op[i] = op;
+            }
+            i++;
+        }
+        s.index[ops.length] = size;
+        s.pc[size] = ops.length;
+        s.op[size] = OpCode.STOP;
+
+        // fuse PUSH + JUMP(I) and DUP + SWAP
+        for (i = 0; i + 1 < size; i++) {
+            OpCode op = s.op[i];
+            OpCode next = s.op[i + 1];
+            if (op == null || next == null) {
+                continue;
+            }
+
+            if (isPush(op) && (next == OpCode.JUMP || next == OpCode.JUMPI)) {
+                s.fused[i] = true;
+                DataWord dest = s.operand[i];
+                if (dest.bytesOccupied() <= 4 && preprocess.hasJumpDest((int) dest.longValue())) {
+                    s.target[i] = s.index[(int) dest.longValue()];
+                }
+                i++;
+            } else if (isDup(op) && isSwap(next)) {
+                s.fused[i] = true;
+                i++;
+            }
+        }
+
+        // split the instructions in runs
+        FeeSchedule feeSchedule = spec.getFeeSchedule();
+        int start = 0;
+        for (i = 0; i <= size; i++) {
+            OpCode op = s.op[i];
+            if (op == OpCode.JUMPDEST && i != start) {
+                s.runEnd[start] = i - 1;
+                start = i;
+            }
+
+            // the final STOP is not an instruction of the code
+            if (op != null && i < size) {
+                s.runGas[start] += (op == OpCode.STOP) ? feeSchedule.getSTOP() : op.getTier().asInt();
+            }
+
+            if (isRunEnder(op)) {
+                s.runEnd[start] = i;
+                start = i + 1;
+            }
+        }
+
+        // the arrays, one reference, int, long and boolean per entry, and the
+        // operands
+        long operands = Arrays.stream(s.operand).filter(w -> w != null).count();
+        s.estimatedSize = (size + 1L) * (8 + 4 + 8 + 1 + 4 + 8 + 4) + 4L * (ops.length + 1)
+                + operands * (16 + DataWord.SIZE);
+
+        return s;
+    }
+
+    private static boolean isRunEnder(OpCode op) {
+        return op == null || op == OpCode.JUMP || op == OpCode.JUMPI || op == OpCode.STOP;
+    }
+
+    private static boolean isPush(OpCode op) {
+        return op.val() >= OpCode.PUSH1.val() && op.val() <= OpCode.PUSH32.val();
+    }
+
+    private static boolean isDup(OpCode op) {
+        return op.val() >= OpCode.DUP1.val() && op.val() <= OpCode.DUP16.val();
+    }
+
+    private static boolean isSwap(OpCode op) {
+        return op.val() >= OpCode.SWAP1.val() && op.val() <= OpCode.SWAP16.val();
+    }
+
+    /**
+     * Returns whether an instruction is executed from the stream, rather than
+     * by {@link org.ethereum.vm.VM#step}.
+     */
+    private static boolean isDecoded(OpCode op, Spec spec) {
+        switch (op) {
+        case SHL:
+        case SHR:
+        case SAR:
+            return spec.eip145();
+        case STOP:
+        case ADD:
+        case MUL:
+        case SUB:
+        case DIV:
+        case SDIV:
+        case MOD:
+        case SMOD:
+        case ADDMOD:
+        case MULMOD:
+        case SIGNEXTEND:
+        case LT:
+        case GT:
+        case SLT:
+        case SGT:
+        case EQ:
+        case ISZERO:
+        case AND:
+        case OR:
+        case XOR:
+        case NOT:
+        case BYTE:
+        case ADDRESS:
+        case CALLER:
+        case CALLVALUE:
+        case CALLDATALOAD:
+        case CALLDATASIZE:
+        case POP:
+        case JUMP:
+        case JUMPI:
+        case MSIZE:
+        case JUMPDEST:
+            return true;
+        default:
+            return isDup(op) || isSwap(op);
+        }
+    }
+}
@@ -17,21 +17,23 @@
  */
 package org.ethereum.vm.program;
 
-import static java.lang.Math.ceil;
-import static java.lang.Math.min;
 import static org.ethereum.vm.util.ByteArrayUtil.EMPTY_BYTE_ARRAY;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.ethereum.vm.DataWord;
 
+/**
+ * The memory of a program, stored in a single array which grows by doubling.
+ * Every access is a direct array index, regardless of the memory size.
+ */
 public class Memory {
 
     private static final int CHUNK_SIZE = 1024;
     private static final int WORD_SIZE = 32;
 
-    private List<byte[]> chunks = new LinkedList<>();
+    private byte[] data = EMPTY_BYTE_ARRAY;
     private int softSize;
 
     public byte[] read(int address, int size) {
@@ -40,27 +42,26 @@ public class Memory {
         }
 
         extend(address, size);
-        byte[] data = new byte[size];
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        int toGrab = data.length;
-        int start = 0;
-
-        while (toGrab > 0) {
-            int copied = grabMax(chunkIndex, chunkOffset, toGrab, data, start);
-
-            // read next chunk from the start
-            ++chunkIndex;
-            chunkOffset = 0;
+        return Arrays.copyOfRange(data, address, address + size);
+    }
 
-            // mark remind
-            toGrab -= copied;
-            start += copied;
+    /**
+     * Returns a read-only view of a memory range, without copying it. The view is
+     * only valid until the memory is modified or extended.
+     *
+     * @param address
+     *            the start address
+     * @param size
+     *            the number of bytes
+     * @return
+     */
+    public ByteBuffer slice(int address, int size) {
+        if (size <= 0) {
+            return ByteBuffer.wrap(EMPTY_BYTE_ARRAY).asReadOnlyBuffer();
         }
 
-        return data;
+        extend(address, size);
+        return ByteBuffer.wrap(data, address, size).asReadOnlyBuffer();
     }
 
     public void write(int address, byte[] data, int dataSize, boolean limited) {
@@ -76,9 +77,6 @@ public class Memory {
             extend(address, dataSize);
         }
 
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
         int toCapture;
         if (limited) {
             toCapture = (address + dataSize > softSize) ? softSize - address : dataSize;
@@ -86,17 +84,8 @@ public class Memory {
             toCapture = dataSize;
         }
 
-        int start = 0;
-        while (toCapture > 0) {
-            int captured = captureMax(chunkIndex, chunkOffset, toCapture, data, start);
-
-            // capture next chunk
-            ++chunkIndex;
-            chunkOffset = 0;
-
-            // mark remind
-            toCapture -= captured;
-            start += captured;
+        if (toCapture > 0) {
+            System.arraycopy(data, 0, this.data, address, toCapture);
         }
     }
 
@@ -112,31 +101,27 @@ public class Memory {
 
         final int newSize = address + size;
 
-        int toAllocate = newSize - internalSize();
+        int toAllocate = newSize - softSize;
         if (toAllocate > 0) {
-            addChunks((int) ceil((double) toAllocate / CHUNK_SIZE));
-        }
-
-        toAllocate = newSize - softSize;
-        if (toAllocate > 0) {
-            toAllocate = (int) ceil((double) toAllocate / WORD_SIZE) * WORD_SIZE;
+            toAllocate = (toAllocate + WORD_SIZE - 1) / WORD_SIZE * WORD_SIZE;
             softSize += toAllocate;
+            ensureCapacity(softSize);
         }
     }
 
     public DataWord readWord(int address) {
-        return DataWord.of(read(address, 32));
+        extend(address, WORD_SIZE);
+        return DataWord.of(data, address);
+    }
+
+    public void writeWord(int address, DataWord value) {
+        extend(address, WORD_SIZE);
+        value.copyTo(data, address);
     }
 
     // just access expecting all data valid
     public byte readByte(int address) {
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        byte[] chunk = chunks.get(chunkIndex);
-
-        return chunk[chunkOffset];
+        return data[address];
     }
 
     public int size() {
@@ -144,35 +129,13 @@ public class Memory {
     }
 
     public int internalSize() {
-        return chunks.size() * CHUNK_SIZE;
-    }
-
-    public List<byte[]> getChunks() {
-        return new LinkedList<>(chunks);
-    }
-
-    private int captureMax(int chunkIndex, int chunkOffset, int size, byte[] src, int srcPos) {
-
-        byte[] chunk = chunks.get(chunkIndex);
-        int toCapture = min(size, chunk.length - chunkOffset);
-
-        System.arraycopy(src, srcPos, chunk, chunkOffset, toCapture);
-        return toCapture;
-    }
-
-    private int grabMax(int chunkIndex, int chunkOffset, int size, byte[] dest, int destPos) {
-
-        byte[] chunk = chunks.get(chunkIndex);
-        int toGrab = min(size, chunk.length - chunkOffset);
-
-        System.arraycopy(chunk, chunkOffset, dest, destPos, toGrab);
-
-        return toGrab;
+        return data.length;
     }
 
-    private void addChunks(int num) {
-        for (int i = 0; i < num; ++i) {
-            chunks.add(new byte[CHUNK_SIZE]);
+    private void ensureCapacity(int size) {
+        if (size > data.length) {
+            int capacity = Math.max((size + CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE, data.length * 2);
+            data = Arrays.copyOf(data, capacity);
         }
     }
 }
@@ -26,6 +26,7 @@ import static org.ethereum.vm.util.ByteArrayUtil.isNotEmpty;
 import static org.ethereum.vm.util.ByteArrayUtil.nullToEmpty;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.ethereum.vm.DataWord;
@@ -65,7 +66,7 @@ public class Program {
     private static final int MAX_DEPTH = 1024;
 
     // Max size for stack checks
-    private static final int MAX_STACKSIZE = 1024;
+    private static final int MAX_STACKSIZE = Stack.MAX_SIZE;
 
     private ProgramInvokeFactory programInvokeFactory = new ProgramInvokeFactoryImpl();
     private ProgramInvoke invoke;
@@ -103,7 +104,7 @@ public class Program {
 
     public ProgramPreprocess getProgramPreprocess() {
         if (preprocessed == null) {
-            preprocessed = ProgramPreprocess.compile(ops);
+            preprocessed = CodeCache.getInstance().get(ops);
         }
         return preprocessed;
     }
@@ -228,7 +229,7 @@ public class Program {
     }
 
     public void memorySave(DataWord addrB, DataWord value) {
-        memory.write(addrB.intValue(), value.getData(), value.getData().length, false);
+        memory.writeWord(addrB.intValue(), value);
     }
 
     public void memorySaveLimited(int addr, byte[] data, int dataSize) {
@@ -267,6 +268,19 @@ public class Program {
         return memory.read(offset, size);
     }
 
+    /**
+     * Returns a read-only view of a piece of memory, without copying it.
+     *
+     * @param offset
+     *            the memory address offset
+     * @param size
+     *            the number of bytes
+     * @return a view which is only valid until the memory is modified
+     */
+    public ByteBuffer memorySlice(int offset, int size) {
+        return memory.slice(offset, size);
+    }
+
     /**
      * Allocates extra memory in the program for a specified size, calculated from a
      * given offset
@@ -17,37 +17,132 @@
  */
 package org.ethereum.vm.program;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.BitSet;
 
 import org.ethereum.vm.OpCode;
+import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.util.HashUtil;
 
 /**
- * Pre-compile the program code to speed up execution.
+ * Pre-compile the program code to speed up execution. The result only depends
+ * on the code, and is shared through the {@link CodeCache}.
  *
  * Features included:
  * <ul>
  * <li>Collect the list of JUMP destinations</li>
+ * <li>Collect the offsets where an instruction starts, i.e. the ones which are
+ * not PUSH data</li>
+ * <li>Compute the code hash</li>
+ * <li>Decode the instructions, on demand, see {@link InstructionStream}</li>
  * </ul>
  */
 public class ProgramPreprocess {
-    private Set<Integer> jumpdest = new HashSet<>();
+    private final byte[] codeHash;
+    private final int codeSize;
+    private final BitSet jumpdest;
+    private final BitSet instructions;
+
+    // decoded lazily, as only the pre-decoded interpreter needs it
+    private volatile InstructionStream stream;
+
+    // the cache holding this analysis, if any
+    private CodeCache cache;
+
+    private ProgramPreprocess(byte[] codeHash, int codeSize, BitSet jumpdest, BitSet instructions) {
+        this.codeHash = codeHash;
+        this.codeSize = codeSize;
+        this.jumpdest = jumpdest;
+        this.instructions = instructions;
+    }
 
     public boolean hasJumpDest(int pc) {
-        return jumpdest.contains(pc);
+        return pc >= 0 && jumpdest.get(pc);
+    }
+
+    /**
+     * Returns whether an instruction starts at the given offset.
+     *
+     * @param pc
+     *            the offset in the code
+     * @return false if the offset is out of the code or in PUSH data
+     */
+    public boolean isInstruction(int pc) {
+        return pc >= 0 && instructions.get(pc);
+    }
+
+    /**
+     * Returns the Keccak-256 hash of the code.
+     *
+     * @return a 32 bytes digest
+     */
+    public byte[] getCodeHash() {
+        return codeHash.clone();
+    }
+
+    public int getCodeSize() {
+        return codeSize;
+    }
+
+    /**
+     * Returns the weight of this analysis in the {@link CodeCache}: the size of
+     * the code and the estimated size of the instruction stream, if decoded.
+     *
+     * @return the weight in bytes
+     */
+    long getWeight() {
+        InstructionStream s = stream;
+        return codeSize + (s == null ? 0 : s.getEstimatedSize());
+    }
+
+    void setCache(CodeCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the decoded instructions of the code.
+     *
+     * @param ops
+     *            the code
+     * @param spec
+     *            the spec of the interpreter
+     * @return
+     */
+    public InstructionStream getInstructionStream(byte[] ops, Spec spec) {
+        InstructionStream s = stream;
+        if (s == null || !s.isCompatible(spec)) {
+            s = InstructionStream.decode(ops, this, spec);
+            if (cache == null) {
+                stream = s;
+            } else {
+                // the weight of a cached entry only changes under the cache lock
+                synchronized (cache) {
+                    long weight = getWeight();
+                    stream = s;
+                    cache.resize(this, getWeight() - weight);
+                }
+            }
+        }
+        return s;
     }
 
     public static ProgramPreprocess compile(byte[] ops) {
-        ProgramPreprocess ret = new ProgramPreprocess();
+        return compile(ops, HashUtil.keccak256(ops));
+    }
+
+    static ProgramPreprocess compile(byte[] ops, byte[] codeHash) {
+        BitSet jumpdest = new BitSet(ops.length);
+        BitSet instructions = new BitSet(ops.length);
 
         for (int i = 0; i < ops.length; ++i) {
+            instructions.set(i);
+
             OpCode op = OpCode.code(ops[i]);
             if (op == null) {
                 continue;
             }
 
             if (op.equals(OpCode.JUMPDEST)) {
-                ret.jumpdest.add(i);
+                jumpdest.set(i);
             }
 
             if (op.asInt() >= OpCode.PUSH1.asInt() && op.asInt() <= OpCode.PUSH32.asInt()) {
@@ -55,6 +150,6 @@ public class ProgramPreprocess {
             }
         }
 
-        return ret;
+        return new ProgramPreprocess(codeHash, ops.length, jumpdest, instructions);
     }
 }
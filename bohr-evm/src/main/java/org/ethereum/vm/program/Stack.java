@@ -17,47 +17,139 @@
  */
 package org.ethereum.vm.program;
 
+import java.util.Arrays;
+
 import org.ethereum.vm.DataWord;
+import org.ethereum.vm.program.exception.ExceptionFactory;
 
 /**
- * Program runtime stack.
+ * Program runtime stack, backed by a fixed-capacity array.
+ * <p>
+ * A program runs on a single thread, so the stack is not synchronized. The VM
+ * checks the stack requirements of an instruction before executing it, see
+ * {@link Program#verifyStackUnderflow(int)} and
+ * {@link Program#verifyStackOverflow(int, int)}; the checks here only guard
+ * against misuse, with the same exceptions.
  */
 public class Stack {
 
-    private java.util.Stack<DataWord> stack = new java.util.Stack<>();
+    public static final int MAX_SIZE = 1024;
+
+    private final DataWord[] items;
+    private int size;
+
+    public Stack() {
+        this(MAX_SIZE);
+    }
 
-    public synchronized DataWord pop() {
-        return stack.pop();
+    public Stack(int capacity) {
+        this.items = new DataWord[capacity];
+    }
+
+    public DataWord pop() {
+        if (size == 0) {
+            throw ExceptionFactory.tooSmallStack(1, 0);
+        }
+
+        DataWord item = items[--size];
+        items[size] = null;
+        return item;
+    }
+
+    /**
+     * Removes the n items on the top of the stack.
+     *
+     * @param n
+     *            the number of items
+     */
+    public void pop(int n) {
+        if (n > size) {
+            throw ExceptionFactory.tooSmallStack(n, size);
+        }
+
+        Arrays.fill(items, size - n, size, null);
+        size -= n;
     }
 
     public void push(DataWord item) {
-        stack.push(item);
+        if (size == items.length) {
+            throw ExceptionFactory.tooLargeStack(size + 1, items.length);
+        }
+
+        items[size++] = item;
+    }
+
+    /**
+     * Pushes a copy of the n-th item, as DUPn does.
+     *
+     * @param n
+     *            the position of the item, 1 being the top
+     */
+    public void dup(int n) {
+        push(peek(n - 1));
+    }
+
+    /**
+     * Exchanges the top item with the n-th item below it, as SWAPn does.
+     *
+     * @param n
+     *            the position of the item below the top, from 1
+     */
+    public void swap(int n) {
+        if (n >= size) {
+            throw ExceptionFactory.tooSmallStack(n + 1, size);
+        }
+
+        int top = size - 1;
+        DataWord tmp = items[top];
+        items[top] = items[top - n];
+        items[top - n] = tmp;
     }
 
     public void swap(int from, int to) {
         if (isAccessible(from) && isAccessible(to) && (from != to)) {
-            DataWord tmp = stack.get(from);
-            stack.set(from, stack.set(to, tmp));
+            DataWord tmp = items[from];
+            items[from] = items[to];
+            items[to] = tmp;
         }
     }
 
     public DataWord peek() {
-        return stack.peek();
+        return peek(0);
+    }
+
+    /**
+     * Returns the n-th item from the top.
+     *
+     * @param n
+     *            the position of the item, 0 being the top
+     * @return
+     */
+    public DataWord peek(int n) {
+        if (n < 0 || n >= size) {
+            throw ExceptionFactory.tooSmallStack(n + 1, size);
+        }
+
+        return items[size - 1 - n];
     }
 
     public DataWord get(int index) {
-        return stack.get(index);
+        if (!isAccessible(index)) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+
+        return items[index];
     }
 
     public int size() {
-        return stack.size();
+        return size;
     }
 
     private boolean isAccessible(int from) {
-        return from >= 0 && from < stack.size();
+        return from >= 0 && from < size;
     }
 
     public DataWord[] toArray() {
-        return stack.toArray(new DataWord[0]);
+        return Arrays.copyOf(items, size);
     }
 }
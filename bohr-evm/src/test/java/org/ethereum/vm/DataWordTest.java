@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) [2019] [ The Bohr Developers ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BinaryOperator;
+
+import org.junit.Test;
+
+/**
+ * Checks the limb arithmetic of {@link DataWord} against the same operations on
+ * {@link BigInteger}, on edge cases and random words.
+ */
+public class DataWordTest {
+
+    private static final BigInteger TWO_POW_255 = BigInteger.ONE.shiftLeft(255);
+    private static final BigInteger MOD = DataWord.TWO_POW_256;
+
+    private static final int RANDOM_PAIRS = 5000;
+
+    private final Random random = new Random(42);
+
+    /**
+     * 0, 1, 2^255, 2^256 - 1 and the values around the limb boundaries.
+     */
+    private static List<BigInteger> edgeCases() {
+        List<BigInteger> list = new ArrayList<>();
+        list.add(BigInteger.ZERO);
+        list.add(BigInteger.ONE);
+        list.add(BigInteger.valueOf(2));
+        list.add(BigInteger.valueOf(0xff));
+        for (int bits : new int[] { 31, 32, 63, 64, 127, 128, 191, 192, 255 }) {
+            BigInteger p = BigInteger.ONE.shiftLeft(bits);
+            list.add(p.subtract(BigInteger.ONE));
+            list.add(p);
+            list.add(p.add(BigInteger.ONE));
+        }
+        list.add(MOD.subtract(BigInteger.valueOf(2)));
+        list.add(DataWord.MAX_VALUE);
+        // all ones in the lower limbs, and in every other limb
+        list.add(new BigInteger("0000000000000000ffffffffffffffffffffffffffffffffffffffffffffffff", 16));
+        list.add(new BigInteger("ffffffffffffffff0000000000000000ffffffffffffffff0000000000000000", 16));
+        list.add(new BigInteger("0000000000000000ffffffffffffffff0000000000000000ffffffffffffffff", 16));
+        return list;
+    }
+
+    /**
+     * Returns a random word of a random length, so that the values of all sizes
+     * are covered.
+     */
+    private BigInteger randomValue() {
+        BigInteger v = new BigInteger(1 + random.nextInt(256), random);
+        if (random.nextInt(8) == 0) {
+            // runs of ones and zeros, which exercise the carries
+            v = v.or(BigInteger.ONE.shiftLeft(64 * random.nextInt(4)).subtract(BigInteger.ONE));
+        }
+        return v;
+    }
+
+    private static DataWord word(BigInteger v) {
+        return DataWord.of(v);
+    }
+
+    private static BigInteger unsigned(BigInteger v) {
+        return v.mod(MOD);
+    }
+
+    private static BigInteger signed(BigInteger v) {
+        return v.testBit(255) ? v.subtract(MOD) : v;
+    }
+
+    private void checkBinary(String op, BinaryOperator<DataWord> actual, BinaryOperator<BigInteger> expected) {
+        List<BigInteger> edges = edgeCases();
+        for (BigInteger a : edges) {
+            for (BigInteger b : edges) {
+                checkBinary(op, actual, expected, a, b);
+            }
+        }
+        for (int i = 0; i < RANDOM_PAIRS; i++) {
+            BigInteger a = randomValue();
+            BigInteger b = random.nextBoolean() ? randomValue() : edges.get(random.nextInt(edges.size()));
+            checkBinary(op, actual, expected, a, b);
+            checkBinary(op, actual, expected, b, a);
+        }
+    }
+
+    private static void checkBinary(String op, BinaryOperator<DataWord> actual, BinaryOperator<BigInteger> expected,
+            BigInteger a, BigInteger b) {
+        assertEquals(op + "(" + a.toString(16) + ", " + b.toString(16) + ")", expected.apply(a, b),
+                actual.apply(word(a), word(b)).value());
+    }
+
+    @Test
+    public void testConversion() {
+        for (BigInteger a : edgeCases()) {
+            assertEquals(a, word(a).value());
+            assertEquals(signed(a), word(a).sValue());
+            assertEquals(word(a), DataWord.of(word(a).getData()));
+        }
+        for (int i = 0; i < RANDOM_PAIRS; i++) {
+            BigInteger a = randomValue();
+            assertEquals(a, word(a).value());
+            assertEquals(word(a), DataWord.of(word(a).getData()));
+        }
+    }
+
+    @Test
+    public void testAdd() {
+        checkBinary("add", DataWord::add, (a, b) -> unsigned(a.add(b)));
+    }
+
+    @Test
+    public void testSub() {
+        checkBinary("sub", DataWord::sub, (a, b) -> unsigned(a.subtract(b)));
+    }
+
+    @Test
+    public void testMul() {
+        checkBinary("mul", DataWord::mul, (a, b) -> unsigned(a.multiply(b)));
+    }
+
+    @Test
+    public void testDiv() {
+        checkBinary("div", DataWord::div, (a, b) -> b.signum() == 0 ? BigInteger.ZERO : a.divide(b));
+    }
+
+    @Test
+    public void testSDiv() {
+        checkBinary("sdiv", DataWord::sDiv,
+                (a, b) -> b.signum() == 0 ? BigInteger.ZERO : unsigned(signed(a).divide(signed(b))));
+    }
+
+    @Test
+    public void testMod() {
+        checkBinary("mod", DataWord::mod, (a, b) -> b.signum() == 0 ? BigInteger.ZERO : a.mod(b));
+    }
+
+    @Test
+    public void testSMod() {
+        checkBinary("smod", DataWord::sMod,
+                (a, b) -> b.signum() == 0 ? BigInteger.ZERO : unsigned(signed(a).remainder(signed(b))));
+    }
+
+    @Test
+    public void testExp() {
+        checkBinary("exp", DataWord::exp, (a, b) -> a.modPow(b, MOD));
+    }
+
+    @Test
+    public void testAddModMulMod() {
+        List<BigInteger> edges = edgeCases();
+        for (BigInteger a : edges) {
+            for (BigInteger b : edges) {
+                for (BigInteger c : edges) {
+                    checkModular(a, b, c);
+                }
+            }
+        }
+        for (int i = 0; i < RANDOM_PAIRS; i++) {
+            checkModular(randomValue(), randomValue(), randomValue());
+        }
+    }
+
+    private static void checkModular(BigInteger a, BigInteger b, BigInteger c) {
+        String args = "(" + a.toString(16) + ", " + b.toString(16) + ", " + c.toString(16) + ")";
+        BigInteger add = c.signum() == 0 ? BigInteger.ZERO : a.add(b).mod(c);
+        BigInteger mul = c.signum() == 0 ? BigInteger.ZERO : a.multiply(b).mod(c);
+        assertEquals("addmod" + args, add, word(a).addmod(word(b), word(c)).value());
+        assertEquals("mulmod" + args, mul, word(a).mulmod(word(b), word(c)).value());
+    }
+
+    @Test
+    public void testSignExtend() {
+        List<BigInteger> values = edgeCases();
+        for (int i = 0; i < RANDOM_PAIRS; i++) {
+            values.add(randomValue());
+        }
+        for (BigInteger a : values) {
+            for (int k = 0; k < 32; k++) {
+                int bit = k * 8 + 7;
+                BigInteger mask = BigInteger.ONE.shiftLeft(bit + 1).subtract(BigInteger.ONE);
+                BigInteger expected = a.testBit(bit) ? a.or(DataWord.MAX_VALUE.xor(mask)) : a.and(mask);
+                assertEquals("signExtend(" + a.toString(16) + ", " + k + ")", expected,
+                        word(a).signExtend((byte) k).value());
+            }
+        }
+    }
+
+    @Test
+    public void testShifts() {
+        List<BigInteger> values = edgeCases();
+        for (int i = 0; i < RANDOM_PAIRS / 10; i++) {
+            values.add(randomValue());
+        }
+        List<BigInteger> shifts = new ArrayList<>();
+        for (int n = 0; n <= 257; n++) {
+            shifts.add(BigInteger.valueOf(n));
+        }
+        shifts.add(BigInteger.ONE.shiftLeft(64));
+        shifts.add(BigInteger.ONE.shiftLeft(64).add(BigInteger.ONE));
+        shifts.add(DataWord.MAX_VALUE);
+
+        for (BigInteger a : values) {
+            for (BigInteger s : shifts) {
+                String args = "(" + a.toString(16) + ", " + s + ")";
+                boolean overflow = s.compareTo(BigInteger.valueOf(256)) >= 0;
+                int n = overflow ? 0 : s.intValue();
+
+                BigInteger shl = overflow ? BigInteger.ZERO : unsigned(a.shiftLeft(n));
+                BigInteger shr = overflow ? BigInteger.ZERO : a.shiftRight(n);
+                BigInteger sar = overflow ? (a.testBit(255) ? DataWord.MAX_VALUE : BigInteger.ZERO)
+                        : unsigned(signed(a).shiftRight(n));
+
+                assertEquals("shl" + args, shl, word(a).shiftLeft(word(s)).value());
+                assertEquals("shr" + args, shr, word(a).shiftRight(word(s)).value());
+                assertEquals("sar" + args, sar, word(a).shiftRightSigned(word(s)).value());
+            }
+        }
+    }
+
+    @Test
+    public void testByte() {
+        List<BigInteger> values = edgeCases();
+        for (int i = 0; i < RANDOM_PAIRS / 10; i++) {
+            values.add(randomValue());
+        }
+        for (BigInteger a : values) {
+            byte[] bytes = new byte[DataWord.SIZE];
+            for (int i = 0; i < DataWord.SIZE; i++) {
+                bytes[i] = a.shiftRight(8 * (DataWord.SIZE - 1 - i)).byteValue();
+                assertEquals("byte(" + a.toString(16) + ", " + i + ")", bytes[i], word(a).getByte(i));
+            }
+            assertArrayEquals(bytes, word(a).getData());
+        }
+    }
+
+    @Test
+    public void testEdgeCases() {
+        DataWord max = word(DataWord.MAX_VALUE);
+        DataWord min = word(TWO_POW_255);
+
+        assertEquals(DataWord.ZERO, max.add(DataWord.ONE));
+        assertEquals(max, DataWord.ZERO.sub(DataWord.ONE));
+        assertEquals(DataWord.ONE, max.mul(max));
+        assertEquals(min, min.sDiv(max)); // -2^255 / -1 overflows
+        assertEquals(DataWord.ZERO, min.sMod(max));
+        assertEquals(DataWord.ZERO, max.div(DataWord.ZERO));
+        assertEquals(DataWord.ZERO, max.mod(DataWord.ZERO));
+        assertEquals(DataWord.ONE, DataWord.ZERO.exp(DataWord.ZERO));
+        assertEquals(DataWord.ZERO, word(BigInteger.valueOf(2)).exp(word(BigInteger.valueOf(256))));
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright (c) [2019] [ The Bohr Developers ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.ethereum.vm.chainspec.ByzantiumSpec;
+import org.ethereum.vm.chainspec.ConstantinopleSpec;
+import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.ProgramResult;
+import org.ethereum.vm.program.invoke.ProgramInvokeImpl;
+import org.ethereum.vm.util.HexUtil;
+import org.junit.Test;
+
+/**
+ * Runs the same programs through {@link PreDecodedInterpreter} and
+ * {@link VM#step}, and checks that the gas, the refunds, the return data, the
+ * logs, the storage and the exceptions are the same. Every program is run with
+ * many gas limits up to the gas it needs, so that the programs also run out of
+ * gas in the middle of a run whose static gas is spent at once.
+ */
+public class PreDecodedInterpreterTest {
+
+    private static final byte[] ADDRESS = HexUtil.fromHexString("0000000000000000000000000000000000001234");
+    private static final byte[] CALLER = HexUtil.fromHexString("0000000000000000000000000000000000005678");
+
+    private static final long MAX_GAS = 100_000L;
+
+    /**
+     * The gas limit up to which all the limits are tried, above which they are
+     * sampled.
+     */
+    private static final int SWEEP_GAS = 2_000;
+
+    private static final Spec[] SPECS = { new ByzantiumSpec(), new ConstantinopleSpec() };
+
+    private final Random random = new Random(7);
+
+    @Test
+    public void testArithmetic() {
+        check("1 2 ADD 3 MUL 7 SWAP1 SUB 0x0a SWAP1 DIV 5 MOD 0 MSTORE 32 0 RETURN");
+        check("0xff 0 SIGNEXTEND 0x7f 0 SIGNEXTEND ADD 0xff 32 SIGNEXTEND ADD 0 MSTORE 32 0 RETURN");
+        check("3 7 11 ADDMOD 3 7 11 MULMOD 2 0x10 EXP 1 2 SDIV 1 2 SMOD 0 MSTORE 0x20 MSTORE 0x40 MSTORE "
+                + "0x60 MSTORE 0x80 MSTORE 0xa0 0 RETURN");
+    }
+
+    @Test
+    public void testComparisonAndBitwise() {
+        check("1 2 LT 2 1 GT AND 1 2 SLT OR 1 1 EQ XOR ISZERO NOT 5 BYTE 0 MSTORE 32 0 RETURN");
+        check("1 0xff SHL 4 SAR 8 SHR 0 MSTORE 32 0 RETURN");
+    }
+
+    @Test
+    public void testStackOps() {
+        check("1 2 3 DUP3 SWAP1 DUP2 SWAP3 POP ADD ADD ADD 0 MSTORE 32 0 RETURN");
+        check("1 DUP1 SWAP1 DUP1 SWAP1 ADD 0 MSTORE 32 0 RETURN");
+    }
+
+    @Test
+    public void testLoop() {
+        check("10 @loop 1 SWAP1 SUB DUP1 :loop JUMPI 0 MSTORE 32 0 RETURN");
+        check("@loop :loop JUMP");
+    }
+
+    @Test
+    public void testStorage() {
+        check("1 0 SSTORE 2 1 SSTORE 0 0 SSTORE 0 5 SSTORE 9 5 SSTORE 0 SLOAD 1 SLOAD ADD 5 SLOAD ADD "
+                + "0 MSTORE 32 0 RETURN");
+        check("0 5 SSTORE 7 5 SSTORE 0 5 SSTORE STOP");
+    }
+
+    @Test
+    public void testMemoryAndEnvironment() {
+        check("1 0x1000 MSTORE MSIZE 0 MSTORE 32 0 RETURN");
+        check("0 CALLDATALOAD CALLDATASIZE ADD CALLVALUE ADD CALLER ADD ADDRESS ADD PC ADD 0 MSTORE 32 0 RETURN");
+        check("1 2 ADD GAS 0 MSTORE 32 0 RETURN");
+        check("0x1234 0 MSTORE 0xabcd 32 0 LOG1 32 0 RETURN");
+    }
+
+    @Test
+    public void testFailures() {
+        check("0xdead 0 MSTORE 32 0 REVERT");
+        check("3 JUMP 1 1");
+        check("1 4 JUMPI JUMPDEST");
+        check("ADD");
+        checkCode(HexUtil.fromHexString("6001600201fe")); // 1 2 ADD INVALID
+        checkCode(HexUtil.fromHexString("600c600055fe")); // 0x0c 0 SSTORE INVALID
+        checkCode(HexUtil.fromHexString("6001610001")); // truncated PUSH2
+        checkCode(HexUtil.fromHexString("600156")); // jump into nothing
+    }
+
+    @Test
+    public void testStackOverflow() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1030; i++) {
+            sb.append("1 ");
+        }
+        check(sb.toString());
+    }
+
+    @Test
+    public void testRandomPrograms() {
+        String[] ops = { "ADD", "MUL", "SUB", "DIV", "SDIV", "MOD", "SMOD", "ADDMOD", "MULMOD", "EXP",
+                "SIGNEXTEND", "LT", "GT", "SLT", "SGT", "EQ", "ISZERO", "AND", "OR", "XOR", "NOT", "BYTE", "SHL",
+                "SHR", "SAR", "POP", "DUP1", "DUP2", "DUP3", "SWAP1", "SWAP2", "SWAP3", "MSIZE", "PC", "GAS",
+                "CALLDATASIZE", "CALLVALUE", "ADDRESS", "CALLER", "SLOAD", "SSTORE", "MSTORE", "MLOAD", "STOP" };
+
+        for (int p = 0; p < 200; p++) {
+            StringBuilder sb = new StringBuilder();
+            int labels = 1 + random.nextInt(4);
+            for (int i = 0; i < 40; i++) {
+                int r = random.nextInt(10);
+                if (r < 4) {
+                    sb.append(random.nextInt(r == 0 ? 256 : 40)).append(' ');
+                } else if (r == 4 && i % 8 == 0) {
+                    sb.append('@').append(i / 8 % labels).append(' ');
+                } else if (r == 5 && random.nextInt(4) == 0) {
+                    sb.append(':').append(random.nextInt(labels)).append(random.nextBoolean() ? " JUMP " : " JUMPI ");
+                } else {
+                    sb.append(ops[random.nextInt(ops.length)]).append(' ');
+                }
+            }
+            for (int l = 0; l < labels; l++) {
+                sb.append('@').append(l).append(' ');
+            }
+            sb.append("0 MSTORE 32 0 RETURN");
+
+            byte[] code = assemble(sb.toString());
+            for (Spec spec : SPECS) {
+                long used = run(code, MAX_GAS, spec, false).gasUsed;
+                for (int i = 0; i < 16; i++) {
+                    long limit = random.nextInt((int) Math.min(used, Integer.MAX_VALUE - 1) + 1);
+                    compare(code, limit, spec, sb.toString());
+                }
+                compare(code, used, spec, sb.toString());
+                compare(code, MAX_GAS, spec, sb.toString());
+            }
+        }
+    }
+
+    private void check(String src) {
+        checkCode(assemble(src));
+    }
+
+    /**
+     * Compares the interpreters with the gas limits up to the gas the program
+     * needs: all of them for cheap programs, and the ones around the gas needed
+     * and a sample of the others for the expensive ones.
+     */
+    private void checkCode(byte[] code) {
+        String name = HexUtil.toHexString(code);
+        for (Spec spec : SPECS) {
+            long used = run(code, MAX_GAS, spec, false).gasUsed;
+            for (long limit = 0; limit <= Math.min(used + 10, SWEEP_GAS); limit++) {
+                compare(code, limit, spec, name);
+            }
+            if (used > SWEEP_GAS) {
+                for (int i = 0; i < 100; i++) {
+                    compare(code, SWEEP_GAS + random.nextInt((int) (used - SWEEP_GAS)), spec, name);
+                }
+                for (long limit = used - 10; limit <= Math.min(used + 10, MAX_GAS); limit++) {
+                    compare(code, limit, spec, name);
+                }
+            }
+        }
+    }
+
+    private void compare(byte[] code, long gasLimit, Spec spec, String name) {
+        Outcome expected = run(code, gasLimit, spec, false);
+        Outcome actual = run(code, gasLimit, spec, true);
+        assertEquals(name + " with gas " + gasLimit + ", " + spec.getClass().getSimpleName(), expected, actual);
+    }
+
+    private static Outcome run(byte[] code, long gasLimit, Spec base, boolean preDecode) {
+        Spec spec = base instanceof ConstantinopleSpec ? new ConstantinopleSpec() {
+            @Override
+            public boolean preDecode() {
+                return preDecode;
+            }
+        } : new ByzantiumSpec() {
+            @Override
+            public boolean preDecode() {
+                return preDecode;
+            }
+        };
+
+        TestRepository repository = new TestRepository();
+        repository.saveCode(ADDRESS, code);
+        repository.putStorageRow(ADDRESS, DataWord.of(5), DataWord.of(7));
+
+        ProgramInvokeImpl invoke = new ProgramInvokeImpl(DataWord.of(ADDRESS), DataWord.of(CALLER),
+                DataWord.of(CALLER), gasLimit, DataWord.ONE, DataWord.of(3), new byte[] { 1, 2, 3 },
+                DataWord.ZERO, DataWord.ZERO, DataWord.of(1_000), DataWord.of(100), DataWord.ZERO,
+                DataWord.of(MAX_GAS), repository, repository.clone(), n -> new byte[32], 0, false);
+        Program program = new Program(code, invoke, spec);
+        new VM(spec).play(program);
+
+        return new Outcome(program.getResult(), repository.getStorage(ADDRESS));
+    }
+
+    /**
+     * Assembles a program: opcodes by name, numbers as the shortest PUSH,
+     * <code>@label</code> as a JUMPDEST and <code>:label</code> as a PUSH2 of its
+     * offset.
+     */
+    private static byte[] assemble(String src) {
+        String[] tokens = src.trim().split("\\s+");
+        Map<String, Integer> labels = new HashMap<>();
+        for (int pass = 0; pass < 2; pass++) {
+            List<Byte> out = new ArrayList<>();
+            for (String t : tokens) {
+                if (t.startsWith("@")) {
+                    labels.put(t.substring(1), out.size());
+                    out.add(OpCode.JUMPDEST.val());
+                } else if (t.startsWith(":")) {
+                    int pos = labels.getOrDefault(t.substring(1), 0);
+                    out.add(OpCode.PUSH2.val());
+                    out.add((byte) (pos >> 8));
+                    out.add((byte) pos);
+                } else if (Character.isDigit(t.charAt(0))) {
+                    BigInteger v = t.startsWith("0x") ? new BigInteger(t.substring(2), 16) : new BigInteger(t);
+                    byte[] bytes = DataWord.of(v).getData();
+                    int n = Math.max(1, DataWord.of(v).bytesOccupied());
+                    out.add((byte) (OpCode.PUSH1.val() + n - 1));
+                    for (int i = DataWord.SIZE - n; i < DataWord.SIZE; i++) {
+                        out.add(bytes[i]);
+                    }
+                } else {
+                    OpCode op = OpCode.valueOf(t);
+                    assertNotNull(t, op);
+                    out.add(op.val());
+                }
+            }
+            if (pass == 1) {
+                byte[] code = new byte[out.size()];
+                for (int i = 0; i < code.length; i++) {
+                    code[i] = out.get(i);
+                }
+                return code;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * The observable results of a program.
+     */
+    private static class Outcome {
+        final long gasUsed;
+        final long refund;
+        final String returnData;
+        final boolean revert;
+        final String exception;
+        final String logs;
+        final String storage;
+
+        Outcome(ProgramResult result, Map<DataWord, DataWord> storage) {
+            this.gasUsed = result.getGasUsed();
+            this.refund = result.getFutureRefund();
+            this.returnData = HexUtil.toHexString(result.getReturnData());
+            this.revert = result.isRevert();
+            this.exception = result.getException() == null ? null
+                    : result.getException().getClass().getSimpleName() + ": " + result.getException().getMessage();
+            this.logs = result.getLogs().toString();
+            this.storage = storage.toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Outcome)) {
+                return false;
+            }
+            Outcome other = (Outcome) o;
+            return gasUsed == other.gasUsed && refund == other.refund && revert == other.revert
+                    && returnData.equals(other.returnData) && logs.equals(other.logs)
+                    && storage.equals(other.storage) && String.valueOf(exception).equals(
+                            String.valueOf(other.exception));
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[] { gasUsed, refund, returnData });
+        }
+
+        @Override
+        public String toString() {
+            return "gasUsed=" + gasUsed + ", refund=" + refund + ", return=" + returnData + ", revert=" + revert
+                    + ", exception=" + exception + ", logs=" + logs + ", storage=" + storage;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) [2019] [ The Bohr Developers ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.ethereum.vm.client.Repository;
+import org.ethereum.vm.util.ByteArrayWrapper;
+
+/**
+ * An in-memory repository for tests. Tracking returns a copy, which is merged
+ * back on commit.
+ */
+public class TestRepository implements Repository {
+
+    private static class Account {
+        long nonce;
+        BigInteger balance = BigInteger.ZERO;
+        byte[] code = new byte[0];
+        Map<DataWord, DataWord> storage = new HashMap<>();
+
+        Account copy() {
+            Account a = new Account();
+            a.nonce = nonce;
+            a.balance = balance;
+            a.code = code;
+            a.storage = new HashMap<>(storage);
+            return a;
+        }
+    }
+
+    private final TestRepository parent;
+    private final Map<ByteArrayWrapper, Account> accounts = new HashMap<>();
+
+    public TestRepository() {
+        this(null);
+    }
+
+    private TestRepository(TestRepository parent) {
+        this.parent = parent;
+        if (parent != null) {
+            parent.accounts.forEach((k, v) -> accounts.put(k, v.copy()));
+        }
+    }
+
+    private Account get(byte[] address) {
+        return accounts.computeIfAbsent(new ByteArrayWrapper(address), k -> new Account());
+    }
+
+    @Override
+    public boolean exists(byte[] address) {
+        return accounts.containsKey(new ByteArrayWrapper(address));
+    }
+
+    @Override
+    public void createAccount(byte[] address) {
+        get(address);
+    }
+
+    @Override
+    public void delete(byte[] address) {
+        accounts.remove(new ByteArrayWrapper(address));
+    }
+
+    @Override
+    public long increaseNonce(byte[] address) {
+        return ++get(address).nonce;
+    }
+
+    @Override
+    public long setNonce(byte[] address, long nonce) {
+        return get(address).nonce = nonce;
+    }
+
+    @Override
+    public long getNonce(byte[] address) {
+        return get(address).nonce;
+    }
+
+    @Override
+    public void saveCode(byte[] address, byte[] code) {
+        get(address).code = code;
+    }
+
+    @Override
+    public byte[] getCode(byte[] address) {
+        return get(address).code;
+    }
+
+    @Override
+    public void putStorageRow(byte[] address, DataWord key, DataWord value) {
+        if (value.isZero()) {
+            get(address).storage.remove(key);
+        } else {
+            get(address).storage.put(key, value);
+        }
+    }
+
+    @Override
+    public DataWord getStorageRow(byte[] address, DataWord key) {
+        return get(address).storage.get(key);
+    }
+
+    /**
+     * Returns the storage of an account, in key order.
+     *
+     * @param address
+     * @return
+     */
+    public Map<DataWord, DataWord> getStorage(byte[] address) {
+        return new TreeMap<>(get(address).storage);
+    }
+
+    @Override
+    public BigInteger getBalance(byte[] address) {
+        return get(address).balance;
+    }
+
+    @Override
+    public BigInteger addBalance(byte[] address, BigInteger value) {
+        Account a = get(address);
+        a.balance = a.balance.add(value);
+        return a.balance;
+    }
+
+    @Override
+    public Repository startTracking() {
+        return new TestRepository(this);
+    }
+
+    @Override
+    public Repository clone() {
+        return new TestRepository(this);
+    }
+
+    @Override
+    public void commit() {
+        if (parent != null) {
+            parent.accounts.clear();
+            parent.accounts.putAll(accounts);
+        }
+    }
+
+    @Override
+    public void rollback() {
+        accounts.clear();
+        if (parent != null) {
+            parent.accounts.forEach((k, v) -> accounts.put(k, v.copy()));
+        }
+    }
+}
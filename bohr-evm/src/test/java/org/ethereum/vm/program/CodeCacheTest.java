@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) [2019] [ The Bohr Developers ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.ethereum.vm.chainspec.ConstantinopleSpec;
+import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.util.HexUtil;
+import org.junit.Test;
+
+public class CodeCacheTest {
+
+    private static final byte[] CODE_A = HexUtil.fromHexString("6001600201600052602060006000f3");
+    private static final byte[] CODE_B = HexUtil.fromHexString("6002600301600052602060006000f3");
+
+    private final Spec spec = new ConstantinopleSpec();
+
+    @Test
+    public void testHit() {
+        CodeCache cache = new CodeCache(1024);
+        ProgramPreprocess a = cache.get(CODE_A);
+
+        assertSame(a, cache.get(CODE_A));
+        assertSame(a, cache.get(CODE_A.clone()));
+        assertEquals(2.0 / 3, cache.hitRate(), 1e-9);
+    }
+
+    @Test
+    public void testInstructionStreamWeight() {
+        long stream = ProgramPreprocess.compile(CODE_A).getInstructionStream(CODE_A, spec).getEstimatedSize();
+
+        // room for both codes, or for one code and its instruction stream
+        CodeCache cache = new CodeCache(CODE_A.length + CODE_B.length + stream - 1);
+        ProgramPreprocess a = cache.get(CODE_A);
+        ProgramPreprocess b = cache.get(CODE_B);
+        assertSame(b, cache.get(CODE_B.clone()));
+
+        // decoding the stream of A evicts B, the least recently used
+        cache.get(CODE_A.clone());
+        a.getInstructionStream(CODE_A, spec);
+        assertSame(a, cache.get(CODE_A.clone()));
+        assertNotSame(b, cache.get(CODE_B.clone()));
+    }
+}